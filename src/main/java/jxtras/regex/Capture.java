@@ -63,15 +63,15 @@ public class Capture {
     int length;
 
     /*
-     * The original string.
+     * The original input, as it was passed in: not a copy of it.
      */
-    String text;
+    CharSequence text;
 
     /*
      * Creates a {@code Capture} instance with specified location/length pair
      * that indicates the location of a regular expression match.
      */
-    Capture(String text, int index, int length) {
+    Capture(CharSequence text, int index, int length) {
         this.text = text;
         this.index = index;
         this.length = length;
@@ -93,11 +93,13 @@ public class Capture {
     }
 
     /**
-     * Gets the substring that was matched.
+     * Gets the substring that was matched. It is copied out of the input each time it is asked
+     * for, so a capture of an input that is not a {@code String} gives the chars the input has
+     * at that time.
      */
     public String value() {
         // TODO: text.substring(index, length);
-        return text.substring(index, index + length);
+        return text.subSequence(index, index + length).toString();
     }
 
     @Override
@@ -106,9 +108,9 @@ public class Capture {
     }
 
     /*
-     * Gets the original string.
+     * Gets the original input.
      */
-    String getOriginalString() {
+    CharSequence getOriginalString() {
         return text;
     }
 
@@ -117,7 +119,7 @@ public class Capture {
      */
     String getLeftSubstring() {
         // TODO: text.substring(0, index);
-        return text.substring(0, index);
+        return text.subSequence(0, index).toString();
     }
 
     /*
@@ -125,7 +127,7 @@ public class Capture {
      */
     String getRightSubstring() {
         // TODO:  text.substring(index + length, text.length() - index - length);
-        return text.substring(index + length, text.length());
+        return text.subSequence(index + length, text.length()).toString();
     }
 
     String description() {
@@ -0,0 +1,958 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package jxtras.regex;
+
+import jxtras.regex.support.R;
+
+import java.util.Locale;
+
+/**
+ * This API supports the product infrastructure and is not intended to be used directly from your code.
+ */
+
+// CompiledRegexRunner is the base class of the runners generated by
+// RegexCompiler for RegexOptions.Compiled.
+
+// Implementation notes:
+//
+// The generated go() method is a straight-line translation of the RegexCode:
+// jumps become real branches and every operand is baked in as a constant.
+// The body of each operation lives here, in small final methods that the
+// generated code calls with those constants; the JIT inlines them and folds
+// the constant operands away.
+//
+// Each method mirrors one case of RegexInterpreter.go() and must be kept
+// synchronized with it.  Methods named xxxBack or xxxBack2 handle the
+// backtracking flavors of an operation.  Methods returning a boolean return
+// false when the generated code must backtrack (or, for the loop operations,
+// whether to take the jump).
+//
+// The backtracking stack keeps exactly the same layout as in the
+// interpreter: the code position stored in each frame is the position of
+// the instruction, and the generated code dispatches on it with a
+// tableswitch.
+// @author  Tony Guo <tony.guo.peng@gmail.com>
+public abstract class CompiledRegexRunner extends RegexRunner {
+    RegexCode runcode;
+    RegexPrefix runfcPrefix;
+    RegexCharClass.Matcher[] runmatchers;
+    RegexCode.JumpTable[] runjumptables;
+    int runspan;
+    RegexBoyerMoore runbmPrefix;
+    RegexAhoCorasick runacPrefix;
+    int runanchors;
+    Locale runculture;
+
+    protected CompiledRegexRunner() {
+    }
+
+    /*
+     * Called by the RegexRunnerFactory right after the generated subclass
+     * has been instantiated.
+     */
+    void init(RegexCode code, Locale culture) {
+        runcode = code;
+        runfcPrefix = code._fcPrefix;
+        runmatchers = code._matchers;
+        runjumptables = code._jumpTables;
+        runbmPrefix = code._bmPrefix;
+        runacPrefix = code._acPrefix;
+        runanchors = code._anchors;
+        runculture = culture;
+    }
+
+    protected final void setTrackCount(int trackcount) {
+        runtrackcount = trackcount;
+    }
+
+    private int forwardchars(boolean rtl) {
+        return rtl ? runtextpos - runtextbeg : runtextend - runtextpos;
+    }
+
+    private char forwardcharnext(boolean rtl, boolean ci) {
+        char ch = (rtl ? charAt(runtext, --runtextpos) : charAt(runtext, runtextpos++));
+
+        return (ci ? RegexCaseFolding.fold(ch) : ch);
+    }
+
+    private void backwardnext(boolean rtl) {
+        runtextpos += rtl ? 1 : -1;
+    }
+
+    private void trackPush(int codepos) {
+        runtrack[--runtrackpos] = codepos;
+    }
+
+    private void trackPush(int codepos, int I1) {
+        runtrack[--runtrackpos] = I1;
+        runtrack[--runtrackpos] = codepos;
+    }
+
+    private void trackPush(int codepos, int I1, int I2) {
+        runtrack[--runtrackpos] = I1;
+        runtrack[--runtrackpos] = I2;
+        runtrack[--runtrackpos] = codepos;
+    }
+
+    private void trackPush2(int codepos, int I1) {
+        runtrack[--runtrackpos] = I1;
+        runtrack[--runtrackpos] = -codepos;
+    }
+
+    private void trackPush2(int codepos, int I1, int I2) {
+        runtrack[--runtrackpos] = I1;
+        runtrack[--runtrackpos] = I2;
+        runtrack[--runtrackpos] = -codepos;
+    }
+
+    private void stackPush(int I1) {
+        runstack[--runstackpos] = I1;
+    }
+
+    private void stackPush(int I1, int I2) {
+        runstack[--runstackpos] = I1;
+        runstack[--runstackpos] = I2;
+    }
+
+    /*
+     * Pops the code position of the next backtracking frame.  Negative
+     * positions are "back2" frames.
+     */
+    protected final int backtrackTarget() {
+        checkTimeout();
+        ensureStorage();
+        return runtrack[runtrackpos++];
+    }
+
+    /*
+     * Called before every backward jump of the generated code.
+     */
+    protected final void branchBackward() {
+        checkTimeout();
+        ensureStorage();
+    }
+
+    protected final void unimplementedState() {
+        throw new IllegalArgumentException(R.UnimplementedState);
+    }
+
+    protected final boolean opTestref(int capnum) {
+        return isMatched(capnum);
+    }
+
+    protected final void opLazybranch(int codepos) {
+        trackPush(codepos, runtextpos);
+    }
+
+    protected final void opLazybranchBack() {
+        runtextpos = runtrack[runtrackpos++];
+    }
+
+    protected final void opSetmark(int codepos) {
+        stackPush(runtextpos);
+        trackPush(codepos);
+    }
+
+    protected final void opNullmark(int codepos) {
+        stackPush(-1);
+        trackPush(codepos);
+    }
+
+    protected final void opSetmarkBack() {
+        runstackpos++;
+    }
+
+    protected final void opGetmark(int codepos) {
+        int mark = runstack[runstackpos++];
+        trackPush(codepos, mark);
+        runtextpos = mark;
+    }
+
+    protected final void opGetmarkBack() {
+        stackPush(runtrack[runtrackpos++]);
+    }
+
+    protected final boolean opCapturemark(int codepos, int capnum, int uncapnum) {
+        if (uncapnum != -1 && !isMatched(uncapnum)) {
+            return false;
+        }
+
+        int mark = runstack[runstackpos++];
+
+        if (uncapnum != -1) {
+            transferCapture(capnum, uncapnum, mark, runtextpos);
+        } else {
+            capture(capnum, mark, runtextpos);
+        }
+
+        trackPush(codepos, mark);
+        return true;
+    }
+
+    protected final void opCapturemarkBack(int capnum, int uncapnum) {
+        stackPush(runtrack[runtrackpos++]);
+        uncapture();
+        if (capnum != -1 && uncapnum != -1) {
+            uncapture();
+        }
+    }
+
+    protected final void opSpanmark() {
+        runspan = runtextpos;
+    }
+
+    protected final void opCapturespan(int codepos, int capnum) {
+        capture(capnum, runspan, runtextpos);
+        trackPush(codepos);
+    }
+
+    protected final void opCapturespanBack() {
+        uncapture();
+    }
+
+    // returns true to loop, false to go straight
+    protected final boolean opBranchmark(int codepos) {
+        int mark = runstack[runstackpos++];
+
+        if (runtextpos - mark != 0) {                   // Nonempty match -> loop now
+            trackPush(codepos, mark, runtextpos);       // Save old mark, textpos
+            stackPush(runtextpos);                      // Make new mark
+            return true;
+        }
+
+        trackPush2(codepos, mark);                      // Empty match -> straight now
+        return false;
+    }
+
+    protected final void opBranchmarkBack(int codepos) {
+        int textpos = runtrack[runtrackpos++];
+        int mark = runtrack[runtrackpos++];
+
+        runstackpos++;
+        runtextpos = textpos;                           // Recall position
+        trackPush2(codepos, mark);                      // Save old mark
+    }
+
+    protected final void opBranchmarkBack2() {
+        stackPush(runtrack[runtrackpos++]);             // Recall old mark
+    }
+
+    protected final void opLazybranchmark(int codepos) {
+        int oldMarkPos = runstack[runstackpos++];
+
+        if (runtextpos != oldMarkPos) {                 // Nonempty match -> try to loop again by going to 'back' state
+            if (oldMarkPos != -1) {
+                trackPush(codepos, oldMarkPos, runtextpos);
+            } else {
+                trackPush(codepos, runtextpos, runtextpos);
+            }
+        } else {                                        // Empty match -> no new mark, see RegexInterpreter
+            trackPush2(codepos, -2 - oldMarkPos);       // Save old mark
+        }
+    }
+
+    protected final void opLazybranchmarkBack(int codepos) {
+        int pos = runtrack[runtrackpos++];
+        int mark = runtrack[runtrackpos++];
+
+        trackPush2(codepos, mark);                      // Save old mark
+        stackPush(pos);                                 // Make new mark
+        runtextpos = pos;                               // Recall position
+    }
+
+    protected final void opLazybranchmarkBack2() {
+        int mark = runtrack[runtrackpos++];
+
+        if (mark < -1) {                                // Empty match: no new mark was made
+            stackPush(-2 - mark);                       // Recall old mark
+        } else {
+            runstackpos++;
+            stackPush(mark);                            // Recall old mark
+        }
+    }
+
+    protected final void opSetcount(int codepos, int count) {
+        stackPush(runtextpos, count);
+        trackPush(codepos);
+    }
+
+    protected final void opNullcount(int codepos, int count) {
+        stackPush(-1, count);
+        trackPush(codepos);
+    }
+
+    protected final void opSetcountBack() {
+        runstackpos += 2;
+    }
+
+    // returns true to loop, false to go straight
+    protected final boolean opBranchcount(int codepos, int limit) {
+        int count = runstack[runstackpos++];
+        int mark = runstack[runstackpos++];
+
+        if (count >= limit || (runtextpos - mark == 0 && count >= 0)) {   // Max loops or empty match -> straight now
+            trackPush2(codepos, mark, count);           // Save old mark, count
+            return false;
+        }
+
+        trackPush(codepos, mark);                       // remember mark
+        stackPush(runtextpos, count + 1);               // Make new mark, incr count
+        return true;
+    }
+
+    // returns true to go straight, false to backtrack
+    protected final boolean opBranchcountBack(int codepos) {
+        int prevMark = runtrack[runtrackpos++];
+        int count = runstack[runstackpos++];
+        int mark = runstack[runstackpos++];
+
+        if (count > 0) {                                // Positive -> can go straight
+            runtextpos = mark;                          // Zap to mark
+            trackPush2(codepos, prevMark, count - 1);   // Save old mark, old count
+            return true;
+        }
+
+        stackPush(prevMark, count - 1);                 // recall old mark, old count
+        return false;
+    }
+
+    protected final void opBranchcountBack2() {
+        int count = runtrack[runtrackpos++];
+        int mark = runtrack[runtrackpos++];
+
+        stackPush(mark, count);                         // Recall old mark, old count
+    }
+
+    // returns true to loop, false to go straight
+    protected final boolean opLazybranchcount(int codepos) {
+        int count = runstack[runstackpos++];
+        int mark = runstack[runstackpos++];
+
+        if (count < 0) {                                // Negative count -> loop now
+            trackPush2(codepos, mark);                  // Save old mark
+            stackPush(runtextpos, count + 1);           // Make new mark, incr count
+            return true;
+        }
+
+        runtrack[--runtrackpos] = mark;                 // Save mark, count, position
+        runtrack[--runtrackpos] = count;
+        runtrack[--runtrackpos] = runtextpos;
+        runtrack[--runtrackpos] = codepos;
+        return false;
+    }
+
+    // returns true to loop, false to backtrack
+    protected final boolean opLazybranchcountBack(int codepos, int limit) {
+        int textpos = runtrack[runtrackpos++];
+        int count = runtrack[runtrackpos++];
+        int mark = runtrack[runtrackpos++];
+
+        if (count < limit && textpos != mark) {         // Under limit and not empty match -> loop
+            runtextpos = textpos;                       // Recall position
+            stackPush(textpos, count + 1);              // Make new mark, incr count
+            trackPush2(codepos, mark);                  // Save old mark
+            return true;
+        }
+
+        stackPush(mark, count);                         // Recall old mark, count
+        return false;
+    }
+
+    protected final void opLazybranchcountBack2() {
+        int prevMark = runtrack[runtrackpos++];
+        int count = runstack[runstackpos++];
+
+        runstackpos++;
+        stackPush(prevMark, count - 1);                 // Recall old mark, count
+    }
+
+    protected final void opSetjump(int codepos) {
+        stackPush(runtrack.length - runtrackpos, crawlpos());
+        trackPush(codepos);
+    }
+
+    protected final void opSetjumpBack() {
+        runstackpos += 2;
+    }
+
+    protected final void opBackjump() {
+        int crawl = runstack[runstackpos++];
+        int track = runstack[runstackpos++];
+
+        runtrackpos = runtrack.length - track;
+        while (crawlpos() != crawl) {
+            uncapture();
+        }
+    }
+
+    protected final void opForejump(int codepos) {
+        int crawl = runstack[runstackpos++];
+        int track = runstack[runstackpos++];
+
+        runtrackpos = runtrack.length - track;
+        trackPush(codepos, crawl);
+    }
+
+    protected final void opForejumpBack() {
+        int crawl = runtrack[runtrackpos++];
+
+        while (crawlpos() != crawl) {
+            uncapture();
+        }
+    }
+
+    protected final boolean opBol() {
+        return runtextpos <= runtextbeg || charAt(runtext, runtextpos - 1) == '\n';
+    }
+
+    protected final boolean opEol() {
+        return runtextpos >= runtextend || charAt(runtext, runtextpos) == '\n';
+    }
+
+    protected final boolean opBoundary() {
+        return isBoundary(runtextpos, runtextbeg, runtextend);
+    }
+
+    protected final boolean opNonboundary() {
+        return !isBoundary(runtextpos, runtextbeg, runtextend);
+    }
+
+    protected final boolean opECMABoundary() {
+        return isECMABoundary(runtextpos, runtextbeg, runtextend);
+    }
+
+    protected final boolean opNonECMABoundary() {
+        return !isECMABoundary(runtextpos, runtextbeg, runtextend);
+    }
+
+    protected final boolean opBeginning() {
+        return runtextpos <= runtextbeg;
+    }
+
+    protected final boolean opStart() {
+        return runtextpos == runtextstart;
+    }
+
+    protected final boolean opEndZ() {
+        int rightchars = runtextend - runtextpos;
+        return rightchars <= 1 && (rightchars == 0 || charAt(runtext, runtextpos) == '\n');
+    }
+
+    protected final boolean opEnd() {
+        return runtextpos >= runtextend;
+    }
+
+    protected final boolean opOne(char ch, boolean rtl, boolean ci) {
+        return forwardchars(rtl) >= 1 && forwardcharnext(rtl, ci) == ch;
+    }
+
+    protected final boolean opNotone(char ch, boolean rtl, boolean ci) {
+        return forwardchars(rtl) >= 1 && forwardcharnext(rtl, ci) != ch;
+    }
+
+    protected final int opSwitch(int table) {
+        return runtextpos < runtextend ? runjumptables[table].branch(charAt(runtext, runtextpos)) : -1;
+    }
+
+    protected final boolean opSet(int set, boolean rtl, boolean ci) {
+        return forwardchars(rtl) >= 1 && runmatchers[set].matches(forwardcharnext(rtl, ci));
+    }
+
+    protected final boolean opMulti(String str, boolean rtl, boolean ci) {
+        int c = str.length();
+        int pos;
+
+        if (forwardchars(rtl) < c) {
+            return false;
+        }
+
+        pos = rtl ? runtextpos : runtextpos + c;
+
+        if (!ci) {
+            while (c != 0) {
+                if (str.charAt(--c) != charAt(runtext, --pos)) {
+                    return false;
+                }
+            }
+        } else {
+            while (c != 0) {
+                if (str.charAt(--c) != RegexCaseFolding.fold(charAt(runtext, --pos))) {
+                    return false;
+                }
+            }
+        }
+
+        if (!rtl) {
+            pos += str.length();
+        }
+
+        runtextpos = pos;
+        return true;
+    }
+
+    protected final boolean opRef(int capnum, boolean rtl, boolean ci) {
+        if (!isMatched(capnum)) {
+            return (runregex.options & RegexOptions.ECMAScript) != 0;
+        }
+
+        int index = matchIndex(capnum);
+        int len = matchLength(capnum);
+        int pos;
+
+        if (forwardchars(rtl) < len) {
+            return false;
+        }
+
+        pos = rtl ? runtextpos : runtextpos + len;
+
+        int cmpos = index + len;
+        int c = len;
+
+        if (!ci) {
+            while (c-- != 0) {
+                if (charAt(runtext, --cmpos) != charAt(runtext, --pos)) {
+                    return false;
+                }
+            }
+        } else {
+            while (c-- != 0) {
+                if (RegexCaseFolding.fold(charAt(runtext, --cmpos))
+                        != RegexCaseFolding.fold(charAt(runtext, --pos))) {
+                    return false;
+                }
+            }
+        }
+
+        if (!rtl) {
+            pos += len;
+        }
+
+        runtextpos = pos;
+        return true;
+    }
+
+    protected final boolean opOnerep(char ch, int c, boolean rtl, boolean ci) {
+        if (forwardchars(rtl) < c) {
+            return false;
+        }
+
+        while (c-- > 0) {
+            if (forwardcharnext(rtl, ci) != ch) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    protected final boolean opNotonerep(char ch, int c, boolean rtl, boolean ci) {
+        if (forwardchars(rtl) < c) {
+            return false;
+        }
+
+        while (c-- > 0) {
+            if (forwardcharnext(rtl, ci) == ch) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    protected final boolean opSetrep(int set, int c, boolean rtl, boolean ci) {
+        RegexCharClass.Matcher matcher = runmatchers[set];
+
+        if (forwardchars(rtl) < c) {
+            return false;
+        }
+
+        while (c-- > 0) {
+            if (!matcher.matches(forwardcharnext(rtl, ci))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    protected final void opOneloop(int codepos, char ch, int c, boolean rtl, boolean ci) {
+        int i;
+
+        if (c > forwardchars(rtl)) {
+            c = forwardchars(rtl);
+        }
+
+        for (i = c; i > 0; i--) {
+            if (forwardcharnext(rtl, ci) != ch) {
+                backwardnext(rtl);
+                break;
+            }
+        }
+
+        if (c > i) {
+            trackPush(codepos, c - i - 1, runtextpos - (rtl ? -1 : 1));
+        }
+    }
+
+    protected final void opNotoneloop(int codepos, char ch, int c, boolean rtl, boolean ci) {
+        int i;
+
+        if (c > forwardchars(rtl)) {
+            c = forwardchars(rtl);
+        }
+
+        for (i = c; i > 0; i--) {
+            if (forwardcharnext(rtl, ci) == ch) {
+                backwardnext(rtl);
+                break;
+            }
+        }
+
+        if (c > i) {
+            trackPush(codepos, c - i - 1, runtextpos - (rtl ? -1 : 1));
+        }
+    }
+
+    protected final void opSetloop(int codepos, int set, int c, boolean rtl, boolean ci) {
+        RegexCharClass.Matcher matcher = runmatchers[set];
+        int i;
+
+        if (c > forwardchars(rtl)) {
+            c = forwardchars(rtl);
+        }
+
+        for (i = c; i > 0; i--) {
+            if (!matcher.matches(forwardcharnext(rtl, ci))) {
+                backwardnext(rtl);
+                break;
+            }
+        }
+
+        if (c > i) {
+            trackPush(codepos, c - i - 1, runtextpos - (rtl ? -1 : 1));
+        }
+    }
+
+    // the atomic loops push nothing: they never give back what they matched
+    protected final void opOneloopatomic(char ch, int c, boolean rtl, boolean ci) {
+        if (c > forwardchars(rtl)) {
+            c = forwardchars(rtl);
+        }
+
+        for (int i = c; i > 0; i--) {
+            if (forwardcharnext(rtl, ci) != ch) {
+                backwardnext(rtl);
+                break;
+            }
+        }
+    }
+
+    protected final void opNotoneloopatomic(char ch, int c, boolean rtl, boolean ci) {
+        if (c > forwardchars(rtl)) {
+            c = forwardchars(rtl);
+        }
+
+        for (int i = c; i > 0; i--) {
+            if (forwardcharnext(rtl, ci) == ch) {
+                backwardnext(rtl);
+                break;
+            }
+        }
+    }
+
+    protected final void opSetloopatomic(int set, int c, boolean rtl, boolean ci) {
+        RegexCharClass.Matcher matcher = runmatchers[set];
+
+        if (c > forwardchars(rtl)) {
+            c = forwardchars(rtl);
+        }
+
+        for (int i = c; i > 0; i--) {
+            if (!matcher.matches(forwardcharnext(rtl, ci))) {
+                backwardnext(rtl);
+                break;
+            }
+        }
+    }
+
+    // the loops that scan stop only where the literal that follows them is found
+    protected final boolean opNotoneloopscan(int codepos, char ch, String literal) {
+        int start = runtextpos;
+        int end = Math.min(notoneEnd(ch, start), runtextend - literal.length());
+        int pos = lastIndexOfLiteral(literal, end, start);
+
+        if (pos < 0) {
+            return false;
+        }
+
+        runtextpos = pos;
+
+        if (pos > start) {
+            trackPush(codepos, start, pos);
+        }
+
+        return true;
+    }
+
+    protected final void opNotonelazyscan(int codepos, char ch) {
+        int end = notoneEnd(ch, runtextpos);
+
+        if (end > runtextpos) {
+            trackPush(codepos, end, runtextpos);
+        }
+    }
+
+    protected final boolean opNotoneloopscanBack(int codepos, String literal) {
+        int pos = runtrack[runtrackpos++];
+        int start = runtrack[runtrackpos++];
+
+        pos = lastIndexOfLiteral(literal, pos - 1, start);
+
+        if (pos < 0) {
+            return false;
+        }
+
+        runtextpos = pos;
+
+        if (pos > start) {
+            trackPush(codepos, start, pos);
+        }
+
+        return true;
+    }
+
+    protected final boolean opNotonelazyscanBack(int codepos, String literal) {
+        int pos = runtrack[runtrackpos++];
+        int end = runtrack[runtrackpos++];
+
+        pos = indexOfLiteral(literal, pos + 1);
+
+        if (pos < 0 || pos > end || pos > runtextend - literal.length()) {
+            return false;
+        }
+
+        runtextpos = pos;
+
+        if (pos < end) {
+            trackPush(codepos, end, pos);
+        }
+
+        return true;
+    }
+
+    // shared by Oneloop, Notoneloop and Setloop
+    protected final void opLoopBack(int codepos, boolean rtl) {
+        int pos = runtrack[runtrackpos++];
+        int i = runtrack[runtrackpos++];
+
+        runtextpos = pos;
+
+        if (i > 0) {
+            trackPush(codepos, i - 1, pos - (rtl ? -1 : 1));
+        }
+    }
+
+    // shared by Onelazy, Notonelazy and Setlazy
+    protected final void opLazy(int codepos, int c, boolean rtl) {
+        if (c > forwardchars(rtl)) {
+            c = forwardchars(rtl);
+        }
+
+        if (c > 0) {
+            trackPush(codepos, c - 1, runtextpos);
+        }
+    }
+
+    protected final boolean opOnelazyBack(int codepos, char ch, boolean rtl, boolean ci) {
+        int pos = runtrack[runtrackpos++];
+        int i = runtrack[runtrackpos++];
+
+        runtextpos = pos;
+
+        if (forwardcharnext(rtl, ci) != ch) {
+            return false;
+        }
+
+        if (i > 0) {
+            trackPush(codepos, i - 1, pos + (rtl ? -1 : 1));
+        }
+
+        return true;
+    }
+
+    protected final boolean opNotonelazyBack(int codepos, char ch, boolean rtl, boolean ci) {
+        int pos = runtrack[runtrackpos++];
+        int i = runtrack[runtrackpos++];
+
+        runtextpos = pos;
+
+        if (forwardcharnext(rtl, ci) == ch) {
+            return false;
+        }
+
+        if (i > 0) {
+            trackPush(codepos, i - 1, pos + (rtl ? -1 : 1));
+        }
+
+        return true;
+    }
+
+    protected final boolean opSetlazyBack(int codepos, int set, boolean rtl, boolean ci) {
+        int pos = runtrack[runtrackpos++];
+        int i = runtrack[runtrackpos++];
+
+        runtextpos = pos;
+
+        if (!runmatchers[set].matches(forwardcharnext(rtl, ci))) {
+            return false;
+        }
+
+        if (i > 0) {
+            trackPush(codepos, i - 1, pos + (rtl ? -1 : 1));
+        }
+
+        return true;
+    }
+
+    /*
+     * The general first char search, used by the generated findFirstChar()
+     * whenever the pattern has anchors or a Boyer-Moore prefix.
+     *
+     * This function must be kept synchronized with RegexInterpreter.findFirstChar().
+     */
+    protected final boolean findFirstCharAnchored() {
+        boolean rtl = runcode._rightToLeft;
+
+        if (0 != (runanchors & RegexFCD.StartOrBol) && !skipToLineStart()) {
+            return false;
+        }
+
+        if (0 != (runanchors & (RegexFCD.Beginning | RegexFCD.Start | RegexFCD.EndZ | RegexFCD.End))) {
+            if (!rtl) {
+                if ((0 != (runanchors & RegexFCD.Beginning) && runtextpos > runtextbeg) ||
+                        (0 != (runanchors & RegexFCD.Start) && runtextpos > runtextstart)) {
+                    runtextpos = runtextend;
+                    return false;
+                }
+                if (0 != (runanchors & RegexFCD.EndZ) && runtextpos < runtextend - 1) {
+                    runtextpos = runtextend - 1;
+                } else if (0 != (runanchors & RegexFCD.End) && runtextpos < runtextend) {
+                    runtextpos = runtextend;
+                }
+            } else {
+                if ((0 != (runanchors & RegexFCD.End) && runtextpos < runtextend) ||
+                        (0 != (runanchors & RegexFCD.EndZ) && (runtextpos < runtextend - 1 ||
+                                (runtextpos == runtextend - 1 && charAt(runtext, runtextpos) != '\n'))) ||
+                        (0 != (runanchors & RegexFCD.Start) && runtextpos < runtextstart)) {
+                    runtextpos = runtextbeg;
+                    return false;
+                }
+                if (0 != (runanchors & RegexFCD.Beginning) && runtextpos > runtextbeg) {
+                    runtextpos = runtextbeg;
+                }
+            }
+
+            if (runbmPrefix != null) {
+                return runbmPrefix.isMatch(runtext, runtextpos, runtextbeg, runtextend);
+            }
+
+            if (runacPrefix != null) {
+                return runacPrefix.isMatch(runtext, runtextpos, runtextbeg, runtextend);
+            }
+
+            return true; // found a valid start or end anchor
+        } else if (runacPrefix != null) {
+            runtextpos = runacPrefix.scan(runtext, runtextpos, runtextbeg, runtextend);
+
+            if (runtextpos == -1) {
+                runtextpos = runtextend;
+                return false;
+            }
+
+            return true;
+        } else if (runbmPrefix != null) {
+            runtextpos = runbmPrefix.scan(runtext, runtextpos, runtextbeg, runtextend);
+
+            if (runtextpos == -1) {
+                runtextpos = (rtl ? runtextbeg : runtextend);
+                return false;
+            }
+
+            return true;
+        } else if (runfcPrefix == null) {
+            return true;
+        }
+
+        String set = runfcPrefix.prefix();
+
+        if (RegexCharClass.isSingleton(set)) {
+            return findFirstCharSingleton(RegexCharClass.singletonChar(set), rtl,
+                    runfcPrefix.isCaseInsensitive());
+        }
+
+        return findFirstCharSet(rtl, runfcPrefix.isCaseInsensitive());
+    }
+
+    protected final boolean findFirstCharSingleton(char ch, boolean rtl, boolean ci) {
+        if (!rtl && runtext instanceof RegexUtf8) {
+            return findFirstCharUtf8(runcode._fcMatcher, ci);
+        }
+
+        for (int i = forwardchars(rtl); i > 0; i--) {
+            if (ch == forwardcharnext(rtl, ci)) {
+                backwardnext(rtl);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    protected final boolean findFirstCharSet(boolean rtl, boolean ci) {
+        if (!rtl && runtext instanceof RegexUtf8) {
+            return findFirstCharUtf8(runcode._fcMatcher, ci);
+        }
+
+        RegexCharClass.Matcher matcher = runcode._fcMatcher;
+
+        for (int i = forwardchars(rtl); i > 0; i--) {
+            if (matcher.matches(forwardcharnext(rtl, ci))) {
+                backwardnext(rtl);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    void dumpState() {
+        super.dumpState();
+        System.out.println("       (compiled code)");
+    }
+}
@@ -52,7 +52,7 @@ public class Group extends Capture {
     /*
      * Creates a {@code Group} instance which represents the results from a single capturing group.
      */
-    Group(String text, int[] captures, int captureCount) {
+    Group(CharSequence text, int[] captures, int captureCount) {
         super(
                 text,
                 captureCount == 0 ? 0 : captures[(captureCount - 1) * 2],
@@ -141,7 +141,7 @@ public class Match extends Group {
      * indices into the {@code matches} array transformed by the formula {@code -3-x}.
      * This formula also untransforms.</p>
      */
-    Match(Regex regex, int captureCount, String text, int beginPosition, int length,
+    Match(Regex regex, int captureCount, CharSequence text, int beginPosition, int length,
           int startPosition) {
         super(text, new int[2], 0);
         this.regex = regex;
@@ -161,7 +161,7 @@ public class Match extends Group {
         }
     }
 
-    void reset(Regex regex, String text, int textBegin, int textEnd, int textStart) {
+    void reset(Regex regex, CharSequence text, int textBegin, int textEnd, int textStart) {
         this.regex = regex;
         this.text = text;
         this.textBegin = textBegin;
@@ -186,6 +186,15 @@ public class Match extends Group {
         return rgc;
     }
 
+    /**
+     * Gets the input the match was found in, as it was passed to the regex: the match keeps a
+     * reference to it rather than a copy, and reads the values of its groups from it when they
+     * are asked for.
+     */
+    public CharSequence input() {
+        return text;
+    }
+
     /**
      * Gets the next match.
      *
@@ -239,7 +248,7 @@ public class Match extends Group {
 
         int[] m = matches[groupNumber];
         // TODO: text.substring(m[(c - 1) * 2], m[(c * 2) - 1]);
-        return text.substring(m[(c - 1) * 2], m[(c - 1) * 2] + m[(c * 2) - 1]);
+        return text.subSequence(m[(c - 1) * 2], m[(c - 1) * 2] + m[(c * 2) - 1]).toString();
     }
 
     /*
@@ -404,10 +413,10 @@ public class Match extends Group {
                 String str = "";
                 if (matches[i][j * 2] >= 0) {
                     // TODO: text.substring(matches[i][j * 2], matches[i][j * 2 + 1]);
-                    str = text.substring(
+                    str = text.subSequence(
                             matches[i][j * 2], // start index (inclusive)
                             matches[i][j * 2] + matches[i][j * 2 + 1] // end index (exclusive)
-                    );
+                    ).toString();
                 }
                 System.out.println(" (" + matches[i][j * 2] + "," + matches[i][j * 2 + 1] + ") " + str);
             }
@@ -421,7 +430,7 @@ public class Match extends Group {
     static final class MatchSparse extends Match {
         Map<Integer, Integer> captureMap;
 
-        MatchSparse(Regex regex, Map<Integer, Integer> captureMap, int captureCount, String text, int beginPosition, int length, int startPosition) {
+        MatchSparse(Regex regex, Map<Integer, Integer> captureMap, int captureCount, CharSequence text, int beginPosition, int length, int startPosition) {
             super(regex, captureCount, text, beginPosition, length, startPosition);
             this.captureMap = captureMap;
         }
@@ -68,7 +68,7 @@ public class MatchCollection implements Iterable<Match> {
     private final Regex regex;
     private final List<Match> matches;
     private boolean done;
-    private String input;
+    private CharSequence input;
     private int beginning;
     private int length;
     private int startAt;
@@ -85,7 +85,7 @@ public class MatchCollection implements Iterable<Match> {
      * {@link Regex#matches()}. It stops when the first failure is encountered (it does not return
      * the failed match).</p>
      */
-    MatchCollection(Regex regex, String input, int beginning, int length, int startAt) {
+    MatchCollection(Regex regex, CharSequence input, int beginning, int length, int startAt) {
         if (startAt < 0 || startAt > input.length()) {
             throw new IndexOutOfBoundsException(
                     "string length = " + input.length() + "; index = " + startAt);
@@ -30,7 +30,7 @@ import jxtras.regex.support.R;
 
 import java.io.Serializable;
 import java.lang.ref.WeakReference;
-import java.util.LinkedList;
+import java.nio.ByteBuffer;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -43,6 +43,16 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * <p/>
  * <p>The Regex class represents an immutable, compiled regular expression. Also contains static
  * methods that allow use of regular expressions without instantiating a Regex explicitly.</p>
+ * <p/>
+ * <p>The input of the matching methods is any {@link CharSequence}: a {@code String}, a
+ * {@code StringBuilder}, a {@code CharBuffer}... It is not copied: the {@link Match} keeps a
+ * reference to it, and copies the value of a group out of it only when it is asked for, so the
+ * input must not change while its matches are used.</p>
+ * <p/>
+ * <p>UTF-8 encoded bytes, in an array or a {@link ByteBuffer}, are matched as they are, each
+ * char decoded when the regex reads it, by {@link #isMatch(byte[])} and by the
+ * {@link RegexMatcher} of {@link #matcher(byte[])}, which tells the bounds of its matches in
+ * bytes. A byte that doesn't start a well-formed UTF-8 sequence decodes to U+FFFD.</p>
  *
  * @author Tony Guo <tony.guo.peng@gmail.com>
  * @since 1.0
@@ -61,6 +71,12 @@ public class Regex implements Serializable {
     // Typically, it is set to INFINITE_MATCH_TIMEOUT.
     private static final int DEFAULT_MATCH_TIMEOUT = INFINITE_MATCH_TIMEOUT;
 
+    // INFINITE_STEPS specifies that the number of steps of a match is not limited.
+    public static final long INFINITE_STEPS = -1;
+
+    // INFINITE_IDLE_TIMEOUT specifies that the cached runners are never dropped for being unused.
+    public static final int INFINITE_IDLE_TIMEOUT = -1;
+
     // The string pattern provided
     String pattern;
 
@@ -70,6 +86,9 @@ public class Regex implements Serializable {
     // Timeout for the execution of this regex
     int matchTimeout;
 
+    // The budget of steps of a match of this regex
+    long maxSteps;
+
     // if captures are sparse, this is the Map capnum->index
     Map<Integer, Integer> caps;
     // if named captures are used, this maps names->index
@@ -80,24 +99,32 @@ public class Regex implements Serializable {
     // the size of the capture array
     int capsize;
 
-    // cached runner
-    ExclusiveReference<RegexRunner> runnerref;
+    // cached runners
+    StripedReference<RegexRunner> runnerref;
     // cached parsed replacement pattern
     SharedReference<RegexReplacement> replref;
     // if interpreted, this is the code for RegexInterpreter
     RegexCode code;
+    // if compiled, this is the factory of the generated RegexRunner subclass
+    RegexRunnerFactory factory;
     boolean refsInitialized = false;
 
     // the cache of code and factories that are currently loaded
-    static LinkedList<CachedCodeEntry> livecode = new LinkedList<CachedCodeEntry>();
-    static int cacheSize = 15;
+    static final RegexCache livecode = new RegexCache(15);
+
+    // the number of runners each regex keeps for reuse, and how long they may stay unused
+    static int runnerPoolSize = StripedReference.defaultSize();
+    static int runnerIdleTimeout = 60000;
+
+    // whether the match timeouts are enforced by the watchdog thread rather than by the clock
+    static volatile boolean timeoutWatchdog = false;
 
     /**
      * Creates a new instance of the Regex class for the specified
      * regular expression.
      */
     public Regex(String pattern) {
-        this(pattern, RegexOptions.None, DEFAULT_MATCH_TIMEOUT, false);
+        this(pattern, RegexOptions.None, DEFAULT_MATCH_TIMEOUT, INFINITE_STEPS, false);
     }
 
     /**
@@ -107,7 +134,7 @@ public class Regex implements Serializable {
      * @see RegexOptions
      */
     public Regex(String pattern, int options) {
-        this(pattern, options, DEFAULT_MATCH_TIMEOUT, false);
+        this(pattern, options, DEFAULT_MATCH_TIMEOUT, INFINITE_STEPS, false);
     }
 
     /**
@@ -117,32 +144,36 @@ public class Regex implements Serializable {
      * should attempt a match before it times out.
      */
     public Regex(String pattern, int options, int matchTimeout) {
-        this(pattern, options, matchTimeout, false);
+        this(pattern, options, matchTimeout, INFINITE_STEPS, false);
     }
 
-    private Regex(String pattern, int options, int matchTimeout, boolean useCache) {
+    /**
+     * Creates a new instance of the Regex class for the specified
+     * regular expression, with options that modify the pattern, a
+     * match timeout, and the number of steps a pattern matching
+     * method may take before it gives up with a
+     * {@link RegexStepLimitException}. Unlike the timeout, the steps
+     * do not depend on the load of the machine.
+     *
+     * @see RegexStepLimitException
+     */
+    public Regex(String pattern, int options, int matchTimeout, long maxSteps) {
+        this(pattern, options, matchTimeout, maxSteps, false);
+    }
+
+    private Regex(String pattern, int options, int matchTimeout, long maxSteps, boolean useCache) {
         if (pattern == null) {
             throw new IllegalArgumentException("pattern must not be null.");
         }
 
-        if (options < RegexOptions.None || ((options) >> RegexOptions.MaxOptionShift) != 0) {
-            throw new IllegalArgumentException("options is invalid.");
-        }
-
-        if ((options & RegexOptions.ECMAScript) != 0
-                && (options & ~(RegexOptions.ECMAScript |
-                                RegexOptions.IgnoreCase |
-                                RegexOptions.Multiline |
-                                RegexOptions.CultureInvariant |
-                                RegexOptions.Debug)) != 0) {
-            throw new IllegalArgumentException("options is invalid.");
-        }
-
+        validateOptions(options);
         validateMatchTimeout(matchTimeout);
+        validateMaxSteps(maxSteps);
 
         this.pattern = pattern;
         this.options = options;
         this.matchTimeout = matchTimeout;
+        this.maxSteps = maxSteps;
 
         // Try to look up this regex in the cache.
         // We do this regardless of whether useCache is true since there's really no reason not to.
@@ -166,6 +197,37 @@ public class Regex implements Serializable {
             caps = code._caps;
             capsize = code._capsize;
 
+            // a pattern that may backtrack catastrophically is matched without backtracking
+            RegexComplexity complexity = null;
+            if (useOptionSafe()) {
+                complexity = new RegexComplexity(pattern, tree._root);
+                if (complexity.severity() == RegexComplexity.Linear) {
+                    complexity = null;
+                }
+            }
+
+            // if the automata can't express the pattern, we fall back to backtracking
+            if (useOptionNonBacktracking() || complexity != null) {
+                code._nfa = RegexNFA.build(tree, code, false);
+                if (code._nfa != null) {
+                    code._reverseNfa = RegexNFA.build(tree, code, true);
+                }
+            }
+
+            // memoization is done by the interpreter, if the code has points to do it at
+            if ((useOptionMemoize() || complexity != null) && code._nfa == null) {
+                code._memo = RegexMemo.build(code);
+            }
+
+            if (complexity != null && code._nfa == null && code._memo == null) {
+                throw new IllegalArgumentException(R.format(R.ComplexityRejected, complexity.worstFinding().description()));
+            }
+
+            // if the compiler gives up (the code is too large), we fall back to the interpreter
+            if (useOptionC() && code._nfa == null && code._memo == null) {
+                factory = RegexCompiler.compile(code, options);
+            }
+
             initializeReferences();
 
             if (useCache) {
@@ -177,12 +239,37 @@ public class Regex implements Serializable {
             capslist = cached._capslist;
             capsize = cached._capsize;
             code = cached._code;
+            factory = cached._factory;
             runnerref = cached._runnerref;
             replref = cached._replref;
             refsInitialized = true;
         }
     }
 
+    /**
+     * Validates that the specified options are valid, alone and together.
+     *
+     * @param options The options to validate.
+     * @throw IllegalArgumentException If the options are not valid.
+     */
+    static void validateOptions(int options) {
+        if (options < RegexOptions.None || ((options) >> RegexOptions.MaxOptionShift) != 0) {
+            throw new IllegalArgumentException("options is invalid.");
+        }
+
+        if ((options & RegexOptions.ECMAScript) != 0
+                && (options & ~(RegexOptions.ECMAScript |
+                                RegexOptions.IgnoreCase |
+                                RegexOptions.Multiline |
+                                RegexOptions.CultureInvariant |
+                                RegexOptions.Compiled |
+                                RegexOptions.Memoize |
+                                RegexOptions.Safe |
+                                RegexOptions.Debug)) != 0) {
+            throw new IllegalArgumentException("options is invalid.");
+        }
+    }
+
     /**
      * Validates that the specified match timeout value is valid.
      * The valid range is {@code 0} &lt; matchTimeout &lt;= {@code Integer.MAX_VALUE}.
@@ -202,6 +289,17 @@ public class Regex implements Serializable {
         throw new IllegalArgumentException("matchTimeout");
     }
 
+    /**
+     * Validates that the specified step budget is valid: positive, or INFINITE_STEPS.
+     *
+     * @param maxSteps The step budget to validate.
+     * @throw IllegalArgumentException If the specified budget is not within a valid range.
+     */
+    static void validateMaxSteps(long maxSteps) {
+        if (maxSteps <= 0 && maxSteps != INFINITE_STEPS)
+            throw new IllegalArgumentException("maxSteps");
+    }
+
    /**
     * Escape a minimal set of metacharacters (\, *, +, ?, |, {, [, (, ), ^, $, ., #, and
     * whitespace) by replacing them with their \ codes. This converts a string so that
@@ -234,7 +332,7 @@ public class Regex implements Serializable {
      * Gets the maximum number of entries in the current static cache of compiled regular expressions.
      */
     public static int cacheSize() {
-        return cacheSize;
+        return livecode.capacity();
     }
 
     /**
@@ -245,14 +343,107 @@ public class Regex implements Serializable {
             throw new IllegalArgumentException("size cannot be negative.");
         }
 
-        cacheSize = size;
-        if (livecode.size() > cacheSize) {
-            synchronized (livecode) {
-                while (livecode.size() > cacheSize) {
-                    livecode.removeLast();
-                }
-            }
+        livecode.setCapacity(size);
+    }
+
+    /**
+     * Gets whether the static cache of compiled regular expressions holds its entries
+     * through soft references, which the garbage collector may clear when memory runs short.
+     */
+    public static boolean cacheSoftValues() {
+        return livecode.softValues();
+    }
+
+    /**
+     * Sets whether the static cache of compiled regular expressions holds the entries
+     * added from now on through soft references, which the garbage collector may clear
+     * when memory runs short.
+     */
+    public static void setCacheSoftValues(boolean softValues) {
+        livecode.setSoftValues(softValues);
+    }
+
+    /**
+     * Gets the number of times a regular expression was found in the static cache.
+     */
+    public static long cacheHitCount() {
+        return livecode.hitCount();
+    }
+
+    /**
+     * Gets the number of times a regular expression wasn't found in the static cache.
+     */
+    public static long cacheMissCount() {
+        return livecode.missCount();
+    }
+
+    /**
+     * Gets the number of regular expressions evicted from the static cache to make
+     * room for others.
+     */
+    public static long cacheEvictionCount() {
+        return livecode.evictionCount();
+    }
+
+    /**
+     * Gets the maximum number of runners that each regular expression keeps for reuse
+     * by concurrent matches.
+     */
+    public static int runnerPoolSize() {
+        return runnerPoolSize;
+    }
+
+    /**
+     * Sets the maximum number of runners that each regular expression keeps for reuse
+     * by concurrent matches. The size is rounded up to a power of two, and applies to
+     * the regular expressions created afterwards.
+     */
+    public static void setRunnerPoolSize(int size) {
+        if (size < 1 || size > StripedReference.MaxSize) {
+            throw new IllegalArgumentException("size must be between 1 and " + StripedReference.MaxSize + ".");
         }
+
+        runnerPoolSize = size;
+    }
+
+    /**
+     * Gets how long, in milliseconds, a cached runner may stay unused before it is
+     * dropped, or INFINITE_IDLE_TIMEOUT if cached runners are never dropped.
+     */
+    public static int runnerIdleTimeout() {
+        return runnerIdleTimeout;
+    }
+
+    /**
+     * Sets how long, in milliseconds, a cached runner may stay unused before it is
+     * dropped; INFINITE_IDLE_TIMEOUT keeps the cached runners for good. A runner is
+     * dropped between one and two timeouts after its last use, by a later match.
+     */
+    public static void setRunnerIdleTimeout(int milliseconds) {
+        if (milliseconds <= 0 && milliseconds != INFINITE_IDLE_TIMEOUT) {
+            throw new IllegalArgumentException("milliseconds must be positive or INFINITE_IDLE_TIMEOUT.");
+        }
+
+        runnerIdleTimeout = milliseconds;
+    }
+
+    /**
+     * Gets whether the match timeouts are enforced by a shared watchdog thread.
+     */
+    public static boolean timeoutWatchdog() {
+        return timeoutWatchdog;
+    }
+
+    /**
+     * Sets whether the match timeouts are enforced by a shared watchdog thread, which
+     * flags the matches that are out of time, instead of by the matches reading the
+     * clock as they go. The matches then only poll a flag, but may run up to 10
+     * milliseconds past their timeout. With the watchdog, a match also stops, with a
+     * {@link java.util.concurrent.CancellationException}, once its thread is interrupted;
+     * the thread stays interrupted.
+     */
+    public static void setTimeoutWatchdog(boolean enabled) {
+        timeoutWatchdog = enabled;
     }
 
     /**
@@ -269,6 +460,13 @@ public class Regex implements Serializable {
         return matchTimeout;
     }
 
+    /**
+     * Gets the number of steps a match may take, or INFINITE_STEPS if it is not limited.
+     */
+    public long maxSteps() {
+        return maxSteps;
+    }
+
     /**
      * Gets a value that indicates whether the regular expression searches from right to left.
      *
@@ -278,6 +476,16 @@ public class Regex implements Serializable {
         return useOptionR();
     }
 
+    /**
+     * Analyzes the regular expression for the shapes that may make the backtracking engines take
+     * a time exponential or polynomial in the length of the input.
+     *
+     * @see RegexComplexity
+     */
+    public RegexComplexity analyze() {
+        return RegexComplexity.analyze(pattern, options);
+    }
+
     /**
      * Gets the regular expression pattern that was passed into the Regex constructor.
      */
@@ -421,7 +629,7 @@ public class Regex implements Serializable {
      * Searches the input string for one or more occurrences of the text
      * supplied in the pattern parameter.
      */
-    public static boolean isMatch(String input, String pattern) {
+    public static boolean isMatch(CharSequence input, String pattern) {
         return isMatch(input, pattern, RegexOptions.None, DEFAULT_MATCH_TIMEOUT);
     }
 
@@ -430,12 +638,12 @@ public class Regex implements Serializable {
      * supplied in the pattern parameter with matching options supplied in the options
      * parameter.
      */
-    public static boolean isMatch(String input, String pattern, int options) {
+    public static boolean isMatch(CharSequence input, String pattern, int options) {
         return isMatch(input, pattern, options, DEFAULT_MATCH_TIMEOUT);
     }
 
-    public static boolean isMatch(String input, String pattern, int options, int matchTimeout) {
-        return new Regex(pattern, options, matchTimeout, true).isMatch(input);
+    public static boolean isMatch(CharSequence input, String pattern, int options, int matchTimeout) {
+        return new Regex(pattern, options, matchTimeout, INFINITE_STEPS, true).isMatch(input);
     }
 
     /**
@@ -444,7 +652,7 @@ public class Regex implements Serializable {
      *
      * @return {@code true} if the regex finds a match within the specified string.
      */
-    public boolean isMatch(String input) {
+    public boolean isMatch(CharSequence input) {
         if (input == null)
             throw new IllegalArgumentException("input cannot be null.");
 
@@ -458,18 +666,51 @@ public class Regex implements Serializable {
      * @return {@code true} if the regex finds a match after the specified position
      * (proceeding leftward if the regex is leftward and rightward otherwise)
      */
-    public boolean isMatch(String input, int startAt) {
+    public boolean isMatch(CharSequence input, int startAt) {
         if (input == null)
             throw new IllegalArgumentException("input cannot be null.");
 
         return (null == run(true, -1, input, 0, input.length(), startAt));
     }
 
+    /**
+     * Searches UTF-8 encoded bytes for a match, without decoding them into a String
+     * first.
+     *
+     * @return {@code true} if the regex finds a match within the decoded chars.
+     */
+    public boolean isMatch(byte[] input) {
+        if (input == null)
+            throw new IllegalArgumentException("input cannot be null.");
+
+        return isMatch(new RegexUtf8(input, 0, input.length));
+    }
+
+    /**
+     * Searches length UTF-8 encoded bytes of the array, from offset, for a match.
+     *
+     * @return {@code true} if the regex finds a match within the decoded chars.
+     */
+    public boolean isMatch(byte[] input, int offset, int length) {
+        return isMatch(new RegexUtf8(input, offset, length));
+    }
+
+    /**
+     * Searches the UTF-8 encoded bytes of the buffer, from its position to its limit,
+     * for a match. The buffer may be a heap or a direct one; its position is not
+     * changed.
+     *
+     * @return {@code true} if the regex finds a match within the decoded chars.
+     */
+    public boolean isMatch(ByteBuffer input) {
+        return isMatch(new RegexUtf8(input));
+    }
+
     /**
      * Searches the input string for one or more occurrences of the text
      * supplied in the pattern parameter.
      */
-    public static Match match(String input, String pattern) {
+    public static Match match(CharSequence input, String pattern) {
         return match(input, pattern, RegexOptions.None, DEFAULT_MATCH_TIMEOUT);
     }
 
@@ -478,12 +719,61 @@ public class Regex implements Serializable {
      * supplied in the pattern parameter. Matching is modified with an option
      * string.
      */
-    public static Match match(String input, String pattern, int options) {
+    public static Match match(CharSequence input, String pattern, int options) {
         return match(input, pattern, options, DEFAULT_MATCH_TIMEOUT);
     }
 
-    public static Match match(String input, String pattern, int options, int matchTimeout) {
-        return new Regex(pattern, options, matchTimeout, true).match(input);
+    public static Match match(CharSequence input, String pattern, int options, int matchTimeout) {
+        return new Regex(pattern, options, matchTimeout, INFINITE_STEPS, true).match(input);
+    }
+
+    /**
+     * Creates a matcher that finds the matches of the regular expression in the
+     * input one after the other, reusing its storage from one match to the next.
+     *
+     * @return A new {@link RegexMatcher}, to be used by one thread at a time.
+     */
+    public RegexMatcher matcher(CharSequence input) {
+        if (input == null)
+            throw new IllegalArgumentException("input cannot be null.");
+
+        return new RegexMatcher(this, input);
+    }
+
+    /**
+     * Creates a matcher that finds the matches of the regular expression in UTF-8
+     * encoded bytes, decoding each char when it is read. The positions the matcher
+     * takes and tells are byte offsets from the start of the input.
+     *
+     * @return A new {@link RegexMatcher}, to be used by one thread at a time.
+     */
+    public RegexMatcher matcher(byte[] input) {
+        if (input == null)
+            throw new IllegalArgumentException("input cannot be null.");
+
+        return matcher(input, 0, input.length);
+    }
+
+    /**
+     * Creates a matcher that finds the matches of the regular expression in length
+     * UTF-8 encoded bytes of the array, from offset. The positions the matcher takes
+     * and tells are byte offsets from offset.
+     *
+     * @return A new {@link RegexMatcher}, to be used by one thread at a time.
+     */
+    public RegexMatcher matcher(byte[] input, int offset, int length) {
+        return new RegexMatcher(this, new RegexUtf8(input, offset, length));
+    }
+
+    /**
+     * Creates a matcher that finds the matches of the regular expression in the UTF-8
+     * encoded bytes of the buffer, from its position to its limit. The positions the
+     * matcher takes and tells are byte offsets from the position, which is not changed.
+     *
+     * @return A new {@link RegexMatcher}, to be used by one thread at a time.
+     */
+    public RegexMatcher matcher(ByteBuffer input) {
+        return new RegexMatcher(this, new RegexUtf8(input));
     }
 
     /**
@@ -492,7 +782,7 @@ public class Regex implements Serializable {
      *
      * @return The precise result as a {@link Match} object.
      */
-    public Match match(String input) {
+    public Match match(CharSequence input) {
         if (input == null)
             throw new IllegalArgumentException("input cannot be null.");
 
@@ -504,7 +794,7 @@ public class Regex implements Serializable {
      *
      * @return The precise result as a {@link Match} object.
      */
-    public Match match(String input, int startAt) {
+    public Match match(CharSequence input, int startAt) {
         if (input == null)
             throw new IllegalArgumentException("input must not be NULL");
 
@@ -517,7 +807,7 @@ public class Regex implements Serializable {
      *
      * @return The precise result as a {@link Match} object.
      */
-    public Match match(String input, int beginning, int length) {
+    public Match match(CharSequence input, int beginning, int length) {
         if (input == null)
             throw new IllegalArgumentException("input must not be NULL");
 
@@ -529,19 +819,19 @@ public class Regex implements Serializable {
     /**
      * Returns all the successful matches as if Match were called iteratively numerous times.
      */
-    public static MatchCollection matches(String input, String pattern) {
+    public static MatchCollection matches(CharSequence input, String pattern) {
         return matches(input, pattern, RegexOptions.None, DEFAULT_MATCH_TIMEOUT);
     }
 
     /**
      * Returns all the successful matches as if Match were called iteratively numerous times.
      */
-    public static MatchCollection matches(String input, String pattern, int options) {
+    public static MatchCollection matches(CharSequence input, String pattern, int options) {
         return matches(input, pattern, options, DEFAULT_MATCH_TIMEOUT);
     }
 
-    public static MatchCollection matches(String input, String pattern, int options, int matchTimeout) {
-        return new Regex(pattern, options, matchTimeout, true).matches(input);
+    public static MatchCollection matches(CharSequence input, String pattern, int options, int matchTimeout) {
+        return new Regex(pattern, options, matchTimeout, INFINITE_STEPS, true).matches(input);
     }
 
     /**
@@ -550,7 +840,7 @@ public class Regex implements Serializable {
      *
      * @return All the successful matches as if Match was called iteratively numerous times.
      */
-    public MatchCollection matches(String input) {
+    public MatchCollection matches(CharSequence input) {
         if (input == null)
             throw new IllegalArgumentException("input cannot be null.");
 
@@ -562,7 +852,7 @@ public class Regex implements Serializable {
      *
      * @return All the successful matches as if Match was called iteratively numerous.
      */
-    public MatchCollection matches(String input, int startAt) {
+    public MatchCollection matches(CharSequence input, int startAt) {
         if (input == null)
             throw new IllegalArgumentException("input cannot be null.");
 
@@ -573,7 +863,7 @@ public class Regex implements Serializable {
      * Replaces all occurrences of the {@code pattern} with the {@code replacement} pattern,
      * starting at the first character in the input string.
      */
-    public static String replace(String input, String pattern, String replacement) {
+    public static String replace(CharSequence input, String pattern, String replacement) {
         return replace(input, pattern, replacement, RegexOptions.None, DEFAULT_MATCH_TIMEOUT);
     }
 
@@ -581,7 +871,7 @@ public class Regex implements Serializable {
      * Replaces all occurrences of the {@code pattern} with the {@code replacement} pattern,
      * starting at the first character in the input string.
      */
-    public static String replace(String input, String pattern, String replacement, int options) {
+    public static String replace(CharSequence input, String pattern, String replacement, int options) {
         return replace(input, pattern, replacement, options, DEFAULT_MATCH_TIMEOUT);
     }
 
@@ -589,15 +879,15 @@ public class Regex implements Serializable {
      * Replaces all occurrences of the {@code pattern} with the {@code replacement} pattern,
      * starting at the first character in the input string.
      */
-    public static String replace(String input, String pattern, String replacement, int options, int matchTimeout) {
-        return new Regex(pattern, options, matchTimeout, true).replace(input, replacement);
+    public static String replace(CharSequence input, String pattern, String replacement, int options, int matchTimeout) {
+        return new Regex(pattern, options, matchTimeout, INFINITE_STEPS, true).replace(input, replacement);
     }
 
     /**
      * Replaces all occurrences of the (previously defined) {@code pattern} with the
      * {@code replacement} pattern, starting at the first character in the input string.
      */
-    public String replace(String input, String replacement) {
+    public String replace(CharSequence input, String replacement) {
         if (input == null)
             throw new IllegalArgumentException("input cannot be null.");
 
@@ -608,7 +898,7 @@ public class Regex implements Serializable {
      * Replaces all occurrences of the (previously defined) {@code pattern} with the
      * {@code replacement} pattern, starting at the first character in the input string.
      */
-    public String replace(String input, String replacement, int count) {
+    public String replace(CharSequence input, String replacement, int count) {
         if (input == null)
             throw new IllegalArgumentException("input cannot be null.");
 
@@ -619,7 +909,7 @@ public class Regex implements Serializable {
      * Replaces all occurrences of the (previously defined) {@code pattern} with the
      * {@code replacement} pattern, starting at the character position {@code startAt}.
      */
-    public String replace(String input, String replacement, int count, int startAt) {
+    public String replace(CharSequence input, String replacement, int count, int startAt) {
         if (input == null)
             throw new IllegalArgumentException("input cannot be null.");
 
@@ -640,7 +930,7 @@ public class Regex implements Serializable {
     /**
      * Replaces all occurrences of the {@code pattern} with the {@code evaluator} object.
      */
-    public static String replace(String input, String pattern, MatchEvaluator evaluator) {
+    public static String replace(CharSequence input, String pattern, MatchEvaluator evaluator) {
         return replace(input, pattern, evaluator, RegexOptions.None, DEFAULT_MATCH_TIMEOUT);
     }
 
@@ -648,7 +938,7 @@ public class Regex implements Serializable {
      * Replaces all occurrences of the {@code pattern} with the {@code evaluator} object, starting
      * at the first character position.
      */
-    public static String replace(String input, String pattern, MatchEvaluator evaluator, int options) {
+    public static String replace(CharSequence input, String pattern, MatchEvaluator evaluator, int options) {
         return replace(input, pattern, evaluator, options, DEFAULT_MATCH_TIMEOUT);
     }
 
@@ -656,15 +946,15 @@ public class Regex implements Serializable {
      * Replaces all occurrences of the {@code pattern} with the {@code evaluator} object, starting
      * at the first character position.
      */
-    public static String replace(String input, String pattern, MatchEvaluator evaluator, int options, int matchTimeout) {
-        return new Regex(pattern, options, matchTimeout, true).replace(input, evaluator);
+    public static String replace(CharSequence input, String pattern, MatchEvaluator evaluator, int options, int matchTimeout) {
+        return new Regex(pattern, options, matchTimeout, INFINITE_STEPS, true).replace(input, evaluator);
     }
 
     /**
      * Replaces all occurrences of the {@code pattern} with the recent {@code replacement} pattern,
      * starting at the first character position.
      */
-    public String replace(String input, MatchEvaluator evaluator) {
+    public String replace(CharSequence input, MatchEvaluator evaluator) {
         if (input == null)
             throw new IllegalArgumentException("input cannot be null.");
 
@@ -675,7 +965,7 @@ public class Regex implements Serializable {
      * Replaces all occurrences of the {@code pattern} with the recent {@code replacement} pattern,
      * starting at the first character position.
      */
-    public String replace(String input, MatchEvaluator evaluator, int count) {
+    public String replace(CharSequence input, MatchEvaluator evaluator, int count) {
         if (input == null)
             throw new IllegalArgumentException("input cannot be null.");
 
@@ -686,7 +976,7 @@ public class Regex implements Serializable {
      * Replaces all occurrences of the (previously defined) {@code pattern} with the
      * {@code evaluator} object, starting at the character position {@code startAt}.
      */
-    public String replace(String input, MatchEvaluator evaluator, int count, int startAt) {
+    public String replace(CharSequence input, MatchEvaluator evaluator, int count, int startAt) {
         if (input == null)
             throw new IllegalArgumentException("input cannot be null.");
 
@@ -697,28 +987,28 @@ public class Regex implements Serializable {
     /**
      * Splits the {@code input} string at the position defined by {@code pattern}.
      */
-    public static String[] split(String input, String pattern) {
+    public static String[] split(CharSequence input, String pattern) {
         return split(input, pattern, RegexOptions.None, DEFAULT_MATCH_TIMEOUT);
     }
 
     /**
      * Splits the {@code input} string at the position defined by {@code pattern}.
      */
-    public static String[] split(String input, String pattern, int options) {
+    public static String[] split(CharSequence input, String pattern, int options) {
         return split(input, pattern, options, DEFAULT_MATCH_TIMEOUT);
     }
 
     /**
      * Splits the {@code input} string at the position defined by {@code pattern}.
      */
-    public static String[] split(String input, String pattern, int options, int matchTimeout) {
-        return new Regex(pattern, options, matchTimeout, true).split(input);
+    public static String[] split(CharSequence input, String pattern, int options, int matchTimeout) {
+        return new Regex(pattern, options, matchTimeout, INFINITE_STEPS, true).split(input);
     }
 
     /**
      * Splits the {@code input} string at the position defined by a previous {@code pattern}.
      */
-    public String[] split(String input) {
+    public String[] split(CharSequence input) {
         if (input == null)
             throw new IllegalArgumentException("input cannot be null.");
 
@@ -728,7 +1018,7 @@ public class Regex implements Serializable {
     /**
      * Splits the {@code input} string at the position defined by a previous {@code pattern}.
      */
-    public String[] split(String input, int count) {
+    public String[] split(CharSequence input, int count) {
         if (input == null)
             throw new IllegalArgumentException("input cannot be null.");
 
@@ -738,7 +1028,7 @@ public class Regex implements Serializable {
     /**
      * Splits the {@code input} string at the position defined by a previous {@code pattern}.
      */
-    public String[] split(String input, int count, int startAt) {
+    public String[] split(CharSequence input, int count, int startAt) {
         if (input == null)
             throw new IllegalArgumentException("input must not be NULL");
 
@@ -750,28 +1040,26 @@ public class Regex implements Serializable {
             throw new IllegalStateException(R.OnlyAllowedOnce);
 
         refsInitialized = true;
-        runnerref = new ExclusiveReference<RegexRunner>();
+        runnerref = new StripedReference<RegexRunner>(runnerPoolSize, runnerIdleTimeout);
         replref = new SharedReference<RegexReplacement>();
     }
 
     /*
      * Internal worker called by all the public APIs
      */
-    Match run(boolean quick, int prevlen, String input, int beginning, int length, int startat) {
+    Match run(boolean quick, int prevlen, CharSequence input, int beginning, int length, int startat) {
         if (startat < 0 || startat > input.length())
             throw new IllegalArgumentException(R.BeginIndexNotNegative);
 
         if (length < 0 || length > input.length())
             throw new IllegalArgumentException(R.LengthNotNegative);
 
-        // There may be a cached runner; grab ownership of it if we can.
+        // There may be a cached runner; grab ownership of one if we can.
         RegexRunner runner = runnerref.get();
 
         // Create a RegexRunner instance if we need to
         if (runner == null) {
-            runner = new RegexInterpreter(code,
-                    useOptionInvariant() ? Locale.ROOT : Locale.getDefault()
-            );
+            runner = createRunner();
         }
 
         Match match = null;
@@ -792,54 +1080,61 @@ public class Regex implements Serializable {
     }
 
     /*
-     * Find code cache based on options+pattern
+     * Creates a runner of the code, compiled or not
      */
-    private static CachedCodeEntry lookupCachedAndUpdate(CachedCodeEntryKey key) {
-        synchronized (livecode) {
-            for (CachedCodeEntry current : livecode) {
-                if (current != null && current._key.equals(key)) {
-                    // If we find an entry in the cache, move it to the head at the same time.
-                    livecode.remove(current);
-                    livecode.addFirst(current);
-                    return current;
-                }
-            }
-//            for (LinkedListNode<CachedCodeEntry> current = livecode.First; current != null; current = current.Next) {
-//                if (current.Value._key == key) {
-//                    // If we find an entry in the cache, move it to the head at the same time.
-//                    livecode.Remove(current);
-//                    livecode.AddFirst(current);
-//                    return current.Value;
-//                }
-//            }
+    RegexRunner createRunner() {
+        if (factory != null) {
+            return factory.createInstance();
+        } else if (code._nfa != null) {
+            return new RegexNFARunner(code);
+        } else {
+            return new RegexInterpreter(code,
+                    useOptionInvariant() ? Locale.ROOT : Locale.getDefault()
+            );
         }
+    }
 
-        return null;
+    /*
+     * Find code cache based on options+pattern
+     */
+    private static CachedCodeEntry lookupCachedAndUpdate(CachedCodeEntryKey key) {
+        return livecode.get(key);
     }
 
     /*
      * Add current code to the cache
      */
     private void cacheCode(CachedCodeEntryKey key) {
-        synchronized (livecode) {
-            // first look for it in the cache and then move it to the head
-            for (CachedCodeEntry current : livecode) {
-                if (current != null && current._key.equals(key)) {
-                    livecode.remove(current);
-                    livecode.addFirst(current);
-                }
-            }
+        livecode.put(new CachedCodeEntry(key, capnames, capslist, code,
+                factory, caps, capsize, runnerref, replref));
+    }
 
-            // it wasn't in the cache, so we'll add a new one.  Shortcut out for the case where cacheSize is zero.
-            if (cacheSize != 0) {
-                CachedCodeEntry newCached = new CachedCodeEntry(key, capnames, capslist, code,
-                        caps, capsize, runnerref, replref);
-                livecode.addFirst(newCached);
-                if (livecode.size() > cacheSize) {
-                    livecode.removeLast();
-                }
-            }
-        }
+    /*
+     * True if the C option was set
+     */
+    boolean useOptionC() {
+        return (options & RegexOptions.Compiled) != 0;
+    }
+
+    /*
+     * True if the NonBacktracking option was set
+     */
+    boolean useOptionNonBacktracking() {
+        return (options & RegexOptions.NonBacktracking) != 0;
+    }
+
+    /*
+     * True if the Memoize option was set
+     */
+    boolean useOptionMemoize() {
+        return (options & RegexOptions.Memoize) != 0;
+    }
+
+    /*
+     * True if the Safe option was set
+     */
+    boolean useOptionSafe() {
+        return (options & RegexOptions.Safe) != 0;
     }
 
     /*
@@ -862,71 +1157,73 @@ public class Regex implements Serializable {
     boolean isDebugEnabled() {
         return (options & RegexOptions.Debug) != 0;
     }
-}
 
-/*
- * Used as a key for CacheCodeEntry
- */
-final class CachedCodeEntryKey {
-    private final int _options;
-    private final String _cultureKey;
-    private final String _pattern;
+    /*
+     * Used as a key for CacheCodeEntry
+     */
+    static final class CachedCodeEntryKey {
+        private final int _options;
+        private final String _cultureKey;
+        private final String _pattern;
+
+        CachedCodeEntryKey(int options, String cultureKey, String pattern) {
+            _options = options;
+            _cultureKey = cultureKey;
+            _pattern = pattern;
+        }
 
-    CachedCodeEntryKey(int options, String cultureKey, String pattern) {
-        _options = options;
-        _cultureKey = cultureKey;
-        _pattern = pattern;
-    }
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
 
-    @Override
-    public boolean equals(Object obj) {
-        if (this == obj) {
-            return true;
-        }
+            if (!(obj instanceof CachedCodeEntryKey)) {
+                return false;
+            }
 
-        if (!(obj instanceof CachedCodeEntryKey)) {
-            return false;
+            CachedCodeEntryKey key = (CachedCodeEntryKey) obj;
+            return this._options == key._options && this._cultureKey.equals(key._cultureKey)
+                    && this._pattern.equals(key._pattern);
         }
 
-        CachedCodeEntryKey key = (CachedCodeEntryKey) obj;
-        return this._options == key._options && this._cultureKey.equals(key._cultureKey)
-                && this._pattern.equals(key._pattern);
+        @Override
+        public int hashCode() {
+            return (_options ^ _cultureKey.hashCode() ^ _pattern.hashCode());
+        }
     }
 
-    @Override
-    public int hashCode() {
-        return (_options ^ _cultureKey.hashCode() ^ _pattern.hashCode());
-    }
-}
-
-/*
- * Used to cache byte codes.
- */
-final class CachedCodeEntry {
-    final CachedCodeEntryKey _key;
-    final RegexCode _code;
-
-    final Map<Integer, Integer> _caps;
-    final Map<String, Integer> _capnames;
-
-    final String[] _capslist;
-    final int _capsize;
-    final ExclusiveReference<RegexRunner> _runnerref;
-    final SharedReference<RegexReplacement> _replref;
-
-    CachedCodeEntry(CachedCodeEntryKey key, Map<String, Integer> capnames, String[] capslist,
-                    RegexCode code, Map<Integer, Integer> caps, int capsize,
-                    ExclusiveReference<RegexRunner> runner, SharedReference<RegexReplacement> repl) {
-        _key = key;
-        _capnames = capnames;
-        _capslist = capslist;
-
-        _code = code;
-        _caps = caps;
-        _capsize = capsize;
-
-        _runnerref = runner;
-        _replref = repl;
+    /*
+     * Used to cache byte codes.
+     */
+    static final class CachedCodeEntry {
+        final CachedCodeEntryKey _key;
+        final RegexCode _code;
+        final RegexRunnerFactory _factory;
+
+        final Map<Integer, Integer> _caps;
+        final Map<String, Integer> _capnames;
+
+        final String[] _capslist;
+        final int _capsize;
+        final StripedReference<RegexRunner> _runnerref;
+        final SharedReference<RegexReplacement> _replref;
+
+        CachedCodeEntry(CachedCodeEntryKey key, Map<String, Integer> capnames, String[] capslist,
+                        RegexCode code, RegexRunnerFactory factory, Map<Integer, Integer> caps, int capsize,
+                        StripedReference<RegexRunner> runner, SharedReference<RegexReplacement> repl) {
+            _key = key;
+            _capnames = capnames;
+            _capslist = capslist;
+
+            _code = code;
+            _factory = factory;
+            _caps = caps;
+            _capsize = capsize;
+
+            _runnerref = runner;
+            _replref = repl;
+        }
     }
 }
 
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package jxtras.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+// The RegexAhoCorasick object precomputes the Aho-Corasick
+// automaton of a set of strings, to find the first occurrence
+// of any of them within a large body of text, in a single pass
+// over it. It is the counterpart of RegexBoyerMoore for the
+// patterns that start with an alternation of literals, such as
+// (GET|POST|PUT|DELETE) or a large list of keywords.
+//
+// The strings are kept in a trie, each node of which has a
+// failure link to the node of the longest proper suffix of its
+// string that is also in the trie, so the scan never goes back
+// in the text. Only left to right scans are supported.
+
+// @author  Tony Guo <tony.guo.peng@gmail.com>
+final class RegexAhoCorasick {
+    String[] _patterns;
+    boolean _caseInsensitive;
+    Locale _culture;
+
+    // the trie: for each node, the sorted chars of its edges and the nodes they lead to
+    char[][] _chars;
+    int[][] _targets;
+    int[] _fail;        // the failure link of each node
+    int[] _depth;       // the length of the string of each node
+    int[] _out;         // the length of the longest string that ends at each node, through the failure links (0 if none)
+    int[] _rootASCII;   // the edges of the root over the ASCII chars (0 if none)
+
+    /*
+     * Constructs an Aho-Corasick automaton for searching for any of the
+     * strings. The strings must not be zero-length.
+     */
+    RegexAhoCorasick(String[] patterns, boolean caseInsensitive, Locale culture) {
+        if (patterns.length == 0) {
+            throw new IllegalArgumentException("RegexAhoCorasick called without any string.");
+        }
+
+        _patterns = patterns;
+        _caseInsensitive = caseInsensitive;
+        _culture = culture;
+
+        // build the trie with growable edge lists first
+        List<StringBuilder> chars = new ArrayList<StringBuilder>();
+        List<List<Integer>> targets = new ArrayList<List<Integer>>();
+        List<Integer> depths = new ArrayList<Integer>();
+        List<Boolean> terminals = new ArrayList<Boolean>();
+
+        chars.add(new StringBuilder());
+        targets.add(new ArrayList<Integer>());
+        depths.add(0);
+        terminals.add(false);
+
+        for (String pattern : patterns) {
+            if (pattern.length() == 0) {
+                throw new IllegalArgumentException("RegexAhoCorasick called with an empty string.");
+            }
+
+            int node = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                char ch = pattern.charAt(i);
+                if (caseInsensitive) {
+                    // We do the ToLower character by character for consistency, as RegexBoyerMoore does.
+                    ch = RegexCaseFolding.fold(ch);
+                }
+
+                int edge = chars.get(node).indexOf(String.valueOf(ch));
+                if (edge >= 0) {
+                    node = targets.get(node).get(edge);
+                } else {
+                    int next = chars.size();
+                    chars.add(new StringBuilder());
+                    targets.add(new ArrayList<Integer>());
+                    depths.add(depths.get(node) + 1);
+                    terminals.add(false);
+
+                    chars.get(node).append(ch);
+                    targets.get(node).add(next);
+                    node = next;
+                }
+            }
+            terminals.set(node, true);
+        }
+
+        int count = chars.size();
+        _chars = new char[count][];
+        _targets = new int[count][];
+        _fail = new int[count];
+        _depth = new int[count];
+        _out = new int[count];
+        _rootASCII = new int[128];
+
+        // freeze the edges, sorted by char for the binary search
+        for (int node = 0; node < count; node++) {
+            char[] edgeChars = chars.get(node).toString().toCharArray();
+            char[] sorted = edgeChars.clone();
+            Arrays.sort(sorted);
+
+            _chars[node] = sorted;
+            _targets[node] = new int[sorted.length];
+            for (int i = 0; i < edgeChars.length; i++) {
+                _targets[node][Arrays.binarySearch(sorted, edgeChars[i])] = targets.get(node).get(i);
+            }
+            _depth[node] = depths.get(node);
+        }
+
+        for (int i = 0; i < _chars[0].length; i++) {
+            if (_chars[0][i] < 128) {
+                _rootASCII[_chars[0][i]] = _targets[0][i];
+            }
+        }
+
+        // compute the failure links breadth first, so that the link of a
+        // node is known before the ones of its children
+        int[] queue = new int[count];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = 0;
+
+        while (head < tail) {
+            int node = queue[head++];
+
+            _out[node] = terminals.get(node) ? _depth[node] : _out[_fail[node]];
+
+            for (int i = 0; i < _chars[node].length; i++) {
+                int child = _targets[node][i];
+                _fail[child] = node == 0 ? 0 : step(_fail[node], _chars[node][i]);
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /*
+     * Returns the node that the automaton goes to from node over ch.
+     */
+    private int step(int node, char ch) {
+        for (; ; ) {
+            if (node == 0) {
+                if (ch < 128) {
+                    return _rootASCII[ch];
+                }
+                int edge = Arrays.binarySearch(_chars[0], ch);
+                return edge >= 0 ? _targets[0][edge] : 0;
+            }
+
+            int edge = Arrays.binarySearch(_chars[node], ch);
+            if (edge >= 0) {
+                return _targets[node][edge];
+            }
+
+            node = _fail[node];
+        }
+    }
+
+    /*
+     * When a regex is anchored, we can do a quick IsMatch test instead of a Scan
+     */
+    boolean isMatch(CharSequence text, int index, int beglimit, int endlimit) {
+        if (index < beglimit) {
+            return false;
+        }
+
+        int node = 0;
+        for (int i = index; i < endlimit; i++) {
+            char ch = RegexRunner.charAt(text, i);
+            if (_caseInsensitive) {
+                ch = RegexCaseFolding.fold(ch);
+            }
+
+            int edge = Arrays.binarySearch(_chars[node], ch);
+            if (edge < 0) {
+                return false;
+            }
+
+            node = _targets[node][edge];
+            if (_out[node] == _depth[node]) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /*
+     * Scan finds the leftmost occurrence of any of the strings within text,
+     * beginning at index, and constrained within beglimit and endlimit.
+     * Returns where it starts, or -1 if there is none.
+     */
+    int scan(CharSequence text, int index, int beglimit, int endlimit) {
+        int node = 0;
+        int found = -1;
+
+        if (index < beglimit) {
+            index = beglimit;
+        }
+
+        for (int i = index; i < endlimit; i++) {
+            char ch = RegexRunner.charAt(text, i);
+            if (_caseInsensitive) {
+                ch = RegexCaseFolding.fold(ch);
+            }
+
+            node = step(node, ch);
+
+            // a string that ends here starts where its length tells, and the
+            // longest one starts first
+            if (_out[node] != 0 && (found == -1 || i + 1 - _out[node] < found)) {
+                found = i + 1 - _out[node];
+            }
+
+            // the strings that are still being matched can't start any sooner
+            if (found != -1 && i + 1 - _depth[node] >= found) {
+                return found;
+            }
+        }
+
+        return found;
+    }
+
+    /*
+     * Used when dumping for debugging.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < _patterns.length; i++) {
+            if (i > 0) {
+                sb.append('|');
+            }
+            sb.append(_patterns[i]);
+        }
+        return sb.toString();
+    }
+
+    //#if DEBUG
+    public String dump(String indent) {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append(indent + "AC Patterns: " + _patterns.length + "\n");
+        sb.append(indent + "Nodes: " + _chars.length + "\n");
+        sb.append(indent + "Root: " + Regex.escape(new String(_chars[0])) + "\n");
+
+        return sb.toString();
+    }
+//#endif
+}
@@ -45,8 +45,10 @@ final class RegexBoyerMoore {
     String _pattern;
     int _lowASCII;
     int _highASCII;
+    int _defaultShift;
     boolean _rightToLeft;
     boolean _caseInsensitive;
+    boolean _ascii;
     Locale _culture;
 
     /*
@@ -75,13 +77,14 @@ final class RegexBoyerMoore {
         if (caseInsensitive) {
             StringBuilder sb = new StringBuilder(pattern.length());
             for (int i = 0; i < pattern.length(); i++)
-                sb.append(Character.toLowerCase(pattern.charAt(i) /*, culture */));
+                sb.append(RegexCaseFolding.fold(pattern.charAt(i)));
             pattern = sb.toString();
         }
 
         _pattern = pattern;
         _rightToLeft = rightToLeft;
         _caseInsensitive = caseInsensitive;
+        _ascii = RegexUtf8.isAscii(pattern);
         _culture = culture;
 
         if (!rightToLeft) {
@@ -187,83 +190,113 @@ OuterloopBreak:
              * only those parts of the Unicode 16-bit code set that actually
              * appear in the string are in the table. (Maximum size with
              * Unicode is 65K; ASCII only case is 512 bytes.)
+             *
+             * When the case is ignored, every char that lowers to one of the
+             * string gets its shift, so the input never has to be lowered to
+             * be looked up.
              */
 
+            _defaultShift = last - beforeFirst;
             _negativeASCII = new int[128];
 
             for (int i = 0; i < 128; i++)
-                _negativeASCII[i] = last - beforeFirst;
+                _negativeASCII[i] = _defaultShift;
 
             _lowASCII = 127;
             _highASCII = 0;
 
             for (examine = last; examine != beforeFirst; examine -= bump) {
                 ch = pattern.charAt(examine);
+                setNegative(ch, last - examine);
 
-                if (ch < 128) {
-                    if (_lowASCII > ch)
-                        _lowASCII = ch;
+                if (caseInsensitive) {
+                    String others = RegexCaseFolding.unfold(ch);
 
-                    if (_highASCII < ch)
-                        _highASCII = ch;
+                    for (int i = 0; i < others.length(); i++)
+                        setNegative(others.charAt(i), last - examine);
+                }
+            }
+        }
+    }
 
-                    if (_negativeASCII[ch] == last - beforeFirst)
-                        _negativeASCII[ch] = last - examine;
-                } else {
-                    int i = ch >> 8;
-                    int j = ch & 0xFF;
+    /*
+     * Sets the bad-character shift of ch, unless a char closer to the last
+     * one of the string already set it.
+     */
+    private void setNegative(char ch, int shift) {
+        if (ch < 128) {
+            if (_lowASCII > ch)
+                _lowASCII = ch;
 
-                    if (_negativeUnicode == null) {
-                        _negativeUnicode = new int[256][];
-                    }
+            if (_highASCII < ch)
+                _highASCII = ch;
 
-                    if (_negativeUnicode[i] == null) {
-                        int[] newarray = new int[256];
+            if (_negativeASCII[ch] == _defaultShift)
+                _negativeASCII[ch] = shift;
+        } else {
+            int i = ch >> 8;
+            int j = ch & 0xFF;
 
-                        for (int k = 0; k < 256; k++)
-                            newarray[k] = last - beforeFirst;
+            if (_negativeUnicode == null) {
+                _negativeUnicode = new int[256][];
+            }
 
-                        if (i == 0) {
-                            System.arraycopy(_negativeASCII, 0, newarray, 0, 128);
-                            _negativeASCII = newarray;
-                        }
+            if (_negativeUnicode[i] == null) {
+                int[] newarray = new int[256];
 
-                        _negativeUnicode[i] = newarray;
-                    }
+                for (int k = 0; k < 256; k++)
+                    newarray[k] = _defaultShift;
 
-                    if (_negativeUnicode[i][j] == last - beforeFirst)
-                        _negativeUnicode[i][j] = last - examine;
+                if (i == 0) {
+                    System.arraycopy(_negativeASCII, 0, newarray, 0, 128);
+                    _negativeASCII = newarray;
                 }
+
+                _negativeUnicode[i] = newarray;
             }
+
+            if (_negativeUnicode[i][j] == _defaultShift)
+                _negativeUnicode[i][j] = shift;
         }
     }
 
-    private boolean matchPattern(String text, int index) {
+    /*
+     * The bad-character shift of ch, as it is in the text
+     */
+    private int negative(char ch) {
+        int[] unicodeLookup;
+
+        if (ch < 128)
+            return _negativeASCII[ch];
+
+        if (null != _negativeUnicode && (null != (unicodeLookup = _negativeUnicode[ch >> 8])))
+            return unicodeLookup[ch & 0xFF];
+
+        return _defaultShift;
+    }
+
+    private boolean matchPattern(CharSequence text, int index) {
         if (_caseInsensitive) {
             if (text.length() - index < _pattern.length()) {
                 return false;
             }
 
-            // TextInfo textinfo = _culture.TextInfo; // TODO:
             for (int i = 0; i < _pattern.length(); i++) {
-                if (Character.toLowerCase(_pattern.charAt(i)) != _pattern.charAt(i)) {
-                    throw new IllegalArgumentException("pattern should be converted to lower case in constructor!");
-                }
-                if (Character.toLowerCase(text.charAt(index + i)) != _pattern.charAt(i)) {
+                if (RegexCaseFolding.fold(RegexRunner.charAt(text, index + i)) != _pattern.charAt(i)) {
                     return false;
                 }
             }
             return true;
         } else {
             // TODO: 0 == String.CompareOrdinal(_pattern, 0, text, index, _pattern.Length)
-            return 0 == _pattern.compareTo(text.substring(index, index + _pattern.length()));
+            return RegexRunner.startsWith(text, _pattern, index);
         }
     }
 
     /*
      * When a regex is anchored, we can do a quick IsMatch test instead of a Scan
      */
-    boolean isMatch(String text, int index, int beglimit, int endlimit) {
+    boolean isMatch(CharSequence text, int index, int beglimit, int endlimit) {
 
         if (!_rightToLeft) {
             if (index < beglimit || endlimit - index < _pattern.length())
@@ -287,7 +320,21 @@ OuterloopBreak:
      * The direction and case-sensitivity of the match is determined
      * by the arguments to the RegexBoyerMoore constructor.
      */
-    int scan(String text, int index, int beglimit, int endlimit) {
+    int scan(CharSequence text, int index, int beglimit, int endlimit) {
+        if (text instanceof RegexUtf8) {
+            RegexUtf8 bytes = (RegexUtf8) text;
+
+            // ASCII bytes are their own chars, and an ASCII char of UTF-8 is only
+            // ever its own byte: an ASCII string is found among the bytes
+            if (bytes.isAscii())
+                return scan(bytes, index, beglimit, endlimit);
+
+            if (_ascii && !_caseInsensitive) {
+                int found = scan(bytes, bytes.byteOffset(index), bytes.byteOffset(beglimit), bytes.byteOffset(endlimit));
+                return found == -1 ? -1 : bytes.charIndex(found);
+            }
+        }
+
         int test;
         int test2;
         int match;
@@ -296,9 +343,7 @@ OuterloopBreak:
         int advance;
         int defadv;
         int bump;
-        char chMatch;
         char chTest;
-        int[] unicodeLookup;
 
         if (!_rightToLeft) {
             defadv = _pattern.length();
@@ -314,27 +359,19 @@ OuterloopBreak:
             bump = -1;
         }
 
-        chMatch = _pattern.charAt(startmatch);
-
         for (; ; ) {
             if (test >= endlimit || test < beglimit)
                 return -1;
 
-            chTest = text.charAt(test);
-
-            if (_caseInsensitive)
-                chTest = Character.toLowerCase(chTest); //TODO , _culture);
+            chTest = RegexRunner.charAt(text, test);
 
-            if (chTest != chMatch) {
-                if (chTest < 128)
-                    advance = _negativeASCII[chTest];
-                else if (null != _negativeUnicode && (null != (unicodeLookup = _negativeUnicode[chTest >> 8])))
-                    advance = unicodeLookup[chTest & 0xFF];
-                else
-                    advance = defadv;
+            // only the chars that match the last one of the string have no
+            // shift, in either case when the case is ignored
+            advance = negative(chTest);
 
+            if (advance != 0) {
                 test += advance;
-            } else { // if (chTest == chMatch)
+            } else {
                 test2 = test;
                 match = startmatch;
 
@@ -345,21 +382,85 @@ OuterloopBreak:
                     match -= bump;
                     test2 -= bump;
 
-                    chTest = text.charAt(test2);
+                    chTest = RegexRunner.charAt(text, test2);
+
+                    if (chTest != _pattern.charAt(match)
+                            && (!_caseInsensitive || RegexCaseFolding.fold(chTest) != _pattern.charAt(match))) {
+                        advance = _positive[match];
+                        test2 = (match - startmatch) + negative(chTest);
 
-                    if (_caseInsensitive)
-                        chTest = Character.toLowerCase(chTest/*, _culture */);
+                        if (_rightToLeft ? test2 < advance : test2 > advance)
+                            advance = test2;
 
-                    if (chTest != _pattern.charAt(match)) {
+                        test += advance;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * The same scan over UTF-8 bytes, from the byte offset index and within
+     * the byte offsets beglimit and endlimit. It reads each byte as the
+     * Latin-1 char of its value, which isn't in an ASCII string.
+     *
+     * This function must be kept synchronized with the scan above.
+     */
+    private int scan(RegexUtf8 bytes, int index, int beglimit, int endlimit) {
+        int test;
+        int test2;
+        int match;
+        int startmatch;
+        int endmatch;
+        int advance;
+        int defadv;
+        int bump;
+        char chTest;
+
+        if (!_rightToLeft) {
+            defadv = _pattern.length();
+            startmatch = _pattern.length() - 1;
+            endmatch = 0;
+            test = index + defadv - 1;
+            bump = 1;
+        } else {
+            defadv = -_pattern.length();
+            startmatch = 0;
+            endmatch = -defadv - 1;
+            test = index + defadv;
+            bump = -1;
+        }
+
+        for (; ; ) {
+            if (test >= endlimit || test < beglimit)
+                return -1;
+
+            chTest = (char) (bytes.byteAt(test) & 0xFF);
+
+            // only the chars that match the last one of the string have no
+            // shift, in either case when the case is ignored
+            advance = negative(chTest);
+
+            if (advance != 0) {
+                test += advance;
+            } else {
+                test2 = test;
+                match = startmatch;
+
+                for (; ; ) {
+                    if (match == endmatch)
+                        return (_rightToLeft ? test2 + 1 : test2);
+
+                    match -= bump;
+                    test2 -= bump;
+
+                    chTest = (char) (bytes.byteAt(test2) & 0xFF);
+
+                    if (chTest != _pattern.charAt(match)
+                            && (!_caseInsensitive || RegexCaseFolding.fold(chTest) != _pattern.charAt(match))) {
                         advance = _positive[match];
-                        if ((chTest & 0xFF80) == 0)
-                            test2 = (match - startmatch) + _negativeASCII[chTest];
-                        else if (null != _negativeUnicode && (null != (unicodeLookup = _negativeUnicode[chTest >> 8])))
-                            test2 = (match - startmatch) + unicodeLookup[chTest & 0xFF];
-                        else {
-                            test += advance;
-                            break;
-                        }
+                        test2 = (match - startmatch) + negative(chTest);
 
                         if (_rightToLeft ? test2 < advance : test2 > advance)
                             advance = test2;
@@ -372,6 +473,22 @@ OuterloopBreak:
         }
     }
 
+    /*
+     * Finds the first occurrance of the string within text, beginning at
+     * index and ending before endlimit, like a left to right Scan, but lets
+     * String.indexOf do the work when the string is case-sensitive and the
+     * rest of the text may be searched.
+     */
+    int indexOf(CharSequence text, int index, int endlimit) {
+        if (!_caseInsensitive && endlimit == text.length()) {
+            return _pattern.length() == 1
+                    ? RegexRunner.indexOf(text, _pattern.charAt(0), index)
+                    : RegexRunner.indexOf(text, _pattern, index);
+        }
+
+        return scan(text, index, index, endlimit);
+    }
+
     /*
      * Used when dumping for debugging.
      */
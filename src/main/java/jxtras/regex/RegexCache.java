@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package jxtras.regex;
+
+import jxtras.regex.Regex.CachedCodeEntry;
+import jxtras.regex.Regex.CachedCodeEntryKey;
+
+import java.lang.ref.SoftReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+// The RegexCache class is internal to the Regex package.
+// It keeps the code of the patterns used by the static methods of
+// Regex, so that a pattern used again isn't parsed and written again.
+//
+// The entries are found in a ConcurrentHashMap without taking any
+// lock, so that the threads using cached patterns never wait on each
+// other; only adding an entry, after a miss, takes the lock, since
+// the pattern then has to be parsed anyway.
+//
+// The entries to evict are chosen as by CLOCK: they are kept in a
+// ring that a hand sweeps, and the hand evicts the first entry that
+// hasn't been used since it last passed. As in CLOCK-Pro and TinyLFU,
+// an entry counts its uses, up to MaxFrequency, and the hand takes
+// one off each time it passes, so that the patterns used often
+// outlive a burst of patterns used once.
+//
+// The entries may be held through soft references, so that the
+// collector can drop them when memory runs short.
+//
+// The hits and misses are counted in a pair of cells per stripe of
+// threads, summed when they are read, so that the threads using
+// cached patterns don't all write the same counter.
+
+// @author  Tony Guo <tony.guo.peng@gmail.com>
+final class RegexCache {
+    private static final int MaxFrequency = 3;
+
+    // the cells of a stripe, and how far apart the stripes are, so that
+    // each stripe has a cache line of its own
+    private static final int Hits = 0;
+    private static final int Misses = 1;
+    private static final int CellSpacing = 8;
+
+    private final ConcurrentHashMap<CachedCodeEntryKey, Node> _map;
+    private final ReentrantLock _lock;
+
+    // guarded by _lock
+    private Node[] _ring;
+    private int _hand;
+    private int _count;
+
+    private volatile boolean _softValues;
+
+    private final AtomicLongArray _counts;
+    private final int _stripeMask;
+
+    // written with _lock held
+    private volatile long _evictions;
+
+    RegexCache(int capacity) {
+        _map = new ConcurrentHashMap<CachedCodeEntryKey, Node>();
+        _lock = new ReentrantLock();
+        _ring = new Node[capacity];
+
+        int stripes = 1;
+        while (stripes < StripedReference.defaultSize()) {
+            stripes <<= 1;
+        }
+        _counts = new AtomicLongArray(stripes * CellSpacing);
+        _stripeMask = stripes - 1;
+    }
+
+    /*
+     * Returns the entry of the key, or null if it isn't cached
+     */
+    CachedCodeEntry get(CachedCodeEntryKey key) {
+        Node node = _map.get(key);
+
+        if (node != null) {
+            CachedCodeEntry entry = node.entry();
+            if (entry != null) {
+                if (node._frequency < MaxFrequency) {
+                    node._frequency++;
+                }
+                count(Hits);
+                return entry;
+            }
+
+            // the collector dropped it; the hand will free its slot
+            _map.remove(key, node);
+        }
+
+        count(Misses);
+        return null;
+    }
+
+    /*
+     * Adds an entry, evicting another one if the cache is full
+     */
+    void put(CachedCodeEntry entry) {
+        _lock.lock();
+        try {
+            if (_ring.length == 0) {
+                return;
+            }
+
+            // another thread may have cached the same pattern meanwhile
+            Node node = _map.get(entry._key);
+            if (node != null && node.entry() != null) {
+                return;
+            }
+
+            int slot = _count == _ring.length ? evict() : freeSlot();
+            node = new Node(entry, _softValues);
+            _ring[slot] = node;
+            _count++;
+            _map.put(entry._key, node);
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    int capacity() {
+        return _ring.length;
+    }
+
+    /*
+     * Changes the number of entries kept, evicting the ones in excess
+     */
+    void setCapacity(int capacity) {
+        _lock.lock();
+        try {
+            while (_count > capacity) {
+                evict();
+            }
+
+            Node[] ring = new Node[capacity];
+            int count = 0;
+            for (Node node : _ring) {
+                if (node != null) {
+                    ring[count++] = node;
+                }
+            }
+
+            _ring = ring;
+            _hand = 0;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    boolean softValues() {
+        return _softValues;
+    }
+
+    /*
+     * Holds the entries added from now on through soft references, or not
+     */
+    void setSoftValues(boolean softValues) {
+        _softValues = softValues;
+    }
+
+    long hitCount() {
+        return sum(Hits);
+    }
+
+    long missCount() {
+        return sum(Misses);
+    }
+
+    long evictionCount() {
+        return _evictions;
+    }
+
+    /*
+     * Adds one to a cell of the stripe of the current thread
+     */
+    private void count(int cell) {
+        _counts.getAndIncrement((StripedReference.probe() & _stripeMask) * CellSpacing + cell);
+    }
+
+    /*
+     * Sums a cell over the stripes
+     */
+    private long sum(int cell) {
+        long sum = 0;
+        for (int i = cell; i < _counts.length(); i += CellSpacing) {
+            sum += _counts.get(i);
+        }
+        return sum;
+    }
+
+    /*
+     * Sweeps the hand until it finds an entry to evict, and returns its
+     * slot. Called with the lock held, when the ring isn't empty.
+     */
+    private int evict() {
+        for (; ;) {
+            int slot = _hand;
+            Node node = _ring[slot];
+            _hand = slot + 1 == _ring.length ? 0 : slot + 1;
+
+            if (node == null) {
+                continue;
+            }
+
+            CachedCodeEntry entry = node.entry();
+            if (entry != null && node._frequency > 0) {
+                node._frequency--;
+                continue;
+            }
+
+            _map.remove(node._key, node);
+
+            _ring[slot] = null;
+            _count--;
+            _evictions++;
+            return slot;
+        }
+    }
+
+    /*
+     * Returns an empty slot. Called with the lock held, when the ring isn't full.
+     */
+    private int freeSlot() {
+        for (int i = 0; ; i++) {
+            int slot = (_hand + i) % _ring.length;
+            if (_ring[slot] == null) {
+                return slot;
+            }
+        }
+    }
+
+    /*
+     * An entry, held either directly or through a soft reference
+     */
+    private static final class Node {
+        private final CachedCodeEntryKey _key;
+        private final CachedCodeEntry _entry;
+        private final SoftReference<CachedCodeEntry> _softEntry;
+
+        // the uses since the hand last passed, up to MaxFrequency; a lost update is harmless
+        volatile int _frequency;
+
+        Node(CachedCodeEntry entry, boolean soft) {
+            _key = entry._key;
+            _entry = soft ? null : entry;
+            _softEntry = soft ? new SoftReference<CachedCodeEntry>(entry) : null;
+        }
+
+        CachedCodeEntry entry() {
+            return _softEntry != null ? _softEntry.get() : _entry;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package jxtras.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// The RegexCaseFolding class holds the tables the matchers lower
+// the input with when they ignore case: a flat table for Latin-1
+// and, for the rest of the BMP, a table of 256-char pages, where
+// the pages without any char to lower are left out. They are built
+// once, from Character.toLowerCase, which is what the parser lowers
+// the pattern with, so the input and the pattern always fold the
+// same way. That is also why they do not depend on the culture:
+// Character.toLowerCase does not.
+//
+// The tables also map a lowered char back to the chars that lower
+// to it, so that RegexBoyerMoore can shift on the input as it is.
+
+// @author  Tony Guo <tony.guo.peng@gmail.com>
+final class RegexCaseFolding {
+    private static final char[] Latin1 = new char[256];
+    private static final char[][] Pages = new char[256][];
+
+    // the chars that lower to another one, as (lowered << 16 | char), sorted
+    private static final long[] Unfolded;
+
+    static {
+        List<Long> unfolded = new ArrayList<Long>();
+
+        for (int ch = 0; ch <= Character.MAX_VALUE; ch++) {
+            char lower = Character.toLowerCase((char) ch);
+
+            if (ch < 256) {
+                Latin1[ch] = lower;
+            } else if (lower != ch) {
+                char[] page = Pages[ch >> 8];
+
+                if (page == null) {
+                    page = Pages[ch >> 8] = new char[256];
+                    for (int i = 0; i < 256; i++) {
+                        page[i] = (char) ((ch & 0xFF00) | i);
+                    }
+                }
+
+                page[ch & 0xFF] = lower;
+            }
+
+            if (lower != ch) {
+                unfolded.add(((long) lower << 16) | ch);
+            }
+        }
+
+        Unfolded = new long[unfolded.size()];
+        for (int i = 0; i < Unfolded.length; i++) {
+            Unfolded[i] = unfolded.get(i);
+        }
+        Arrays.sort(Unfolded);
+    }
+
+    private RegexCaseFolding() {
+    }
+
+    /*
+     * The char lowered, as Character.toLowerCase does
+     */
+    static char fold(char ch) {
+        if (ch < 256) {
+            return Latin1[ch];
+        }
+
+        char[] page = Pages[ch >> 8];
+        return page == null ? ch : page[ch & 0xFF];
+    }
+
+    /*
+     * The chars, other than itself, that lower to the given one
+     */
+    static String unfold(char lower) {
+        int i = Arrays.binarySearch(Unfolded, (long) lower << 16);
+        StringBuilder sb = new StringBuilder();
+
+        // no char is lowered from the char 0, so the search never finds its key
+        for (i = -i - 1; i < Unfolded.length && (Unfolded[i] >>> 16) == lower; i++) {
+            sb.append((char) Unfolded[i]);
+        }
+
+        return sb.toString();
+    }
+}
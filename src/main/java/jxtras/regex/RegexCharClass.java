@@ -475,6 +475,10 @@ final class RegexCharClass {
     }
 // #endif
 
+    // the classes that the word boundaries test, compiled
+    private static final Matcher WordMatcher = new Matcher(WordClass);
+    private static final Matcher ECMAWordMatcher = new Matcher(ECMAWordClass);
+
     /*
      * Creates an empty character class.
      */
@@ -794,7 +798,7 @@ final class RegexCharClass {
         // interpretations of digit, word character, and word boundary.  In other words,
         // no special treatment of Unicode ZERO WIDTH NON-JOINER (ZWNJ U+200C) and
         // ZERO WIDTH JOINER (ZWJ U+200D) is required for ECMA word boundaries.
-        return charInClass(ch, ECMAWordClass);
+        return ECMAWordMatcher.matches(ch);
     }
 
     static boolean isWordChar(char ch) {
@@ -802,7 +806,7 @@ final class RegexCharClass {
         // RL 1.4 Simple Word Boundaries  The class of <word_character> includes all Alphabetic
         // values from the Unicode character database, from UnicodeData.txt [UData], plus the U+200C
         // ZERO WIDTH NON-JOINER and U+200D ZERO WIDTH JOINER.
-        return charInClass(ch, WordClass) || ch == ZeroWidthJoiner || ch == ZeroWidthNonJoiner;
+        return WordMatcher.matches(ch) || ch == ZeroWidthJoiner || ch == ZeroWidthNonJoiner;
     }
 
     static boolean charInClass(char ch, String set) {
@@ -931,6 +935,42 @@ final class RegexCharClass {
         return false;
     }
 
+    /*
+     * The Unicode categories that the category part of a class accepts, as a
+     * mask with a bit for each category. This is what charInCategory tells
+     * for the chars outside of Latin-1, whose white spaces are exactly the
+     * separators.
+     */
+    private static int categoryMask(String set, int start, int mySetLength, int myCategoryLength) {
+        int spaces = (1 << UnicodeCategory.SpaceSeparator) | (1 << UnicodeCategory.LineSeparator)
+                | (1 << UnicodeCategory.ParagraphSeparator);
+        int mask = 0;
+
+        int i = start + SETSTART + mySetLength;
+        int end = i + myCategoryLength;
+        while (i < end) {
+            int curcat = (short) set.charAt(i);
+
+            if (curcat == 0) {
+                // a group of categories, which is ended by another zero
+                int group = 0;
+                boolean negative = (short) set.charAt(i + 1) <= 0;
+                curcat = (short) set.charAt(++i);
+                while (curcat != 0) {
+                    group |= 1 << (negative ? -1 - curcat : curcat - 1);
+                    curcat = (short) set.charAt(++i);
+                }
+                mask |= negative ? ~group : group;
+            } else if (curcat > 0) {
+                mask |= curcat == SpaceConst ? spaces : 1 << (curcat - 1);
+            } else {
+                mask |= curcat == NotSpaceConst ? ~spaces : ~(1 << (-1 - curcat));
+            }
+            i++;
+        }
+        return mask;
+    }
+
     /*
     *  CharInCategoryGroup
     *  This is used for categories which are composed of other categories - L, N, Z, W...
@@ -1319,6 +1359,157 @@ final class RegexCharClass {
     }
 // #endif
 
+    /*
+     * MayOverlap()
+     *
+     * False only if no char is in both classes. The answer is exact over
+     * Latin-1 and over the ranges of the classes; above Latin-1, a class
+     * that is negated is assumed to overlap any other that has chars there,
+     * a subtracted class is ignored, and so are ranges too long to walk.
+     */
+    static boolean mayOverlap(String set1, String set2) {
+        Matcher m1 = new Matcher(set1);
+        Matcher m2 = new Matcher(set2);
+
+        for (int i = 0; i < m1._latin1.length; i++) {
+            if ((m1._latin1[i] & m2._latin1[i]) != 0) {
+                return true;
+            }
+        }
+
+        if (!m1.hasOtherChars() || !m2.hasOtherChars()) {
+            return false;
+        }
+
+        if (m1._negated || m2._negated || (m1._categories & m2._categories) != 0) {
+            return true;
+        }
+
+        // a char above Latin-1 that is in both is in the ranges of one of them, or in the categories of both
+        return m1.mayOverlapRanges(m2) || m2.mayOverlapRanges(m1);
+    }
+
+    /*
+     * Matcher
+     *
+     * A character class compiled once from its string representation, so
+     * that testing a char doesn't walk the string again: the Latin-1 chars
+     * are looked up in a bitmap, and the others are searched in the ranges
+     * of the set, then their category in a mask of the categories of the
+     * class, before the negation and the subtraction are applied.
+     */
+    static final class Matcher {
+        private static final int MaxOverlapWalk = 4096;
+
+        private final String _set;
+        private final long[] _latin1;         // the Latin-1 chars in the class (after negation and subtraction)
+        private final char[] _ranges;         // the ranges of the set: the first char in, the first char out, ...
+        private final int _categories;        // the Unicode categories of the class, as a mask
+        private final boolean _negated;
+        private final Matcher _subtraction;   // the class subtracted from this one (may be null)
+
+        Matcher(String set) {
+            this(set, 0);
+        }
+
+        private Matcher(String set, int start) {
+            int mySetLength = set.charAt(start + SETLENGTH);
+            int myCategoryLength = set.charAt(start + CATEGORYLENGTH);
+            int myEndPosition = start + SETSTART + mySetLength + myCategoryLength;
+
+            _set = set;
+            _ranges = set.substring(start + SETSTART, start + SETSTART + mySetLength).toCharArray();
+            _categories = myCategoryLength == 0 ? 0 : categoryMask(set, start, mySetLength, myCategoryLength);
+            _negated = set.charAt(start + FLAGS) == 1;
+            _subtraction = set.length() > myEndPosition ? new Matcher(set, myEndPosition) : null;
+
+            _latin1 = new long[4];
+            for (char ch = 0; ch < 256; ch++) {
+                if (charInClassRecursive(ch, set, start)) {
+                    _latin1[ch >> 6] |= 1L << ch;
+                }
+            }
+        }
+
+        /*
+         * Determines a character's membership in the class, as charInClass does.
+         */
+        boolean matches(char ch) {
+            if (ch < 256) {
+                return (_latin1[ch >> 6] & (1L << ch)) != 0;
+            }
+
+            return matchesOther(ch);
+        }
+
+        private boolean matchesOther(char ch) {
+            // count the bounds of the ranges up to ch: the char is in a range if it's odd
+            int min = 0;
+            int max = _ranges.length;
+            while (min != max) {
+                int mid = (min + max) >>> 1;
+                if (ch < _ranges[mid])
+                    max = mid;
+                else
+                    min = mid + 1;
+            }
+
+            boolean b = (min & 0x1) == 1
+                    || (_categories != 0 && (_categories & (1 << Characters.getUnicodeCategory(ch))) != 0);
+
+            // the negation applies before the subtraction, as in charInClassRecursive
+            if (_negated)
+                b = !b;
+
+            return b && (_subtraction == null || !_subtraction.matches(ch));
+        }
+
+        /*
+         * True if only ASCII chars are in the class.
+         */
+        boolean isAscii() {
+            return !hasOtherChars() && (_latin1[2] | _latin1[3]) == 0;
+        }
+
+        /*
+         * True if some char above Latin-1 may be in the class.
+         */
+        private boolean hasOtherChars() {
+            return _negated || _categories != 0
+                    || (_ranges.length & 0x1) == 1 || (_ranges.length > 0 && _ranges[_ranges.length - 1] > 256);
+        }
+
+        /*
+         * True if a char above Latin-1 in the ranges of this class may be in the other one.
+         */
+        private boolean mayOverlapRanges(Matcher other) {
+            for (int i = 0; i < _ranges.length; i += 2) {
+                int first = Math.max(_ranges[i], 256);
+                int last = i + 1 < _ranges.length ? _ranges[i + 1] : LastChar + 1;
+
+                if (last - first > MaxOverlapWalk) {
+                    return true;
+                }
+
+                for (int ch = first; ch < last; ch++) {
+                    if (other.matches((char) ch)) {
+                        return true;
+                    }
+                }
+            }
+
+            return false;
+        }
+
+        /*
+         * Used when dumping for debugging.
+         */
+        @Override
+        public String toString() {
+            return _set;
+        }
+    }
+
     // Lower case mapping descriptor.
     private static final class LowerCaseMapping {
         LowerCaseMapping(char chMin, char chMax, int lcOp, int data) {
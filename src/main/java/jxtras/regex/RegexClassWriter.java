@@ -0,0 +1,477 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package jxtras.regex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// This RegexClassWriter class is internal to the regular expression package.
+// It is a minimal class file writer used by RegexCompiler to emit the
+// bytecode of a RegexRunner subclass without depending on any bytecode
+// library.
+
+// Implementation notes:
+//
+// Only the parts of the class file format that RegexCompiler needs are
+// supported: a constant pool with strings, integers, classes and method
+// references, and methods made up of a single Code attribute.
+//
+// The class file version is 49 (Java 5), so that the verifier infers the
+// stack map frames by itself and we never have to compute them.  The
+// generated code always keeps the operand stack empty at branch targets,
+// which keeps the type inference trivial.
+// @author  Tony Guo <tony.guo.peng@gmail.com>
+final class RegexClassWriter {
+    // the opcodes we emit
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC = 0x12;
+    static final int LDC_W = 0x13;
+    static final int ILOAD = 0x15;
+    static final int ALOAD = 0x19;
+    static final int ISTORE = 0x36;
+    static final int INEG = 0x74;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int GOTO = 0xa7;
+    static final int TABLESWITCH = 0xaa;
+    static final int IRETURN = 0xac;
+    static final int RETURN = 0xb1;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int CONSTANT_Utf8 = 1;
+    private static final int CONSTANT_Integer = 3;
+    private static final int CONSTANT_Class = 7;
+    private static final int CONSTANT_String = 8;
+    private static final int CONSTANT_Methodref = 10;
+    private static final int CONSTANT_NameAndType = 12;
+
+    // the largest number of bytes a method body may have
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    private final Bytes _pool = new Bytes();
+    private final Map<String, Integer> _poolIndex = new HashMap<String, Integer>();
+    private int _poolCount = 1;
+
+    private final List<Method> _methods = new ArrayList<Method>();
+    private final int _thisClass;
+    private final int _superClass;
+
+    RegexClassWriter(String name, String superName) {
+        _thisClass = classConstant(name);
+        _superClass = classConstant(superName);
+    }
+
+    /*
+     * Adds a method to the class and returns it so that its code can be emitted.
+     */
+    Method method(int access, String name, String descriptor, int maxStack, int maxLocals) {
+        Method method = new Method(access, utf8Constant(name), utf8Constant(descriptor),
+                maxStack, maxLocals);
+        _methods.add(method);
+        return method;
+    }
+
+    /*
+     * Returns the class file, ready to be given to ClassLoader.defineClass().
+     */
+    byte[] toByteArray() {
+        int code = utf8Constant("Code");
+        Bytes out = new Bytes();
+
+        out.putInt(0xCAFEBABE);
+        out.putShort(0);                // minor version
+        out.putShort(49);               // major version
+        out.putShort(_poolCount);
+        out.putBytes(_pool);
+        out.putShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.putShort(_thisClass);
+        out.putShort(_superClass);
+        out.putShort(0);                // interfaces
+        out.putShort(0);                // fields
+        out.putShort(_methods.size());
+
+        for (Method method : _methods) {
+            method.resolve();
+
+            out.putShort(method._access);
+            out.putShort(method._name);
+            out.putShort(method._descriptor);
+            out.putShort(1);            // attributes
+            out.putShort(code);
+            out.putInt(12 + method._code._length);
+            out.putShort(method._maxStack);
+            out.putShort(method._maxLocals);
+            out.putInt(method._code._length);
+            out.putBytes(method._code);
+            out.putShort(0);            // exception table
+            out.putShort(0);            // attributes
+        }
+
+        out.putShort(0);                // attributes
+
+        return out.toByteArray();
+    }
+
+    int utf8Constant(String value) {
+        String key = "U" + value;
+        Integer index = _poolIndex.get(key);
+
+        if (index == null) {
+            Bytes utf = new Bytes();
+
+            // The class file uses "modified" UTF-8: every char, including
+            // unpaired surrogates and '\0', is encoded on its own.
+            for (int i = 0; i < value.length(); i++) {
+                char ch = value.charAt(i);
+
+                if (ch != 0 && ch < 0x80) {
+                    utf.putByte(ch);
+                } else if (ch < 0x800) {
+                    utf.putByte(0xC0 | (ch >> 6));
+                    utf.putByte(0x80 | (ch & 0x3F));
+                } else {
+                    utf.putByte(0xE0 | (ch >> 12));
+                    utf.putByte(0x80 | ((ch >> 6) & 0x3F));
+                    utf.putByte(0x80 | (ch & 0x3F));
+                }
+            }
+
+            if (utf._length > 65535) {
+                throw new IllegalStateException("constant too large.");
+            }
+
+            _pool.putByte(CONSTANT_Utf8);
+            _pool.putShort(utf._length);
+            _pool.putBytes(utf);
+            index = newConstant(key, 1);
+        }
+
+        return index;
+    }
+
+    int classConstant(String internalName) {
+        String key = "C" + internalName;
+        Integer index = _poolIndex.get(key);
+
+        if (index == null) {
+            int name = utf8Constant(internalName);
+
+            _pool.putByte(CONSTANT_Class);
+            _pool.putShort(name);
+            index = newConstant(key, 1);
+        }
+
+        return index;
+    }
+
+    int stringConstant(String value) {
+        String key = "S" + value;
+        Integer index = _poolIndex.get(key);
+
+        if (index == null) {
+            int utf = utf8Constant(value);
+
+            _pool.putByte(CONSTANT_String);
+            _pool.putShort(utf);
+            index = newConstant(key, 1);
+        }
+
+        return index;
+    }
+
+    int integerConstant(int value) {
+        String key = "I" + value;
+        Integer index = _poolIndex.get(key);
+
+        if (index == null) {
+            _pool.putByte(CONSTANT_Integer);
+            _pool.putInt(value);
+            index = newConstant(key, 1);
+        }
+
+        return index;
+    }
+
+    int methodConstant(String owner, String name, String descriptor) {
+        String key = "M" + owner + '.' + name + descriptor;
+        Integer index = _poolIndex.get(key);
+
+        if (index == null) {
+            int ownerIndex = classConstant(owner);
+            int nameIndex = utf8Constant(name);
+            int descriptorIndex = utf8Constant(descriptor);
+
+            String ntKey = "N" + name + descriptor;
+            Integer nameAndType = _poolIndex.get(ntKey);
+
+            if (nameAndType == null) {
+                _pool.putByte(CONSTANT_NameAndType);
+                _pool.putShort(nameIndex);
+                _pool.putShort(descriptorIndex);
+                nameAndType = newConstant(ntKey, 1);
+            }
+
+            _pool.putByte(CONSTANT_Methodref);
+            _pool.putShort(ownerIndex);
+            _pool.putShort(nameAndType);
+            index = newConstant(key, 1);
+        }
+
+        return index;
+    }
+
+    private int newConstant(String key, int slots) {
+        int index = _poolCount;
+
+        if (index + slots > 65535) {
+            throw new IllegalStateException("too many constants.");
+        }
+
+        _poolCount += slots;
+        _poolIndex.put(key, index);
+        return index;
+    }
+
+    /*
+     * A branch target inside a method.  Branches to a label that is not yet
+     * marked are recorded and patched when the method is resolved.
+     */
+    static final class Label {
+        int _position = -1;
+    }
+
+    /*
+     * The code of one method.
+     */
+    final class Method {
+        final int _access;
+        final int _name;
+        final int _descriptor;
+        final int _maxStack;
+        final int _maxLocals;
+        final Bytes _code = new Bytes();
+
+        // pending branches: the instruction start, the offset slot, the slot width
+        private final List<Label> _fixupLabels = new ArrayList<Label>();
+        private final List<int[]> _fixups = new ArrayList<int[]>();
+
+        Method(int access, int name, int descriptor, int maxStack, int maxLocals) {
+            _access = access;
+            _name = name;
+            _descriptor = descriptor;
+            _maxStack = maxStack;
+            _maxLocals = maxLocals;
+        }
+
+        void op(int opcode) {
+            _code.putByte(opcode);
+        }
+
+        void mark(Label label) {
+            label._position = _code._length;
+        }
+
+        void load(int opcode, int local) {
+            _code.putByte(opcode);
+            _code.putByte(local);
+        }
+
+        /*
+         * Pushes an int (or char, or boolean) constant onto the operand stack.
+         */
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                _code.putByte(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                _code.putByte(BIPUSH);
+                _code.putByte(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                _code.putByte(SIPUSH);
+                _code.putShort(value);
+            } else {
+                ldc(integerConstant(value));
+            }
+        }
+
+        void pushBoolean(boolean value) {
+            pushInt(value ? 1 : 0);
+        }
+
+        void pushString(String value) {
+            ldc(stringConstant(value));
+        }
+
+        private void ldc(int index) {
+            if (index < 256) {
+                _code.putByte(LDC);
+                _code.putByte(index);
+            } else {
+                _code.putByte(LDC_W);
+                _code.putShort(index);
+            }
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor) {
+            _code.putByte(opcode);
+            _code.putShort(methodConstant(owner, name, descriptor));
+        }
+
+        /*
+         * Emits a conditional or unconditional branch with a 16 bit offset.
+         */
+        void branch(int opcode, Label label) {
+            int start = _code._length;
+
+            _code.putByte(opcode);
+            fixup(label, start, 2);
+        }
+
+        /*
+         * Emits a tableswitch covering [low, low + labels.length); null entries
+         * go to the default label.
+         */
+        void tableswitch(int low, Label defaultLabel, Label[] labels) {
+            int start = _code._length;
+
+            _code.putByte(TABLESWITCH);
+            while ((_code._length & 3) != 0) {
+                _code.putByte(0);
+            }
+
+            fixup(defaultLabel, start, 4);
+            _code.putInt(low);
+            _code.putInt(low + labels.length - 1);
+
+            for (Label label : labels) {
+                fixup(label != null ? label : defaultLabel, start, 4);
+            }
+        }
+
+        private void fixup(Label label, int start, int width) {
+            _fixupLabels.add(label);
+            _fixups.add(new int[] {start, _code._length, width});
+
+            if (width == 2) {
+                _code.putShort(0);
+            } else {
+                _code.putInt(0);
+            }
+        }
+
+        /*
+         * Patches all the branch offsets once every label has been marked.
+         */
+        void resolve() {
+            if (_code._length > MAX_CODE_LENGTH) {
+                throw new IllegalStateException("method too large.");
+            }
+
+            for (int i = 0; i < _fixups.size(); i++) {
+                Label label = _fixupLabels.get(i);
+                int[] fixup = _fixups.get(i);
+
+                if (label._position < 0) {
+                    throw new IllegalStateException("unmarked label.");
+                }
+
+                int offset = label._position - fixup[0];
+
+                if (fixup[2] == 2) {
+                    if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                        throw new IllegalStateException("branch too far.");
+                    }
+                    _code.setShort(fixup[1], offset);
+                } else {
+                    _code.setInt(fixup[1], offset);
+                }
+            }
+
+            _fixups.clear();
+            _fixupLabels.clear();
+        }
+    }
+
+    /*
+     * A growable big-endian byte buffer.
+     */
+    static final class Bytes {
+        byte[] _data = new byte[256];
+        int _length;
+
+        void putByte(int b) {
+            if (_length == _data.length) {
+                byte[] data = new byte[_data.length * 2];
+                System.arraycopy(_data, 0, data, 0, _length);
+                _data = data;
+            }
+            _data[_length++] = (byte) b;
+        }
+
+        void putShort(int s) {
+            putByte(s >>> 8);
+            putByte(s);
+        }
+
+        void putInt(int i) {
+            putShort(i >>> 16);
+            putShort(i);
+        }
+
+        void putBytes(Bytes bytes) {
+            for (int i = 0; i < bytes._length; i++) {
+                putByte(bytes._data[i]);
+            }
+        }
+
+        void setShort(int index, int s) {
+            _data[index] = (byte) (s >>> 8);
+            _data[index + 1] = (byte) s;
+        }
+
+        void setInt(int index, int i) {
+            setShort(index, i >>> 16);
+            setShort(index + 2, i);
+        }
+
+        byte[] toByteArray() {
+            byte[] result = new byte[_length];
+            System.arraycopy(_data, 0, result, 0, _length);
+            return result;
+        }
+    }
+}
@@ -28,6 +28,7 @@ package jxtras.regex;
 
 import jxtras.regex.support.R;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -103,6 +104,25 @@ final class RegexCode {
     static final int ECMABoundary = 41;       //                          \b
     static final int NonECMABoundary = 42;    //                          \B
 
+    // loops that never give back what they matched, since nothing that
+    // may follow them can match it (see RegexNode.makeLoopsAtomic)
+    static final int Oneloopatomic = 43;      // lef      char,max        a {,n}
+    static final int Notoneloopatomic = 44;   // lef      char,max        .{,n}
+    static final int Setloopatomic = 45;      // lef      set,max         [\d]{,n}
+
+    // unbounded loops followed by a literal, which jump from one place the
+    // literal is found at to the next instead of stepping a char at a time
+    static final int Notoneloopscan = 46;     // lef,back char,string     .*abc
+    static final int Notonelazyscan = 47;     // lef,back char,string     .*?abc
+
+    // an alternation whose branches start with different chars: jumps to
+    // the branch the next char starts, through the Gotos that follow it
+    static final int Switch = 48;             //          string          abc|def|xyz
+
+    // a capture of instructions that never backtrack (see RegexPeephole)
+    static final int Spanmark = 49;           //                          save position in a register
+    static final int Capturespan = 50;        // back     group           define group from the register
+
     // modifiers for alternate modes
     static final int Mask = 63;   // Mask to get unmodified ordinary operator
     static final int Rtl = 64;    // bit to indicate that we're reverse scanning.
@@ -112,18 +132,30 @@ final class RegexCode {
 
     int[] _codes;                    // the code
     String[] _strings;               // the string/set table
+    RegexCharClass.Matcher[] _matchers; // the sets of the table, compiled (null for the strings)
+    JumpTable[] _jumpTables;         // the first chars of the Switch branches in the table, compiled (null for the others)
     // not used!
     // internal int[] _sparseIndex;  // a list of the groups that are used
     int _trackcount;                 // how many instructions use backtracking
     Map<Integer, Integer> _caps;     // mapping of user group numbers -> impl group slots
     int _capsize;                    // number of impl group slots
     RegexPrefix _fcPrefix;           // the set of candidate first characters (may be null)
+    RegexCharClass.Matcher _fcMatcher; // the set of candidate first characters, compiled (may be null)
     RegexBoyerMoore _bmPrefix;       // the fixed prefix string as a Boyer-Moore machine (may be null)
+    RegexAhoCorasick _acPrefix;      // the leading alternation of literals as an Aho-Corasick machine (may be null)
+    RegexBoyerMoore _reqLiteral;     // a string that every match contains, as a Boyer-Moore machine (may be null)
     int _anchors;                    // the set of zero-length start anchors (RegexFCD.Bol, etc)
+    int _trailingAnchor;             // RegexFCD.End or EndZ if a match ends at the end, else 0
+    RegexBoyerMoore _trailingLiteral; // a string that every match ends with, if it ends at the end, right to left (may be null)
+    int _minLength;                  // the fewest chars a match may have
+    int _maxLength;                  // the most chars a match may have (Integer.MAX_VALUE if no limit)
     boolean _rightToLeft;            // true if right to left
+    RegexNFA _nfa;                   // the automaton for NonBacktracking (may be null)
+    RegexNFA _reverseNfa;            // the reversed automaton, which finds where a match starts
+    RegexMemo _memo;                 // the points at which failures are memoized, for Memoize (may be null)
 
     // constructor
-    RegexCode(int[] codes, List<String> stringlist, int trackcount, Map<Integer, Integer> caps, int capsize, RegexBoyerMoore bmPrefix, RegexPrefix fcPrefix, int anchors, boolean rightToLeft) {
+    RegexCode(int[] codes, List<String> stringlist, int trackcount, Map<Integer, Integer> caps, int capsize, RegexBoyerMoore bmPrefix, RegexAhoCorasick acPrefix, RegexBoyerMoore reqLiteral, RegexPrefix fcPrefix, int anchors, int trailingAnchor, RegexBoyerMoore trailingLiteral, int minLength, int maxLength, boolean rightToLeft) {
         if (codes == null) {
             throw new IllegalArgumentException("codes cannot be null.");
         }
@@ -139,9 +171,39 @@ final class RegexCode {
         _caps = caps;
         _capsize = capsize;
         _bmPrefix = bmPrefix;
+        _acPrefix = acPrefix;
+        _reqLiteral = reqLiteral;
         _fcPrefix = fcPrefix;
+        _fcMatcher = fcPrefix != null ? new RegexCharClass.Matcher(fcPrefix.prefix()) : null;
         _anchors = anchors;
+        _trailingAnchor = trailingAnchor;
+        _trailingLiteral = trailingLiteral;
+        _minLength = minLength;
+        _maxLength = maxLength;
         _rightToLeft = rightToLeft;
+
+        // compile the sets once, rather than walking them for every char
+        _matchers = new RegexCharClass.Matcher[_strings.length];
+        _jumpTables = new JumpTable[_strings.length];
+        for (int i = 0; i < codes.length; i += opcodeSize(codes[i])) {
+            switch (codes[i] & Mask) {
+                case Switch:
+                    if (_jumpTables[codes[i + 1]] == null) {
+                        _jumpTables[codes[i + 1]] = new JumpTable(_strings[codes[i + 1]]);
+                    }
+                    break;
+
+                case Set:
+                case Setrep:
+                case Setloop:
+                case Setloopatomic:
+                case Setlazy:
+                    if (_matchers[codes[i + 1]] == null) {
+                        _matchers[codes[i + 1]] = new RegexCharClass.Matcher(_strings[codes[i + 1]]);
+                    }
+                    break;
+            }
+        }
     }
 
     static boolean opcodeBacktracks(int op) {
@@ -154,6 +216,8 @@ final class RegexCode {
             case Onelazy:
             case Notonelazy:
             case Setlazy:
+            case Notoneloopscan:
+            case Notonelazyscan:
             case Lazybranch:
             case Branchmark:
             case Lazybranchmark:
@@ -168,6 +232,7 @@ final class RegexCode {
             case Backjump:
             case Forejump:
             case Goto:
+            case Capturespan:
                 return true;
 
             default:
@@ -198,6 +263,7 @@ final class RegexCode {
             case Backjump:
             case Forejump:
             case Stop:
+            case Spanmark:
                 return 1;
 
             case One:
@@ -213,6 +279,8 @@ final class RegexCode {
             case Lazybranchmark:
             case Prune:
             case Set:
+            case Switch:
+            case Capturespan:
                 return 2;
 
             case Capturemark:
@@ -227,6 +295,11 @@ final class RegexCode {
             case Setlazy:
             case Setrep:
             case Setloop:
+            case Oneloopatomic:
+            case Notoneloopatomic:
+            case Setloopatomic:
+            case Notoneloopscan:
+            case Notonelazyscan:
                 return 3;
 
             default:
@@ -250,6 +323,9 @@ final class RegexCode {
 // #if ECMA
          "ECMABoundary", "NonECMABoundary",
 // #endif
+         "Oneloopatomic", "Notoneloopatomic", "Setloopatomic",
+         "Notoneloopscan", "Notonelazyscan",
+         "Switch", "Spanmark", "Capturespan",
     };
 
     static String operatorDescription(int Opcode) {
@@ -281,27 +357,40 @@ final class RegexCode {
             case Notonerep:
             case Oneloop:
             case Notoneloop:
+            case Oneloopatomic:
+            case Notoneloopatomic:
             case Onelazy:
             case Notonelazy:
                 sb.append("Ch = ");
                 sb.append(RegexCharClass.charDescription((char) _codes[offset + 1]));
                 break;
 
+            case Notoneloopscan:
+            case Notonelazyscan:
+                sb.append("Ch = ");
+                sb.append(RegexCharClass.charDescription((char) _codes[offset + 1]));
+                sb.append(", String = ");
+                sb.append(_strings[_codes[offset + 2]]);
+                break;
+
             case Set:
             case Setrep:
             case Setloop:
+            case Setloopatomic:
             case Setlazy:
                 sb.append("Set = ");
                 sb.append(RegexCharClass.setDescription(_strings[_codes[offset + 1]]));
                 break;
 
             case Multi:
+            case Switch:
                 sb.append("String = ");
                 sb.append(_strings[_codes[offset + 1]]);
                 break;
 
             case Ref:
             case Testref:
+            case Capturespan:
                 sb.append("Index = ");
                 sb.append(_codes[offset + 1]);
                 break;
@@ -342,6 +431,9 @@ final class RegexCode {
             case Setrep:
             case Setloop:
             case Setlazy:
+            case Oneloopatomic:
+            case Notoneloopatomic:
+            case Setloopatomic:
                 sb.append(", Rep = ");
                 if (_codes[offset + 2] == Integer.MAX_VALUE) // TODO: int32
                     sb.append("inf");
@@ -368,12 +460,21 @@ final class RegexCode {
         System.out.println("Direction:  " + (_rightToLeft ? "right-to-left" : "left-to-right"));
         System.out.println("Firstchars: " + (_fcPrefix == null ? "n/a" : RegexCharClass.setDescription(_fcPrefix.prefix())));
         System.out.println("Prefix:     " + (_bmPrefix == null ? "n/a" : Regex.escape(_bmPrefix.toString())));
+        System.out.println("Prefixes:   " + (_acPrefix == null ? "n/a" : Regex.escape(_acPrefix.toString())));
+        System.out.println("Required:   " + (_reqLiteral == null ? "n/a" : Regex.escape(_reqLiteral.toString())));
         System.out.println("Anchors:    " + RegexFCD.anchorDescription(_anchors));
+        System.out.println("Trailing:   " + RegexFCD.anchorDescription(_trailingAnchor) +
+                (_trailingLiteral == null ? "" : ", " + Regex.escape(_trailingLiteral.toString())));
+        System.out.println("Length:     " + _minLength + " to " + (_maxLength == Integer.MAX_VALUE ? "inf" : String.valueOf(_maxLength)));
         System.out.println("");
         if (_bmPrefix != null) {
             System.out.println("BoyerMoore:");
             System.out.println(_bmPrefix.dump("    "));
         }
+        if (_acPrefix != null) {
+            System.out.println("AhoCorasick:");
+            System.out.println(_acPrefix.dump("    "));
+        }
         for (int i = 0; i < _codes.length; ) {
             System.out.println(opcodeDescription(i));
             i += opcodeSize(_codes[i]);
@@ -382,4 +483,62 @@ final class RegexCode {
         System.out.println("");
     }
 // #endif
+
+    /*
+     * JumpTable
+     *
+     * The first chars of the branches of a Switch, the one of branch i at
+     * index i of the string. When they are close together, the branch is
+     * looked up in an array indexed by the char, otherwise the chars are
+     * searched in sorted order.
+     */
+    static final class JumpTable {
+        private static final int MaxDenseLength = 256;
+
+        private final char _min;
+        private final int[] _dense;      // 1 + the branch of each char from _min on, 0 for none (may be null)
+        private final char[] _keys;      // the chars, sorted, when _dense is null
+        private final int[] _branches;   // the branch of each of the sorted chars
+
+        JumpTable(String keys) {
+            char min = Character.MAX_VALUE;
+            char max = Character.MIN_VALUE;
+            for (int i = 0; i < keys.length(); i++) {
+                min = (char) Math.min(min, keys.charAt(i));
+                max = (char) Math.max(max, keys.charAt(i));
+            }
+
+            _min = min;
+
+            if (max - min < MaxDenseLength) {
+                _dense = new int[max - min + 1];
+                for (int i = 0; i < keys.length(); i++) {
+                    _dense[keys.charAt(i) - min] = i + 1;
+                }
+                _keys = null;
+                _branches = null;
+            } else {
+                _dense = null;
+                _keys = keys.toCharArray();
+                Arrays.sort(_keys);
+                _branches = new int[_keys.length];
+                for (int i = 0; i < _keys.length; i++) {
+                    _branches[i] = keys.indexOf(_keys[i]);
+                }
+            }
+        }
+
+        /*
+         * The branch that starts with the char, or -1 if none does.
+         */
+        int branch(char ch) {
+            if (_dense != null) {
+                int i = ch - _min;
+                return i >= 0 && i < _dense.length ? _dense[i] - 1 : -1;
+            }
+
+            int i = Arrays.binarySearch(_keys, ch);
+            return i >= 0 ? _branches[i] : -1;
+        }
+    }
 }
\ No newline at end of file
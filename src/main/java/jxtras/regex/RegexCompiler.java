@@ -0,0 +1,746 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package jxtras.regex;
+
+import java.lang.reflect.Constructor;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// This RegexCompiler class is internal to the Regex package.
+// It translates a block of RegexCode into the bytecode of a
+// CompiledRegexRunner subclass, for RegexOptions.Compiled.
+
+// Implementation notes:
+//
+// The generated go() method is laid out in three parts:
+//
+//  1. the forward code of every instruction, in code order, so that
+//     each instruction falls through into the next one;
+//  2. the backtracking code (Back and Back2) of the instructions
+//     that push backtracking frames;
+//  3. the backtrack dispatcher, which pops the code position of the
+//     top frame and jumps to the matching backtracking code through a
+//     tableswitch (one for Back, one for Back2).
+//
+// Jumps between instructions are compiled into direct branches, and the
+// operands (chars, sets, strings, counts, the Rtl and Ci modifiers) are
+// passed to the CompiledRegexRunner methods as constants.  Since the
+// backtracking frames have the same layout as in the interpreter, the
+// behavior is exactly that of the RegexInterpreter.
+//
+// Each generated class is defined in its own class loader so that it can
+// be unloaded as soon as the Regex (and its cache entry) is gone.
+// @author  Tony Guo <tony.guo.peng@gmail.com>
+final class RegexCompiler {
+    private static final String RUNNER = "jxtras/regex/CompiledRegexRunner";
+    private static final AtomicInteger _typeCount = new AtomicInteger();
+
+    private final RegexCode _code;
+    private final int[] _codes;
+    private final String[] _strings;
+
+    private RegexClassWriter _cw;
+    private RegexClassWriter.Method _ilg;
+
+    private RegexClassWriter.Label[] _forward;
+    private RegexClassWriter.Label[] _back;
+    private RegexClassWriter.Label[] _back2;
+    private RegexClassWriter.Label _backtrack;
+
+    private RegexCompiler(RegexCode code) {
+        _code = code;
+        _codes = code._codes;
+        _strings = code._strings;
+    }
+
+    /*
+     * This is the only function that should be called from outside.
+     * It compiles the RegexCode and returns a factory for the runners,
+     * or null if the code is too large to fit in a single method, in
+     * which case the caller falls back to the RegexInterpreter.
+     */
+    static RegexRunnerFactory compile(RegexCode code, int options) {
+        final Locale culture = (options & RegexOptions.CultureInvariant) != 0
+                ? Locale.ROOT : Locale.getDefault();
+        final RegexCode regexCode = code;
+        final Constructor<?> constructor;
+        String name = "jxtras/regex/RegexRunner" + _typeCount.incrementAndGet();
+
+        try {
+            byte[] bytes = new RegexCompiler(code).generate(name);
+            constructor = new RegexClassLoader(CompiledRegexRunner.class.getClassLoader())
+                    .define(name.replace('/', '.'), bytes).getConstructor();
+        } catch (IllegalStateException e) {
+            // the code doesn't fit into the class file limits
+            return null;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return new RegexRunnerFactory() {
+            @Override
+            RegexRunner createInstance() {
+                CompiledRegexRunner runner;
+
+                try {
+                    runner = (CompiledRegexRunner) constructor.newInstance();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+
+                runner.init(regexCode, culture);
+                return runner;
+            }
+        };
+    }
+
+    private byte[] generate(String name) {
+        _cw = new RegexClassWriter(name, RUNNER);
+
+        generateConstructor();
+        generateInitTrackCount();
+        generateFindFirstChar();
+        generateGo();
+
+        return _cw.toByteArray();
+    }
+
+    private void generateConstructor() {
+        _ilg = _cw.method(RegexClassWriter.ACC_PUBLIC, "<init>", "()V", 1, 1);
+        _ilg.load(RegexClassWriter.ALOAD, 0);
+        _ilg.invoke(RegexClassWriter.INVOKESPECIAL, RUNNER, "<init>", "()V");
+        _ilg.op(RegexClassWriter.RETURN);
+    }
+
+    private void generateInitTrackCount() {
+        // runtrackcount is a protected field of RegexRunner
+        _ilg = _cw.method(RegexClassWriter.ACC_PUBLIC | RegexClassWriter.ACC_FINAL,
+                "initTrackCount", "()V", 2, 1);
+        _ilg.load(RegexClassWriter.ALOAD, 0);
+        _ilg.pushInt(_code._trackcount);
+        _ilg.invoke(RegexClassWriter.INVOKEVIRTUAL, RUNNER, "setTrackCount", "(I)V");
+        _ilg.op(RegexClassWriter.RETURN);
+    }
+
+    /*
+     * The common cases (no anchors, no Boyer-Moore or Aho-Corasick prefix)
+     * get a first char search specialized for their prefix; everything else
+     * goes through the general search in CompiledRegexRunner.
+     */
+    private void generateFindFirstChar() {
+        int anchors = _code._anchors & (RegexFCD.Beginning | RegexFCD.Start | RegexFCD.StartOrBol |
+                RegexFCD.EndZ | RegexFCD.End);
+        RegexPrefix fcPrefix = _code._fcPrefix;
+
+        _ilg = _cw.method(RegexClassWriter.ACC_PUBLIC | RegexClassWriter.ACC_FINAL,
+                "findFirstChar", "()Z", 5, 1);
+
+        if (anchors != 0 || _code._bmPrefix != null || _code._acPrefix != null) {
+            _ilg.load(RegexClassWriter.ALOAD, 0);
+            _ilg.invoke(RegexClassWriter.INVOKEVIRTUAL, RUNNER, "findFirstCharAnchored", "()Z");
+        } else if (fcPrefix == null) {
+            _ilg.pushBoolean(true);
+        } else if (RegexCharClass.isSingleton(fcPrefix.prefix())) {
+            _ilg.load(RegexClassWriter.ALOAD, 0);
+            _ilg.pushInt(RegexCharClass.singletonChar(fcPrefix.prefix()));
+            _ilg.pushBoolean(_code._rightToLeft);
+            _ilg.pushBoolean(fcPrefix.isCaseInsensitive());
+            _ilg.invoke(RegexClassWriter.INVOKEVIRTUAL, RUNNER, "findFirstCharSingleton", "(CZZ)Z");
+        } else {
+            _ilg.load(RegexClassWriter.ALOAD, 0);
+            _ilg.pushBoolean(_code._rightToLeft);
+            _ilg.pushBoolean(fcPrefix.isCaseInsensitive());
+            _ilg.invoke(RegexClassWriter.INVOKEVIRTUAL, RUNNER, "findFirstCharSet", "(ZZ)Z");
+        }
+
+        _ilg.op(RegexClassWriter.IRETURN);
+    }
+
+    private void generateGo() {
+        int length = _codes.length;
+
+        _ilg = _cw.method(RegexClassWriter.ACC_PUBLIC | RegexClassWriter.ACC_FINAL,
+                "go", "()V", 8, 2);
+
+        _forward = new RegexClassWriter.Label[length];
+        _back = new RegexClassWriter.Label[length];
+        _back2 = new RegexClassWriter.Label[length];
+        _backtrack = new RegexClassWriter.Label();
+
+        for (int codepos = 0; codepos < length; codepos += RegexCode.opcodeSize(_codes[codepos])) {
+            _forward[codepos] = new RegexClassWriter.Label();
+        }
+
+        // the forward code
+        for (int codepos = 0; codepos < length; codepos += RegexCode.opcodeSize(_codes[codepos])) {
+            _ilg.mark(_forward[codepos]);
+            generateForward(codepos);
+        }
+
+        // the backtracking code
+        for (int codepos = 0; codepos < length; codepos += RegexCode.opcodeSize(_codes[codepos])) {
+            generateBack(codepos);
+        }
+
+        generateBacktrack();
+    }
+
+    /*
+     * Emits the backtrack dispatcher:
+     *
+     *      int newpos = backtrackTarget();
+     *      if (newpos < 0) goto back2[-newpos]; else goto back[newpos];
+     */
+    private void generateBacktrack() {
+        RegexClassWriter.Label back2 = new RegexClassWriter.Label();
+        RegexClassWriter.Label unknown = new RegexClassWriter.Label();
+
+        _ilg.mark(_backtrack);
+        _ilg.load(RegexClassWriter.ALOAD, 0);
+        _ilg.invoke(RegexClassWriter.INVOKEVIRTUAL, RUNNER, "backtrackTarget", "()I");
+        _ilg.load(RegexClassWriter.ISTORE, 1);
+        _ilg.load(RegexClassWriter.ILOAD, 1);
+        _ilg.branch(RegexClassWriter.IFLT, back2);
+        _ilg.load(RegexClassWriter.ILOAD, 1);
+        _ilg.tableswitch(0, unknown, _back);
+
+        _ilg.mark(back2);
+        _ilg.load(RegexClassWriter.ILOAD, 1);
+        _ilg.op(RegexClassWriter.INEG);
+        _ilg.tableswitch(0, unknown, _back2);
+
+        _ilg.mark(unknown);
+        _ilg.load(RegexClassWriter.ALOAD, 0);
+        _ilg.invoke(RegexClassWriter.INVOKEVIRTUAL, RUNNER, "unimplementedState", "()V");
+        _ilg.op(RegexClassWriter.RETURN);
+    }
+
+    private void generateForward(int codepos) {
+        int op = _codes[codepos];
+        int next = codepos + RegexCode.opcodeSize(op);
+
+        switch (op & ~(RegexCode.Rtl | RegexCode.Ci)) {
+            case RegexCode.Stop:
+                _ilg.op(RegexClassWriter.RETURN);
+                return;
+
+            case RegexCode.Nothing:
+                backtrack();
+                return;
+
+            case RegexCode.Goto:
+                jump(codepos, operand(codepos, 0));
+                return;
+
+            case RegexCode.Testref:
+                call("opTestref", "(I)Z", operand(codepos, 0));
+                _ilg.branch(RegexClassWriter.IFEQ, _backtrack);
+                break;
+
+            case RegexCode.Switch: {
+                // the branches are where the Gotos that follow the Switch go to
+                RegexClassWriter.Label[] branches = new RegexClassWriter.Label[_strings[operand(codepos, 0)].length()];
+                for (int i = 0; i < branches.length; i++) {
+                    branches[i] = _forward[operand(next + 2 * i, 0)];
+                }
+
+                call("opSwitch", "(I)I", operand(codepos, 0));
+                _ilg.tableswitch(0, _backtrack, branches);
+                return;
+            }
+
+            case RegexCode.Lazybranch:
+                call("opLazybranch", "(I)V", codepos);
+                break;
+
+            case RegexCode.Setmark:
+                call("opSetmark", "(I)V", codepos);
+                break;
+
+            case RegexCode.Nullmark:
+                call("opNullmark", "(I)V", codepos);
+                break;
+
+            case RegexCode.Getmark:
+                call("opGetmark", "(I)V", codepos);
+                break;
+
+            case RegexCode.Spanmark:
+                call("opSpanmark", "()V");
+                break;
+
+            case RegexCode.Capturespan:
+                call("opCapturespan", "(II)V", codepos, operand(codepos, 0));
+                break;
+
+            case RegexCode.Capturemark:
+                call("opCapturemark", "(III)Z", codepos, operand(codepos, 0), operand(codepos, 1));
+                _ilg.branch(RegexClassWriter.IFEQ, _backtrack);
+                break;
+
+            case RegexCode.Branchmark:
+                call("opBranchmark", "(I)Z", codepos);
+                loopIfTrue(codepos, operand(codepos, 0));
+                break;
+
+            case RegexCode.Lazybranchmark:
+                call("opLazybranchmark", "(I)V", codepos);
+                break;
+
+            case RegexCode.Setcount:
+                call("opSetcount", "(II)V", codepos, operand(codepos, 0));
+                break;
+
+            case RegexCode.Nullcount:
+                call("opNullcount", "(II)V", codepos, operand(codepos, 0));
+                break;
+
+            case RegexCode.Branchcount:
+                call("opBranchcount", "(II)Z", codepos, operand(codepos, 1));
+                loopIfTrue(codepos, operand(codepos, 0));
+                break;
+
+            case RegexCode.Lazybranchcount:
+                call("opLazybranchcount", "(I)Z", codepos);
+                loopIfTrue(codepos, operand(codepos, 0));
+                break;
+
+            case RegexCode.Setjump:
+                call("opSetjump", "(I)V", codepos);
+                break;
+
+            case RegexCode.Backjump:
+                call("opBackjump", "()V");
+                backtrack();
+                return;
+
+            case RegexCode.Forejump:
+                call("opForejump", "(I)V", codepos);
+                break;
+
+            case RegexCode.Bol:
+                test("opBol");
+                break;
+
+            case RegexCode.Eol:
+                test("opEol");
+                break;
+
+            case RegexCode.Boundary:
+                test("opBoundary");
+                break;
+
+            case RegexCode.Nonboundary:
+                test("opNonboundary");
+                break;
+
+            case RegexCode.ECMABoundary:
+                test("opECMABoundary");
+                break;
+
+            case RegexCode.NonECMABoundary:
+                test("opNonECMABoundary");
+                break;
+
+            case RegexCode.Beginning:
+                test("opBeginning");
+                break;
+
+            case RegexCode.Start:
+                test("opStart");
+                break;
+
+            case RegexCode.EndZ:
+                test("opEndZ");
+                break;
+
+            case RegexCode.End:
+                test("opEnd");
+                break;
+
+            case RegexCode.One:
+                charOp("opOne", op, operand(codepos, 0));
+                break;
+
+            case RegexCode.Notone:
+                charOp("opNotone", op, operand(codepos, 0));
+                break;
+
+            case RegexCode.Set:
+                _ilg.load(RegexClassWriter.ALOAD, 0);
+                _ilg.pushInt(operand(codepos, 0));
+                modifiers(op);
+                invoke("opSet", "(IZZ)Z");
+                _ilg.branch(RegexClassWriter.IFEQ, _backtrack);
+                break;
+
+            case RegexCode.Multi:
+                stringOp("opMulti", op, _strings[operand(codepos, 0)]);
+                break;
+
+            case RegexCode.Ref:
+                _ilg.load(RegexClassWriter.ALOAD, 0);
+                _ilg.pushInt(operand(codepos, 0));
+                modifiers(op);
+                invoke("opRef", "(IZZ)Z");
+                _ilg.branch(RegexClassWriter.IFEQ, _backtrack);
+                break;
+
+            case RegexCode.Onerep:
+            case RegexCode.Notonerep:
+                _ilg.load(RegexClassWriter.ALOAD, 0);
+                _ilg.pushInt(operand(codepos, 0));
+                _ilg.pushInt(operand(codepos, 1));
+                modifiers(op);
+                invoke((op & RegexCode.Mask) == RegexCode.Onerep ? "opOnerep" : "opNotonerep", "(CIZZ)Z");
+                _ilg.branch(RegexClassWriter.IFEQ, _backtrack);
+                break;
+
+            case RegexCode.Setrep:
+                _ilg.load(RegexClassWriter.ALOAD, 0);
+                _ilg.pushInt(operand(codepos, 0));
+                _ilg.pushInt(operand(codepos, 1));
+                modifiers(op);
+                invoke("opSetrep", "(IIZZ)Z");
+                _ilg.branch(RegexClassWriter.IFEQ, _backtrack);
+                break;
+
+            case RegexCode.Oneloop:
+            case RegexCode.Notoneloop:
+                _ilg.load(RegexClassWriter.ALOAD, 0);
+                _ilg.pushInt(codepos);
+                _ilg.pushInt(operand(codepos, 0));
+                _ilg.pushInt(operand(codepos, 1));
+                modifiers(op);
+                invoke((op & RegexCode.Mask) == RegexCode.Oneloop ? "opOneloop" : "opNotoneloop", "(ICIZZ)V");
+                break;
+
+            case RegexCode.Setloop:
+                _ilg.load(RegexClassWriter.ALOAD, 0);
+                _ilg.pushInt(codepos);
+                _ilg.pushInt(operand(codepos, 0));
+                _ilg.pushInt(operand(codepos, 1));
+                modifiers(op);
+                invoke("opSetloop", "(IIIZZ)V");
+                break;
+
+            case RegexCode.Oneloopatomic:
+            case RegexCode.Notoneloopatomic:
+                _ilg.load(RegexClassWriter.ALOAD, 0);
+                _ilg.pushInt(operand(codepos, 0));
+                _ilg.pushInt(operand(codepos, 1));
+                modifiers(op);
+                invoke((op & RegexCode.Mask) == RegexCode.Oneloopatomic ? "opOneloopatomic" : "opNotoneloopatomic",
+                        "(CIZZ)V");
+                break;
+
+            case RegexCode.Setloopatomic:
+                _ilg.load(RegexClassWriter.ALOAD, 0);
+                _ilg.pushInt(operand(codepos, 0));
+                _ilg.pushInt(operand(codepos, 1));
+                modifiers(op);
+                invoke("opSetloopatomic", "(IIZZ)V");
+                break;
+
+            case RegexCode.Notoneloopscan:
+                _ilg.load(RegexClassWriter.ALOAD, 0);
+                _ilg.pushInt(codepos);
+                _ilg.pushInt(operand(codepos, 0));
+                _ilg.pushString(_strings[operand(codepos, 1)]);
+                invoke("opNotoneloopscan", "(ICLjava/lang/String;)Z");
+                _ilg.branch(RegexClassWriter.IFEQ, _backtrack);
+                break;
+
+            case RegexCode.Notonelazyscan:
+                _ilg.load(RegexClassWriter.ALOAD, 0);
+                _ilg.pushInt(codepos);
+                _ilg.pushInt(operand(codepos, 0));
+                invoke("opNotonelazyscan", "(IC)V");
+                break;
+
+            case RegexCode.Onelazy:
+            case RegexCode.Notonelazy:
+            case RegexCode.Setlazy:
+                _ilg.load(RegexClassWriter.ALOAD, 0);
+                _ilg.pushInt(codepos);
+                _ilg.pushInt(operand(codepos, 1));
+                _ilg.pushBoolean((op & RegexCode.Rtl) != 0);
+                invoke("opLazy", "(IIZ)V");
+                break;
+
+            default:
+                // Prune is never emitted by the RegexWriter
+                _ilg.load(RegexClassWriter.ALOAD, 0);
+                invoke("unimplementedState", "()V");
+                _ilg.op(RegexClassWriter.RETURN);
+                return;
+        }
+
+        // fall through into the next instruction
+        if (next >= _codes.length) {
+            backtrack();
+        }
+    }
+
+    private void generateBack(int codepos) {
+        int op = _codes[codepos];
+        int next = codepos + RegexCode.opcodeSize(op);
+
+        switch (op & ~(RegexCode.Rtl | RegexCode.Ci)) {
+            case RegexCode.Lazybranch:
+                markBack(codepos);
+                call("opLazybranchBack", "()V");
+                jump(codepos, operand(codepos, 0));
+                break;
+
+            case RegexCode.Setmark:
+            case RegexCode.Nullmark:
+                markBack(codepos);
+                call("opSetmarkBack", "()V");
+                backtrack();
+                break;
+
+            case RegexCode.Getmark:
+                markBack(codepos);
+                call("opGetmarkBack", "()V");
+                backtrack();
+                break;
+
+            case RegexCode.Capturemark:
+                markBack(codepos);
+                call("opCapturemarkBack", "(II)V", operand(codepos, 0), operand(codepos, 1));
+                backtrack();
+                break;
+
+            case RegexCode.Capturespan:
+                markBack(codepos);
+                call("opCapturespanBack", "()V");
+                backtrack();
+                break;
+
+            case RegexCode.Branchmark:
+                markBack(codepos);
+                call("opBranchmarkBack", "(I)V", codepos);
+                jump(codepos, next);                    // Straight
+                markBack2(codepos);
+                call("opBranchmarkBack2", "()V");
+                backtrack();
+                break;
+
+            case RegexCode.Lazybranchmark:
+                markBack(codepos);
+                call("opLazybranchmarkBack", "(I)V", codepos);
+                jump(codepos, operand(codepos, 0));     // Loop
+                markBack2(codepos);
+                call("opLazybranchmarkBack2", "()V");
+                backtrack();
+                break;
+
+            case RegexCode.Setcount:
+            case RegexCode.Nullcount:
+                markBack(codepos);
+                call("opSetcountBack", "()V");
+                backtrack();
+                break;
+
+            case RegexCode.Branchcount:
+                markBack(codepos);
+                call("opBranchcountBack", "(I)Z", codepos);
+                _ilg.branch(RegexClassWriter.IFEQ, _backtrack);
+                jump(codepos, next);                    // Straight
+                markBack2(codepos);
+                call("opBranchcountBack2", "()V");
+                backtrack();
+                break;
+
+            case RegexCode.Lazybranchcount:
+                markBack(codepos);
+                call("opLazybranchcountBack", "(II)Z", codepos, operand(codepos, 1));
+                _ilg.branch(RegexClassWriter.IFEQ, _backtrack);
+                jump(codepos, operand(codepos, 0));     // Loop
+                markBack2(codepos);
+                call("opLazybranchcountBack2", "()V");
+                backtrack();
+                break;
+
+            case RegexCode.Setjump:
+                markBack(codepos);
+                call("opSetjumpBack", "()V");
+                backtrack();
+                break;
+
+            case RegexCode.Forejump:
+                markBack(codepos);
+                call("opForejumpBack", "()V");
+                backtrack();
+                break;
+
+            case RegexCode.Oneloop:
+            case RegexCode.Notoneloop:
+            case RegexCode.Setloop:
+                markBack(codepos);
+                _ilg.load(RegexClassWriter.ALOAD, 0);
+                _ilg.pushInt(codepos);
+                _ilg.pushBoolean((op & RegexCode.Rtl) != 0);
+                invoke("opLoopBack", "(IZ)V");
+                jump(codepos, next);
+                break;
+
+            case RegexCode.Onelazy:
+            case RegexCode.Notonelazy:
+                markBack(codepos);
+                _ilg.load(RegexClassWriter.ALOAD, 0);
+                _ilg.pushInt(codepos);
+                _ilg.pushInt(operand(codepos, 0));
+                modifiers(op);
+                invoke((op & RegexCode.Mask) == RegexCode.Onelazy ? "opOnelazyBack" : "opNotonelazyBack",
+                        "(ICZZ)Z");
+                _ilg.branch(RegexClassWriter.IFEQ, _backtrack);
+                jump(codepos, next);
+                break;
+
+            case RegexCode.Notoneloopscan:
+            case RegexCode.Notonelazyscan:
+                markBack(codepos);
+                _ilg.load(RegexClassWriter.ALOAD, 0);
+                _ilg.pushInt(codepos);
+                _ilg.pushString(_strings[operand(codepos, 1)]);
+                invoke((op & RegexCode.Mask) == RegexCode.Notoneloopscan ? "opNotoneloopscanBack" : "opNotonelazyscanBack",
+                        "(ILjava/lang/String;)Z");
+                _ilg.branch(RegexClassWriter.IFEQ, _backtrack);
+                jump(codepos, next);
+                break;
+
+            case RegexCode.Setlazy:
+                markBack(codepos);
+                _ilg.load(RegexClassWriter.ALOAD, 0);
+                _ilg.pushInt(codepos);
+                _ilg.pushInt(operand(codepos, 0));
+                modifiers(op);
+                invoke("opSetlazyBack", "(IIZZ)Z");
+                _ilg.branch(RegexClassWriter.IFEQ, _backtrack);
+                jump(codepos, next);
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    private int operand(int codepos, int i) {
+        return _codes[codepos + i + 1];
+    }
+
+    private void markBack(int codepos) {
+        _back[codepos] = new RegexClassWriter.Label();
+        _ilg.mark(_back[codepos]);
+    }
+
+    private void markBack2(int codepos) {
+        _back2[codepos] = new RegexClassWriter.Label();
+        _ilg.mark(_back2[codepos]);
+    }
+
+    private void backtrack() {
+        _ilg.branch(RegexClassWriter.GOTO, _backtrack);
+    }
+
+    /*
+     * Jumps to the instruction at newpos; backward jumps check the timeout
+     * and make sure the stacks are large enough, like RegexInterpreter.goTo().
+     */
+    private void jump(int codepos, int newpos) {
+        if (newpos <= codepos) {
+            call("branchBackward", "()V");
+        }
+        _ilg.branch(RegexClassWriter.GOTO, _forward[newpos]);
+    }
+
+    /*
+     * Takes the jump to newpos when the value on the stack is true, and
+     * falls through to the next instruction otherwise.
+     */
+    private void loopIfTrue(int codepos, int newpos) {
+        RegexClassWriter.Label straight = new RegexClassWriter.Label();
+
+        _ilg.branch(RegexClassWriter.IFEQ, straight);
+        jump(codepos, newpos);
+        _ilg.mark(straight);
+    }
+
+    private void test(String name) {
+        call(name, "()Z");
+        _ilg.branch(RegexClassWriter.IFEQ, _backtrack);
+    }
+
+    private void charOp(String name, int op, int ch) {
+        _ilg.load(RegexClassWriter.ALOAD, 0);
+        _ilg.pushInt(ch);
+        modifiers(op);
+        invoke(name, "(CZZ)Z");
+        _ilg.branch(RegexClassWriter.IFEQ, _backtrack);
+    }
+
+    private void stringOp(String name, int op, String str) {
+        _ilg.load(RegexClassWriter.ALOAD, 0);
+        _ilg.pushString(str);
+        modifiers(op);
+        invoke(name, "(Ljava/lang/String;ZZ)Z");
+        _ilg.branch(RegexClassWriter.IFEQ, _backtrack);
+    }
+
+    private void modifiers(int op) {
+        _ilg.pushBoolean((op & RegexCode.Rtl) != 0);
+        _ilg.pushBoolean((op & RegexCode.Ci) != 0);
+    }
+
+    private void call(String name, String descriptor, int... args) {
+        _ilg.load(RegexClassWriter.ALOAD, 0);
+        for (int arg : args) {
+            _ilg.pushInt(arg);
+        }
+        invoke(name, descriptor);
+    }
+
+    private void invoke(String name, String descriptor) {
+        _ilg.invoke(RegexClassWriter.INVOKEVIRTUAL, RUNNER, name, descriptor);
+    }
+
+    /*
+     * Defines exactly one generated class.
+     */
+    private static final class RegexClassLoader extends ClassLoader {
+        RegexClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,737 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package jxtras.regex;
+
+import jxtras.regex.support.R;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <p>The RegexComplexity class is a report of the shapes of a regular expression that may make the
+ * backtracking engines take a time exponential or polynomial in the length of the input, found
+ * from the parsed pattern without matching anything (see {@link Regex#analyze()}).<p/>
+ * <p/>
+ * <p>Three shapes are reported, each as a {@link Finding} with its place in the pattern:</p>
+ * <ul>
+ * <li>a quantifier repeated by an outer one, when a run of the chars it matches can be split
+ * between the iterations of the outer one in more than one way, as in {@code (a+)+},
+ * {@code (\w+\s?)+} or {@code (.*a)+};</li>
+ * <li>an alternation repeated by a quantifier, when two of its alternatives can match the same
+ * chars, as in {@code (a|aa)+} or {@code (\w|\d)+};</li>
+ * <li>two unbounded quantifiers, one after the other with nothing but optional nodes between them,
+ * that can match the same chars, as in {@code .*.*=} or {@code \s*,?\s*}.</li>
+ * </ul>
+ * <p>The first two are {@link #Exponential} when the outer quantifier is unbounded and the repeated
+ * part can match a run of the ambiguous chars alone, and {@link #Polynomial} otherwise; the last is
+ * {@link #Polynomial}. A shape that nothing may make fail after it, at the end of the pattern or of
+ * an atomic group, is not reported, since the engine never backtracks into it; a quantifier that
+ * must still repeat there, as in {@code (.*a){12}}, is, since its own next iteration may fail. The
+ * analysis is a heuristic: it may report a pattern that only has a few ways to match, and it
+ * doesn't report the time each start position of the scan takes again, as with {@code a*b} on a
+ * long run of {@code a}s.</p>
+ * <p/>
+ * <p>With {@link RegexOptions#Safe}, a {@link Regex} whose pattern has a finding is matched by an
+ * engine that doesn't backtrack, or rejected.</p>
+ *
+ * @author Tony Guo <tony.guo.peng@gmail.com>
+ * @since 1.0
+ */
+public final class RegexComplexity {
+    /**
+     * The severity of a pattern with no finding.
+     */
+    public static final int Linear = 0;
+
+    /**
+     * The severity of a finding that may make a match take a time polynomial in the length of
+     * the input.
+     */
+    public static final int Polynomial = 1;
+
+    /**
+     * The severity of a finding that may make a match take a time exponential in the length of
+     * the input.
+     */
+    public static final int Exponential = 2;
+
+    private static final String[] SeverityNames = {"Linear", "Polynomial", "Exponential"};
+
+    // The string pattern analyzed
+    private final String pattern;
+
+    // the findings, in the order of the pattern, and the highest of their severities
+    private final List<Finding> findings = new ArrayList<Finding>();
+    private int severity = Linear;
+
+    // while a loop is checked, the most severe finding about it so far
+    private Finding loopFinding;
+
+    RegexComplexity(String pattern, RegexNode root) {
+        this.pattern = pattern;
+
+        visit(root, true);
+
+        Collections.sort(findings, FindingComparator);
+        for (Finding finding : findings) {
+            severity = Math.max(severity, finding.severity);
+        }
+    }
+
+    /**
+     * Analyzes the specified regular expression.
+     */
+    public static RegexComplexity analyze(String pattern) {
+        return analyze(pattern, RegexOptions.None);
+    }
+
+    /**
+     * Analyzes the specified regular expression, with options that modify the pattern.
+     *
+     * @see RegexOptions
+     */
+    public static RegexComplexity analyze(String pattern, int options) {
+        if (pattern == null) {
+            throw new IllegalArgumentException("pattern must not be null.");
+        }
+
+        Regex.validateOptions(options);
+
+        return new RegexComplexity(pattern, RegexParser.parse(pattern, options)._root);
+    }
+
+    /**
+     * Returns the pattern that was analyzed.
+     */
+    public String pattern() {
+        return pattern;
+    }
+
+    /**
+     * Returns the highest severity of the findings: {@link #Linear} if there is none,
+     * {@link #Polynomial} or {@link #Exponential}.
+     */
+    public int severity() {
+        return severity;
+    }
+
+    /**
+     * Returns the findings, in the order of their place in the pattern.
+     */
+    public List<Finding> findings() {
+        return Collections.unmodifiableList(findings);
+    }
+
+    // The first of the most severe findings, null if there is none.
+    Finding worstFinding() {
+        for (Finding finding : findings) {
+            if (finding.severity == severity) {
+                return finding;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(SeverityNames[severity]);
+        for (Finding finding : findings) {
+            sb.append('\n').append(finding);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * <p>A shape of the pattern that may make the backtracking engines slow: its severity, the
+     * part of the pattern it spans, and a description of why.</p>
+     */
+    public static final class Finding {
+        private final int severity;
+        private final int index;
+        private final int length;
+        private final String description;
+
+        Finding(int severity, int index, int length, String description) {
+            this.severity = severity;
+            this.index = index;
+            this.length = length;
+            this.description = description;
+        }
+
+        /**
+         * Returns {@link RegexComplexity#Polynomial} or {@link RegexComplexity#Exponential}.
+         */
+        public int severity() {
+            return severity;
+        }
+
+        /**
+         * Returns the position in the pattern where the part found starts.
+         */
+        public int index() {
+            return index;
+        }
+
+        /**
+         * Returns the length of the part of the pattern found.
+         */
+        public int length() {
+            return length;
+        }
+
+        public String description() {
+            return description;
+        }
+
+        @Override
+        public String toString() {
+            return SeverityNames[severity] + " at " + index + ", length " + length + ": " + description;
+        }
+    }
+
+    private static final Comparator<Finding> FindingComparator = new Comparator<Finding>() {
+        @Override
+        public int compare(Finding a, Finding b) {
+            return a.index != b.index ? a.index - b.index : b.length - a.length;
+        }
+    };
+
+    /*
+     * Walks the tree, as RegexNode.makeLoopsAtomic does; tail tells whether
+     * nothing may follow the node in a match, so that nothing can fail and
+     * make the engine backtrack into it.
+     */
+    private void visit(RegexNode node, boolean tail) {
+        if (node.useOptionR()) {
+            tail = false;
+        }
+
+        switch (node._type) {
+            case RegexNode.Concatenate:
+                checkSequence(node, tail);
+                for (int i = 0; i < node.childCount(); i++) {
+                    visit(node.childAt(i), tail && i == node.childCount() - 1);
+                }
+                break;
+
+            case RegexNode.Capture:
+            case RegexNode.Group:
+            case RegexNode.Alternate:
+                for (int i = 0; i < node.childCount(); i++) {
+                    visit(node.childAt(i), tail);
+                }
+                break;
+
+            case RegexNode.Greedy:
+            case RegexNode.Require:
+            case RegexNode.Prevent:
+                visit(node.childAt(0), true);
+                break;
+
+            case RegexNode.Loop:
+            case RegexNode.Lazyloop:
+                // an iteration the loop still needs may fail even at the end
+                if ((!tail || node._m > 1) && node._n > 1) {
+                    checkLoop(node);
+                }
+                visit(node.childAt(0), false);
+                break;
+
+            default:
+                for (int i = 0; i < node.childCount(); i++) {
+                    visit(node.childAt(i), false);
+                }
+                break;
+        }
+    }
+
+    /*
+     * Looks in the body of the loop for the parts that can match a run of
+     * chars in more than one way from one iteration to the next: the
+     * quantifiers that may stop where the next iteration, or what follows
+     * them in the body, may start, and the alternations whose alternatives
+     * can match the same chars.
+     */
+    private void checkLoop(RegexNode loop) {
+        RegexNode body = loop.childAt(0);
+        Chars first = new Chars();
+        addFirst(body, first);
+
+        loopFinding = null;
+        checkBody(loop, first, body, new Chars(), true);
+        if (loopFinding != null) {
+            findings.add(loopFinding);
+        }
+    }
+
+    /*
+     * Checks a node of the body of the loop; follow holds the first chars of
+     * what follows the node in the body, and followNullable tells whether
+     * the body may also end right after the node. The loops nested in the
+     * body are checked as quantifiers here, then their own bodies by visit.
+     */
+    private void checkBody(RegexNode loop, Chars bodyFirst, RegexNode node, Chars follow, boolean followNullable) {
+        switch (node._type) {
+            case RegexNode.Oneloop:
+            case RegexNode.Notoneloop:
+            case RegexNode.Setloop:
+            case RegexNode.Onelazy:
+            case RegexNode.Notonelazy:
+            case RegexNode.Setlazy:
+            case RegexNode.Loop:
+            case RegexNode.Lazyloop:
+                if (node._m < node._n) {
+                    checkOptional(loop, bodyFirst, node, follow, followNullable,
+                            R.format(R.ComplexityNestedQuantifier, text(node, loop), text(loop, loop)));
+                }
+                break;
+
+            case RegexNode.Concatenate: {
+                boolean reversed = node.useOptionR();
+
+                for (int i = node.childCount() - 1; i >= 0; i--) {
+                    RegexNode child = node.childAt(i);
+
+                    if (reversed) {
+                        // the children are in the order they are matched in,
+                        // whichever it is; don't rely on it
+                        Chars any = new Chars();
+                        any.add(child, RegexCharClass.AnyClass);
+                        checkBody(loop, bodyFirst, child, any, true);
+                        continue;
+                    }
+
+                    checkBody(loop, bodyFirst, child, follow, followNullable);
+
+                    Chars childFollow = new Chars();
+                    addFirst(child, childFollow);
+                    if (child.computeMinLength() == 0) {
+                        childFollow.addAll(follow);
+                    } else {
+                        followNullable = false;
+                    }
+                    follow = childFollow;
+                }
+                break;
+            }
+
+            case RegexNode.Alternate:
+                // an alternative that matches nothing makes the others optional,
+                // as after a|aa -> a(?:|a)
+                if (node.computeMinLength() == 0 && node.computeMaxLength() > 0) {
+                    checkOptional(loop, bodyFirst, node, follow, followNullable,
+                            R.format(R.ComplexityAmbiguousAlternation, text(loop, loop)));
+                }
+                checkAlternation(loop, node);
+                for (int i = 0; i < node.childCount(); i++) {
+                    checkBody(loop, bodyFirst, node.childAt(i), follow, followNullable);
+                }
+                break;
+
+            case RegexNode.Capture:
+            case RegexNode.Group:
+                checkBody(loop, bodyFirst, node.childAt(0), follow, followNullable);
+                break;
+
+            default:
+                // the atomic loops and groups and the lookarounds are not
+                // backtracked into, and the conditionals are not looked into
+                break;
+        }
+    }
+
+    /*
+     * A part of the body that may match more or fewer chars is ambiguous if
+     * what the next iteration, or what follows the part in the body, starts
+     * with can also be matched by the part.
+     */
+    private void checkOptional(RegexNode loop, Chars bodyFirst, RegexNode node, Chars follow, boolean followNullable,
+                               String description) {
+        Chars first = new Chars();
+        addFirst(node, first);
+
+        if (followNullable && first.mayOverlap(bodyFirst) || first.mayOverlap(follow)) {
+            Chars chars = new Chars();
+            addChars(node, chars);
+
+            report(loop, isUnbounded(loop) && repeats(loop.childAt(0), chars) ? Exponential : Polynomial, description);
+        }
+    }
+
+    /*
+     * Two alternatives that can match the same chars, and can each match a
+     * run of the chars of the other one, as the body can, match a run of
+     * those chars in many ways from one iteration to the next.
+     */
+    private void checkAlternation(RegexNode loop, RegexNode alternation) {
+        int count = alternation.childCount();
+        Chars[] firsts = new Chars[count];
+        Chars[] chars = new Chars[count];
+
+        for (int i = 0; i < count; i++) {
+            firsts[i] = new Chars();
+            addFirst(alternation.childAt(i), firsts[i]);
+            chars[i] = new Chars();
+            addChars(alternation.childAt(i), chars[i]);
+        }
+
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                if (firsts[i].mayOverlap(firsts[j])
+                        && repeats(alternation.childAt(i), chars[j]) && repeats(alternation.childAt(j), chars[i])) {
+                    Chars both = new Chars();
+                    both.addAll(chars[i]);
+                    both.addAll(chars[j]);
+
+                    if (repeats(loop.childAt(0), both)) {
+                        report(loop, isUnbounded(loop) ? Exponential : Polynomial,
+                                R.format(R.ComplexityAmbiguousAlternation, text(loop, loop)));
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * An unbounded quantifier that the engine may backtrack into, followed,
+     * with nothing but optional nodes between them, by another one that can
+     * match the same chars: when something after them fails, each char the
+     * first one gives back is matched again by the second.
+     */
+    private void checkSequence(RegexNode concatenation, boolean tail) {
+        int count = concatenation.childCount();
+
+        for (int i = 0; i < count - 1; i++) {
+            RegexNode node = concatenation.childAt(i);
+            if (!isBacktrackingLoop(node)) {
+                continue;
+            }
+
+            Chars chars = new Chars();
+            addChars(node, chars);
+
+            for (int j = i + 1; j < count; j++) {
+                RegexNode next = concatenation.childAt(j);
+
+                if (isUnboundedLoop(next)) {
+                    Chars first = new Chars();
+                    addFirst(next, first);
+
+                    if (chars.mayOverlap(first)) {
+                        if (!tail || j < count - 1) {
+                            Finding finding = finding(Polynomial, node, next,
+                                    R.format(R.ComplexityAdjacentQuantifiers, text(node, node), text(next, next)));
+                            findings.add(finding);
+                        }
+                        break;
+                    }
+                }
+
+                if (next.computeMinLength() > 0) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private void report(RegexNode loop, int severity, String description) {
+        if (loopFinding == null || loopFinding.severity < severity) {
+            loopFinding = finding(severity, loop, loop, description);
+        }
+    }
+
+    // A finding that spans the pattern from the first node to the last.
+    private Finding finding(int severity, RegexNode first, RegexNode last, String description) {
+        if (first._pos < 0 || last._pos < 0) {
+            return new Finding(severity, 0, pattern.length(), description);
+        }
+
+        int index = Math.min(first._pos, last._pos);
+        int end = Math.max(first._pos + first._len, last._pos + last._len);
+        return new Finding(severity, index, end - index, description);
+    }
+
+    // The part of the pattern of the node, or of the outer one if the parser didn't record it.
+    private String text(RegexNode node, RegexNode outer) {
+        if (node._pos >= 0) {
+            return pattern.substring(node._pos, node._pos + node._len);
+        }
+        if (outer._pos >= 0) {
+            return pattern.substring(outer._pos, outer._pos + outer._len);
+        }
+        return pattern;
+    }
+
+    private static boolean isUnbounded(RegexNode loop) {
+        return loop._n == Integer.MAX_VALUE;
+    }
+
+    // The unbounded loops that may give back what they match, or take more.
+    private static boolean isBacktrackingLoop(RegexNode node) {
+        switch (node._type) {
+            case RegexNode.Oneloop:
+            case RegexNode.Notoneloop:
+            case RegexNode.Setloop:
+            case RegexNode.Onelazy:
+            case RegexNode.Notonelazy:
+            case RegexNode.Setlazy:
+            case RegexNode.Loop:
+            case RegexNode.Lazyloop:
+                return node._m < node._n && isUnbounded(node);
+
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isUnboundedLoop(RegexNode node) {
+        switch (node._type) {
+            case RegexNode.Oneloopatomic:
+            case RegexNode.Notoneloopatomic:
+            case RegexNode.Setloopatomic:
+                return node._m < node._n && isUnbounded(node);
+
+            default:
+                return isBacktrackingLoop(node);
+        }
+    }
+
+    /*
+     * Adds the classes of the chars a match of the node may start with.
+     */
+    private static void addFirst(RegexNode node, Chars chars) {
+        if (node.useOptionR()) {
+            // the node is matched from its end
+            addChars(node, chars);
+            return;
+        }
+
+        switch (node._type) {
+            case RegexNode.One:
+            case RegexNode.Notone:
+            case RegexNode.Set:
+            case RegexNode.Multi:
+            case RegexNode.Oneloop:
+            case RegexNode.Notoneloop:
+            case RegexNode.Setloop:
+            case RegexNode.Onelazy:
+            case RegexNode.Notonelazy:
+            case RegexNode.Setlazy:
+            case RegexNode.Oneloopatomic:
+            case RegexNode.Notoneloopatomic:
+            case RegexNode.Setloopatomic:
+                chars.add(node, node.firstSet());
+                break;
+
+            case RegexNode.Ref:
+                chars.add(node, RegexCharClass.AnyClass);
+                break;
+
+            case RegexNode.Concatenate:
+                for (int i = 0; i < node.childCount(); i++) {
+                    addFirst(node.childAt(i), chars);
+                    if (node.childAt(i).computeMinLength() > 0) {
+                        break;
+                    }
+                }
+                break;
+
+            case RegexNode.Require:
+            case RegexNode.Prevent:
+                break;
+
+            default:
+                // the alternatives, the body of a loop or group, and the
+                // branches of a conditional (with its condition)
+                for (int i = 0; i < node.childCount(); i++) {
+                    addFirst(node.childAt(i), chars);
+                }
+                break;
+        }
+    }
+
+    /*
+     * Adds the classes of all the chars a match of the node may have.
+     */
+    private static void addChars(RegexNode node, Chars chars) {
+        switch (node._type) {
+            case RegexNode.Multi: {
+                RegexCharClass cc = new RegexCharClass();
+                for (int i = 0; i < node._str.length(); i++) {
+                    cc.addChar(node._str.charAt(i));
+                }
+                chars.add(node, cc.toString());
+                break;
+            }
+
+            case RegexNode.One:
+            case RegexNode.Notone:
+            case RegexNode.Set:
+            case RegexNode.Oneloop:
+            case RegexNode.Notoneloop:
+            case RegexNode.Setloop:
+            case RegexNode.Onelazy:
+            case RegexNode.Notonelazy:
+            case RegexNode.Setlazy:
+            case RegexNode.Oneloopatomic:
+            case RegexNode.Notoneloopatomic:
+            case RegexNode.Setloopatomic:
+                // every char of the node is in the class of its first one
+                chars.add(node, node.firstSet());
+                break;
+
+            case RegexNode.Ref:
+                chars.add(node, RegexCharClass.AnyClass);
+                break;
+
+            case RegexNode.Require:
+            case RegexNode.Prevent:
+                break;
+
+            default:
+                for (int i = 0; i < node.childCount(); i++) {
+                    addChars(node.childAt(i), chars);
+                }
+                break;
+        }
+    }
+
+    /*
+     * True if the node may match a string of one char or more that are all
+     * in the classes.
+     */
+    private static boolean repeats(RegexNode node, Chars chars) {
+        switch (node._type) {
+            case RegexNode.Multi:
+                for (int i = 0; i < node._str.length(); i++) {
+                    RegexCharClass cc = new RegexCharClass();
+                    cc.addChar(node._str.charAt(i));
+
+                    Chars one = new Chars();
+                    one.add(node, cc.toString());
+                    if (!chars.mayOverlap(one)) {
+                        return false;
+                    }
+                }
+                return true;
+
+            case RegexNode.One:
+            case RegexNode.Notone:
+            case RegexNode.Set:
+            case RegexNode.Oneloop:
+            case RegexNode.Notoneloop:
+            case RegexNode.Setloop:
+            case RegexNode.Onelazy:
+            case RegexNode.Notonelazy:
+            case RegexNode.Setlazy:
+            case RegexNode.Oneloopatomic:
+            case RegexNode.Notoneloopatomic:
+            case RegexNode.Setloopatomic: {
+                Chars set = new Chars();
+                set.add(node, node.firstSet());
+                return chars.mayOverlap(set);
+            }
+
+            case RegexNode.Ref:
+                return true;
+
+            case RegexNode.Concatenate: {
+                boolean any = false;
+                for (int i = 0; i < node.childCount(); i++) {
+                    RegexNode child = node.childAt(i);
+                    if (repeats(child, chars)) {
+                        any = true;
+                    } else if (child.computeMinLength() > 0) {
+                        return false;
+                    }
+                }
+                return any;
+            }
+
+            case RegexNode.Alternate:
+            case RegexNode.Loop:
+            case RegexNode.Lazyloop:
+            case RegexNode.Capture:
+            case RegexNode.Group:
+            case RegexNode.Greedy:
+            case RegexNode.Testref:
+            case RegexNode.Testgroup:
+                for (int i = node._type == RegexNode.Testgroup ? 1 : 0; i < node.childCount(); i++) {
+                    if (repeats(node.childAt(i), chars)) {
+                        return true;
+                    }
+                }
+                return false;
+
+            default:
+                // the anchors and lookarounds match no char
+                return false;
+        }
+    }
+
+    /*
+     * A union of char classes, kept as a list rather than merged since the
+     * negated classes can't be. The classes of case-insensitive nodes are in
+     * lowercase; they're kept apart, and are assumed to overlap any class of
+     * a case-sensitive node.
+     */
+    private static final class Chars {
+        private final List<String> sets = new ArrayList<String>();
+        private final List<String> caselessSets = new ArrayList<String>();
+
+        void add(RegexNode node, String set) {
+            ((node._options & RegexOptions.IgnoreCase) != 0 ? caselessSets : sets).add(set);
+        }
+
+        void addAll(Chars other) {
+            sets.addAll(other.sets);
+            caselessSets.addAll(other.caselessSets);
+        }
+
+        boolean mayOverlap(Chars other) {
+            if (!sets.isEmpty() && !other.caselessSets.isEmpty() || !caselessSets.isEmpty() && !other.sets.isEmpty()) {
+                return true;
+            }
+
+            return mayOverlap(sets, other.sets) || mayOverlap(caselessSets, other.caselessSets);
+        }
+
+        private static boolean mayOverlap(List<String> sets1, List<String> sets2) {
+            for (String set1 : sets1) {
+                for (String set2 : sets2) {
+                    if (RegexCharClass.mayOverlap(set1, set2)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,577 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package jxtras.regex;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+// This RegexDFA class is internal to the Regex package.
+// It runs a RegexNFA as a lazily built DFA, for RegexOptions.NonBacktracking.
+
+// Implementation notes:
+//
+// A DFA state is the ordered list of the NFA states that are waiting
+// for a char (the "kernel"), along with the flags of the char that was
+// just consumed. The zero-width assertions are evaluated when the state
+// is left, since the char that follows the position is known then:
+// each transition walks the epsilon closure of the kernel with the
+// context of both chars, and advances the consuming states over the
+// next char. The DFA states are built on demand, the first time a
+// transition is taken, and are kept in a cache of at most MaxStates
+// states. When the cache is full, it is flushed, and the scan goes on
+// rebuilding the states it needs, so the time stays linear in the length
+// of the text.
+//
+// The forward scan looks for the leftmost-first match: the threads of the
+// kernel are kept in the order the backtracking engine would try them,
+// the threads that start at later positions come last, and the threads
+// that follow a match are cut. The scan records the positions where a
+// thread matched and stops when no thread is left, so the last position
+// recorded is where the match ends.
+//
+// The reverse scan runs the reversed automaton from the end of the match
+// back to where the forward scan started, and finds the leftmost position
+// where a match ending at that end could start, which is where the
+// leftmost-first match starts.
+//
+// The set scan runs the automaton of a RegexSet, whose patterns each end
+// in a Match state of their own. Nothing is cut there: every state also
+// records the ids of the patterns that matched before its char, and the
+// scan goes on to the end of the text, or until every pattern matched.
+// @author  Tony Guo <tony.guo.peng@gmail.com>
+final class RegexDFA {
+    // Flags describing the char on the scanned side of a position (for the
+    // forward scan, the char before the position; for the reverse scan, the
+    // char after the position).
+
+    static final int Edge = 1;          // no char: the position is at the edge of the text
+    static final int Newline = 2;       // '\n'
+    static final int Word = 4;          // a word char
+    static final int ECMAWord = 8;      // an ECMAScript word char
+    static final int FinalNewline = 16; // '\n' as the last char of the text
+    static final int AtStart = 32;      // the position is where the scan started
+
+    // the symbol of a '\n' that is the last char of the text, which \Z
+    // needs to tell from the other '\n's
+    static final int FinalNewlineSymbol = 0x10000;
+
+    static final int MaxStates = 2000;
+
+    private static final int[] NoIds = new int[0];
+
+    private final RegexNFA _nfa;
+    private final boolean _reverse;
+    private final boolean _set;
+    private final Map<State, State> _states;
+
+    // scratch space of the closure walk
+    private final int[] _stack;
+    private final int[] _visited;
+    private final int[] _emptyChecked;
+    private final int[] _added;
+    private final int[] _onPath;
+    private final int[] _consumers;
+    private final int[] _kernel;
+    private final int[] _idMarks;
+    private final int[] _matchedIds;
+    private int _stamp;
+    private int _consumerCount;
+    private int _matchedCount;
+
+    RegexDFA(RegexNFA nfa) {
+        _nfa = nfa;
+        _reverse = nfa._reverse;
+        _set = nfa._set;
+        _states = new HashMap<State, State>();
+        _stack = new int[4 * (RegexNFA.MaxDepth + 1) * nfa._count + 1];
+        _visited = new int[(RegexNFA.MaxDepth + 1) * nfa._count];
+        _emptyChecked = new int[(RegexNFA.MaxDepth + 1) * nfa._count];
+        _added = new int[nfa._count];
+        _onPath = new int[nfa._loops];
+        _consumers = new int[(RegexNFA.MaxDepth + 1) * nfa._count];
+        _kernel = new int[nfa._count];
+        _idMarks = new int[nfa._ids];
+        _matchedIds = new int[nfa._ids];
+    }
+
+    /*
+     * Scans forward from pos for the leftmost-first match, and returns
+     * the position where it ends, or -1 if there is none. If anchored,
+     * the match must start at pos.
+     */
+    int scanForward(RegexRunner runner, CharSequence text, int beg, int end, int textstart, int pos, boolean anchored) {
+        if (_nfa._start < 0) {
+            return -1;
+        }
+
+        int flags = pos == beg ? Edge : charFlags(RegexRunner.charAt(text, pos - 1));
+        if (pos == textstart) {
+            flags |= AtStart;
+        }
+
+        State state = intern(anchored ? new int[]{_nfa._start} : new int[0], flags, false, !anchored);
+        int matchend = -1;
+
+        for (int i = pos; ; i++) {
+            if (i == end) {
+                if (state.matchesAtEdge(this)) {
+                    matchend = end;
+                }
+                break;
+            }
+
+            char ch = RegexRunner.charAt(text, i);
+            state = next(state, (ch == '\n' && i == end - 1) ? FinalNewlineSymbol : ch);
+
+            if (state._matched) {
+                matchend = i;
+            }
+            if (state.isDead()) {
+                break;
+            }
+
+            runner.checkTimeout();
+        }
+
+        return matchend;
+    }
+
+    /*
+     * Scans backward from pos, the end of a match, down to limit, and
+     * returns the leftmost position where the match can start, or -1 if
+     * there is none.
+     */
+    int scanReverse(RegexRunner runner, CharSequence text, int beg, int end, int textstart, int limit, int pos) {
+        if (_nfa._start < 0) {
+            return -1;
+        }
+
+        int flags = pos == end ? Edge : symbolFlags(
+                (pos == end - 1 && RegexRunner.charAt(text, pos) == '\n') ? FinalNewlineSymbol : RegexRunner.charAt(text, pos));
+
+        State state = intern(new int[]{_nfa._start}, flags, false, false);
+        int matchstart = -1;
+
+        for (int i = pos; ; i--) {
+            if (i == limit) {
+                int left = i == beg ? Edge : charFlags(RegexRunner.charAt(text, i - 1));
+                if (closure(state._kernel, false, left, state._flags, i == textstart)) {
+                    matchstart = i;
+                }
+                break;
+            }
+
+            char ch = RegexRunner.charAt(text, i - 1);
+            state = next(state, (ch == '\n' && i == end) ? FinalNewlineSymbol : ch);
+
+            if (state._matched) {
+                matchstart = i;
+            }
+            if (state.isDead()) {
+                break;
+            }
+
+            runner.checkTimeout();
+        }
+
+        return matchstart;
+    }
+
+    /*
+     * Scans the text from its start with a set automaton, up to the match
+     * that ends at limit, and sets in found the indices that map gives to
+     * the ids of the patterns that match. If first, stops at the first
+     * position where a match ends. Returns the last position where a new
+     * match was found, or -1 if there is none.
+     */
+    int scanSet(CharSequence text, int limit, int[] map, BitSet found, boolean first) {
+        if (_nfa._start < 0) {
+            return -1;
+        }
+
+        int end = text.length();
+        State state = intern(NoIds, Edge | AtStart, false, true, NoIds);
+        int left = _nfa._ids;
+        int last = -1;
+
+        for (int i = 0; i <= limit; i++) {
+            int[] ids;
+            if (i == end) {
+                ids = state.idsAtEdge(this);
+            } else {
+                char ch = RegexRunner.charAt(text, i);
+                state = next(state, (ch == '\n' && i == end - 1) ? FinalNewlineSymbol : ch);
+                ids = state._ids;
+            }
+
+            for (int id : ids) {
+                if (!found.get(map[id])) {
+                    found.set(map[id]);
+                    left--;
+                    last = i;
+                }
+            }
+            if (left == 0 || (first && last != -1)) {
+                break;
+            }
+        }
+
+        return last;
+    }
+
+    /*
+     * Returns the state reached from state over the symbol.
+     */
+    private State next(State state, int symbol) {
+        State target = state.cached(symbol);
+        if (target != null) {
+            return target;
+        }
+
+        if (_states.size() >= MaxStates) {
+            // the states built so far become garbage as the scan goes on
+            _states.clear();
+        }
+
+        int flags = symbolFlags(symbol);
+        char ch = symbol == FinalNewlineSymbol ? '\n' : (char) symbol;
+
+        boolean matched = _reverse
+                ? closure(state._kernel, state._searching, flags, state._flags, false)
+                : closure(state._kernel, state._searching, state._flags, flags, (state._flags & AtStart) != 0);
+
+        // advance the threads over the char, in order
+        int stamp = nextStamp();
+        int count = 0;
+        for (int i = 0; i < _consumerCount; i++) {
+            int s = _consumers[i];
+            int t = _nfa._next[s];
+            if (t >= 0 && _added[t] != stamp && _nfa.accepts(s, ch)) {
+                _added[t] = stamp;
+                _kernel[count++] = t;
+            }
+        }
+
+        target = intern(Arrays.copyOf(_kernel, count), _reverse ? flags : flags & ~FinalNewline,
+                matched, state._searching && (_set || !matched), matchedIds());
+        state.cache(symbol, target);
+        return target;
+    }
+
+    /*
+     * Walks the epsilon closure of the kernel (followed by the start state
+     * if searching) at a position whose surrounding chars are described by
+     * left and right, and collects the consuming states in priority order.
+     * Returns true if a thread reached Match. In the forward direction, the
+     * threads of lower priority than the matching one are cut, unless the
+     * automaton matches a set, whose matching ids are all collected.
+     */
+    private boolean closure(int[] kernel, boolean searching, int left, int right, boolean atStart) {
+        int[] types = _nfa._types;
+        int[] args = _nfa._args;
+        int[] next = _nfa._next;
+        int[] alts = _nfa._alts;
+        int[] stack = _stack;
+        int stamp = nextStamp();
+        boolean matched = false;
+        int states = _nfa._count;
+        int entered = 0;
+
+        _consumerCount = 0;
+        _matchedCount = 0;
+
+        for (int r = 0; r <= kernel.length; r++) {
+            int sp = 0;
+            if (r < kernel.length) {
+                stack[sp++] = kernel[r];
+            } else if (searching) {
+                stack[sp++] = _nfa._start;
+            }
+
+            while (sp > 0) {
+                int s = stack[--sp];
+                if (s < -1) {
+                    _onPath[-2 - s]--; // leaving an Enter
+                    entered--;
+                    continue;
+                }
+                if (s == -1) {
+                    continue;
+                }
+                // the states are tracked apart for each number of iterations entered
+                // on this path, since such an iteration may still end up empty
+                int index = Math.min(entered, RegexNFA.MaxDepth) * states + s;
+                if ((types[s] & RegexNFA.Mask) == RegexNFA.Check && _onPath[args[s]] > 0) {
+                    // an iteration entered on this path hasn't consumed anything,
+                    // which is tracked apart from the iterations that have
+                    if (_emptyChecked[index] != stamp) {
+                        _emptyChecked[index] = stamp;
+                        stack[sp++] = alts[s];
+                    }
+                    continue;
+                }
+                if (_visited[index] == stamp) {
+                    continue;
+                }
+                _visited[index] = stamp;
+
+                switch (types[s] & RegexNFA.Mask) {
+                    case RegexNFA.One:
+                    case RegexNFA.Notone:
+                    case RegexNFA.Set:
+                        _consumers[_consumerCount++] = s;
+                        break;
+
+                    case RegexNFA.Split:
+                        stack[sp++] = alts[s];
+                        stack[sp++] = next[s];
+                        break;
+
+                    case RegexNFA.Save:
+                        stack[sp++] = next[s];
+                        break;
+
+                    case RegexNFA.Assert:
+                        if (holds(args[s], left, right, atStart)) {
+                            stack[sp++] = next[s];
+                        }
+                        break;
+
+                    case RegexNFA.Enter:
+                        _onPath[args[s]]++;
+                        entered++;
+                        stack[sp++] = -2 - args[s];
+                        stack[sp++] = next[s];
+                        break;
+
+                    case RegexNFA.Check:
+                        stack[sp++] = next[s];
+                        break;
+
+                    case RegexNFA.Match:
+                        matched = true;
+                        if (_set) {
+                            if (_idMarks[args[s]] != stamp) {
+                                _idMarks[args[s]] = stamp;
+                                _matchedIds[_matchedCount++] = args[s];
+                            }
+                        } else if (!_reverse) {
+                            while (sp > 0) {
+                                s = stack[--sp];
+                                if (s < -1) {
+                                    _onPath[-2 - s]--;
+                                }
+                            }
+                            return true;
+                        }
+                        break;
+                }
+            }
+        }
+
+        return matched;
+    }
+
+    /*
+     * True if the zero-width assertion holds at a position whose
+     * surrounding chars are described by left and right.
+     */
+    static boolean holds(int type, int left, int right, boolean atStart) {
+        switch (type) {
+            case RegexNode.Bol:
+                return (left & (Edge | Newline)) != 0;
+            case RegexNode.Eol:
+                return (right & (Edge | Newline)) != 0;
+            case RegexNode.Boundary:
+                return ((left & Word) != 0) != ((right & Word) != 0);
+            case RegexNode.Nonboundary:
+                return ((left & Word) != 0) == ((right & Word) != 0);
+            case RegexNode.ECMABoundary:
+                return ((left & ECMAWord) != 0) != ((right & ECMAWord) != 0);
+            case RegexNode.NonECMABoundary:
+                return ((left & ECMAWord) != 0) == ((right & ECMAWord) != 0);
+            case RegexNode.Beginning:
+                return (left & Edge) != 0;
+            case RegexNode.Start:
+                return atStart;
+            case RegexNode.EndZ:
+                return (right & (Edge | FinalNewline)) != 0;
+            case RegexNode.End:
+                return (right & Edge) != 0;
+            default:
+                return false;
+        }
+    }
+
+    /*
+     * Returns the ids of the patterns that matched in the last closure walk,
+     * in ascending order.
+     */
+    private int[] matchedIds() {
+        if (_matchedCount == 0) {
+            return NoIds;
+        }
+        int[] ids = Arrays.copyOf(_matchedIds, _matchedCount);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    private int nextStamp() {
+        if (_stamp == Integer.MAX_VALUE) {
+            Arrays.fill(_visited, 0);
+            Arrays.fill(_emptyChecked, 0);
+            Arrays.fill(_added, 0);
+            Arrays.fill(_idMarks, 0);
+            _stamp = 0;
+        }
+        return ++_stamp;
+    }
+
+    private static int symbolFlags(int symbol) {
+        return symbol == FinalNewlineSymbol ? Newline | FinalNewline : charFlags((char) symbol);
+    }
+
+    static int charFlags(char ch) {
+        int flags = 0;
+        if (ch == '\n') {
+            flags |= Newline;
+        }
+        if (RegexCharClass.isWordChar(ch)) {
+            flags |= Word;
+        }
+        if (RegexCharClass.isECMAWordChar(ch)) {
+            flags |= ECMAWord;
+        }
+        return flags;
+    }
+
+    private State intern(int[] kernel, int flags, boolean matched, boolean searching) {
+        return intern(kernel, flags, matched, searching, NoIds);
+    }
+
+    private State intern(int[] kernel, int flags, boolean matched, boolean searching, int[] ids) {
+        State state = new State(kernel, flags, matched, searching, ids);
+        State existing = _states.get(state);
+        if (existing != null) {
+            return existing;
+        }
+        _states.put(state, state);
+        return state;
+    }
+
+    /*
+     * A state of the DFA, with its outgoing transitions.
+     */
+    static final class State {
+        final int[] _kernel;        // the NFA states waiting for a char, in priority order
+        final int _flags;           // the flags of the char just consumed
+        final boolean _matched;     // true if a thread matched before the char just consumed
+        final boolean _searching;   // true if a thread starts at every position
+        final int[] _ids;           // the ids of the patterns of a set that matched before the char just consumed
+        private final int _hash;
+
+        private State[] _ascii;             // the transitions over the ASCII chars
+        private Map<Integer, State> _others; // the other transitions
+        private int _atEdge;                // 0 if unknown, 1 if no match at the edge, 2 if match
+        private int[] _edgeIds;             // the ids of the patterns of a set that match at the edge
+
+        State(int[] kernel, int flags, boolean matched, boolean searching, int[] ids) {
+            _kernel = kernel;
+            _flags = flags;
+            _matched = matched;
+            _searching = searching;
+            _ids = ids;
+            _hash = (((Arrays.hashCode(kernel) * 31 + flags) * 2 + (matched ? 1 : 0)) * 2 + (searching ? 1 : 0))
+                    * 31 + Arrays.hashCode(ids);
+        }
+
+        boolean isDead() {
+            return _kernel.length == 0 && !_searching;
+        }
+
+        /*
+         * True if a thread matches at the end of the text (forward scan only).
+         */
+        boolean matchesAtEdge(RegexDFA dfa) {
+            if (_atEdge == 0) {
+                _atEdge = dfa.closure(_kernel, _searching, _flags, Edge, (_flags & AtStart) != 0) ? 2 : 1;
+            }
+            return _atEdge == 2;
+        }
+
+        /*
+         * Returns the ids of the patterns of a set that match at the end of the text.
+         */
+        int[] idsAtEdge(RegexDFA dfa) {
+            if (_edgeIds == null) {
+                dfa.closure(_kernel, _searching, _flags, Edge, (_flags & AtStart) != 0);
+                _edgeIds = dfa.matchedIds();
+            }
+            return _edgeIds;
+        }
+
+        State cached(int symbol) {
+            if (symbol < 128) {
+                return _ascii != null ? _ascii[symbol] : null;
+            }
+            return _others != null ? _others.get(symbol) : null;
+        }
+
+        void cache(int symbol, State target) {
+            if (symbol < 128) {
+                if (_ascii == null) {
+                    _ascii = new State[128];
+                }
+                _ascii[symbol] = target;
+            } else {
+                if (_others == null) {
+                    _others = new HashMap<Integer, State>();
+                }
+                _others.put(symbol, target);
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof State)) {
+                return false;
+            }
+            State other = (State) obj;
+            return _hash == other._hash && _flags == other._flags && _matched == other._matched
+                    && _searching == other._searching && Arrays.equals(_kernel, other._kernel)
+                    && Arrays.equals(_ids, other._ids);
+        }
+    }
+}
@@ -28,6 +28,8 @@ package jxtras.regex;
 
 import jxtras.regex.support.R;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 
 /**
@@ -50,6 +52,8 @@ final class RegexFCD {
     private boolean _skipAllChildren;      // don't process any more children at the current level
     private boolean _skipchild;            // don't process the current child.
     private boolean _failed = false;
+    private StringBuilder _suffix;         // the trailing literal found so far, last char first
+    private boolean _suffixCi;
 
     private static final int BeforeChild = 64;
     private static final int AfterChild = 128;
@@ -64,6 +68,7 @@ final class RegexFCD {
     static final int End = 0x0020;
     static final int Boundary = 0x0040;
     static final int ECMABoundary = 0x0080;
+    static final int StartOrBol = 0x0100;  // at the start, or just after a newline
 
     /*
      * This is the one of the only two functions that should be called from outside.
@@ -109,6 +114,7 @@ final class RegexFCD {
                     continue;
 
                 case RegexNode.Oneloop:
+                case RegexNode.Oneloopatomic:
                 case RegexNode.Onelazy:
                     if (curNode._m > 0) {
                         StringBuilder sb = new StringBuilder(); // ADD
@@ -150,6 +156,283 @@ final class RegexFCD {
         }
     }
 
+    /*
+     * This is a related computation: it takes a RegexTree and computes the
+     * leading substrings if it sees an alternation of literals, such as
+     * (GET|POST) or (?:abc|de)f, one of which starts every match. They must
+     * all be case-sensitive or all case-insensitive, and right to left
+     * patterns are left out. Like prefix(), it gives up easily.
+     */
+    static RegexPrefix[] alternatePrefixes(RegexTree tree) {
+        if ((tree._options & RegexOptions.RightToLeft) != 0) {
+            return null;
+        }
+
+        List<RegexPrefix> prefixes = new ArrayList<RegexPrefix>();
+        if (!alternatePrefixes(tree._root, prefixes) || prefixes.size() < 2) {
+            return null;
+        }
+
+        boolean ci = prefixes.get(0).isCaseInsensitive();
+        boolean single = true;
+        for (RegexPrefix prefix : prefixes) {
+            if (prefix.isCaseInsensitive() != ci) {
+                return null;
+            }
+            single &= prefix.prefix().length() == 1;
+        }
+
+        // single chars are as well found by the first chars
+        if (single) {
+            return null;
+        }
+
+        return prefixes.toArray(new RegexPrefix[prefixes.size()]);
+    }
+
+    private static boolean alternatePrefixes(RegexNode curNode, List<RegexPrefix> prefixes) {
+        RegexNode concatNode = null;
+        int nextChild = 0;
+
+        for (; ; ) {
+            switch (curNode._type) {
+                case RegexNode.Concatenate:
+                    if (curNode.childCount() > 0) {
+                        concatNode = curNode;
+                        nextChild = 0;
+                    }
+                    break;
+
+                case RegexNode.Greedy:
+                case RegexNode.Capture:
+                    curNode = curNode.childAt(0);
+                    concatNode = null;
+                    continue;
+
+                case RegexNode.Alternate:
+                    for (int i = 0; i < curNode.childCount(); i++) {
+                        if (!alternatePrefixes(curNode.childAt(i), prefixes)) {
+                            return false;
+                        }
+                    }
+                    return true;
+
+                case RegexNode.Oneloop:
+                case RegexNode.Oneloopatomic:
+                case RegexNode.Onelazy:
+                    if (curNode._m > 0) {
+                        prefixes.add(new RegexPrefix(repeat(curNode._ch, curNode._m), 0 != (curNode._options & RegexOptions.IgnoreCase)));
+                        return true;
+                    }
+                    return false;
+
+                case RegexNode.One:
+                case RegexNode.Multi: {
+                    RegexPrefix literal = new RegexPrefix(curNode._type == RegexNode.One ? String.valueOf(curNode._ch) : curNode._str,
+                            0 != (curNode._options & RegexOptions.IgnoreCase));
+
+                    // a literal that branches factored out of an alternation
+                    // start with: each of them has a prefix of its own
+                    if (concatNode != null && nextChild < concatNode.childCount()
+                            && concatNode.childAt(nextChild)._type == RegexNode.Alternate
+                            && addFactoredPrefixes(literal, concatNode.childAt(nextChild), prefixes)) {
+                        return true;
+                    }
+
+                    prefixes.add(literal);
+                    return true;
+                }
+
+                case RegexNode.Bol:
+                case RegexNode.Eol:
+                case RegexNode.Boundary:
+                case RegexNode.ECMABoundary:
+                case RegexNode.Beginning:
+                case RegexNode.Start:
+                case RegexNode.EndZ:
+                case RegexNode.End:
+                case RegexNode.Empty:
+                case RegexNode.Require:
+                case RegexNode.Prevent:
+                    break;
+
+                default:
+                    return false;
+            }
+
+            if (concatNode == null || nextChild >= concatNode.childCount())
+                return false;
+
+            curNode = concatNode.childAt(nextChild++);
+        }
+    }
+
+    private static boolean addFactoredPrefixes(RegexPrefix literal, RegexNode alternation, List<RegexPrefix> prefixes) {
+        List<RegexPrefix> suffixes = new ArrayList<RegexPrefix>();
+        if (!alternatePrefixes(alternation, suffixes)) {
+            return false;
+        }
+
+        for (RegexPrefix suffix : suffixes) {
+            if (suffix.isCaseInsensitive() != literal.isCaseInsensitive()) {
+                return false;
+            }
+        }
+
+        for (RegexPrefix suffix : suffixes) {
+            prefixes.add(new RegexPrefix(literal.prefix() + suffix.prefix(), literal.isCaseInsensitive()));
+        }
+        return true;
+    }
+
+    /*
+     * Another related computation: it takes a RegexTree and computes the
+     * longest literal that every match must contain, wherever it is in the
+     * match. Only the parts of the pattern that the match consumes are
+     * looked at (not the lookarounds), and right to left patterns are left
+     * out. Returns null if it doesn't see one.
+     */
+    static RegexPrefix requiredLiteral(RegexTree tree) {
+        if ((tree._options & RegexOptions.RightToLeft) != 0) {
+            return null;
+        }
+
+        return requiredLiteral(tree._root);
+    }
+
+    private static RegexPrefix requiredLiteral(RegexNode node) {
+        switch (node._type) {
+            case RegexNode.One:
+                return new RegexPrefix(String.valueOf(node._ch), 0 != (node._options & RegexOptions.IgnoreCase));
+
+            case RegexNode.Multi:
+                return new RegexPrefix(node._str, 0 != (node._options & RegexOptions.IgnoreCase));
+
+            case RegexNode.Oneloop:
+            case RegexNode.Oneloopatomic:
+            case RegexNode.Onelazy:
+                if (node._m > 0) {
+                    return new RegexPrefix(repeat(node._ch, node._m), 0 != (node._options & RegexOptions.IgnoreCase));
+                }
+                return null;
+
+            case RegexNode.Capture:
+            case RegexNode.Greedy:
+                return requiredLiteral(node.childAt(0));
+
+            case RegexNode.Loop:
+            case RegexNode.Lazyloop:
+                if (node._m > 0) {
+                    return requiredLiteral(node.childAt(0));
+                }
+                return null;
+
+            case RegexNode.Concatenate:
+                return requiredLiteralOfConcatenation(node);
+
+            default:
+                return null;
+        }
+    }
+
+    /*
+     * The chars of adjacent literal children make up a longer literal, which
+     * zero-width children don't break, and a loop of a single char ends the
+     * literal before it with its minimum repetitions, and starts the next one
+     * with them.
+     */
+    private static RegexPrefix requiredLiteralOfConcatenation(RegexNode node) {
+        RegexPrefix best = null;
+        StringBuilder run = new StringBuilder();
+        boolean runci = false;
+
+        for (int i = 0; i < node.childCount(); i++) {
+            RegexNode child = node.childAt(i);
+            boolean ci = 0 != (child._options & RegexOptions.IgnoreCase);
+            String literal;
+            boolean fixed = true;
+
+            switch (child._type) {
+                case RegexNode.One:
+                    literal = String.valueOf(child._ch);
+                    break;
+
+                case RegexNode.Multi:
+                    literal = child._str;
+                    break;
+
+                case RegexNode.Oneloop:
+                case RegexNode.Oneloopatomic:
+                case RegexNode.Onelazy:
+                    literal = repeat(child._ch, child._m);
+                    fixed = child._m == child._n;
+                    break;
+
+                case RegexNode.Bol:
+                case RegexNode.Eol:
+                case RegexNode.Boundary:
+                case RegexNode.Nonboundary:
+                case RegexNode.ECMABoundary:
+                case RegexNode.NonECMABoundary:
+                case RegexNode.Beginning:
+                case RegexNode.Start:
+                case RegexNode.EndZ:
+                case RegexNode.End:
+                case RegexNode.Empty:
+                case RegexNode.Require:
+                case RegexNode.Prevent:
+                    continue;
+
+                default:
+                    best = longer(best, run, runci);
+                    run.setLength(0);
+                    best = longer(best, requiredLiteral(child));
+                    continue;
+            }
+
+            if (run.length() > 0 && ci != runci) {
+                best = longer(best, run, runci);
+                run.setLength(0);
+            }
+
+            run.append(literal);
+            runci = ci;
+
+            if (!fixed) {
+                best = longer(best, run, runci);
+                run.setLength(0);
+                run.append(literal);
+            }
+        }
+
+        return longer(best, run, runci);
+    }
+
+    private static RegexPrefix longer(RegexPrefix best, StringBuilder run, boolean ci) {
+        if (run.length() == 0) {
+            return best;
+        }
+        return longer(best, new RegexPrefix(run.toString(), ci));
+    }
+
+    private static RegexPrefix longer(RegexPrefix best, RegexPrefix literal) {
+        if (literal == null || literal.prefix().length() == 0) {
+            return best;
+        }
+        if (best == null || literal.prefix().length() > best.prefix().length()) {
+            return literal;
+        }
+        return best;
+    }
+
+    private static String repeat(char ch, int count) {
+        StringBuilder sb = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            sb.append(ch);
+        }
+        return sb.toString();
+    }
+
     /*
      * Yet another related computation: it takes a RegexTree and computes the
      * leading anchors that it encounters.
@@ -159,6 +442,7 @@ final class RegexFCD {
         RegexNode concatNode = null;
         int nextChild = 0;
         int result = 0;
+        boolean lookaround = false;
 
         curNode = tree._root;
 
@@ -187,11 +471,22 @@ final class RegexFCD {
                 case RegexNode.End:
                     return result | anchorFromType(curNode._type);
 
-                case RegexNode.Empty:
                 case RegexNode.Require:
                 case RegexNode.Prevent:
+                    lookaround = true;
                     break;
 
+                case RegexNode.Empty:
+                    break;
+
+                case RegexNode.Setloop:
+                case RegexNode.Setloopatomic:
+                case RegexNode.Notoneloop:
+                case RegexNode.Notoneloopatomic:
+                    if (lookaround || (tree._options & RegexOptions.RightToLeft) != 0)
+                        return result;
+                    return result | leadingLoopAnchor(curNode, tree._root);
+
                 default:
                     return result;
             }
@@ -203,6 +498,169 @@ final class RegexFCD {
         }
     }
 
+    /*
+     * A leading greedy .* that can run to the end of the text or line pegs
+     * the regex too: if it fails at some position, every position it could
+     * have reached fails as well, since trying there is the same as the .*
+     * giving back fewer chars. So (?s).*x is only tried at the start, and
+     * .*x only there and just after each newline. This no longer holds if
+     * the rest of the regex can see what the .* captured, with a
+     * backreference or a balancing group.
+     */
+    private static int leadingLoopAnchor(RegexNode loop, RegexNode root) {
+        if (loop._n != Integer.MAX_VALUE || seesCaptures(root))
+            return 0;
+
+        switch (loop._type) {
+            case RegexNode.Setloop:
+            case RegexNode.Setloopatomic:
+                return RegexCharClass.AnyClass.equals(loop._str) ? Start : 0;
+
+            case RegexNode.Notoneloop:
+            case RegexNode.Notoneloopatomic:
+                return loop._ch == '\n' ? StartOrBol : 0;
+
+            default:
+                return 0;
+        }
+    }
+
+    private static boolean seesCaptures(RegexNode node) {
+        if (node._type == RegexNode.Ref || node._type == RegexNode.Testref ||
+                (node._type == RegexNode.Capture && node._n != -1))
+            return true;
+
+        for (int i = 0; i < node.childCount(); i++) {
+            if (seesCaptures(node.childAt(i)))
+                return true;
+        }
+
+        return false;
+    }
+
+    /*
+     * The same for the end: it takes a RegexTree and tells whether a match
+     * has to end at the end of the text (End), or there or just before a
+     * final newline (EndZ). Returns 0 otherwise, and for a right-to-left
+     * regex, whose end anchors are leading ones.
+     */
+    static int trailingAnchor(RegexTree tree) {
+        RegexNode curNode = tree._root;
+
+        if ((tree._options & RegexOptions.RightToLeft) != 0) {
+            return 0;
+        }
+
+        for (; ; ) {
+            switch (curNode._type) {
+                case RegexNode.Concatenate:
+                    if (curNode.childCount() == 0) {
+                        return 0;
+                    }
+                    curNode = curNode.childAt(curNode.childCount() - 1);
+                    break;
+
+                case RegexNode.Greedy:
+                case RegexNode.Capture:
+                    curNode = curNode.childAt(0);
+                    break;
+
+                case RegexNode.EndZ:
+                case RegexNode.End:
+                    return anchorFromType(curNode._type);
+
+                default:
+                    return 0;
+            }
+        }
+    }
+
+    /*
+     * The literal that every match ends with, for a regex whose matches end
+     * at the end of the text (see trailingAnchor): the text has to end with
+     * it too, so \w+\.jpg$ rejects a key that doesn't end with .jpg without
+     * scanning it. Returns null if it doesn't see one.
+     */
+    static RegexPrefix trailingLiteral(RegexTree tree) {
+        if (trailingAnchor(tree) == 0) {
+            return null;
+        }
+
+        RegexFCD s = new RegexFCD();
+        s._suffix = new StringBuilder();
+        s.addSuffix(tree._root);
+
+        if (s._suffix.length() == 0) {
+            return null;
+        }
+
+        return new RegexPrefix(s._suffix.reverse().toString(), s._suffixCi);
+    }
+
+    /*
+     * Adds the chars that every match of the node ends with to the suffix,
+     * and returns true if that is all the node matches: the node before it
+     * may add to the suffix then.
+     */
+    private boolean addSuffix(RegexNode node) {
+        switch (node._type) {
+            case RegexNode.One:
+                return addSuffix(String.valueOf(node._ch), node);
+
+            case RegexNode.Multi:
+                return addSuffix(node._str, node);
+
+            case RegexNode.Oneloop:
+            case RegexNode.Oneloopatomic:
+            case RegexNode.Onelazy:
+                return addSuffix(repeat(node._ch, node._m), node) && node._m == node._n;
+
+            case RegexNode.Capture:
+            case RegexNode.Greedy:
+                return addSuffix(node.childAt(0));
+
+            case RegexNode.Concatenate:
+                for (int i = node.childCount() - 1; i >= 0; i--) {
+                    if (!addSuffix(node.childAt(i))) {
+                        return false;
+                    }
+                }
+                return true;
+
+            case RegexNode.Bol:
+            case RegexNode.Eol:
+            case RegexNode.Boundary:
+            case RegexNode.Nonboundary:
+            case RegexNode.ECMABoundary:
+            case RegexNode.NonECMABoundary:
+            case RegexNode.Beginning:
+            case RegexNode.Start:
+            case RegexNode.EndZ:
+            case RegexNode.End:
+            case RegexNode.Empty:
+            case RegexNode.Require:
+            case RegexNode.Prevent:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    private boolean addSuffix(String literal, RegexNode node) {
+        boolean ci = 0 != (node._options & RegexOptions.IgnoreCase);
+
+        if (_suffix.length() > 0 && ci != _suffixCi) {
+            return false;
+        }
+
+        _suffixCi = ci;
+        for (int i = literal.length() - 1; i >= 0; i--) {
+            _suffix.append(literal.charAt(i));
+        }
+        return true;
+    }
+
     /*
      * Convert anchor type to anchor bit.
      */
@@ -234,6 +692,7 @@ final class RegexFCD {
 
         if (0 != (anchors & Beginning)) sb.append(", Beginning");
         if (0 != (anchors & Start)) sb.append(", Start");
+        if (0 != (anchors & StartOrBol)) sb.append(", StartOrBol");
         if (0 != (anchors & Bol)) sb.append(", Bol");
         if (0 != (anchors & Boundary)) sb.append(", Boundary");
         if (0 != (anchors & ECMABoundary)) sb.append(", ECMABoundary");
@@ -391,7 +850,8 @@ final class RegexFCD {
         boolean ci = false;
         boolean rtl = false;
 
-        if (nodeType <= RegexNode.Ref) {
+        // the primitive operations: the leaves up to Ref, and the atomic loops
+        if (nodeType <= RegexNode.Ref || (nodeType >= RegexNode.Oneloopatomic && nodeType <= RegexNode.Setloopatomic)) {
             if ((node._options & RegexOptions.IgnoreCase) != 0) {
                 ci = true;
             }
@@ -481,11 +941,13 @@ final class RegexFCD {
                 break;
 
             case RegexNode.Oneloop:
+            case RegexNode.Oneloopatomic:
             case RegexNode.Onelazy:
                 pushFC(new RegexFC(node._ch, false, node._m == 0, ci));
                 break;
 
             case RegexNode.Notoneloop:
+            case RegexNode.Notoneloopatomic:
             case RegexNode.Notonelazy:
                 pushFC(new RegexFC(node._ch, true, node._m == 0, ci));
                 break;
@@ -504,6 +966,7 @@ final class RegexFCD {
                 break;
 
             case RegexNode.Setloop:
+            case RegexNode.Setloopatomic:
             case RegexNode.Setlazy:
                 pushFC(new RegexFC(node._str, node._m == 0, ci));
                 break;
@@ -35,31 +35,52 @@ import java.util.Locale;
 // input.
 // @author  Tony Guo <tony.guo.peng@gmail.com>
 final class RegexInterpreter extends RegexRunner {
+    // The instructions that go right to left or ignore case are dispatched
+    // with this bit set in their key, to the cases that handle every
+    // variant; the plain ones reach the cases that work on locals. The Rtl
+    // bit is reused so that the keys of the switch in go() stay dense.
+    private static final int Variant = RegexCode.Rtl;
+
     int runoperator;
     int[] runcodes;
     int runcodepos;
     String[] runstrings;
+    RegexCharClass.Matcher[] runmatchers;
+    RegexCode.JumpTable[] runjumptables;
     RegexCode runcode;
     RegexPrefix runfcPrefix;
     RegexBoyerMoore runbmPrefix;
+    RegexAhoCorasick runacPrefix;
     int runanchors;
     boolean runrtl;
     boolean runci;
+    int runspan;
     Locale runculture;
+    RegexMemo.Table runmemo;
 
     RegexInterpreter(RegexCode code , Locale culture) {
         runcode = code;
         runcodes = code._codes;
         runstrings = code._strings;
+        runmatchers = code._matchers;
+        runjumptables = code._jumpTables;
         runfcPrefix = code._fcPrefix;
         runbmPrefix = code._bmPrefix;
+        runacPrefix = code._acPrefix;
         runanchors = code._anchors;
         runculture = culture;
+        runmemo = code._memo != null ? new RegexMemo.Table(code._memo) : null;
     }
 
     @Override
     protected void initTrackCount() {
-        runtrackcount = runcode._trackcount;
+        // a memo point pushes a frame too
+        runtrackcount = runcode._trackcount + (runcode._memo != null ? runcode._memo._count : 0);
+    }
+
+    @Override
+    long memoTableSize() {
+        return runmemo != null ? runmemo.bytes() : 0;
     }
 
     private void advance() {
@@ -72,9 +93,11 @@ final class RegexInterpreter extends RegexRunner {
     }
 
     private void goTo(int newpos) {
-        // when branching backward, ensure storage
+        // when branching backward, ensure storage; a loop can only go round
+        // through here or through backtrack(), so the timeout is checked there
         if (newpos < runcodepos) {
             ensureStorage();
+            checkTimeout();
         }
 
         setOperator(runcodes[newpos]);
@@ -138,6 +161,15 @@ final class RegexInterpreter extends RegexRunner {
     private void backtrack() {
         int newpos = runtrack[runtrackpos++];
 
+        // the frame of a memo point: the match failed from everywhere it
+        // went on to from there, so it fails from the point at that position
+        while (newpos >= runcodes.length) {
+            runmemo.fail(newpos - runcodes.length, runtrack[runtrackpos++]);
+            newpos = runtrack[runtrackpos++];
+        }
+
+        checkTimeout();
+
         if (runmatch.isDebugEnabled()) {
             if (newpos < 0) {
                 System.out.println("       Backtracking (back2) to code position " + (-newpos));
@@ -164,7 +196,7 @@ final class RegexInterpreter extends RegexRunner {
     private void setOperator(int op) {
         runci = (0 != (op & RegexCode.Ci));
         runrtl = (0 != (op & RegexCode.Rtl));
-        runoperator = op & ~(RegexCode.Rtl | RegexCode.Ci);
+        runoperator = (runci || runrtl) ? (op & ~RegexCode.Ci) | Variant : op;
     }
 
     private void trackPop() {
@@ -246,9 +278,9 @@ final class RegexInterpreter extends RegexRunner {
     }
 
     private char forwardcharnext() {
-        char ch = (runrtl ? runtext.charAt(--runtextpos) : runtext.charAt(runtextpos++)); // TODO: using java charAt(i)
+        char ch = (runrtl ? charAt(runtext, --runtextpos) : charAt(runtext, runtextpos++)); // TODO: using java charAt(i)
 
-        return (runci ? Character.toLowerCase(ch /* , runculture */) : ch); // TODO: java does not support cultureInfo
+        return (runci ? RegexCaseFolding.fold(ch) : ch);
     }
 
     private boolean stringmatch(String str) {
@@ -270,12 +302,11 @@ final class RegexInterpreter extends RegexRunner {
         if (!runci) {
             while (c != 0)
                 // TODO: using java charAt(i)
-                if (str.charAt(--c) != runtext.charAt(--pos))
+                if (str.charAt(--c) != charAt(runtext, --pos))
                     return false;
         } else {
             while (c != 0)
-                // TODO: java port does not support cultureInfo
-                if (str.charAt(--c) != Character.toLowerCase(runtext.charAt(--pos))) //, runculture))
+                if (str.charAt(--c) != RegexCaseFolding.fold(charAt(runtext, --pos)))
                     return false;
         }
 
@@ -310,15 +341,14 @@ final class RegexInterpreter extends RegexRunner {
 
         if (!runci) {
             while (c-- != 0) {
-                if (runtext.charAt(--cmpos) != runtext.charAt(--pos)) {
+                if (charAt(runtext, --cmpos) != charAt(runtext, --pos)) {
                     return false;
                 }
             }
         } else {
             while (c-- != 0) {
-                // TODO: java does not support cultureInfo
-                if (Character.toLowerCase(runtext.charAt(--cmpos))
-                        != Character.toLowerCase(runtext.charAt(--pos))) {
+                if (RegexCaseFolding.fold(charAt(runtext, --cmpos))
+                        != RegexCaseFolding.fold(charAt(runtext, --pos))) {
                     return false;
                 }
             }
@@ -333,23 +363,67 @@ final class RegexInterpreter extends RegexRunner {
         return true;
     }
 
+    // where a plain loop that may match c more chars has to stop
+    private int loopEnd(int c) {
+        return c < runtextend - runtextpos ? runtextpos + c : runtextend;
+    }
+
+    /*
+     * Runs a greedy char loop with no upper bound at a memo point, like
+     * its case in go() does, except that it takes no more chars than up
+     * to where the same loop failed before: it can only fail again from
+     * there, and from anywhere further on in the run.
+     */
+    private void memoLoop(RegexMemo.Table memo) {
+        int op = runcodes[runcodepos] & RegexCode.Mask;
+        int c = forwardchars();
+        int i;
+
+        for (i = c; i > 0; i--) {
+            if (i < c && memo.failed(runcodepos, runtextpos)) {
+                backwardnext();
+                i++;
+                break;
+            }
+
+            char ch = forwardcharnext();
+            boolean matched = op == RegexCode.Oneloop ? ch == (char) operand(0) :
+                    op == RegexCode.Notoneloop ? ch != (char) operand(0) : runmatchers[operand(0)].matches(ch);
+
+            if (!matched) {
+                backwardnext();
+                break;
+            }
+        }
+
+        if (c > i) {
+            trackPush(c - i - 1, textpos() - bump());
+        }
+
+        advance(2);
+    }
+
     private void backwardnext() {
         runtextpos += runrtl ? 1 : -1;
     }
 
     private char charAt(int j) {
-        return runtext.charAt(j);
+        return charAt(runtext, j);
     }
 
     // !!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!
-    // !!!! This function must be kept synchronized with GenerateFindFirstChar !!!!
-    // !!!! in RegexCompiler.cs                                                !!!!
+    // !!!! This function must be kept synchronized with findFirstCharAnchored !!!!
+    // !!!! in CompiledRegexRunner.java                                        !!!!
     // !!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!
     @Override
     protected boolean findFirstChar() {
         int i;
         String set;
 
+        if (0 != (runanchors & RegexFCD.StartOrBol) && !skipToLineStart()) {
+            return false;
+        }
+
         if (0 != (runanchors & (RegexFCD.Beginning | RegexFCD.Start | RegexFCD.EndZ | RegexFCD.End))) {
             if (!runcode._rightToLeft) {
                 if ((0 != (runanchors & RegexFCD.Beginning) && runtextpos > runtextbeg) ||
@@ -379,7 +453,20 @@ final class RegexInterpreter extends RegexRunner {
                 return runbmPrefix.isMatch(runtext, runtextpos, runtextbeg, runtextend);
             }
 
+            if (runacPrefix != null) {
+                return runacPrefix.isMatch(runtext, runtextpos, runtextbeg, runtextend);
+            }
+
             return true; // found a valid start or end anchor
+        } else if (runacPrefix != null) {
+            runtextpos = runacPrefix.scan(runtext, runtextpos, runtextbeg, runtextend);
+
+            if (runtextpos == -1) {
+                runtextpos = runtextend;
+                return false;
+            }
+
+            return true;
         } else if (runbmPrefix != null) {
             runtextpos = runbmPrefix.scan(runtext, runtextpos, runtextbeg, runtextend);
 
@@ -397,6 +484,10 @@ final class RegexInterpreter extends RegexRunner {
         runci = runfcPrefix.isCaseInsensitive();
         set = runfcPrefix.prefix();
 
+        if (!runrtl && runtext instanceof RegexUtf8) {
+            return findFirstCharUtf8(runcode._fcMatcher, runci);
+        }
+
         if (RegexCharClass.isSingleton(set)) {
             char ch = RegexCharClass.singletonChar(set);
 
@@ -408,7 +499,7 @@ final class RegexInterpreter extends RegexRunner {
             }
         } else {
             for (i = forwardchars(); i > 0; i--) {
-                if (RegexCharClass.charInClass(forwardcharnext(), set)) {
+                if (runcode._fcMatcher.matches(forwardcharnext())) {
                     backwardnext();
                     return true;
                 }
@@ -419,17 +510,40 @@ final class RegexInterpreter extends RegexRunner {
 
     @Override
     protected void go() {
+        // what cannot change while matching is read once, out of the loop
+        final boolean debug = runmatch.isDebugEnabled();
+        final CharSequence text = runtext;
+        final int[] codes = runcodes;
+        final RegexMemo.Table memo = runmemo;
+
+        if (memo != null) {
+            memo.reset(text, runtextbeg, runtextend, runtextstart);
+        }
+
         goTo(0);
 
-BACKWARD:
         for (; ;) {
             //#if DBG
-            if (runmatch.isDebugEnabled()) {
+            if (debug) {
                 dumpState();
             }
             //#endif
 
-            checkTimeout();
+            // at a memo point, give up at once where the match failed before,
+            // and leave a frame that marks the failure if it fails this time
+            if (memo != null && (runoperator & (RegexCode.Back | RegexCode.Back2)) == 0 && memo.isPoint(runcodepos)) {
+                if (memo.failed(runcodepos, runtextpos)) {
+                    backtrack();
+                    continue;
+                }
+                runtrack[--runtrackpos] = runtextpos;
+                runtrack[--runtrackpos] = codes.length + runcodepos;
+
+                if (memo.isStop(runcodepos)) {
+                    memoLoop(memo);
+                    continue;
+                }
+            }
 
             switch (operator()) {
                 case RegexCode.Stop: {
@@ -453,6 +567,21 @@ BACKWARD:
                     continue;
                 }
 
+                case RegexCode.Switch: {
+                    if (forwardchars() < 1) {
+                        break;
+                    }
+
+                    int branch = runjumptables[operand(0)].branch(charAt(runtext, runtextpos));
+                    if (branch < 0) {
+                        break;
+                    }
+
+                    // the target of the Goto of the branch
+                    goTo(runcodes[runcodepos + 2 + 2 * branch + 1]);
+                    continue;
+                }
+
                 case RegexCode.Lazybranch: {
                     trackPush(textpos());
                     advance(1);
@@ -515,6 +644,24 @@ BACKWARD:
                     continue;
                 }
 
+                case RegexCode.Spanmark: {
+                    runspan = textpos();
+                    advance();
+                    continue;
+                }
+
+                case RegexCode.Capturespan: {
+                    capture(operand(0), runspan, textpos());
+                    trackPush();
+                    advance(1);
+                    continue;
+                }
+
+                case RegexCode.Capturespan | RegexCode.Back: {
+                    uncapture();
+                    break;
+                }
+
                 case RegexCode.Capturemark | RegexCode.Back: {
                     trackPop();
                     stackPush(trackPeek());
@@ -573,12 +720,10 @@ BACKWARD:
                         }
                     } else {
                         // The inner expression found an empty match, so we'll go directly to 'back2' if we
-                        // backtrack.  In this case, we need to push something on the stack, since back2 pops.
-                        // However, in the case of ()+? or similar, this empty match may be legitimate, so push the text
-                        // position associated with that empty match.
-                        stackPush(oldMarkPos);
-
-                        trackPush2(stackPeek());                // Save old mark
+                        // backtrack.  The mark stays popped, as it does for a nonempty match; leaving it on
+                        // the stack would hand it to an enclosing loop as that loop's own mark.  The old mark
+                        // is saved as -2 - mark so that 'back2' knows there is no new mark to pop.
+                        trackPush2(-2 - oldMarkPos);            // Save old mark
                     }
                     advance(1);
                     continue;
@@ -604,9 +749,15 @@ BACKWARD:
                 case RegexCode.Lazybranchmark | RegexCode.Back2: {
                     // The lazy loop has failed.  We'll do a true backtrack and
                     // start over before the lazy loop.
-                    stackPop();
                     trackPop();
-                    stackPush(trackPeek());                      // Recall old mark
+                    int mark = trackPeek();
+
+                    if (mark < -1) {                             // Empty match: no new mark was made
+                        stackPush(-2 - mark);                    // Recall old mark
+                    } else {
+                        stackPop();
+                        stackPush(mark);                         // Recall old mark
+                    }
                     break;
                 }
 
@@ -860,33 +1011,180 @@ BACKWARD:
                     continue;
                 }
 
+                // the plain instructions: left to right and case-sensitive,
+                // they scan with the text position in a local and store it
+                // back once
                 case RegexCode.One: {
-                    if (forwardchars() < 1 || forwardcharnext() != (char) operand(0)) {
+                    int pos = runtextpos;
+
+                    if (pos >= runtextend || charAt(text, pos) != (char) codes[runcodepos + 1]) {
                         break;
                     }
 
+                    runtextpos = pos + 1;
                     advance(1);
                     continue;
                 }
 
                 case RegexCode.Notone: {
-                    if (forwardchars() < 1 || forwardcharnext() == (char) operand(0)) {
+                    int pos = runtextpos;
+
+                    if (pos >= runtextend || charAt(text, pos) == (char) codes[runcodepos + 1]) {
                         break;
                     }
 
+                    runtextpos = pos + 1;
                     advance(1);
                     continue;
                 }
 
-                case RegexCode.Set:
-                    if (forwardchars() < 1 || !RegexCharClass.charInClass(forwardcharnext(),
-                            runstrings[operand(0)]))
+                case RegexCode.Set: {
+                    int pos = runtextpos;
+
+                    if (pos >= runtextend || !runmatchers[codes[runcodepos + 1]].matches(charAt(text, pos))) {
                         break;
+                    }
 
+                    runtextpos = pos + 1;
                     advance(1);
                     continue;
+                }
 
                 case RegexCode.Multi: {
+                    String str = runstrings[codes[runcodepos + 1]];
+                    int pos = runtextpos;
+
+                    if (runtextend - pos < str.length() || !startsWith(text, str, pos)) {
+                        break;
+                    }
+
+                    runtextpos = pos + str.length();
+                    advance(1);
+                    continue;
+                }
+
+                case RegexCode.Onerep:
+                case RegexCode.Notonerep: {
+                    int c = codes[runcodepos + 2];
+                    int pos = runtextpos;
+
+                    if (runtextend - pos < c) {
+                        break;
+                    }
+
+                    int stop = pos + c;
+                    char ch = (char) codes[runcodepos + 1];
+                    boolean one = runoperator == RegexCode.Onerep;
+
+                    while (pos < stop && (charAt(text, pos) == ch) == one) {
+                        pos++;
+                    }
+
+                    if (pos < stop) {
+                        break;  // mismatch: backtrack
+                    }
+
+                    runtextpos = pos;
+                    advance(2);
+                    continue;
+                }
+
+                case RegexCode.Setrep: {
+                    int c = codes[runcodepos + 2];
+                    int pos = runtextpos;
+
+                    if (runtextend - pos < c) {
+                        break;
+                    }
+
+                    int stop = pos + c;
+                    RegexCharClass.Matcher set = runmatchers[codes[runcodepos + 1]];
+
+                    while (pos < stop && set.matches(charAt(text, pos))) {
+                        pos++;
+                    }
+
+                    if (pos < stop) {
+                        break;  // mismatch: backtrack
+                    }
+
+                    runtextpos = pos;
+                    advance(2);
+                    continue;
+                }
+
+                case RegexCode.Oneloop:
+                case RegexCode.Oneloopatomic:
+                case RegexCode.Notoneloop:
+                case RegexCode.Notoneloopatomic: {
+                    int start = runtextpos;
+                    int stop = loopEnd(codes[runcodepos + 2]);
+                    char ch = (char) codes[runcodepos + 1];
+                    boolean one = runoperator == RegexCode.Oneloop || runoperator == RegexCode.Oneloopatomic;
+                    int pos = start;
+
+                    while (pos < stop && (charAt(text, pos) == ch) == one) {
+                        pos++;
+                    }
+
+                    runtextpos = pos;
+
+                    // the atomic loops push nothing: they never give back what they matched
+                    if (pos > start && (runoperator == RegexCode.Oneloop || runoperator == RegexCode.Notoneloop)) {
+                        trackPush(pos - start - 1, pos - 1);
+                    }
+
+                    advance(2);
+                    continue;
+                }
+
+                case RegexCode.Setloop:
+                case RegexCode.Setloopatomic: {
+                    int start = runtextpos;
+                    int stop = loopEnd(codes[runcodepos + 2]);
+                    RegexCharClass.Matcher set = runmatchers[codes[runcodepos + 1]];
+                    int pos = start;
+
+                    while (pos < stop && set.matches(charAt(text, pos))) {
+                        pos++;
+                    }
+
+                    runtextpos = pos;
+
+                    if (pos > start && runoperator == RegexCode.Setloop) {
+                        trackPush(pos - start - 1, pos - 1);
+                    }
+
+                    advance(2);
+                    continue;
+                }
+
+                case RegexCode.One | Variant: {
+                    if (forwardchars() < 1 || forwardcharnext() != (char) operand(0)) {
+                        break;
+                    }
+
+                    advance(1);
+                    continue;
+                }
+
+                case RegexCode.Notone | Variant: {
+                    if (forwardchars() < 1 || forwardcharnext() == (char) operand(0)) {
+                        break;
+                    }
+
+                    advance(1);
+                    continue;
+                }
+
+                case RegexCode.Set | Variant:
+                    if (forwardchars() < 1 || !runmatchers[operand(0)].matches(forwardcharnext()))
+                        break;
+
+                    advance(1);
+                    continue;
+
+                case RegexCode.Multi | Variant: {
                     if (!stringmatch(runstrings[operand(0)])) {
                         break;
                     }
@@ -895,7 +1193,8 @@ BACKWARD:
                     continue;
                 }
 
-                case RegexCode.Ref: {
+                case RegexCode.Ref:
+                case RegexCode.Ref | Variant: {
                     int capnum = operand(0);
 
                     if (isMatched(capnum)) {
@@ -912,7 +1211,7 @@ BACKWARD:
                     continue;
                 }
 
-                case RegexCode.Onerep: {
+                case RegexCode.Onerep | Variant: {
                     int c = operand(1);
 
                     if (forwardchars() < c) {
@@ -923,16 +1222,19 @@ BACKWARD:
 
                     while (c-- > 0) {
                         if (forwardcharnext() != ch) {
-                            // TODO: break BreakBackward;
-                            break BACKWARD;
+                            break;
                         }
                     }
 
+                    if (c >= 0) {
+                        break;  // mismatch: backtrack
+                    }
+
                     advance(2);
                     continue;
                 }
 
-                case RegexCode.Notonerep: {
+                case RegexCode.Notonerep | Variant: {
                     int c = operand(1);
 
                     if (forwardchars() < c) {
@@ -943,36 +1245,42 @@ BACKWARD:
 
                     while (c-- > 0) {
                         if (forwardcharnext() == ch) {
-                            // TODO: break BreakBackward;
-                            break BACKWARD;
+                            break;
                         }
                     }
 
+                    if (c >= 0) {
+                        break;  // mismatch: backtrack
+                    }
+
                     advance(2);
                     continue;
                 }
 
-                case RegexCode.Setrep: {
+                case RegexCode.Setrep | Variant: {
                     int c = operand(1);
 
                     if (forwardchars() < c) {
                         break;
                     }
 
-                    String set = runstrings[operand(0)];
+                    RegexCharClass.Matcher set = runmatchers[operand(0)];
 
                     while (c-- > 0) {
-                        if (!RegexCharClass.charInClass(forwardcharnext(), set)) {
-                            // TODO: break BreakBackward;
-                            break BACKWARD;
+                        if (!set.matches(forwardcharnext())) {
+                            break;
                         }
                     }
 
+                    if (c >= 0) {
+                        break;  // mismatch: backtrack
+                    }
+
                     advance(2);
                     continue;
                 }
 
-                case RegexCode.Oneloop: {
+                case RegexCode.Oneloop | Variant: {
                     int c = operand(1);
 
                     if (c > forwardchars()) {
@@ -997,7 +1305,7 @@ BACKWARD:
                     continue;
                 }
 
-                case RegexCode.Notoneloop: {
+                case RegexCode.Notoneloop | Variant: {
                     int c = operand(1);
 
                     if (c > forwardchars()) {
@@ -1021,18 +1329,18 @@ BACKWARD:
                     continue;
                 }
 
-                case RegexCode.Setloop: {
+                case RegexCode.Setloop | Variant: {
                     int c = operand(1);
 
                     if (c > forwardchars()) {
                         c = forwardchars();
                     }
 
-                    String set = runstrings[operand(0)];
+                    RegexCharClass.Matcher set = runmatchers[operand(0)];
                     int i;
 
                     for (i = c; i > 0; i--) {
-                        if (!RegexCharClass.charInClass(forwardcharnext(), set)) {
+                        if (!set.matches(forwardcharnext())) {
                             backwardnext();
                             break;
                         }
@@ -1046,8 +1354,105 @@ BACKWARD:
                     continue;
                 }
 
+                // the atomic loops push nothing: they never give back what they matched
+                case RegexCode.Oneloopatomic | Variant: {
+                    int c = operand(1);
+
+                    if (c > forwardchars()) {
+                        c = forwardchars();
+                    }
+
+                    char ch = (char) operand(0);
+
+                    for (int i = c; i > 0; i--) {
+                        if (forwardcharnext() != ch) {
+                            backwardnext();
+                            break;
+                        }
+                    }
+
+                    advance(2);
+                    continue;
+                }
+
+                case RegexCode.Notoneloopatomic | Variant: {
+                    int c = operand(1);
+
+                    if (c > forwardchars()) {
+                        c = forwardchars();
+                    }
+
+                    char ch = (char) operand(0);
+
+                    for (int i = c; i > 0; i--) {
+                        if (forwardcharnext() == ch) {
+                            backwardnext();
+                            break;
+                        }
+                    }
+
+                    advance(2);
+                    continue;
+                }
+
+                case RegexCode.Setloopatomic | Variant: {
+                    int c = operand(1);
+
+                    if (c > forwardchars()) {
+                        c = forwardchars();
+                    }
+
+                    RegexCharClass.Matcher set = runmatchers[operand(0)];
+
+                    for (int i = c; i > 0; i--) {
+                        if (!set.matches(forwardcharnext())) {
+                            backwardnext();
+                            break;
+                        }
+                    }
+
+                    advance(2);
+                    continue;
+                }
+
+                // the loops that scan stop only where the literal that follows
+                // them is found: the greedy one from the last place backwards,
+                // the lazy one from the first place onwards
+                case RegexCode.Notoneloopscan: {
+                    String literal = runstrings[operand(1)];
+                    int start = textpos();
+                    int end = Math.min(notoneEnd((char) operand(0), start), runtextend - literal.length());
+                    int pos = lastIndexOfLiteral(literal, end, start);
+
+                    if (pos < 0) {
+                        break;
+                    }
+
+                    textto(pos);
+
+                    if (pos > start) {
+                        trackPush(start, pos);
+                    }
+
+                    advance(2);
+                    continue;
+                }
+
+                case RegexCode.Notonelazyscan: {
+                    int end = notoneEnd((char) operand(0), textpos());
+
+                    if (end > textpos()) {
+                        trackPush(end, textpos());
+                    }
+
+                    advance(2);
+                    continue;
+                }
+
                 case RegexCode.Oneloop | RegexCode.Back:
-                case RegexCode.Notoneloop | RegexCode.Back: {
+                case RegexCode.Oneloop | RegexCode.Back | Variant:
+                case RegexCode.Notoneloop | RegexCode.Back:
+                case RegexCode.Notoneloop | RegexCode.Back | Variant: {
                     trackPop(2);
                     int i = trackPeek();
                     int pos = trackPeek(1);
@@ -1062,7 +1467,8 @@ BACKWARD:
                     continue;
                 }
 
-                case RegexCode.Setloop | RegexCode.Back: {
+                case RegexCode.Setloop | RegexCode.Back:
+                case RegexCode.Setloop | RegexCode.Back | Variant: {
                     trackPop(2);
                     int i = trackPeek();
                     int pos = trackPeek(1);
@@ -1078,7 +1484,9 @@ BACKWARD:
                 }
 
                 case RegexCode.Onelazy:
-                case RegexCode.Notonelazy: {
+                case RegexCode.Onelazy | Variant:
+                case RegexCode.Notonelazy:
+                case RegexCode.Notonelazy | Variant: {
                     int c = operand(1);
 
                     if (c > forwardchars()) {
@@ -1093,7 +1501,8 @@ BACKWARD:
                     continue;
                 }
 
-                case RegexCode.Setlazy: {
+                case RegexCode.Setlazy:
+                case RegexCode.Setlazy | Variant: {
                     int c = operand(1);
 
                     if (c > forwardchars()) {
@@ -1108,7 +1517,8 @@ BACKWARD:
                     continue;
                 }
 
-                case RegexCode.Onelazy | RegexCode.Back: {
+                case RegexCode.Onelazy | RegexCode.Back:
+                case RegexCode.Onelazy | RegexCode.Back | Variant: {
                     trackPop(2);
                     int pos = trackPeek(1);
                     textto(pos);
@@ -1127,7 +1537,8 @@ BACKWARD:
                     continue;
                 }
 
-                case RegexCode.Notonelazy | RegexCode.Back: {
+                case RegexCode.Notonelazy | RegexCode.Back:
+                case RegexCode.Notonelazy | RegexCode.Back | Variant: {
                     trackPop(2);
                     int pos = trackPeek(1);
                     textto(pos);
@@ -1146,12 +1557,52 @@ BACKWARD:
                     continue;
                 }
 
-                case RegexCode.Setlazy | RegexCode.Back: {
+                case RegexCode.Notoneloopscan | RegexCode.Back: {
+                    trackPop(2);
+                    int start = trackPeek();
+                    int pos = lastIndexOfLiteral(runstrings[operand(1)], trackPeek(1) - 1, start);
+
+                    if (pos < 0) {
+                        break;
+                    }
+
+                    textto(pos);
+
+                    if (pos > start) {
+                        trackPush(start, pos);
+                    }
+
+                    advance(2);
+                    continue;
+                }
+
+                case RegexCode.Notonelazyscan | RegexCode.Back: {
+                    trackPop(2);
+                    String literal = runstrings[operand(1)];
+                    int end = trackPeek();
+                    int pos = indexOfLiteral(literal, trackPeek(1) + 1);
+
+                    if (pos < 0 || pos > end || pos > runtextend - literal.length()) {
+                        break;
+                    }
+
+                    textto(pos);
+
+                    if (pos < end) {
+                        trackPush(end, pos);
+                    }
+
+                    advance(2);
+                    continue;
+                }
+
+                case RegexCode.Setlazy | RegexCode.Back:
+                case RegexCode.Setlazy | RegexCode.Back | Variant: {
                     trackPop(2);
                     int pos = trackPeek(1);
                     textto(pos);
 
-                    if (!RegexCharClass.charInClass(forwardcharnext(), runstrings[operand(0)])) {
+                    if (!runmatchers[operand(0)].matches(forwardcharnext())) {
                         break;
                     }
 
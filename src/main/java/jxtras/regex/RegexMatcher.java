@@ -0,0 +1,422 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package jxtras.regex;
+
+import jxtras.regex.support.R;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * <p>The RegexMatcher class finds the matches of a {@link Regex} in an input one after the
+ * other, like {@link Match#nextMatch()} does, but without making a new {@link Match} for each
+ * one: the matcher keeps its own runner and the storage of the last match, and reuses them
+ * for the next one. Once the storage has grown to fit the captures of the pattern, finding a
+ * match and reading the bounds of its groups allocates nothing (except with
+ * {@link RegexOptions#NonBacktracking}, whose runner records the captures of its threads).</p>
+ * <p/>
+ * <p>A RegexMatcher is obtained from {@link Regex#matcher(CharSequence)}. Unlike a Regex, it is
+ * mutable, and must not be used by several threads at a time.</p>
+ * <p/>
+ * <p>A matcher obtained from {@link Regex#matcher(byte[])} or {@link Regex#matcher(ByteBuffer)}
+ * reads UTF-8 encoded bytes, and the positions it takes and tells are byte offsets from the
+ * start of the input. A match never starts between the two chars of a surrogate pair, and one that
+ * ends between them spans the four bytes of the pair, as does a group. Reset with other bytes, it reads them with the same storage.</p>
+ *
+ * @author Tony Guo <tony.guo.peng@gmail.com>
+ * @since 1.0
+ */
+public final class RegexMatcher {
+    private final Regex regex;
+    private final RegexRunner runner;
+
+    // if captures are sparse, the group numbers in order and the slot of each
+    private final int[] groupNumbers;
+    private final int[] groupSlots;
+
+    // the input, and where the next search starts
+    private CharSequence text;
+    private boolean textShared;
+    private int textPosition;
+    private int prevlen;
+    private boolean done;
+
+    // the time the searches must be done by, if any, and the steps each may take
+    private long deadline = Long.MAX_VALUE;
+    private long maxSteps;
+
+    // the last match, or null if the last search failed
+    private Match match;
+
+    RegexMatcher(Regex regex, CharSequence input) {
+        this.regex = regex;
+        this.runner = regex.createRunner();
+        this.maxSteps = regex.maxSteps;
+
+        if (regex.caps != null) {
+            groupNumbers = new int[regex.caps.size()];
+            groupSlots = new int[groupNumbers.length];
+
+            int i = 0;
+            for (Map.Entry<Integer, Integer> entry : regex.caps.entrySet()) {
+                groupNumbers[i++] = entry.getKey();
+            }
+            Arrays.sort(groupNumbers);
+            for (i = 0; i < groupNumbers.length; i++) {
+                groupSlots[i] = regex.caps.get(groupNumbers[i]);
+            }
+        } else {
+            groupNumbers = null;
+            groupSlots = null;
+        }
+
+        reset(input);
+    }
+
+    /**
+     * Gets the regular expression this matcher finds.
+     */
+    public Regex regex() {
+        return regex;
+    }
+
+    /**
+     * Resets the matcher, so that the next search starts at the beginning of the
+     * input (or at the end of it if the regex is leftward).
+     */
+    public RegexMatcher reset() {
+        textPosition = regex.useOptionR() ? text.length() : 0;
+        prevlen = -1;
+        done = false;
+        match = null;
+        return this;
+    }
+
+    /**
+     * Resets the matcher with a new input. The input is not copied: it must not change while
+     * the matcher finds its matches, and the matcher must be reset after it changes.
+     */
+    public RegexMatcher reset(CharSequence input) {
+        if (input == null)
+            throw new IllegalArgumentException("input cannot be null.");
+
+        text = input;
+        textShared = false;
+        return reset();
+    }
+
+    /**
+     * Resets the matcher with new UTF-8 encoded bytes. The bytes are not copied: they must
+     * not change while the matcher finds its matches.
+     */
+    public RegexMatcher reset(byte[] input) {
+        if (input == null)
+            throw new IllegalArgumentException("input cannot be null.");
+
+        return reset(input, 0, input.length);
+    }
+
+    /**
+     * Resets the matcher with length new UTF-8 encoded bytes of the array, from offset.
+     */
+    public RegexMatcher reset(byte[] input, int offset, int length) {
+        if (input == null)
+            throw new IllegalArgumentException("input cannot be null.");
+        if (offset < 0 || length < 0 || offset > input.length - length)
+            throw new IndexOutOfBoundsException("offset or length is out of the array.");
+
+        if (text instanceof RegexUtf8 && !textShared) {
+            ((RegexUtf8) text).reset(input, offset, length);
+        } else {
+            text = new RegexUtf8(input, offset, length);
+            textShared = false;
+        }
+        return reset();
+    }
+
+    /**
+     * Resets the matcher with the new UTF-8 encoded bytes of the buffer, from its position
+     * to its limit.
+     */
+    public RegexMatcher reset(ByteBuffer input) {
+        if (input == null)
+            throw new IllegalArgumentException("input cannot be null.");
+
+        if (text instanceof RegexUtf8 && !textShared) {
+            ((RegexUtf8) text).reset(input);
+        } else {
+            text = new RegexUtf8(input);
+            textShared = false;
+        }
+        return reset();
+    }
+
+    /**
+     * Gets the time, as {@link System#currentTimeMillis()} tells it, by which the searches
+     * must be done, or {@link Long#MAX_VALUE} if there is none.
+     */
+    public long deadline() {
+        return deadline;
+    }
+
+    /**
+     * Sets the time, as {@link System#currentTimeMillis()} tells it, by which the searches
+     * must be done: past it, a search stops with a {@link RegexMatchTimeoutException}, as it
+     * does when the match timeout of the regex runs out first. {@link Long#MAX_VALUE} sets
+     * no deadline.
+     */
+    public RegexMatcher setDeadline(long deadline) {
+        this.deadline = deadline;
+        return this;
+    }
+
+    /**
+     * Gets the number of steps each search may take, or {@link Regex#INFINITE_STEPS} if it
+     * is not limited.
+     */
+    public long maxSteps() {
+        return maxSteps;
+    }
+
+    /**
+     * Sets the number of steps each search may take before it stops with a
+     * {@link RegexStepLimitException}, in place of the step budget of the regex;
+     * {@link Regex#INFINITE_STEPS} lifts the limit.
+     */
+    public RegexMatcher setMaxSteps(long maxSteps) {
+        Regex.validateMaxSteps(maxSteps);
+        this.maxSteps = maxSteps;
+        return this;
+    }
+
+    /**
+     * Gets the number of bytes that the last search took to remember where the match failed,
+     * with {@link RegexOptions#Memoize}; {@code 0} if it remembered nothing.
+     */
+    public long memoTableSize() {
+        return runner.memoTableSize();
+    }
+
+    /**
+     * Finds the next match, starting where the last one ended.
+     *
+     * @return {@code true} if a match was found.
+     */
+    public boolean find() {
+        if (done) {
+            return false;
+        }
+
+        Match result = runner.scan(regex, text, 0, text.length(), textPosition, prevlen, false, regex.matchTimeout,
+                deadline, maxSteps);
+
+        // over UTF-8 bytes, a match that starts between the halves of a surrogate pair starts at no
+        // byte offset: treat the attempt as failed and bump past it
+        while (result != Match.EMPTY && text instanceof RegexUtf8 && ((RegexUtf8) text).splitsPair(result.index)) {
+            runner.runmatch = result;
+            result = runner.scan(regex, text, 0, text.length(),
+                    regex.rightToLeft() ? result.index + result.length - 1 : result.index + 1, -1, false,
+                    regex.matchTimeout, deadline, maxSteps);
+        }
+
+        if (result == Match.EMPTY) {
+            done = true;
+            match = null;
+            return false;
+        }
+
+        // hand the storage back to the runner, for the next search to reuse
+        runner.runmatch = result;
+        match = result;
+        textPosition = result.textPosition;
+        prevlen = result.length;
+        return true;
+    }
+
+    /**
+     * Resets the matcher and finds the first match starting at the specified position.
+     *
+     * @return {@code true} if a match was found.
+     */
+    public boolean find(int startAt) {
+        if (startAt < 0 || startAt > length())
+            throw new IllegalArgumentException(R.BeginIndexNotNegative);
+
+        reset();
+        textPosition = text instanceof RegexUtf8 ? ((RegexUtf8) text).charIndex(startAt) : startAt;
+        return find();
+    }
+
+    /**
+     * Gets the number of groups of the regular expression, including group 0.
+     */
+    public int groupCount() {
+        return regex.capsize;
+    }
+
+    /**
+     * Gets the position where the last match starts.
+     */
+    public int start() {
+        return start(0);
+    }
+
+    /**
+     * Gets the position where the last capture of a group of the last match starts,
+     * or -1 if the group didn't match.
+     */
+    public int start(int groupNumber) {
+        int cap = slot(groupNumber);
+        return match.isMatched(cap) ? position(match.matchIndex(cap)) : -1;
+    }
+
+    /**
+     * Gets the position where the last capture of a named group of the last match
+     * starts, or -1 if the group didn't match.
+     */
+    public int start(String groupName) {
+        return start(groupNumber(groupName));
+    }
+
+    /**
+     * Gets the position where the last match ends.
+     */
+    public int end() {
+        return end(0);
+    }
+
+    /**
+     * Gets the position where the last capture of a group of the last match ends,
+     * or -1 if the group didn't match.
+     */
+    public int end(int groupNumber) {
+        int cap = slot(groupNumber);
+        return match.isMatched(cap) ? position(match.matchIndex(cap) + match.matchLength(cap)) : -1;
+    }
+
+    /**
+     * Gets the position where the last capture of a named group of the last match
+     * ends, or -1 if the group didn't match.
+     */
+    public int end(String groupName) {
+        return end(groupNumber(groupName));
+    }
+
+    /**
+     * Gets the text of the last match.
+     */
+    public String group() {
+        return group(0);
+    }
+
+    /**
+     * Gets the text of the last capture of a group of the last match, or null if
+     * the group didn't match.
+     */
+    public String group(int groupNumber) {
+        int cap = slot(groupNumber);
+        if (!match.isMatched(cap)) {
+            return null;
+        }
+
+        int index = match.matchIndex(cap);
+        return text.subSequence(index, index + match.matchLength(cap)).toString();
+    }
+
+    /**
+     * Gets the text of the last capture of a named group of the last match, or null
+     * if the group didn't match.
+     */
+    public String group(String groupName) {
+        return group(groupNumber(groupName));
+    }
+
+    /**
+     * Gets a {@link Match} with the results of the last match. Unlike the matcher,
+     * the Match isn't changed by the next search. Over UTF-8 bytes, its positions are
+     * those of the decoded chars.
+     */
+    public Match toMatch() {
+        if (match == null) {
+            return Match.EMPTY;
+        }
+
+        // the next search will make new storage, and the next bytes a new reader
+        runner.runmatch = null;
+        textShared = true;
+        return match;
+    }
+
+    /*
+     * The length of the input, in bytes if it is UTF-8 bytes
+     */
+    private int length() {
+        return text instanceof RegexUtf8 ? ((RegexUtf8) text).byteLength() : text.length();
+    }
+
+    /*
+     * The position of the char boundary at index, as the matcher tells it: over
+     * UTF-8 bytes, a byte offset, and the end of the pair for an index between
+     * the halves of a surrogate pair
+     */
+    private int position(int index) {
+        return text instanceof RegexUtf8 ? ((RegexUtf8) text).byteEnd(index) : index;
+    }
+
+    /*
+     * The slot of the group in the last match
+     */
+    private int slot(int groupNumber) {
+        if (match == null)
+            throw new IllegalStateException(R.NoResultOnFailed);
+
+        if (groupNumbers != null) {
+            int i = Arrays.binarySearch(groupNumbers, groupNumber);
+            if (i >= 0) {
+                return groupSlots[i];
+            }
+        } else if (groupNumber >= 0 && groupNumber < regex.capsize) {
+            return groupNumber;
+        }
+
+        throw new IllegalArgumentException("groupNumber is not a group of the regex.");
+    }
+
+    private int groupNumber(String groupName) {
+        if (groupName == null)
+            throw new IllegalArgumentException("groupName cannot be null.");
+
+        int groupNumber = regex.groupNumberFromName(groupName);
+        if (groupNumber == -1)
+            throw new IllegalArgumentException("groupName is not a group of the regex.");
+
+        return groupNumber;
+    }
+}
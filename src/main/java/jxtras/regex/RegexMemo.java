@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package jxtras.regex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The RegexMemo class holds the points of a RegexCode at which the
+// interpreter memoizes failures, for RegexOptions.Memoize (as in Davis
+// et al., "Using Selective Memoization to Defeat Regular Expression
+// Denial of Service"). Once every way on from a point at a position
+// has failed, the match is known to fail from there, and the next
+// time it gets there at that position it backtracks at once: each
+// point is then gone on from at most once for each position, which
+// is what keeps patterns such as (\w+\s?)+$ linear.
+//
+// That only holds at the points past which the match doesn't depend on
+// how it got there, but on the position alone. These are the bodies of
+// the loops, which are only entered with the mark of the loop at the
+// position, and the char loops that give back chars along with the
+// instruction after them, as long as none of the loops around them can
+// find its iteration empty once it got there: each must take a char on
+// the way to them, or on the way from them to its branch. Counted loops
+// read their count, so there are no points within them.
+//
+// A greedy char loop with no upper bound that failed from a position
+// failed from all the positions it could give back to, up to the end
+// of the run of chars it takes. So when the same loop gets to such a
+// position, having started before it, it stops there: that is what
+// keeps the chars of a run from being gone over again for each start.
+//
+// Backreferences and balancing groups read what was captured before
+// the point, so patterns that have them get no points.
+//
+// @author  Tony Guo <tony.guo.peng@gmail.com>
+final class RegexMemo {
+    final int[] _points;   // for each code position, 1 + the number of its point, or 0
+    final boolean[] _stops; // for each code position, true if a greedy char loop stops where it failed
+    final int _count;      // how many points there are
+    final boolean _start;  // true if the code tests the start of the scan (\G)
+
+    private RegexMemo(int[] points, boolean[] stops, int count, boolean start) {
+        _points = points;
+        _stops = stops;
+        _count = count;
+        _start = start;
+    }
+
+    /*
+     * Finds the points of the code, or returns null if there is none
+     */
+    static RegexMemo build(RegexCode code) {
+        int[] codes = code._codes;
+        List<int[]> loops = new ArrayList<>();
+        boolean start = false;
+
+        for (int pc = 0; pc < codes.length; pc += RegexCode.opcodeSize(codes[pc])) {
+            switch (codes[pc] & RegexCode.Mask) {
+                case RegexCode.Ref:
+                case RegexCode.Testref:
+                    return null;
+
+                case RegexCode.Capturemark:
+                    if (codes[pc + 2] != -1)
+                        return null;
+                    break;
+
+                case RegexCode.Start:
+                    start = true;
+                    break;
+
+                case RegexCode.Branchmark:
+                case RegexCode.Lazybranchmark:
+                case RegexCode.Branchcount:
+                case RegexCode.Lazybranchcount:
+                    // the body of the loop and its branch
+                    loops.add(new int[] { codes[pc + 1], pc });
+                    break;
+            }
+        }
+
+        int[] points = new int[codes.length];
+        boolean[] stops = new boolean[codes.length];
+        int count = 0;
+
+        for (int pc = 0; pc < codes.length; pc += RegexCode.opcodeSize(codes[pc])) {
+            int point = -1;
+
+            switch (codes[pc] & RegexCode.Mask) {
+                case RegexCode.Branchmark:
+                case RegexCode.Lazybranchmark:
+                    if (isFree(code, loops, codes[pc + 1], pc + RegexCode.opcodeSize(codes[pc])))
+                        point = codes[pc + 1];
+                    break;
+
+                case RegexCode.Oneloop:
+                case RegexCode.Notoneloop:
+                case RegexCode.Setloop:
+                    stops[pc] = codes[pc + 2] == Integer.MAX_VALUE;
+                    // fallthrough
+
+                case RegexCode.Onelazy:
+                case RegexCode.Notonelazy:
+                case RegexCode.Setlazy:
+                case RegexCode.Notoneloopscan:
+                case RegexCode.Notonelazyscan:
+                    if (isFree(code, loops, pc, pc + RegexCode.opcodeSize(codes[pc])))
+                        point = pc;
+                    break;
+            }
+
+            if (point == -1) {
+                stops[pc] = false;
+                continue;
+            }
+
+            if (points[point] == 0)
+                points[point] = ++count;
+
+            // the loop, and what follows it
+            if (point == pc) {
+                int next = pc + RegexCode.opcodeSize(codes[pc]);
+                if (points[next] == 0)
+                    points[next] = ++count;
+            }
+        }
+
+        return count == 0 ? null : new RegexMemo(points, stops, count, start);
+    }
+
+    /*
+     * True if the loops around the code from begin to end can't find
+     * their iteration empty once it is entered: each of them must take a
+     * char on the way to it, or on the way from it to their branch, past
+     * the loops within them. The loop whose body is at begin is the code.
+     */
+    private static boolean isFree(RegexCode code, List<int[]> loops, int begin, int end) {
+        int[] codes = code._codes;
+
+        // the loops are in the order of their branches, so the ones around
+        // the code come from the innermost out
+        for (int[] loop : loops) {
+            if (loop[0] > begin || loop[1] < end)
+                continue;
+
+            int op = codes[loop[1]] & RegexCode.Mask;
+            if (op != RegexCode.Branchmark && op != RegexCode.Lazybranchmark)
+                return false;
+
+            if (taken(code, loop[0], begin) <= 0 && taken(code, end, loop[1]) <= 0)
+                return false;
+
+            begin = loop[0];
+            end = loop[1] + RegexCode.opcodeSize(codes[loop[1]]);
+        }
+        return true;
+    }
+
+    /*
+     * The fewest chars taken on the way from one code position to the
+     * other, or -1 if the way isn't straight
+     */
+    private static int taken(RegexCode code, int from, int to) {
+        int[] codes = code._codes;
+        int chars = 0;
+        int pc = from;
+
+        for (; pc < to; pc += RegexCode.opcodeSize(codes[pc])) {
+            switch (codes[pc] & RegexCode.Mask) {
+                case RegexCode.One:
+                case RegexCode.Notone:
+                case RegexCode.Set:
+                    chars += 1;
+                    break;
+
+                case RegexCode.Multi:
+                    chars += code._strings[codes[pc + 1]].length();
+                    break;
+
+                case RegexCode.Onerep:
+                case RegexCode.Notonerep:
+                case RegexCode.Setrep:
+                    chars += codes[pc + 2];
+                    break;
+
+                case RegexCode.Setmark:
+                case RegexCode.Nullmark:
+                case RegexCode.Spanmark:
+                case RegexCode.Capturespan:
+                case RegexCode.Capturemark:
+                case RegexCode.Oneloop:
+                case RegexCode.Notoneloop:
+                case RegexCode.Setloop:
+                case RegexCode.Onelazy:
+                case RegexCode.Notonelazy:
+                case RegexCode.Setlazy:
+                case RegexCode.Oneloopatomic:
+                case RegexCode.Notoneloopatomic:
+                case RegexCode.Setloopatomic:
+                case RegexCode.Notoneloopscan:
+                case RegexCode.Notonelazyscan:
+                    break;
+
+                default:
+                    return -1;
+            }
+        }
+        return pc == to ? chars : -1;
+    }
+
+    // The failures found so far in a scan, a bit for each point and
+    // position. The bits are kept in blocks that are only allocated once
+    // one of their bits is set, so that a long input costs only for the
+    // part of it the match goes over.
+    static final class Table {
+        private static final int BlockShift = 16;       // 64K bits (8K bytes) to a block
+
+        private final RegexMemo _memo;
+        private long[][] _blocks;
+        private int _blockLongs;
+        private long _bytes;
+
+        // what the failures were found in
+        private CharSequence _text;
+        private int _beg;
+        private int _end;
+        private int _start;
+
+        Table(RegexMemo memo) {
+            _memo = memo;
+        }
+
+        /*
+         * Forgets the failures unless they were found in the same scan; only
+         * a String can't have changed since
+         */
+        void reset(CharSequence text, int beg, int end, int start) {
+            if (text == _text && text instanceof String && beg == _beg && end == _end && (start == _start || !_memo._start))
+                return;
+
+            long bits = (long) _memo._count * (end - beg + 1);
+            _blocks = new long[(int) ((bits - 1) >>> BlockShift) + 1][];
+            _blockLongs = (int) Math.min(1 << (BlockShift - 6), (bits + 63) >>> 6);
+            _bytes = 0;
+            _text = text;
+            _beg = beg;
+            _end = end;
+            _start = start;
+        }
+
+        boolean isPoint(int pc) {
+            return _memo._points[pc] != 0;
+        }
+
+        boolean isStop(int pc) {
+            return _memo._stops[pc];
+        }
+
+        boolean failed(int pc, int pos) {
+            long bit = bit(pc, pos);
+            long[] block = _blocks[(int) (bit >>> BlockShift)];
+            return block != null && (block[(int) (bit >>> 6) & ((1 << (BlockShift - 6)) - 1)] & (1L << bit)) != 0;
+        }
+
+        void fail(int pc, int pos) {
+            long bit = bit(pc, pos);
+            int i = (int) (bit >>> BlockShift);
+
+            if (_blocks[i] == null) {
+                _blocks[i] = new long[_blockLongs];
+                _bytes += 8L * _blockLongs;
+            }
+            _blocks[i][(int) (bit >>> 6) & ((1 << (BlockShift - 6)) - 1)] |= 1L << bit;
+        }
+
+        /*
+         * How many bytes the bits take
+         */
+        long bytes() {
+            return _bytes;
+        }
+
+        private long bit(int pc, int pos) {
+            return (long) (_memo._points[pc] - 1) * (_end - _beg + 1) + (pos - _beg);
+        }
+    }
+}
@@ -0,0 +1,449 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package jxtras.regex;
+
+import jxtras.regex.support.R;
+
+import java.util.Arrays;
+import java.util.Map;
+
+// This RegexNFA class is internal to the Regex package.
+// It is a Thompson automaton built from the RegexNode tree, used
+// by RegexOptions.NonBacktracking to match without backtracking.
+
+// Implementation notes:
+//
+// The automaton is a flat array of states. Each state has a type, an
+// argument, and at most two successors (_next, and _alt for a Split).
+// The states are built backwards: each node is emitted in front of the
+// state that follows it, so that a concatenation simply threads the
+// continuation through its children.
+//
+// The successors of a Split are ordered: _next is preferred over _alt,
+// so that walking the epsilon closure depth-first visits the threads in
+// the same order as the backtracking engine would try them (leftmost-first).
+//
+// Loops whose body can match the empty string are bracketed with an
+// Enter/Check pair. Like the Branchmark and Branchcount instructions of
+// the backtracking engine, Check leaves the loop after an iteration that
+// did not consume anything.
+//
+// Counted loops are unrolled; an automaton larger than MaxStates is
+// rejected, as are the constructs that a finite automaton cannot express
+// (backreferences, lookarounds, atomic groups, conditionals and balancing
+// groups). Patterns that are rejected run on the backtracking engine.
+// @author  Tony Guo <tony.guo.peng@gmail.com>
+final class RegexNFA {
+    // state types
+
+    static final int One = 0;       // ch           consume ch
+    static final int Notone = 1;    // ch           consume any char but ch
+    static final int Set = 2;       // set          consume a char of the class _sets[arg]
+    static final int Split = 3;     //              go to _next, then to _alt
+    static final int Save = 4;      // slot         record the position in a capture slot
+    static final int Assert = 5;    // type         zero-width assertion (RegexNode.Bol ...)
+    static final int Enter = 6;     // loop         enter an iteration of a loop
+    static final int Check = 7;     // loop         go to _next if the iteration consumed, else to _alt
+    static final int Match = 8;     // id           done! (id tells the pattern of a set)
+
+    static final int Mask = 15;     // mask to get the state type
+    static final int Ci = 16;       // bit to indicate that the state is case-insensitive
+
+    static final int MaxStates = 10000;
+
+    // the number of nested iterations, entered without consuming anything, that
+    // the closure walks tell apart when they reach a state a second time
+    static final int MaxDepth = 3;
+
+    int[] _types;                   // the state types
+    int[] _args;                    // the state arguments
+    int[] _next;                    // the preferred successors (-1 if none)
+    int[] _alts;                    // the second successors of Split and Check (-1 if none)
+    String[] _sets;                 // the character classes
+    RegexCharClass.Matcher[] _matchers; // the character classes, compiled
+    int _count;                     // the number of states
+    int _start;                     // the start state (-1 if the pattern can never match)
+    int _loops;                     // the number of Enter/Check pairs
+    int _capsize;                   // the number of impl group slots (0 if no capture is made)
+    boolean _reverse;               // true if the automaton reads the text backwards
+    boolean _set;                   // true if the automaton matches a set of patterns
+    int _ids;                       // the number of patterns
+
+    private Map<Integer, Integer> _caps;
+    private int _setcount;
+    private int _maxStates;
+
+    private RegexNFA(int capsize, Map<Integer, Integer> caps, boolean reverse, int maxStates) {
+        _types = new int[16];
+        _args = new int[16];
+        _next = new int[16];
+        _alts = new int[16];
+        _sets = new String[4];
+        _matchers = new RegexCharClass.Matcher[4];
+        _capsize = capsize;
+        _caps = caps;
+        _reverse = reverse;
+        _ids = 1;
+        _maxStates = maxStates;
+    }
+
+    /*
+     * Builds the automaton of a parsed tree, or returns null if the
+     * tree can't be matched by a finite automaton.
+     */
+    static RegexNFA build(RegexTree tree, RegexCode code, boolean reverse) {
+        if (code._rightToLeft || !isSupported(tree._root)) {
+            return null;
+        }
+
+        RegexNFA nfa = new RegexNFA(code._capsize, code._caps, reverse, MaxStates);
+        try {
+            nfa._start = nfa.emit(tree._root, nfa.add(Match, 0, -1));
+        } catch (IllegalStateException e) {
+            return null; // too large
+        }
+
+        return nfa;
+    }
+
+    /*
+     * Creates an empty automaton for a set of patterns, which are then
+     * added with addAlternative. It never matches until one is added.
+     */
+    static RegexNFA newSet(int maxStates) {
+        RegexNFA nfa = new RegexNFA(0, null, false, maxStates);
+        nfa._start = -1;
+        nfa._set = true;
+        nfa._ids = 0;
+        return nfa;
+    }
+
+    /*
+     * Adds a parsed tree to a set automaton, with a Match state of its own
+     * whose id is the number of trees added before. Returns false, leaving
+     * the automaton unchanged, if the automaton would grow larger than the
+     * maximum size it was created with.
+     */
+    boolean addAlternative(RegexTree tree) {
+        int count = _count;
+        int loops = _loops;
+        int setcount = _setcount;
+
+        try {
+            int start = emit(tree._root, add(Match, _ids, -1));
+            _start = _start == -1 ? start : split(start, _start);
+            _ids++;
+            return true;
+        } catch (IllegalStateException e) {
+            _count = count;
+            _loops = loops;
+            _setcount = setcount;
+            return false;
+        }
+    }
+
+    /*
+     * True if the tree can be matched by a finite automaton.
+     */
+    static boolean isSupported(RegexTree tree) {
+        return (tree._options & RegexOptions.RightToLeft) == 0 && isSupported(tree._root);
+    }
+
+    /*
+     * True if the tree contains only constructs that a finite
+     * automaton can match.
+     */
+    private static boolean isSupported(RegexNode node) {
+        switch (node._type) {
+            case RegexNode.Ref:
+            case RegexNode.Require:
+            case RegexNode.Prevent:
+            case RegexNode.Greedy:
+            case RegexNode.Testref:
+            case RegexNode.Testgroup:
+                return false;
+
+            case RegexNode.Capture:
+                if (node._n != -1) {
+                    return false; // balancing group
+                }
+                break;
+        }
+
+        for (int i = 0; i < node.childCount(); i++) {
+            if (!isSupported(node.childAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /*
+     * Emits the states of a node in front of the state "next", and
+     * returns the state where the node starts.
+     */
+    private int emit(RegexNode node, int next) {
+        int ci = (node._options & RegexOptions.IgnoreCase) != 0 ? Ci : 0;
+
+        switch (node._type) {
+            case RegexNode.One:
+                return add(One | ci, node._ch, next);
+
+            case RegexNode.Notone:
+                return add(Notone | ci, node._ch, next);
+
+            case RegexNode.Set:
+                return add(Set | ci, addSet(node._str), next);
+
+            case RegexNode.Multi:
+                if (!_reverse) {
+                    for (int i = node._str.length() - 1; i >= 0; i--) {
+                        next = add(One | ci, node._str.charAt(i), next);
+                    }
+                } else {
+                    for (int i = 0; i < node._str.length(); i++) {
+                        next = add(One | ci, node._str.charAt(i), next);
+                    }
+                }
+                return next;
+
+            case RegexNode.Oneloop:
+            case RegexNode.Oneloopatomic:
+            case RegexNode.Notoneloop:
+            case RegexNode.Notoneloopatomic:
+            case RegexNode.Setloop:
+            case RegexNode.Setloopatomic:
+            case RegexNode.Loop:
+                return emitLoop(node, node._m, node._n, false, next);
+
+            case RegexNode.Onelazy:
+            case RegexNode.Notonelazy:
+            case RegexNode.Setlazy:
+            case RegexNode.Lazyloop:
+                return emitLoop(node, node._m, node._n, true, next);
+
+            case RegexNode.Bol:
+            case RegexNode.Eol:
+            case RegexNode.Boundary:
+            case RegexNode.Nonboundary:
+            case RegexNode.ECMABoundary:
+            case RegexNode.NonECMABoundary:
+            case RegexNode.Beginning:
+            case RegexNode.Start:
+            case RegexNode.EndZ:
+            case RegexNode.End:
+                return add(Assert, node._type, next);
+
+            case RegexNode.Nothing:
+                return -1;
+
+            case RegexNode.Empty:
+                return next;
+
+            case RegexNode.Alternate: {
+                int alt = emit(node.childAt(node.childCount() - 1), next);
+                for (int i = node.childCount() - 2; i >= 0; i--) {
+                    alt = split(emit(node.childAt(i), next), alt);
+                }
+                return alt;
+            }
+
+            case RegexNode.Concatenate:
+                if (!_reverse) {
+                    for (int i = node.childCount() - 1; i >= 0; i--) {
+                        next = emit(node.childAt(i), next);
+                    }
+                } else {
+                    for (int i = 0; i < node.childCount(); i++) {
+                        next = emit(node.childAt(i), next);
+                    }
+                }
+                return next;
+
+            case RegexNode.Capture:
+                if (_reverse || _capsize == 0) {
+                    return emit(node.childAt(0), next);
+                }
+                int slot = _caps != null ? _caps.get(node._m) : node._m;
+                next = add(Save, 2 * slot + 1, next);
+                return add(Save, 2 * slot, emit(node.childAt(0), next));
+
+            case RegexNode.Group:
+                return emit(node.childAt(0), next);
+
+            default:
+                throw new IllegalArgumentException(R.format(R.UnexpectedOpcode, node.description()));
+        }
+    }
+
+    /*
+     * Emits a loop of at least min and at most max iterations. The mandatory
+     * iterations are unrolled, followed by either a cycle (max is infinite)
+     * or by the nested optional iterations.
+     */
+    private int emitLoop(RegexNode node, int min, int max, boolean lazy, int next) {
+        // single char loops always consume, so they need no empty check
+        boolean check = node._type == RegexNode.Loop || node._type == RegexNode.Lazyloop;
+        int rest;
+
+        if (max == Integer.MAX_VALUE) {
+            int head = add(Split, 0, -1);
+            int body = check ? enter(node, head, next) : emitIteration(node, head);
+            if (lazy) {
+                _next[head] = next;
+                _alts[head] = body;
+            } else {
+                _next[head] = body;
+                _alts[head] = next;
+            }
+            rest = head;
+        } else {
+            rest = next;
+            for (int i = min; i < max; i++) {
+                int body = check ? enter(node, rest, next) : emitIteration(node, rest);
+                rest = lazy ? split(next, body) : split(body, next);
+            }
+        }
+
+        if (min == 0) {
+            return rest;
+        }
+
+        // leave the loop after an empty iteration once the minimum is reached
+        int last = (check && max > min) ? enter(node, rest, next) : emitIteration(node, rest);
+        for (int i = 1; i < min; i++) {
+            last = emitIteration(node, last);
+        }
+        return last;
+    }
+
+    /*
+     * Emits an iteration of a loop bracketed with Enter and Check: an
+     * iteration that consumed something continues with "loop", an empty
+     * one with "exit".
+     */
+    private int enter(RegexNode node, int loop, int exit) {
+        int id = _loops++;
+        int check = add(Check, id, loop);
+        _alts[check] = exit;
+        return add(Enter, id, emitIteration(node, check));
+    }
+
+    /*
+     * Emits a single iteration of a loop node.
+     */
+    private int emitIteration(RegexNode node, int next) {
+        int ci = (node._options & RegexOptions.IgnoreCase) != 0 ? Ci : 0;
+
+        switch (node._type) {
+            case RegexNode.Oneloop:
+            case RegexNode.Oneloopatomic:
+            case RegexNode.Onelazy:
+                return add(One | ci, node._ch, next);
+
+            case RegexNode.Notoneloop:
+            case RegexNode.Notoneloopatomic:
+            case RegexNode.Notonelazy:
+                return add(Notone | ci, node._ch, next);
+
+            case RegexNode.Setloop:
+            case RegexNode.Setloopatomic:
+            case RegexNode.Setlazy:
+                return add(Set | ci, addSet(node._str), next);
+
+            default:
+                return emit(node.childAt(0), next);
+        }
+    }
+
+    private int split(int next, int alt) {
+        if (next == -1) {
+            return alt;
+        }
+        int state = add(Split, 0, next);
+        _alts[state] = alt;
+        return state;
+    }
+
+    private int add(int type, int arg, int next) {
+        if (_count == _maxStates) {
+            throw new IllegalStateException("automaton too large");
+        }
+
+        if (_count == _types.length) {
+            int size = Math.min(_count * 2, _maxStates);
+            _types = Arrays.copyOf(_types, size);
+            _args = Arrays.copyOf(_args, size);
+            _next = Arrays.copyOf(_next, size);
+            _alts = Arrays.copyOf(_alts, size);
+        }
+
+        _types[_count] = type;
+        _args[_count] = arg;
+        _next[_count] = next;
+        _alts[_count] = -1;
+        return _count++;
+    }
+
+    private int addSet(String set) {
+        for (int i = 0; i < _setcount; i++) {
+            if (_sets[i].equals(set)) {
+                return i;
+            }
+        }
+        if (_setcount == _sets.length) {
+            _sets = Arrays.copyOf(_sets, _setcount * 2);
+            _matchers = Arrays.copyOf(_matchers, _setcount * 2);
+        }
+        _sets[_setcount] = set;
+        _matchers[_setcount] = new RegexCharClass.Matcher(set);
+        return _setcount++;
+    }
+
+    /*
+     * True if the consuming state accepts the char
+     */
+    boolean accepts(int state, char ch) {
+        int type = _types[state];
+        if ((type & Ci) != 0) {
+            ch = RegexCaseFolding.fold(ch);
+        }
+
+        switch (type & Mask) {
+            case One:
+                return ch == _args[state];
+            case Notone:
+                return ch != _args[state];
+            case Set:
+                return _matchers[_args[state]].matches(ch);
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package jxtras.regex;
+
+import java.util.Arrays;
+
+// This RegexNFARunner class is internal to the Regex package.
+// It matches a NonBacktracking regex without backtracking: the RegexDFA
+// finds the bounds of the match, then a Pike VM runs the RegexNFA over
+// the match to find its groups.
+
+// Implementation notes:
+//
+// The Pike VM runs the threads of the automaton in lockstep, one char at
+// a time, like the DFA does, but each thread carries the captures it has
+// made so far. Since the threads of a step are kept in priority order and
+// a thread that reaches a state already reached in the same step is
+// dropped, there are at most as many threads as states, and the time is
+// O(n * m) for a text of n chars and an automaton of m states.
+//
+// The captures of a thread are a linked list of Save records, newest
+// first, which the threads forked from it share: forking a thread costs
+// nothing, and a Save state costs one record. When the winning thread
+// reaches Match, its records are replayed in order to fill the Match,
+// just like the Capturemark instructions of the backtracking engine do,
+// so every capture of a repeated group is kept.
+// @author  Tony Guo <tony.guo.peng@gmail.com>
+final class RegexNFARunner extends RegexRunner {
+    RegexCode runcode;
+    RegexNFA runnfa;
+    RegexDFA rundfa;
+    RegexDFA runreversedfa;
+    int runanchors;
+    int runmatchend;            // where the match found by rundfa ends
+
+    // the threads of the current step, and the scratch space of the closure walk
+    private int[] _threads;
+    private Save[] _threadSaves;
+    private int[] _consumers;
+    private Save[] _consumerSaves;
+    private int _consumerCount;
+    private int[] _stack;
+    private Save[] _stackSaves;
+    private int[] _visited;
+    private int[] _emptyChecked;
+    private int[] _onPath;
+    private int _stamp;
+
+    RegexNFARunner(RegexCode code) {
+        runcode = code;
+        runnfa = code._nfa;
+        rundfa = new RegexDFA(code._nfa);
+        runreversedfa = new RegexDFA(code._reverseNfa);
+        runanchors = code._anchors;
+
+        int count = runnfa._count;
+        _threads = new int[count];
+        _threadSaves = new Save[count];
+        _consumers = new int[(RegexNFA.MaxDepth + 1) * count];
+        _consumerSaves = new Save[(RegexNFA.MaxDepth + 1) * count];
+        _stack = new int[4 * (RegexNFA.MaxDepth + 1) * count + 1];
+        _stackSaves = new Save[4 * (RegexNFA.MaxDepth + 1) * count + 1];
+        _visited = new int[(RegexNFA.MaxDepth + 1) * count];
+        _emptyChecked = new int[(RegexNFA.MaxDepth + 1) * count];
+        _onPath = new int[runnfa._loops];
+    }
+
+    @Override
+    protected void initTrackCount() {
+        runtrackcount = runcode._trackcount;
+    }
+
+    /*
+     * Finds the bounds of the next match with the automata: the forward one
+     * finds where the leftmost-first match ends, then the reverse one runs
+     * back from there to find where it starts.
+     */
+    @Override
+    protected boolean findFirstChar() {
+        if ((0 != (runanchors & RegexFCD.Beginning) && runtextpos > runtextbeg) ||
+                (0 != (runanchors & RegexFCD.Start) && runtextpos > runtextstart)) {
+            runtextpos = runtextend;
+            return false;
+        }
+
+        boolean anchored = 0 != (runanchors & (RegexFCD.Beginning | RegexFCD.Start));
+
+        // every match starts with the prefix, or one of the prefixes, so the
+        // automaton needs to start no sooner than the first one
+        if (!anchored && (runcode._bmPrefix != null || runcode._acPrefix != null)) {
+            int pos = runcode._bmPrefix != null
+                    ? runcode._bmPrefix.scan(runtext, runtextpos, runtextbeg, runtextend)
+                    : runcode._acPrefix.scan(runtext, runtextpos, runtextbeg, runtextend);
+            if (pos == -1) {
+                runtextpos = runtextend;
+                return false;
+            }
+            runtextpos = pos;
+        }
+
+        int end = rundfa.scanForward(this, runtext, runtextbeg, runtextend, runtextstart, runtextpos, anchored);
+
+        if (end < 0) {
+            runtextpos = runtextend;
+            return false;
+        }
+
+        int start = runreversedfa.scanReverse(this, runtext, runtextbeg, runtextend, runtextstart, runtextpos, end);
+        if (start >= 0) {
+            runtextpos = start;
+        }
+        runmatchend = end;
+        return true;
+    }
+
+    @Override
+    protected void go() {
+        // the groups are only needed if the caller wants the Match
+        Save saves = (runquick || runcode._capsize == 1) ? null : run(runtextpos, runmatchend);
+
+        if (saves == null) {
+            capture(0, runtextpos, runmatchend);
+        } else {
+            replay(saves);
+        }
+
+        runtextpos = runmatchend;
+    }
+
+    /*
+     * Runs the Pike VM from start, where the match starts, to end, where
+     * it ends, and returns the captures of the thread that matches.
+     */
+    private Save run(int start, int end) {
+        int count = 1;
+        _threads[0] = runnfa._start;
+        _threadSaves[0] = null;
+
+        for (int i = start; ; i++) {
+            int left = i == runtextbeg ? RegexDFA.Edge : RegexDFA.charFlags(charAt(runtext, i - 1));
+            int right;
+            if (i == runtextend) {
+                right = RegexDFA.Edge;
+            } else if (i == runtextend - 1 && charAt(runtext, i) == '\n') {
+                right = RegexDFA.Newline | RegexDFA.FinalNewline;
+            } else {
+                right = RegexDFA.charFlags(charAt(runtext, i));
+            }
+
+            Save matched = closure(count, i, left, right, i == runtextstart);
+            if (i == end || _consumerCount == 0) {
+                return i == end ? matched : null;
+            }
+
+            // advance the threads over the char, in order
+            char ch = charAt(runtext, i);
+            int stamp = nextStamp();
+            count = 0;
+            for (int j = 0; j < _consumerCount; j++) {
+                int s = _consumers[j];
+                int t = runnfa._next[s];
+                if (t >= 0 && _visited[t] != stamp && runnfa.accepts(s, ch)) {
+                    _visited[t] = stamp;
+                    _threads[count] = t;
+                    _threadSaves[count] = _consumerSaves[j];
+                    count++;
+                }
+            }
+
+            checkTimeout();
+        }
+    }
+
+    /*
+     * Walks the epsilon closure of the threads at position pos, and collects
+     * the consuming states with their captures in priority order. Returns the
+     * captures of the first thread that reaches Match, or null if none does;
+     * the threads of lower priority are cut.
+     */
+    private Save closure(int count, int pos, int left, int right, boolean atStart) {
+        int[] types = runnfa._types;
+        int[] args = runnfa._args;
+        int[] next = runnfa._next;
+        int[] alts = runnfa._alts;
+        int[] stack = _stack;
+        Save[] stackSaves = _stackSaves;
+        int stamp = nextStamp();
+        int states = runnfa._count;
+        int entered = 0;
+
+        _consumerCount = 0;
+
+        for (int r = 0; r < count; r++) {
+            int sp = 0;
+            stack[sp] = _threads[r];
+            stackSaves[sp++] = _threadSaves[r];
+
+            while (sp > 0) {
+                int s = stack[--sp];
+                Save saves = stackSaves[sp];
+
+                if (s < -1) {
+                    _onPath[-2 - s]--; // leaving an Enter
+                    entered--;
+                    continue;
+                }
+                if (s == -1) {
+                    continue;
+                }
+                // the states are tracked apart for each number of iterations entered
+                // on this path, since such an iteration may still end up empty
+                int index = Math.min(entered, RegexNFA.MaxDepth) * states + s;
+                if ((types[s] & RegexNFA.Mask) == RegexNFA.Check && _onPath[args[s]] > 0) {
+                    // an iteration entered on this path hasn't consumed anything
+                    if (_emptyChecked[index] != stamp) {
+                        _emptyChecked[index] = stamp;
+                        stack[sp] = alts[s];
+                        stackSaves[sp++] = saves;
+                    }
+                    continue;
+                }
+                if (_visited[index] == stamp) {
+                    continue;
+                }
+                _visited[index] = stamp;
+
+                switch (types[s] & RegexNFA.Mask) {
+                    case RegexNFA.One:
+                    case RegexNFA.Notone:
+                    case RegexNFA.Set:
+                        _consumers[_consumerCount] = s;
+                        _consumerSaves[_consumerCount++] = saves;
+                        break;
+
+                    case RegexNFA.Split:
+                        stack[sp] = alts[s];
+                        stackSaves[sp++] = saves;
+                        stack[sp] = next[s];
+                        stackSaves[sp++] = saves;
+                        break;
+
+                    case RegexNFA.Save:
+                        stack[sp] = next[s];
+                        stackSaves[sp++] = new Save(args[s], pos, saves);
+                        break;
+
+                    case RegexNFA.Assert:
+                        if (RegexDFA.holds(args[s], left, right, atStart)) {
+                            stack[sp] = next[s];
+                            stackSaves[sp++] = saves;
+                        }
+                        break;
+
+                    case RegexNFA.Enter:
+                        _onPath[args[s]]++;
+                        entered++;
+                        stack[sp++] = -2 - args[s];
+                        stack[sp] = next[s];
+                        stackSaves[sp++] = saves;
+                        break;
+
+                    case RegexNFA.Check:
+                        stack[sp] = next[s];
+                        stackSaves[sp++] = saves;
+                        break;
+
+                    case RegexNFA.Match:
+                        while (sp > 0) {
+                            s = stack[--sp];
+                            if (s < -1) {
+                                _onPath[-2 - s]--;
+                            }
+                        }
+                        return saves;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /*
+     * Fills the Match with the captures of a thread, oldest first.
+     */
+    private void replay(Save saves) {
+        int length = 0;
+        for (Save save = saves; save != null; save = save._prev) {
+            length++;
+        }
+
+        Save[] ordered = new Save[length];
+        for (Save save = saves; save != null; save = save._prev) {
+            ordered[--length] = save;
+        }
+
+        int[] starts = new int[runcode._capsize];
+        for (Save save : ordered) {
+            if ((save._slot & 1) == 0) {
+                starts[save._slot >> 1] = save._pos;
+            } else {
+                capture(save._slot >> 1, starts[save._slot >> 1], save._pos);
+            }
+        }
+    }
+
+    private int nextStamp() {
+        if (_stamp == Integer.MAX_VALUE) {
+            Arrays.fill(_visited, 0);
+            Arrays.fill(_emptyChecked, 0);
+            _stamp = 0;
+        }
+        return ++_stamp;
+    }
+
+    /*
+     * A position recorded by a Save state, in a list of the captures of a thread.
+     */
+    static final class Save {
+        final int _slot;
+        final int _pos;
+        final Save _prev;
+
+        Save(int slot, int pos, Save prev) {
+            _slot = slot;
+            _pos = pos;
+            _prev = prev;
+        }
+    }
+}
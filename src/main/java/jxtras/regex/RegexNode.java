@@ -103,6 +103,10 @@ final class RegexNode {
     static final int EndZ = RegexCode.EndZ;                        //          \Z
     static final int End = RegexCode.End;                          //          \z
 
+    static final int Oneloopatomic = RegexCode.Oneloopatomic;      // c,n      (?>a*)
+    static final int Notoneloopatomic = RegexCode.Notoneloopatomic; // c,n     (?>.*)
+    static final int Setloopatomic = RegexCode.Setloopatomic;      // set,n    (?>\d*)
+
     // (note: End               = 21;)
 
     // interior nodes do not correpond to primitive operations, but
@@ -141,6 +145,11 @@ final class RegexNode {
 
     RegexNode _next;
 
+    // where the node is in the pattern, for the quantifiers and groups that
+    // RegexComplexity reports on: -1 if the parser didn't record it
+    int _pos = -1;
+    int _len;
+
     RegexNode(int type, int options) {
         _type = type;
         _options = options;
@@ -295,7 +304,16 @@ final class RegexNode {
                 u._n = max = ((Integer.MAX_VALUE - 1) / u._n < max) ? Integer.MAX_VALUE : u._n * max; // TODO: Int32 -> Integer
         }
 
-        return min == Integer.MAX_VALUE ? new RegexNode(Nothing, _options) : u; // TODO: Int32 -> Integer
+        if (min == Integer.MAX_VALUE) // TODO: Int32 -> Integer
+            return new RegexNode(Nothing, _options);
+
+        // the reps blurred into the child are reported as the outer one
+        if (u != this) {
+            u._pos = _pos;
+            u._len = _len;
+        }
+
+        return u;
     }
 
     // Simple optimization. If a set is a singleton, an inverse singleton,
@@ -420,9 +438,105 @@ final class RegexNode {
             _children.subList(j, i).clear();
         }
 
+        reduceAlternationPrefixes();
+
         return stripEnation(RegexNode.Nothing);
     }
 
+    // Basic optimization. Adjacent branches that start with the same
+    // literal share it, so that it is matched once and the branches are
+    // only tried from where they differ. They keep their order, so the
+    // leftmost branch that matches still wins. Done again on the new
+    // alternations, it shapes a list of words into a trie:
+    //
+    // abc|abd|x|ae -> ab(?:c|d)|x|ae
+    // int|interface|if -> i(?:nt(?:|erface)|f)
+    private void reduceAlternationPrefixes() {
+        if (useOptionR())
+            return;
+
+        for (int i = 0; i < _children.size(); i++) {
+            RegexNode first = _children.get(i).leadingLiteral();
+            if (first == null)
+                continue;
+
+            String prefix = first.literalString();
+            int length = prefix.length();
+            int end = i + 1;
+
+            for (; end < _children.size(); end++) {
+                RegexNode next = _children.get(end).leadingLiteral();
+                if (next == null || next._options != first._options)
+                    break;
+
+                int common = commonPrefixLength(prefix, next.literalString(), length);
+                if (common == 0)
+                    break;
+                length = common;
+            }
+
+            if (end - i < 2)
+                continue;
+
+            RegexNode branches = new RegexNode(Alternate, _options);
+            for (int k = i; k < end; k++)
+                branches.addChild(_children.get(k).removeLeadingChars(length));
+
+            RegexNode factored = new RegexNode(Concatenate, _options);
+            if (length == 1)
+                factored.addChild(new RegexNode(One, first._options, prefix.charAt(0)));
+            else
+                factored.addChild(new RegexNode(Multi, first._options, prefix.substring(0, length)));
+            factored.addChild(branches);
+            factored = factored.reduce();
+
+            _children.subList(i + 1, end).clear();
+            _children.set(i, factored);
+            factored._next = this;
+        }
+    }
+
+    // The One or Multi a branch starts with, if it can be cut from it.
+    private RegexNode leadingLiteral() {
+        RegexNode node = _type == Concatenate && childCount() > 0 ? childAt(0) : this;
+
+        if ((node._type == One || node._type == Multi) && !useOptionR() && !node.useOptionR())
+            return node;
+
+        return null;
+    }
+
+    private String literalString() {
+        return _type == One ? String.valueOf(_ch) : _str;
+    }
+
+    private static int commonPrefixLength(String a, String b, int max) {
+        int i = 0;
+        while (i < max && i < b.length() && a.charAt(i) == b.charAt(i))
+            i++;
+        return i;
+    }
+
+    // This branch without the first count chars of its leading literal.
+    private RegexNode removeLeadingChars(int count) {
+        RegexNode literal = leadingLiteral();
+
+        if (literal._type == One || literal._str.length() == count) {
+            if (literal == this)
+                return new RegexNode(Empty, _options);
+
+            _children.remove(0);
+        } else if (literal._str.length() == count + 1) {
+            literal._type = One;
+            literal._ch = literal._str.charAt(count);
+            literal._str = null;
+        } else {
+            literal._str = literal._str.substring(count);
+        }
+
+        return this;
+    }
+
     // Basic optimization. Adjacent strings can be concatenated.
     //
     // (?:abc)(?:def) -> abcdef
@@ -506,6 +620,352 @@ final class RegexNode {
         return stripEnation(RegexNode.Empty);
     }
 
+    // Basic optimization. A greedy loop of single chars that never needs
+    // to give back a char to what follows it, because nothing that may
+    // follow it can match any of its chars, is made atomic: when a later
+    // node fails, the loop isn't retried with one char less, again and
+    // again.
+    //
+    // \d+\s -> (?>\d+)\s
+    // "[^"]*" -> "(?>[^"]*)"
+    //
+    // Called once the whole tree is reduced; tail tells whether nothing
+    // may follow the node in a match (at the end of the pattern, or of an
+    // atomic group or lookahead).
+    void makeLoopsAtomic(boolean tail) {
+        if (useOptionR()) {
+            return;
+        }
+
+        switch (_type) {
+            case Oneloop:
+            case Notoneloop:
+            case Setloop:
+                if (tail) {
+                    makeAtomic();
+                }
+                break;
+
+            case Concatenate:
+                for (int i = 0; i < childCount(); i++) {
+                    RegexNode child = childAt(i);
+                    boolean last = i == childCount() - 1;
+
+                    if (!last) {
+                        RegexNode loop = child.lastNode();
+                        if ((loop._type == Oneloop || loop._type == Notoneloop || loop._type == Setloop)
+                                && !loop.useOptionR() && !loop.mayGiveBackTo(this, i + 1, tail)) {
+                            loop.makeAtomic();
+                        }
+                    }
+
+                    child.makeLoopsAtomic(last && tail);
+                }
+                break;
+
+            case Capture:
+            case Alternate:
+                for (int i = 0; i < childCount(); i++) {
+                    childAt(i).makeLoopsAtomic(tail);
+                }
+                break;
+
+            case Greedy:
+            case Require:
+                childAt(0).makeLoopsAtomic(true);
+                break;
+
+            default:
+                for (int i = 0; i < childCount(); i++) {
+                    childAt(i).makeLoopsAtomic(false);
+                }
+                break;
+        }
+    }
+
+    private void makeAtomic() {
+        _type += Oneloopatomic - Oneloop;
+    }
+
+    // The node that matches last within this one.
+    private RegexNode lastNode() {
+        RegexNode node = this;
+        while ((node._type == Capture || node._type == Concatenate) && node.childCount() > 0 && !node.useOptionR()) {
+            node = node.childAt(node.childCount() - 1);
+        }
+        return node;
+    }
+
+    // The node that matches first within this one.
+    RegexNode firstNode() {
+        RegexNode node = this;
+        while ((node._type == Capture || node._type == Concatenate) && node.childCount() > 0 && !node.useOptionR()) {
+            node = node.childAt(0);
+        }
+        return node;
+    }
+
+    // The One or Multi that has to match right where this node stops, if
+    // there is one: what follows the node in its concatenation, or follows
+    // the captures it ends. RegexWriter turns .*abc into a scan with it.
+    RegexNode followingLiteral() {
+        RegexNode node = this;
+
+        for (RegexNode parent = _next; parent != null && !parent.useOptionR(); node = parent, parent = parent._next) {
+            if (parent._type == Concatenate) {
+                int i = 0;
+                while (parent.childAt(i) != node) {
+                    i++;
+                }
+
+                if (i < parent.childCount() - 1) {
+                    RegexNode next = parent.childAt(i + 1).firstNode();
+                    if ((next._type == One || next._type == Multi) && !next.useOptionR()
+                            && (next._options & RegexOptions.IgnoreCase) == 0) {
+                        return next;
+                    }
+                    return null;
+                }
+            } else if (parent._type != Capture) {
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    // True unless this loop provably never needs to give back a char to
+    // what follows it: the children of the concatenation from index on,
+    // then, if not tail, whatever follows the concatenation.
+    private boolean mayGiveBackTo(RegexNode concatenation, int index, boolean tail) {
+        String set = loopSet();
+
+        for (int i = index; i < concatenation.childCount(); i++) {
+            RegexNode next = concatenation.childAt(i).firstNode();
+
+            if (next.useOptionR()) {
+                return true;
+            }
+
+            switch (next._type) {
+                case One:
+                case Notone:
+                case Set:
+                case Multi:
+                    return !sameCase(next) || RegexCharClass.mayOverlap(set, next.firstSet());
+
+                case Oneloop:
+                case Notoneloop:
+                case Setloop:
+                case Oneloopatomic:
+                case Notoneloopatomic:
+                case Setloopatomic:
+                case Onelazy:
+                case Notonelazy:
+                case Setlazy:
+                    if (!sameCase(next) || RegexCharClass.mayOverlap(set, next.firstSet())) {
+                        return true;
+                    }
+                    if (next._m > 0) {
+                        return false;
+                    }
+                    break;
+
+                case End:
+                    return false;
+
+                case EndZ:
+                case Eol:
+                    // what is given back would have to start with a newline
+                    return RegexCharClass.charInClass('\n', set);
+
+                case Empty:
+                    break;
+
+                default:
+                    return true;
+            }
+        }
+
+        return !tail;
+    }
+
+    // True if both nodes compare the chars in the same case.
+    private boolean sameCase(RegexNode other) {
+        return (_options & RegexOptions.IgnoreCase) == (other._options & RegexOptions.IgnoreCase);
+    }
+
+    // The class of the chars a loop matches.
+    private String loopSet() {
+        if (_type == Setloop) {
+            return _str;
+        }
+
+        RegexCharClass cc = new RegexCharClass();
+        cc.addChar(_ch);
+        cc.setNegate(_type == Notoneloop);
+        return cc.toString();
+    }
+
+    // The class of the first char a node matches.
+    String firstSet() {
+        RegexCharClass cc = new RegexCharClass();
+
+        switch (_type) {
+            case Set:
+            case Setloop:
+            case Setloopatomic:
+            case Setlazy:
+                return _str;
+
+            case Multi:
+                cc.addChar(_str.charAt(0));
+                break;
+
+            default:
+                cc.addChar(_ch);
+                cc.setNegate(_type == Notone || _type == Notoneloop || _type == Notoneloopatomic
+                        || _type == Notonelazy);
+                break;
+        }
+
+        return cc.toString();
+    }
+
+    // The fewest chars a match of this node may have. It may be less than
+    // the fewest a match really has, never more.
+    int computeMinLength() {
+        switch (_type) {
+            case One:
+            case Notone:
+            case Set:
+                return 1;
+
+            case Multi:
+                return _str.length();
+
+            case Oneloop:
+            case Notoneloop:
+            case Setloop:
+            case Onelazy:
+            case Notonelazy:
+            case Setlazy:
+            case Oneloopatomic:
+            case Notoneloopatomic:
+            case Setloopatomic:
+                return _m;
+
+            case Loop:
+            case Lazyloop:
+                return multiplyLengths(childAt(0).computeMinLength(), _m);
+
+            case Capture:
+            case Group:
+            case Greedy:
+                return childAt(0).computeMinLength();
+
+            case Concatenate: {
+                int length = 0;
+                for (int i = 0; i < childCount(); i++) {
+                    length = addLengths(length, childAt(i).computeMinLength());
+                }
+                return length;
+            }
+
+            case Alternate: {
+                int length = childAt(0).computeMinLength();
+                for (int i = 1; i < childCount(); i++) {
+                    length = Math.min(length, childAt(i).computeMinLength());
+                }
+                return length;
+            }
+
+            case Testref:
+            case Testgroup: {
+                // the branches follow the condition of a Testgroup, and a
+                // missing no branch matches nothing
+                int first = _type == Testgroup ? 1 : 0;
+                if (childCount() < first + 2) {
+                    return 0;
+                }
+                return Math.min(childAt(first).computeMinLength(), childAt(first + 1).computeMinLength());
+            }
+
+            default:
+                // the anchors, lookarounds and backreferences, which may match no char
+                return 0;
+        }
+    }
+
+    // The most chars a match of this node may have, Integer.MAX_VALUE if
+    // there is no limit. It may be more than the most a match really has,
+    // never less.
+    int computeMaxLength() {
+        switch (_type) {
+            case One:
+            case Notone:
+            case Set:
+                return 1;
+
+            case Multi:
+                return _str.length();
+
+            case Oneloop:
+            case Notoneloop:
+            case Setloop:
+            case Onelazy:
+            case Notonelazy:
+            case Setlazy:
+            case Oneloopatomic:
+            case Notoneloopatomic:
+            case Setloopatomic:
+                return _n;
+
+            case Ref:
+                return Integer.MAX_VALUE;
+
+            case Loop:
+            case Lazyloop:
+                return multiplyLengths(childAt(0).computeMaxLength(), _n);
+
+            case Capture:
+            case Group:
+            case Greedy:
+                return childAt(0).computeMaxLength();
+
+            case Concatenate: {
+                int length = 0;
+                for (int i = 0; i < childCount(); i++) {
+                    length = addLengths(length, childAt(i).computeMaxLength());
+                }
+                return length;
+            }
+
+            case Alternate:
+            case Testref:
+            case Testgroup: {
+                // the condition of a Testgroup is a lookahead
+                int length = 0;
+                for (int i = _type == Testgroup ? 1 : 0; i < childCount(); i++) {
+                    length = Math.max(length, childAt(i).computeMaxLength());
+                }
+                return length;
+            }
+
+            default:
+                return 0;
+        }
+    }
+
+    // the lengths saturate at Integer.MAX_VALUE, which stands for no limit
+    private static int addLengths(int a, int b) {
+        return (int) Math.min((long) a + b, Integer.MAX_VALUE);
+    }
+
+    private static int multiplyLengths(int length, int count) {
+        return length == 0 ? 0 : (int) Math.min((long) length * count, Integer.MAX_VALUE);
+    }
+
     RegexNode makeQuantifier(boolean lazy, int min, int max) {
         RegexNode result;
 
@@ -562,13 +1022,15 @@ final class RegexNode {
             "One", "Notone", "Set",
             "Multi", "Ref",
             "Bol", "Eol", "Boundary", "Nonboundary",
-            "ECMABoundary", "NonECMABoundary",
             "Beginning", "Start", "EndZ", "End",
             "Nothing", "Empty",
             "Alternate", "Concatenate",
             "Loop", "Lazyloop",
             "Capture", "Group", "Require", "Prevent", "Greedy",
-            "Testref", "Testgroup"};
+            "Testref", "Testgroup",
+            "", "", "", "", "", "",
+            "ECMABoundary", "NonECMABoundary",
+            "Oneloopatomic", "Notoneloopatomic", "Setloopatomic"};
 
     String description() {
 
@@ -594,6 +1056,8 @@ final class RegexNode {
         switch (_type) {
             case Oneloop:
             case Notoneloop:
+            case Oneloopatomic:
+            case Notoneloopatomic:
             case Onelazy:
             case Notonelazy:
             case One:
@@ -612,6 +1076,7 @@ final class RegexNode {
                 break;
             case Set:
             case Setloop:
+            case Setloopatomic:
             case Setlazy:
                 ArgSb.append("(Set = " + RegexCharClass.setDescription(_str) + ")");
                 break;
@@ -622,7 +1087,10 @@ final class RegexNode {
             case Notoneloop:
             case Onelazy:
             case Notonelazy:
+            case Oneloopatomic:
+            case Notoneloopatomic:
             case Setloop:
+            case Setloopatomic:
             case Setlazy:
             case Loop:
             case Lazyloop:
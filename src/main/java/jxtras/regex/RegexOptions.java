@@ -70,14 +70,11 @@ public final class RegexOptions {
     public static final int ExplicitCapture = 0x0004;              // "n"
 
     /**
-     * Specifies that the regular expression is compiled to an assembly. This yields faster
-     * execution but increases startup time. This value should not be assigned to the Options
-     * property when calling the CompileToAssembly method. For more information, see the
-     * "Compiled Regular Expressions" section in the Regular Expression Options topic.
-     *
-     * TODO: unsupported in java port version
+     * Specifies that the regular expression is compiled to JVM bytecode. This yields faster
+     * execution but increases startup time: each {@link Regex} constructed with this option
+     * generates, loads and verifies a class of its own.
      */
-    // public static final int Compiled = 0x0008;                     // "c"
+    public static final int Compiled = 0x0008;                     // "c"
 
     /**
      * Specifies single-line mode. Changes the meaning of the dot (.) so it matches every character
@@ -114,5 +111,35 @@ public final class RegexOptions {
      */
     public static final int CultureInvariant = 0x0200;             // 10,0000,0000 (10bits)
 
-    static final int MaxOptionShift = 10;
+    /**
+     * Specifies that the expression is matched by an automaton instead of by backtracking, so that
+     * the matching time is linear in the length of the input (and in the size of the expression).
+     * Expressions that use backreferences, lookarounds, atomic groups, conditionals or balancing
+     * groups, as well as {@link #RightToLeft} expressions, can't be matched by an automaton and
+     * automatically fall back to backtracking.
+     */
+    public static final int NonBacktracking = 0x0400;              // 100,0000,0000 (11bits)
+
+    /**
+     * Specifies that the backtracking interpreter remembers the places in the input from which
+     * a part of the expression failed, and doesn't try them again, so that nested quantifiers
+     * such as {@code (\w+\s?)+$} take a time linear in the length of the input instead of an
+     * exponential one. This costs a bit for each such place and position of the input, allocated
+     * as the match goes over the input. Expressions that use backreferences or balancing groups
+     * are matched without it, and the expressions that use it are interpreted even if
+     * {@link #Compiled} is also specified.
+     */
+    public static final int Memoize = 0x0800;                      // 1000,0000,0000 (12bits)
+
+    /**
+     * Specifies that the expression is checked with {@link RegexComplexity} when it is constructed,
+     * and that if it may take a time exponential or polynomial in the length of the input with the
+     * backtracking engines, it is matched as with {@link #NonBacktracking} instead, or as with
+     * {@link #Memoize} if an automaton can't match it. An expression that neither can match, since
+     * it uses backreferences or balancing groups, is rejected with an
+     * {@link IllegalArgumentException}.
+     */
+    public static final int Safe = 0x1000;                         // 1,0000,0000,0000 (13bits)
+
+    static final int MaxOptionShift = 13;
 }
\ No newline at end of file
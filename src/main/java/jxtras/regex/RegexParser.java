@@ -89,6 +89,7 @@ final class RegexParser {
         parser.countCaptures();
         parser.reset(options);
         RegexNode root = parser.scanRegex();
+        root.makeLoopsAtomic(true);
 
         String[] capnamelist;
         if (parser._capnamelist == null) {
@@ -290,6 +291,9 @@ OUTER_SCAN:
                 }
             }
 
+            // where the unit a quantifier may follow starts in the pattern
+            int unitpos = textpos() - 1;
+
             switch (ch) {
                 case '!':
                     break OUTER_SCAN; // TODO: break BreakOuterScan;
@@ -309,6 +313,7 @@ OUTER_SCAN:
                     if (null == (grouper = scanGroupOpen())) {
                         popKeepOptions();
                     } else {
+                        grouper._pos = unitpos;
                         pushGroup();
                         startGroup(grouper);
                     }
@@ -331,6 +336,7 @@ OUTER_SCAN:
                     if (unit() == null) {
                         continue OUTER_SCAN; // TODO: break ContinueOuterScan;
                     }
+                    unitpos = unit()._pos;
                     break;
 
                 case '\\':
@@ -360,6 +366,7 @@ OUTER_SCAN:
                     if (unit() == null) {
                         throw makeException(wasPrevQuantifier ? String.format(R.NestedQuantify, ch) : R.QuantifyAfterNothing);
                     }
+                    unitpos = endpos - 1;
                     moveLeft();
                     break;
 
@@ -426,6 +433,8 @@ OUTER_SCAN:
                     }
                 }
 
+                int quantend = textpos();
+
                 scanBlank();
 
                 if (charsRight() == 0 || rightChar() != '?') {
@@ -433,13 +442,14 @@ OUTER_SCAN:
                 } else {
                     moveRight();
                     lazy = true;
+                    quantend = textpos();
                 }
 
                 if (min > max) {
                     throw makeException(R.IllegalRange);
                 }
 
-                addConcatenate(lazy, min, max);
+                addConcatenate(lazy, min, max, unitpos, quantend);
             }
 
             // ContinueOuterScan: comes here
@@ -1401,9 +1411,7 @@ RECOGNIZE:
      */
     boolean IsOnlyTopOption(int option) {
         return (option == RegexOptions.RightToLeft
-                //#if !SILVERLIGHT TODO:
-                // || option == RegexOptions.Compiled
-                //#endif
+                || option == RegexOptions.Compiled
                 || option == RegexOptions.CultureInvariant
                 || option == RegexOptions.ECMAScript
         );
@@ -2033,10 +2041,14 @@ RECOGNIZE:
     }
 
     /*
-     * Finish the current quantifiable (when a quantifier is found)
+     * Finish the current quantifiable (when a quantifier is found), which
+     * spans the pattern from pos to endpos with its quantifier
      */
-    void addConcatenate(boolean lazy, int min, int max) {
-        _concatenation.addChild(_unit.makeQuantifier(lazy, min, max));
+    void addConcatenate(boolean lazy, int min, int max, int pos, int endpos) {
+        RegexNode node = _unit.makeQuantifier(lazy, min, max);
+        node._pos = pos;
+        node._len = endpos - pos;
+        _concatenation.addChild(node);
         _unit = null;
     }
 
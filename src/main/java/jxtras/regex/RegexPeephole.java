@@ -0,0 +1,422 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package jxtras.regex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The RegexPeephole class rewrites the codes that the RegexWriter
+// has emitted, a few instructions at a time, before they become a
+// RegexCode:
+//
+//  - a jump to a Goto goes where the Goto goes;
+//  - a Lazybranch into Nothing, whose first branch never matches,
+//    is a Goto to the second one;
+//  - adjacent One and Multi make a Multi, and adjacent One, Notone
+//    or Set of the same char or set make a Onerep, Notonerep or
+//    Setrep, so [a-z][a-z]+ takes a Setrep of 2 and a Setloop;
+//  - a capture of instructions that never backtrack, such as (\d+)
+//    once its loop is atomic, keeps where it starts in a register
+//    (Spanmark) rather than on the stack, and captures it with a
+//    single backtracking frame (Capturespan);
+//  - the code that nothing jumps or falls into, and the Gotos to the
+//    next instruction, are removed.
+//
+// A rewrite may make way for another, so they are repeated until
+// none applies. While rewriting, jumps hold instruction numbers;
+// they become code positions again when the code is laid out.
+
+// @author  Tony Guo <tony.guo.peng@gmail.com>
+final class RegexPeephole {
+    private final List<int[]> _ops;       // the instructions, opcode first (null once removed)
+    private final boolean[] _pinned;      // the Gotos of a Switch table, which must stay where they are
+    private final List<String> _strings;
+
+    /*
+     * This is the only function that should be called from outside.
+     * It returns the rewritten codes, and may add strings to the table.
+     */
+    static int[] optimize(int[] codes, List<String> strings) {
+        RegexPeephole peephole = new RegexPeephole(codes, strings);
+
+        boolean changed;
+        do {
+            changed = peephole.threadJumps();
+            changed |= peephole.shortcutBranches();
+            changed |= peephole.fuse();
+            changed |= peephole.removeDeadCode();
+        } while (changed);
+
+        return peephole.layout();
+    }
+
+    private RegexPeephole(int[] codes, List<String> strings) {
+        int[] index = new int[codes.length];
+
+        _ops = new ArrayList<int[]>();
+        _strings = strings;
+
+        for (int i = 0; i < codes.length; i += RegexCode.opcodeSize(codes[i])) {
+            int[] op = new int[RegexCode.opcodeSize(codes[i])];
+            System.arraycopy(codes, i, op, 0, op.length);
+            index[i] = _ops.size();
+            _ops.add(op);
+        }
+
+        _pinned = new boolean[_ops.size()];
+
+        for (int i = 0; i < _ops.size(); i++) {
+            int[] op = _ops.get(i);
+
+            if (isJump(op[0])) {
+                op[1] = index[op[1]];
+            } else if (op[0] == RegexCode.Switch) {
+                for (int k = 1; k <= _strings.get(op[1]).length(); k++) {
+                    _pinned[i + k] = true;
+                }
+            }
+        }
+    }
+
+    /*
+     * The codes, with each jump to the position its instruction ends up at.
+     */
+    private int[] layout() {
+        int[] pos = new int[_ops.size() + 1];
+        int length = 0;
+
+        // a removed instruction is where the one after it is
+        for (int i = 0; i < _ops.size(); i++) {
+            pos[i] = length;
+            if (_ops.get(i) != null) {
+                length += _ops.get(i).length;
+            }
+        }
+
+        int[] codes = new int[length];
+
+        for (int i = 0; i < _ops.size(); i++) {
+            int[] op = _ops.get(i);
+
+            if (op != null) {
+                System.arraycopy(op, 0, codes, pos[i], op.length);
+                if (isJump(op[0])) {
+                    codes[pos[i] + 1] = pos[op[1]];
+                }
+            }
+        }
+
+        return codes;
+    }
+
+    private static boolean isJump(int op) {
+        switch (op & RegexCode.Mask) {
+            case RegexCode.Goto:
+            case RegexCode.Lazybranch:
+            case RegexCode.Branchmark:
+            case RegexCode.Lazybranchmark:
+            case RegexCode.Branchcount:
+            case RegexCode.Lazybranchcount:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    private static boolean fallsThrough(int op) {
+        switch (op & RegexCode.Mask) {
+            case RegexCode.Goto:
+            case RegexCode.Nothing:
+            case RegexCode.Stop:
+            case RegexCode.Backjump:
+            case RegexCode.Switch:
+                return false;
+
+            default:
+                return true;
+        }
+    }
+
+    /*
+     * True for the instructions that neither jump nor push a backtracking
+     * frame: once one of them fails, the code before it backtracks.
+     */
+    private static boolean isStraight(int op) {
+        switch (op & RegexCode.Mask) {
+            case RegexCode.One:
+            case RegexCode.Notone:
+            case RegexCode.Set:
+            case RegexCode.Multi:
+            case RegexCode.Ref:
+            case RegexCode.Onerep:
+            case RegexCode.Notonerep:
+            case RegexCode.Setrep:
+            case RegexCode.Oneloopatomic:
+            case RegexCode.Notoneloopatomic:
+            case RegexCode.Setloopatomic:
+            case RegexCode.Bol:
+            case RegexCode.Eol:
+            case RegexCode.Boundary:
+            case RegexCode.Nonboundary:
+            case RegexCode.ECMABoundary:
+            case RegexCode.NonECMABoundary:
+            case RegexCode.Beginning:
+            case RegexCode.Start:
+            case RegexCode.EndZ:
+            case RegexCode.End:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    /*
+     * The next instruction that hasn't been removed, or -1.
+     */
+    private int next(int i) {
+        for (i++; i < _ops.size(); i++) {
+            if (_ops.get(i) != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean[] jumpTargets() {
+        boolean[] targets = new boolean[_ops.size()];
+
+        for (int[] op : _ops) {
+            if (op != null && isJump(op[0])) {
+                targets[op[1]] = true;
+            }
+        }
+
+        return targets;
+    }
+
+    private boolean isOp(int i, int opcode) {
+        return i >= 0 && _ops.get(i) != null && _ops.get(i)[0] == opcode;
+    }
+
+    private boolean threadJumps() {
+        boolean changed = false;
+
+        for (int[] op : _ops) {
+            if (op == null || !isJump(op[0])) {
+                continue;
+            }
+
+            int target = op[1];
+            for (int hops = 0; isOp(target, RegexCode.Goto) && hops < _ops.size(); hops++) {
+                target = _ops.get(target)[1];
+            }
+
+            if (target != op[1]) {
+                op[1] = target;
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    private boolean shortcutBranches() {
+        boolean changed = false;
+
+        for (int i = 0; i < _ops.size(); i++) {
+            if (isOp(i, RegexCode.Lazybranch) && isOp(next(i), RegexCode.Nothing)) {
+                _ops.set(i, new int[]{RegexCode.Goto, _ops.get(i)[1]});
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    private boolean fuse() {
+        boolean[] targets = jumpTargets();
+        boolean changed = false;
+
+        for (int i = 0; i < _ops.size(); i++) {
+            if (_ops.get(i) == null || _pinned[i]) {
+                continue;
+            }
+
+            if (_ops.get(i)[0] == RegexCode.Setmark && fuseCapture(i, targets)) {
+                changed = true;
+                continue;
+            }
+
+            for (int j = next(i); j >= 0 && !targets[j] && !_pinned[j]; j = next(i)) {
+                int[] fused = fuse(_ops.get(i), _ops.get(j));
+                if (fused == null) {
+                    break;
+                }
+
+                _ops.set(i, fused);
+                _ops.set(j, null);
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    /*
+     * The instruction that does what a then b do, or null.
+     */
+    private int[] fuse(int[] a, int[] b) {
+        int bits = a[0] & ~RegexCode.Mask;
+
+        if ((b[0] & ~RegexCode.Mask) != bits) {
+            return null;
+        }
+
+        int rep = repOpcode(a[0]);
+        if (rep >= 0 && rep == repOpcode(b[0]) && a[1] == b[1]) {
+            long count = (long) repCount(a) + repCount(b);
+            return count < Integer.MAX_VALUE ? new int[]{rep | bits, a[1], (int) count} : null;
+        }
+
+        if (isLiteral(a[0]) && isLiteral(b[0]) && (bits & RegexCode.Rtl) == 0) {
+            return new int[]{RegexCode.Multi | bits, stringCode(literal(a) + literal(b))};
+        }
+
+        return null;
+    }
+
+    private static int repOpcode(int op) {
+        switch (op & RegexCode.Mask) {
+            case RegexCode.One:
+            case RegexCode.Onerep:
+                return RegexCode.Onerep;
+
+            case RegexCode.Notone:
+            case RegexCode.Notonerep:
+                return RegexCode.Notonerep;
+
+            case RegexCode.Set:
+            case RegexCode.Setrep:
+                return RegexCode.Setrep;
+
+            default:
+                return -1;
+        }
+    }
+
+    private static int repCount(int[] op) {
+        return op.length == 3 ? op[2] : 1;
+    }
+
+    private static boolean isLiteral(int op) {
+        return (op & RegexCode.Mask) == RegexCode.One || (op & RegexCode.Mask) == RegexCode.Multi;
+    }
+
+    private String literal(int[] op) {
+        return (op[0] & RegexCode.Mask) == RegexCode.One ? String.valueOf((char) op[1]) : _strings.get(op[1]);
+    }
+
+    private int stringCode(String str) {
+        int i = _strings.indexOf(str);
+        if (i < 0) {
+            i = _strings.size();
+            _strings.add(str);
+        }
+        return i;
+    }
+
+    /*
+     * Turns the Setmark at i and its Capturemark into a Spanmark and a
+     * Capturespan, if only straight instructions are in between and
+     * nothing jumps into them.
+     */
+    private boolean fuseCapture(int i, boolean[] targets) {
+        int k = next(i);
+
+        while (k >= 0 && !targets[k] && isStraight(_ops.get(k)[0])) {
+            k = next(k);
+        }
+
+        if (k < 0 || targets[k] || _ops.get(k)[0] != RegexCode.Capturemark || _ops.get(k)[2] != -1) {
+            return false;
+        }
+
+        _ops.set(i, new int[]{RegexCode.Spanmark});
+        _ops.set(k, new int[]{RegexCode.Capturespan, _ops.get(k)[1]});
+        return true;
+    }
+
+    private boolean removeDeadCode() {
+        boolean[] reachable = new boolean[_ops.size()];
+        List<Integer> pending = new ArrayList<Integer>();
+        boolean changed = false;
+
+        pending.add(next(-1));
+
+        while (!pending.isEmpty()) {
+            int i = pending.remove(pending.size() - 1);
+            if (i < 0 || reachable[i]) {
+                continue;
+            }
+
+            int[] op = _ops.get(i);
+            reachable[i] = true;
+
+            if (op[0] == RegexCode.Switch) {
+                for (int k = next(i), n = 0; n < _strings.get(op[1]).length(); k = next(k), n++) {
+                    pending.add(k);
+                }
+            }
+            if (isJump(op[0])) {
+                pending.add(op[1]);
+            }
+            if (fallsThrough(op[0])) {
+                pending.add(next(i));
+            }
+        }
+
+        for (int i = 0; i < _ops.size(); i++) {
+            if (_ops.get(i) != null && !reachable[i]) {
+                _ops.set(i, null);
+                changed = true;
+            }
+        }
+
+        // a Goto to the next instruction does nothing
+        boolean[] targets = jumpTargets();
+        for (int i = 0; i < _ops.size(); i++) {
+            if (isOp(i, RegexCode.Goto) && !_pinned[i] && !targets[i] && _ops.get(i)[1] == next(i)) {
+                _ops.set(i, null);
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+}
@@ -123,10 +123,10 @@ final class RegexReplacement {
             else {
                 switch (-Specials - 1 - r) { // special insertion patterns
                     case LeftPortion:
-                        sb.append(match.getLeftSubstring());
+                        sb.append(match.text, 0, match.index);
                         break;
                     case RightPortion:
-                        sb.append(match.getRightSubstring());
+                        sb.append(match.text, match.index + match.length, match.text.length());
                         break;
                     case LastGroup:
                         sb.append(match.lastGroupToStringImpl());
@@ -162,7 +162,7 @@ final class RegexReplacement {
                         al.add(match.lastGroupToStringImpl());
                         break;
                     case WholeString:
-                        al.add(match.getOriginalString());
+                        al.add(match.getOriginalString().toString());
                         break;
                 }
             }
@@ -202,7 +202,7 @@ final class RegexReplacement {
      * The right-to-left case is split out because StringBuilder
      * doesn't handle right-to-left string building directly very well.
      */
-    String replace(Regex regex, String input, int count, int startat) {
+    String replace(Regex regex, CharSequence input, int count, int startat) {
         Match match;
 
         if (count < -1) {
@@ -213,11 +213,11 @@ final class RegexReplacement {
         }
 
         if (count == 0)
-            return input;
+            return input.toString();
 
         match = regex.match(input, startat);
         if (!match.success()) {
-            return input;
+            return input.toString();
         } else {
             StringBuilder sb;
 
@@ -227,7 +227,7 @@ final class RegexReplacement {
 
                 do {
                     if (match.index() != prevat)
-                        sb.append(input, prevat, match.index() - prevat);
+                        sb.append(input, prevat, match.index());
 
                     prevat = match.index() + match.length();
                     ReplacementImpl(sb, match);
@@ -238,7 +238,7 @@ final class RegexReplacement {
                 } while (match.success());
 
                 if (prevat < input.length())
-                    sb.append(input, prevat, input.length() - prevat);
+                    sb.append(input, prevat, input.length());
             } else {
                 List<String> al = new ArrayList<String>();
                 int prevat = input.length();
@@ -246,7 +246,7 @@ final class RegexReplacement {
                 do {
                     if (match.index() + match.length() != prevat)
                         // TODO: input.substring(match.index() + match.length(), prevat - match.index() - match.length())
-                        al.add(input.substring(match.index() + match.length(), prevat));
+                        al.add(input.subSequence(match.index() + match.length(), prevat).toString());
                     prevat = match.index();
                     ReplacementImplRTL(al, match);
                     if (--count == 0)
@@ -278,7 +278,7 @@ final class RegexReplacement {
      * The right-to-left case is split out because StringBuilder
      * doesn't handle right-to-left string building directly very well.
      */
-    static String replace(MatchEvaluator evaluator, Regex regex, String input, int count, int startat) {
+    static String replace(MatchEvaluator evaluator, Regex regex, CharSequence input, int count, int startat) {
         Match match;
 
         if (evaluator == null) {
@@ -292,12 +292,12 @@ final class RegexReplacement {
         }
 
         if (count == 0)
-            return input;
+            return input.toString();
 
         match = regex.match(input, startat);
 
         if (!match.success()) {
-            return input;
+            return input.toString();
         } else {
             StringBuilder sb;
 
@@ -307,7 +307,7 @@ final class RegexReplacement {
 
                 do {
                     if (match.index() != prevat)
-                        sb.append(input, prevat, match.index() - prevat);
+                        sb.append(input, prevat, match.index());
 
                     prevat = match.index() + match.length();
 
@@ -320,7 +320,7 @@ final class RegexReplacement {
                 } while (match.success());
 
                 if (prevat < input.length())
-                    sb.append(input, prevat, input.length() - prevat);
+                    sb.append(input, prevat, input.length());
             } else {
                 List<String> al = new ArrayList<String>();
                 int prevat = input.length();
@@ -328,7 +328,7 @@ final class RegexReplacement {
                 do {
                     if (match.index() + match.length() != prevat)
                         // TODO: input.substring(match.index() + match.length(), prevat - match.index() - match.length())
-                        al.add(input.substring(match.index() + match.length(), prevat));
+                        al.add(input.subSequence(match.index() + match.length(), prevat).toString());
 
                     prevat = match.index();
 
@@ -358,7 +358,7 @@ final class RegexReplacement {
      * Does a split. In the right-to-left case we reorder the
      * array to be forwards.
      */
-    static String[] split(Regex regex, String input, int count, int startat) {
+    static String[] split(Regex regex, CharSequence input, int count, int startat) {
         Match match;
         String[] result;
 
@@ -371,7 +371,7 @@ final class RegexReplacement {
 
         if (count == 1) {
             result = new String[1];
-            result[0] = input;
+            result[0] = input.toString();
             return result;
         }
 
@@ -381,7 +381,7 @@ final class RegexReplacement {
 
         if (!match.success()) {
             result = new String[1];
-            result[0] = input;
+            result[0] = input.toString();
             return result;
         } else {
             List<String> al = new ArrayList<String>();
@@ -391,7 +391,7 @@ final class RegexReplacement {
 
                 for (; ;) {
                     // TODO: input.substring(prevat, match.index() - prevat)
-                    al.add(input.substring(prevat, match.index()));
+                    al.add(input.subSequence(prevat, match.index()).toString());
 
                     prevat = match.index() + match.length();
 
@@ -410,13 +410,13 @@ final class RegexReplacement {
                         break;
                 }
                 // TODO: input.substring(prevat, input.length() - prevat)
-                al.add(input.substring(prevat));
+                al.add(input.subSequence(prevat, input.length()).toString());
             } else {
                 int prevat = input.length();
 
                 for (; ;) {
                     // TODO: input.substring(match.index() + match.length(), prevat - match.index() - match.length())
-                    al.add(input.substring(match.index() + match.length(), prevat));
+                    al.add(input.subSequence(match.index() + match.length(), prevat).toString());
 
                     prevat = match.index();
 
@@ -435,7 +435,7 @@ final class RegexReplacement {
                         break;
                 }
                 // TODO: input.substring(0, prevat)
-                al.add(input.substring(0, prevat));
+                al.add(input.subSequence(0, prevat).toString());
 
                 // TODO: al.Reverse(0, al.Count);
                 Collections.reverse(al);
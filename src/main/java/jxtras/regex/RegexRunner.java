@@ -26,6 +26,10 @@
 
 package jxtras.regex;
 
+import jxtras.regex.support.R;
+
+import java.util.concurrent.CancellationException;
+
 /**
  * This API supports the product infrastructure and is not intended to be used directly from your code.
 
@@ -51,7 +55,7 @@ public abstract class RegexRunner {
     protected int runtextend;          // end of text to search
     protected int runtextstart;        // starting point for search
 
-    protected String runtext;          // text to search
+    protected CharSequence runtext;         // text to search
     protected int runtextpos;          // current position in text
 
     protected int[] runtrack;         // The backtracking stack.  Opcodes use this to store data regarding
@@ -82,12 +86,33 @@ public abstract class RegexRunner {
     protected int runtrackcount;       // count of states that may do backtracking
 
     protected Match runmatch;          // result object
+    protected boolean runquick;        // true if only whether there is a match is wanted
     protected Regex runregex;          // regex object
 
+    private String runscanliteral;     // the literal last looked for by indexOfLiteral,
+    private int runscanfrom;           // where it was looked for from,
+    private int runscanat;             // and where it was found, or -1
+
     //TODO: int32
     private int timeout;                      // timeout in millisecs (needed for actual)
     private boolean ignoreTimeout;
     private long timeoutOccursAt;
+    private long deadline;                    // the deadline of this scan, if any (Long.MAX_VALUE if none)
+
+    // With the watchdog, checkTimeout() only polls runcancelled, which the
+    // watchdog thread sets; without it, the clock is read every
+    // TimeoutCheckFrequency checks, if there is a deadline at all.
+    private volatile boolean runcancelled;
+    private boolean readClock;
+    private Thread runthread;                 // the thread that scans, while the watchdog watches it
+
+    // Each call to checkTimeout() is a step of the match, which may not take
+    // more than maxSteps of them. The calls are counted down in chunks, to
+    // the next time the clock is read or the budget is spent.
+    private long maxSteps;                    // the budget of steps of this scan (Long.MAX_VALUE if none)
+    private long steps;                       // the steps taken, up to the current chunk
+    private int stepsChunk;                   // the steps of the current chunk
+    private boolean countChecks;              // true if the clock is read or the steps are limited
 
 
     // GPaperin: We have determined this value in a series of experiments where x86 retail
@@ -110,13 +135,25 @@ public abstract class RegexRunner {
      *
      * <
      */
-    protected Match scan(Regex regex, String text, int textbeg, int textend, int textstart, int
+    protected Match scan(Regex regex, CharSequence text, int textbeg, int textend, int textstart, int
             prevlen, boolean quick) {
         return scan(regex, text, textbeg, textend, textstart, prevlen, quick, regex.matchTimeout());
     }
 
-    protected Match scan(Regex regex, String text, int textbeg, int textend, int textstart, int
+    protected Match scan(Regex regex, CharSequence text, int textbeg, int textend, int textstart, int
             prevlen, boolean quick, int timeout) {
+        return scan(regex, text, textbeg, textend, textstart, prevlen, quick, timeout, Long.MAX_VALUE,
+                regex.maxSteps());
+    }
+
+    /*
+     * Scans like the other ones, but stops with a RegexMatchTimeoutException
+     * at the deadline (a System.currentTimeMillis() time) if it comes before
+     * the timeout runs out, and with a RegexStepLimitException once it has
+     * taken more than maxSteps steps (unless it is Regex.INFINITE_STEPS).
+     */
+    Match scan(Regex regex, CharSequence text, int textbeg, int textend, int textstart, int
+            prevlen, boolean quick, int timeout, long deadline, long maxSteps) {
         int bump;
         int stoppos;
         boolean initted = false;
@@ -127,18 +164,34 @@ public abstract class RegexRunner {
 
         this.ignoreTimeout = (Regex.INFINITE_MATCH_TIMEOUT == timeout);
         this.timeout = this.ignoreTimeout ? Regex.INFINITE_MATCH_TIMEOUT : (int)(timeout + 0.5); // Round
+        this.deadline = deadline;
+        this.maxSteps = maxSteps == Regex.INFINITE_STEPS ? Long.MAX_VALUE : maxSteps;
 
         runregex = regex;
         runtext = text;
+        runscanliteral = null;
         runtextbeg = textbeg;
         runtextend = textend;
         runtextstart = textstart;
+        runquick = quick;
 
+        // a match takes at least minLength chars, so it can't start closer
+        // than that to the end (to the beginning, for right to left)
+        RegexCode code = runregex.code;
+        int minLength = Math.min(code._minLength, runtextend - runtextbeg + 1);
         bump = runregex.rightToLeft() ? -1 : 1;
-        stoppos = runregex.rightToLeft() ? runtextbeg : runtextend;
+        stoppos = runregex.rightToLeft() ? runtextbeg + minLength : runtextend - minLength;
 
         runtextpos = textstart;
 
+        if (bump > 0 ? runtextpos > stoppos : runtextpos < stoppos)
+            return Match.EMPTY;
+
+        // a match that ends at the end ends with the trailing literal, so the
+        // text has to as well: one look at its end rejects most of them
+        if (code._trailingLiteral != null && !endsWithTrailingLiteral(code))
+            return Match.EMPTY;
+
         // If previous match was empty or failed, advance by one before matching
 
         if (prevlen == 0) {
@@ -148,86 +201,194 @@ public abstract class RegexRunner {
             runtextpos += bump;
         }
 
-        startTimeoutWatch();
+        // a match that ends at the end can't start further from it than its
+        // longest: \d{4}$ is only tried 4 or 5 chars before the end
+        if (code._trailingAnchor != 0 && code._maxLength != Integer.MAX_VALUE) {
+            int farthest = runtextend - code._maxLength - (code._trailingAnchor == RegexFCD.EndZ ? 1 : 0);
+            if (runtextpos < farthest)
+                runtextpos = farthest;
+        }
 
-        for (; ;) {
+        startTimeoutWatch();
 
-            //#if DBG
-            if (runregex.isDebugEnabled()) {
-                System.out.println("");
-                System.out.println("Search range: from " + runtextbeg + " to " + runtextend);
-                System.out.println("Firstchar search starting at " + runtextpos + " stopping at " + stoppos);
-            }
-            //#endif
+        try {
 
-            if (findFirstChar()) {
+            // every match contains the required literal, so there is no match
+            // to find once no occurrence of it is left ahead of the position
+            RegexBoyerMoore reqLiteral = code._reqLiteral;
+            int reqpos = -1;
 
-                checkTimeout();
+            for (; ;) {
 
-                if (!initted) {
-                    initMatch();
-                    initted = true;
+                if (reqLiteral != null && reqpos < runtextpos) {
+                    reqpos = reqLiteral.indexOf(runtext, runtextpos, runtextend);
+                    if (reqpos == -1) {
+                        tidyMatch(true);
+                        return Match.EMPTY;
+                    }
                 }
 
                 //#if DBG
                 if (runregex.isDebugEnabled()) {
-                    System.out.println("Executing engine starting at " + runtextpos);
                     System.out.println("");
+                    System.out.println("Search range: from " + runtextbeg + " to " + runtextend);
+                    System.out.println("Firstchar search starting at " + runtextpos + " stopping at " + stoppos);
                 }
                 //#endif
 
-                go();
+                if (findFirstChar() && (bump > 0 ? runtextpos <= stoppos : runtextpos >= stoppos)) {
 
-                if (runmatch.matchCount[0] > 0) {
-                    // <
-                    return tidyMatch(quick);
-                }
+                    checkTimeout();
 
-                // reset state for another go
-                runtrackpos = runtrack.length;
-                runstackpos = runstack.length;
-                runcrawlpos = runcrawl.length;
-            }
+                    if (!initted) {
+                        initMatch();
+                        initted = true;
+                    }
 
-            // failure!
+                    //#if DBG
+                    if (runregex.isDebugEnabled()) {
+                        System.out.println("Executing engine starting at " + runtextpos);
+                        System.out.println("");
+                    }
+                    //#endif
 
-            if (runtextpos == stoppos) {
-                tidyMatch(true);
-                return Match.EMPTY;
-            }
+                    go();
 
-            // <
+                    if (runmatch.matchCount[0] > 0) {
+                        // <
+                        return tidyMatch(quick);
+                    }
 
-            // Bump by one and start again
+                    // reset state for another go
+                    runtrackpos = runtrack.length;
+                    runstackpos = runstack.length;
+                    runcrawlpos = runcrawl.length;
+                }
 
-            runtextpos += bump;
+                // failure!
+
+                if (bump > 0 ? runtextpos >= stoppos : runtextpos <= stoppos) {
+                    tidyMatch(true);
+                    return Match.EMPTY;
+                }
+
+                // <
+
+                // Bump by one and start again
+
+                runtextpos += bump;
+            }
+        } finally {
+            stopTimeoutWatch();
         }
 
         // We never get here
     }
 
+    private boolean endsWithTrailingLiteral(RegexCode code) {
+        RegexBoyerMoore literal = code._trailingLiteral;
+
+        if (literal.isMatch(runtext, runtextend, runtextbeg, runtextend))
+            return true;
+
+        // $ and \Z may match before a final newline too
+        return code._trailingAnchor == RegexFCD.EndZ && runtextend > runtextbeg &&
+                charAt(runtext, runtextend - 1) == '\n' && literal.isMatch(runtext, runtextend - 1, runtextbeg, runtextend);
+    }
+
     private void startTimeoutWatch() {
-        if (ignoreTimeout)
-            return;
+        steps = 0;
+        readClock = false;
 
-        timeoutChecksToSkip = TimeoutCheckFrequency;
+        if (ignoreTimeout && deadline == Long.MAX_VALUE && !Regex.timeoutWatchdog) {
+            timeoutOccursAt = Long.MAX_VALUE;
+        } else {
+            startClock();
+        }
 
-        // We are using Environment.TickCount and not Timewatch for performance reasons.
-        // Environment.TickCount is an int that cycles. We intentionally let timeoutOccursAt
-        // overflow it will still stay ahead of Environment.TickCount for comparisons made
-        // in DoCheckTimeout():
-        timeoutOccursAt = System.currentTimeMillis() /* Environment.TickCount */ + timeout;
+        countChecks = readClock || maxSteps != Long.MAX_VALUE;
+        if (countChecks) {
+            nextStepsChunk();
+        }
+    }
+
+    private void startClock() {
+        long now = System.currentTimeMillis();
+        timeoutOccursAt = ignoreTimeout ? Long.MAX_VALUE : now + timeout;
+
+        // the exception tells the time the match had
+        if (deadline < timeoutOccursAt) {
+            timeoutOccursAt = deadline;
+            timeout = (int) Math.max(0, Math.min(deadline - now, Integer.MAX_VALUE));
+        }
+
+        if (Regex.timeoutWatchdog) {
+            // the watchdog also stops the matches without a deadline, once
+            // their thread is interrupted
+            runcancelled = false;
+            runthread = Thread.currentThread();
+            RegexWatchdog.watch(this);
+        } else {
+            readClock = timeoutOccursAt != Long.MAX_VALUE;
+        }
+    }
+
+    private void nextStepsChunk() {
+        long left = maxSteps - steps;
+
+        stepsChunk = left < TimeoutCheckFrequency ? (int) left + 1 : TimeoutCheckFrequency;
+        timeoutChecksToSkip = stepsChunk;
+    }
+
+    private void stopTimeoutWatch() {
+        if (runthread != null) {
+            RegexWatchdog.unwatch(this);
+            runthread = null;
+        }
+    }
+
+    /*
+     * Called by the watchdog thread: flags the runner if its match is out of
+     * time or its thread was interrupted.
+     */
+    void watchdogCheck(long now) {
+        Thread thread = runthread;
+
+        if (now >= timeoutOccursAt || (thread != null && thread.isInterrupted())) {
+            runcancelled = true;
+        }
     }
 
     protected void checkTimeout() {
 
-        if (ignoreTimeout)
+        if (runcancelled)
+            doCancel();
+
+        if (!countChecks)
             return;
 
         if (--timeoutChecksToSkip != 0)
             return;
 
-        timeoutChecksToSkip = TimeoutCheckFrequency;
+        steps += stepsChunk;
+        if (steps > maxSteps)
+            throw new RegexStepLimitException(runtext.toString(), runregex.pattern, maxSteps, steps);
+
+        if (readClock)
+            doCheckTimeout();
+
+        nextStepsChunk();
+    }
+
+    private void doCancel() {
+        runcancelled = false;
+
+        // the interrupt is left pending, for the caller to see it too
+        if (Thread.currentThread().isInterrupted())
+            throw new CancellationException(R.RegexMatchInterrupted);
+
+        // the watchdog may have flagged the last scan just as it ended:
+        // only the clock can tell
         doCheckTimeout();
     }
 
@@ -257,7 +418,7 @@ public abstract class RegexRunner {
         }
         //#endif
 
-        throw new RegexMatchTimeoutException(runtext, runregex.pattern, timeout);
+        throw new RegexMatchTimeoutException(runtext.toString(), runregex.pattern, timeout);
     }
 
     /*
@@ -282,6 +443,14 @@ public abstract class RegexRunner {
      */
     protected abstract void initTrackCount();
 
+    /*
+     * How many bytes the memo table of the last scan takes, for
+     * RegexOptions.Memoize (the runners that don't memoize have none)
+     */
+    long memoTableSize() {
+        return 0;
+    }
+
     /*
      * Initializes all the data members that are used by Go()
      */
@@ -364,13 +533,143 @@ public abstract class RegexRunner {
      * emitting inline code for this logic.
      */
     protected boolean isBoundary(int index, int startpos, int endpos) {
-        return (index > startpos && RegexCharClass.isWordChar(runtext.charAt(index - 1))) !=
-                (index < endpos && RegexCharClass.isWordChar(runtext.charAt(index)));
+        return (index > startpos && RegexCharClass.isWordChar(charAt(runtext, index - 1))) !=
+                (index < endpos && RegexCharClass.isWordChar(charAt(runtext, index)));
     }
 
     protected boolean isECMABoundary(int index, int startpos, int endpos) {
-        return (index > startpos && RegexCharClass.isECMAWordChar(runtext.charAt(index - 1))) !=
-                (index < endpos && RegexCharClass.isECMAWordChar(runtext.charAt(index)));
+        return (index > startpos && RegexCharClass.isECMAWordChar(charAt(runtext, index - 1))) !=
+                (index < endpos && RegexCharClass.isECMAWordChar(charAt(runtext, index)));
+    }
+
+    /*
+     * Called by the implementation of Go() for the loops that scan: where
+     * an unbounded loop of any char but ch stops, at the latest.
+     */
+    final int notoneEnd(char ch, int index) {
+        int end = indexOf(runtext, ch, index);
+        return (end < 0 || end > runtextend) ? runtextend : end;
+    }
+
+    /*
+     * Called by findFirstChar() for a regex that starts with .*: moves past
+     * the rest of the line, unless the position is the start of the search
+     * or of a line. Returns false if no line is left.
+     */
+    final boolean skipToLineStart() {
+        if (runtextpos > runtextstart && charAt(runtext, runtextpos - 1) != '\n') {
+            int end = notoneEnd('\n', runtextpos);
+            if (end == runtextend) {
+                runtextpos = runtextend;
+                return false;
+            }
+            runtextpos = end + 1;
+        }
+
+        return true;
+    }
+
+    /*
+     * Called by findFirstChar() to scan left to right over UTF-8 bytes,
+     * which RegexUtf8 searches for the first chars without decoding those
+     * that can't be one of them.
+     */
+    final boolean findFirstCharUtf8(RegexCharClass.Matcher set, boolean ci) {
+        runtextpos = ((RegexUtf8) runtext).indexOf(set, ci, runtextpos, runtextend);
+
+        if (runtextpos == -1) {
+            runtextpos = runtextend;
+            return false;
+        }
+
+        return true;
+    }
+
+    /*
+     * Where the literal is found at or after index, or -1. A search from
+     * anywhere between the last one and the place it found has the same
+     * answer, so it is remembered: trying each start of a line for .*?abc
+     * looks only once for an abc that is far away.
+     */
+    final int indexOfLiteral(String literal, int index) {
+        if (literal != runscanliteral || index < runscanfrom || (runscanat >= 0 && index > runscanat)) {
+            runscanliteral = literal;
+            runscanfrom = index;
+            runscanat = indexOf(runtext, literal, index);
+        }
+
+        return runscanat;
+    }
+
+    /*
+     * Where the literal is found last at or before index, but not before
+     * start, or -1.
+     */
+    final int lastIndexOfLiteral(String literal, int index, int start) {
+        char first = literal.charAt(0);
+
+        for (int i = index; i >= start; i--) {
+            if (charAt(runtext, i) == first && startsWith(runtext, literal, i)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /*
+     * A char of the input. The engines read the input through this, so that
+     * a String, which the input is most of the time, is read by a direct
+     * call that the JIT inlines however many other kinds of CharSequence go
+     * through the same code; only those are read by an interface call.
+     */
+    static char charAt(CharSequence text, int index) {
+        return text instanceof String ? ((String) text).charAt(index) : text.charAt(index);
+    }
+
+    /*
+     * The searches of String, over any input: a String is searched by String
+     * itself, whose intrinsics the JIT knows, UTF-8 bytes by RegexUtf8, and
+     * other sequences char by char.
+     */
+    static int indexOf(CharSequence text, char ch, int index) {
+        if (text instanceof String)
+            return ((String) text).indexOf(ch, index);
+        if (text instanceof RegexUtf8)
+            return ((RegexUtf8) text).indexOf(ch, index);
+
+        for (int i = Math.max(index, 0), length = text.length(); i < length; i++) {
+            if (text.charAt(i) == ch)
+                return i;
+        }
+        return -1;
+    }
+
+    static int indexOf(CharSequence text, String str, int index) {
+        if (text instanceof String)
+            return ((String) text).indexOf(str, index);
+        if (text instanceof RegexUtf8)
+            return ((RegexUtf8) text).indexOf(str, index);
+
+        for (int i = Math.max(index, 0), last = text.length() - str.length(); i <= last; i++) {
+            if (startsWith(text, str, i))
+                return i;
+        }
+        return -1;
+    }
+
+    static boolean startsWith(CharSequence text, String str, int index) {
+        if (text instanceof String)
+            return ((String) text).startsWith(str, index);
+
+        if (index < 0 || text.length() - index < str.length())
+            return false;
+
+        for (int i = 0; i < str.length(); i++) {
+            if (text.charAt(index + i) != str.charAt(i))
+                return false;
+        }
+        return true;
     }
 
     protected static boolean charInSet(char ch, String set, String category) {
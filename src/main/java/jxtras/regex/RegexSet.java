@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package jxtras.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * <p>The RegexSet class represents a set of regular expressions that are matched together against
+ * an input string, in a single pass over it, and tells which of them match.<p/>
+ * <p/>
+ * <p>The patterns are parsed with the same syntax and options as a {@link Regex}. The patterns that
+ * a finite automaton can match are combined into one automaton, which reads each char of the input
+ * once whatever the number of patterns. The other patterns (those with backreferences, lookarounds,
+ * atomic groups, or right-to-left ones) are matched one by one, each with a {@link Regex}.</p>
+ *
+ * @author Tony Guo <tony.guo.peng@gmail.com>
+ * @since 1.0
+ */
+public final class RegexSet {
+    // the maximum number of states of each combined automaton
+    private static final int MaxChunkStates = 4 * RegexNFA.MaxStates;
+
+    // The string patterns provided
+    private final String[] patterns;
+
+    // The options common to all the patterns
+    private final int options;
+
+    // the combined automata, and for each one the indices of its patterns by id
+    private final RegexNFA[] chunks;
+    private final int[][] chunkIndices;
+    // cached DFAs of the combined automata
+    private final StripedReference<RegexDFA[]> dfaref;
+
+    // the patterns matched one by one, and their indices
+    private final Regex[] others;
+    private final int[] otherIndices;
+
+    /**
+     * Creates a new instance of the RegexSet class for the specified
+     * regular expressions.
+     */
+    public RegexSet(String... patterns) {
+        this(patterns, RegexOptions.None, Regex.INFINITE_MATCH_TIMEOUT);
+    }
+
+    /**
+     * Creates a new instance of the RegexSet class for the specified
+     * regular expressions, with options that modify all the patterns.
+     *
+     * @see RegexOptions
+     */
+    public RegexSet(String[] patterns, int options) {
+        this(patterns, options, Regex.INFINITE_MATCH_TIMEOUT);
+    }
+
+    /**
+     * Creates a new instance of the RegexSet class for the specified
+     * regular expressions, with options that modify all the patterns and
+     * a value that specifies how long matching each of the patterns that
+     * are matched one by one should attempt a match before it times out.
+     */
+    public RegexSet(String[] patterns, int options, int matchTimeout) {
+        if (patterns == null) {
+            throw new IllegalArgumentException("patterns must not be null.");
+        }
+
+        Regex.validateOptions(options);
+        Regex.validateMatchTimeout(matchTimeout);
+
+        this.patterns = patterns.clone();
+        this.options = options;
+
+        List<RegexNFA> chunks = new ArrayList<RegexNFA>();
+        List<int[]> chunkIndices = new ArrayList<int[]>();
+        List<Regex> others = new ArrayList<Regex>();
+        int[] otherIndices = new int[this.patterns.length];
+        int otherCount = 0;
+
+        RegexNFA chunk = null;
+        int[] indices = null;
+
+        for (int i = 0; i < this.patterns.length; i++) {
+            String pattern = this.patterns[i];
+            if (pattern == null) {
+                throw new IllegalArgumentException("pattern must not be null.");
+            }
+
+            // Parse the input
+            RegexTree tree = RegexParser.parse(pattern, options);
+
+            if (RegexNFA.isSupported(tree)) {
+                if (chunk != null && chunk.addAlternative(tree)) {
+                    indices[chunk._ids - 1] = i;
+                    continue;
+                }
+
+                // the chunk is full, start a new one
+                RegexNFA next = RegexNFA.newSet(MaxChunkStates);
+                if (next.addAlternative(tree)) {
+                    if (chunk != null) {
+                        chunkIndices.add(Arrays.copyOf(indices, chunk._ids));
+                    }
+                    chunk = next;
+                    chunks.add(chunk);
+                    indices = new int[this.patterns.length - i];
+                    indices[0] = i;
+                    continue;
+                }
+            }
+
+            // if the automata can't express the pattern, we fall back to backtracking
+            others.add(new Regex(pattern, options, matchTimeout));
+            otherIndices[otherCount++] = i;
+        }
+
+        if (chunk != null) {
+            chunkIndices.add(Arrays.copyOf(indices, chunk._ids));
+        }
+
+        this.chunks = chunks.toArray(new RegexNFA[chunks.size()]);
+        this.chunkIndices = chunkIndices.toArray(new int[chunkIndices.size()][]);
+        this.dfaref = new StripedReference<RegexDFA[]>(Regex.runnerPoolSize, Regex.runnerIdleTimeout);
+        this.others = others.toArray(new Regex[others.size()]);
+        this.otherIndices = Arrays.copyOf(otherIndices, otherCount);
+    }
+
+    /**
+     * Gets the number of patterns in the set.
+     */
+    public int count() {
+        return patterns.length;
+    }
+
+    /**
+     * Gets the pattern at the specified index in the set.
+     */
+    public String pattern(int index) {
+        if (index < 0 || index >= patterns.length) {
+            throw new IllegalArgumentException("index is out of range.");
+        }
+
+        return patterns[index];
+    }
+
+    /**
+     * Gets the options passed into the RegexSet constructor.
+     */
+    public int options() {
+        return options;
+    }
+
+    /**
+     * Searches the input string for a match of any of the patterns.
+     *
+     * @return {@code true} if one of the patterns matches.
+     */
+    public boolean isMatch(CharSequence input) {
+        return firstMatch(input) != -1;
+    }
+
+    /**
+     * Searches the input string for the matches of all the patterns, and
+     * returns the indices of the patterns that match.
+     */
+    public BitSet matches(CharSequence input) {
+        if (input == null)
+            throw new IllegalArgumentException("input cannot be null.");
+
+        BitSet found = new BitSet(patterns.length);
+
+        RegexDFA[] dfas = acquireDFAs();
+        try {
+            for (int i = 0; i < dfas.length; i++) {
+                dfas[i].scanSet(input, input.length(), chunkIndices[i], found, false);
+            }
+        } finally {
+            dfaref.release(dfas);
+        }
+
+        for (int i = 0; i < others.length; i++) {
+            if (others[i].isMatch(input)) {
+                found.set(otherIndices[i]);
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Searches the input string for the first match of any of the patterns,
+     * and returns the index of the pattern, or -1 if none matches.
+     * <p/>
+     * The scan stops at the first position where a match ends, and if
+     * several patterns match there, the lowest index is returned. The
+     * patterns that are matched one by one are tried in order only if
+     * none of the others matches.
+     */
+    public int firstMatch(CharSequence input) {
+        if (input == null)
+            throw new IllegalArgumentException("input cannot be null.");
+
+        int index = -1;
+        int limit = input.length();
+
+        RegexDFA[] dfas = acquireDFAs();
+        try {
+            for (int i = 0; i < dfas.length; i++) {
+                BitSet found = new BitSet(patterns.length);
+                int end = dfas[i].scanSet(input, limit, chunkIndices[i], found, true);
+                if (end == -1) {
+                    continue;
+                }
+
+                // a later chunk only needs to be scanned up to where this match ends
+                int first = found.nextSetBit(0);
+                if (end < limit || index == -1 || first < index) {
+                    index = first;
+                }
+                limit = end;
+            }
+        } finally {
+            dfaref.release(dfas);
+        }
+
+        if (index != -1) {
+            return index;
+        }
+
+        for (int i = 0; i < others.length; i++) {
+            if (others[i].isMatch(input)) {
+                return otherIndices[i];
+            }
+        }
+
+        return -1;
+    }
+
+    /*
+     * Grabs the cached DFAs if they are free, else builds new ones.
+     */
+    private RegexDFA[] acquireDFAs() {
+        RegexDFA[] dfas = dfaref.get();
+        if (dfas == null) {
+            dfas = new RegexDFA[chunks.length];
+            for (int i = 0; i < chunks.length; i++) {
+                dfas[i] = new RegexDFA(chunks[i]);
+            }
+        }
+        return dfas;
+    }
+
+    /**
+     * Returns the patterns of the set.
+     */
+    @Override
+    public String toString() {
+        return Arrays.toString(patterns);
+    }
+}
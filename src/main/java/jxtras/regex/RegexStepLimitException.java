@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package jxtras.regex;
+
+import jxtras.regex.support.R;
+
+import java.io.Serializable;
+
+/**
+ * <p>The exception that is thrown when a regular expression pattern-matching method takes more
+ * steps than its step budget allows (see {@link Regex#maxSteps()}).</p>
+ *
+ * <p>A step is a backtrack or a backward jump of the backtracking engines, or a char that the
+ * {@link RegexOptions#NonBacktracking} engine steps over. Unlike the time a match takes, the
+ * number of its steps does not depend on the load of the machine: the same pattern, input and
+ * options always take the same steps, so a budget sized from benchmarks fails the same matches
+ * every time.</p>
+ *
+ * @author  Tony Guo <tony.guo.peng@gmail.com>
+ */
+public class RegexStepLimitException extends RuntimeException implements Serializable {
+
+    private String regexInput = null;
+
+    private String regexPattern = null;
+
+    private long maxSteps = -1;
+
+    private long steps = -1;
+
+    /**
+     * <p>Initializes a new instance of the {@code RegexStepLimitException} class with
+     * information about the regular expression pattern, the input text, the step budget and
+     * the steps taken.</p>
+     *
+     * @param regexInput   The input within which the match ran out of steps.
+     * @param regexPattern The pattern whose match ran out of steps.
+     * @param maxSteps     The step budget of the match.
+     * @param steps        The steps the match had taken when it was stopped.
+     */
+    public RegexStepLimitException(String regexInput, String regexPattern, long maxSteps, long steps) {
+        super(R.format(R.RegexStepLimitException_Occurred, steps, maxSteps));
+        this.regexInput = regexInput;
+        this.regexPattern = regexPattern;
+        this.maxSteps = maxSteps;
+        this.steps = steps;
+    }
+
+    public String pattern() {
+        return regexPattern;
+    }
+
+    public String input() {
+        return regexInput;
+    }
+
+    public long maxSteps() {
+        return maxSteps;
+    }
+
+    public long steps() {
+        return steps;
+    }
+}
@@ -0,0 +1,547 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package jxtras.regex;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// The RegexUtf8 class lets the runners read UTF-8 encoded bytes, in an
+// array or in a (heap or direct) ByteBuffer, as the chars they decode to,
+// without decoding them all first. Bytes that are all ASCII are their own
+// chars, and are read as they are. Otherwise a char is decoded when it is
+// read, from a cursor that keeps the last char decoded: the runners mostly
+// read the char next to the last one, which is one step away. Anywhere
+// else is found from a mark, kept for every 64th char when the bytes are
+// looked at first (which also counts the chars).
+//
+// A byte that doesn't start a well-formed UTF-8 sequence (the shortest
+// one for a code point, which isn't a surrogate) decodes alone to U+FFFD.
+// Every byte but a continuation one is then the start of a char, which
+// lets the cursor step back as well as forward.
+//
+// Like the runner that reads it, a RegexUtf8 is used by one thread at a
+// time: even reading it moves the cursor.
+
+// @author  Tony Guo <tony.guo.peng@gmail.com>
+final class RegexUtf8 implements CharSequence {
+    private static final int MarkShift = 6;     // a mark every 64 chars
+    private static final int FarAhead = 1 << MarkShift;
+    private static final int FarBehind = 8;
+
+    private byte[] _array;          // the bytes, if they are in an array
+    private ByteBuffer _buffer;     // the bytes otherwise
+    private ByteBuffer _longs;      // the bytes either way, to be read a long at a time
+    private int _base;              // where the input starts in the array or buffer
+    private int _limit;             // the length of the input, in bytes
+    private int _length;            // the length of the input, in chars
+    private boolean _ascii;         // whether every byte is an ASCII char
+    private int[] _marks;           // where every 64th char starts: the byte, then the char, of its code point
+
+    // the cursor: the code point decoded last
+    private int _curByte;
+    private int _curChar;
+    private int _curCode;
+    private int _curBytes;
+
+    RegexUtf8(byte[] array, int offset, int length) {
+        reset(array, offset, length);
+    }
+
+    RegexUtf8(ByteBuffer buffer) {
+        reset(buffer);
+    }
+
+    /*
+     * Reads other bytes, from offset for length bytes of the array
+     */
+    void reset(byte[] array, int offset, int length) {
+        if (array == null)
+            throw new IllegalArgumentException("input cannot be null.");
+        if (offset < 0 || length < 0 || offset > array.length - length)
+            throw new IndexOutOfBoundsException("offset or length is out of the array.");
+
+        _array = array;
+        _buffer = null;
+        _longs = wrap(array);
+        _base = offset;
+        _limit = length;
+        index();
+    }
+
+    /*
+     * Reads other bytes, from the position to the limit of the buffer,
+     * whose position is left where it is
+     */
+    void reset(ByteBuffer buffer) {
+        if (buffer == null)
+            throw new IllegalArgumentException("input cannot be null.");
+
+        if (buffer.hasArray()) {
+            _array = buffer.array();
+            _buffer = null;
+            _longs = wrap(_array);
+            _base = buffer.arrayOffset() + buffer.position();
+        } else {
+            _array = null;
+            _buffer = buffer;
+            _longs = buffer;
+            _base = buffer.position();
+        }
+
+        _limit = buffer.remaining();
+        index();
+    }
+
+    /*
+     * Looks at the bytes: whether they are all ASCII, and otherwise the
+     * chars they decode to, whose count and marks it keeps.
+     */
+    private void index() {
+        int limit = _limit;
+        int pos = asciiEnd(0);
+
+        _ascii = pos == limit;
+        _curByte = 0;
+        _curChar = 0;
+        _curCode = 0;
+        _curBytes = 0;
+
+        if (_ascii) {
+            _length = limit;
+            return;
+        }
+
+        int size = ((limit >> MarkShift) + 1) * 2;
+        if (_marks == null || _marks.length < size)
+            _marks = new int[size];
+
+        int[] marks = _marks;
+        int start = 0;
+        int chars = 0;
+        int mark = 0;
+
+        for (; ; ) {
+            // a run of ASCII bytes, a char each
+            chars += pos - start;
+            for (; mark << MarkShift < chars; mark++) {
+                marks[2 * mark] = pos - (chars - (mark << MarkShift));
+                marks[2 * mark + 1] = mark << MarkShift;
+            }
+
+            if (pos == limit)
+                break;
+
+            // then a code point that isn't ASCII
+            _curByte = pos;
+            decode();
+            int next = chars + width(_curCode);
+
+            if (mark << MarkShift < next) {
+                marks[2 * mark] = pos;
+                marks[2 * mark + 1] = chars;
+                mark++;
+            }
+
+            chars = next;
+            start = pos + _curBytes;
+            pos = asciiEnd(start);
+        }
+
+        _length = chars;
+        jump(0);
+    }
+
+    /*
+     * Where the ASCII bytes from pos end. They are looked at a long at a
+     * time, which isn't 0 under the mask if one of its bytes isn't ASCII.
+     */
+    private int asciiEnd(int pos) {
+        ByteBuffer longs = _longs;
+        int base = _base;
+        int limit = _limit;
+
+        for (; pos + 8 <= limit; pos += 8) {
+            if ((longs.getLong(base + pos) & 0x8080808080808080L) != 0)
+                break;
+        }
+        while (pos < limit && longs.get(base + pos) >= 0) {
+            pos++;
+        }
+
+        return pos;
+    }
+
+    private ByteBuffer wrap(byte[] array) {
+        return _longs != null && _longs.hasArray() && _longs.array() == array ? _longs : ByteBuffer.wrap(array);
+    }
+
+    /*
+     * Whether the bytes are all ASCII, each the char of its own index
+     */
+    boolean isAscii() {
+        return _ascii;
+    }
+
+    /*
+     * The length of the input in bytes
+     */
+    int byteLength() {
+        return _limit;
+    }
+
+    /*
+     * A byte of the input, sign extended
+     */
+    int byteAt(int pos) {
+        return _array != null ? _array[_base + pos] : _buffer.get(_base + pos);
+    }
+
+    @Override
+    public int length() {
+        return _length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= _length)
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + _length);
+
+        if (_ascii)
+            return (char) byteAt(index);
+
+        seek(index);
+
+        int code = _curCode;
+        if (code < Character.MIN_SUPPLEMENTARY_CODE_POINT)
+            return (char) code;
+
+        return index == _curChar ? Character.highSurrogate(code) : Character.lowSurrogate(code);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > _length || start > end)
+            throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + _length);
+
+        if (_ascii && _array != null)
+            return new String(_array, _base + start, end - start, StandardCharsets.ISO_8859_1);
+
+        char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = charAt(start + i);
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, _length).toString();
+    }
+
+    /*
+     * The byte offset where the char at index starts: for the low half of
+     * a surrogate pair, where the pair starts. The length in chars is the
+     * length in bytes.
+     */
+    int byteOffset(int index) {
+        if (_ascii)
+            return index;
+
+        if (index >= _length)
+            return _limit;
+
+        seek(index);
+        return _curByte;
+    }
+
+    /*
+     * The byte offset where the chars before index end: for the low half
+     * of a surrogate pair, where the pair ends.
+     */
+    int byteEnd(int index) {
+        if (_ascii)
+            return index;
+
+        if (index >= _length)
+            return _limit;
+
+        seek(index);
+        return index == _curChar ? _curByte : _curByte + _curBytes;
+    }
+
+    /*
+     * True if index is between the two chars of a surrogate pair, where no
+     * byte offset is
+     */
+    boolean splitsPair(int index) {
+        if (_ascii || index <= 0 || index >= _length)
+            return false;
+
+        seek(index);
+        return index != _curChar;
+    }
+
+    /*
+     * The index of the char that starts at the byte offset, or of the
+     * first one after it if the offset is in the middle of a char.
+     */
+    int charIndex(int pos) {
+        if (_ascii)
+            return pos;
+
+        if (pos >= _limit)
+            return _length;
+
+        if (pos < _curByte || pos - _curByte > FarAhead * 4) {
+            // the last mark at or before pos
+            int min = 0;
+            int max = (_length - 1 >> MarkShift) + 1;
+            while (max - min > 1) {
+                int mid = (min + max) >>> 1;
+                if (_marks[2 * mid] <= pos)
+                    min = mid;
+                else
+                    max = mid;
+            }
+            jump(min << MarkShift);
+        }
+
+        while (_curByte + _curBytes <= pos) {
+            next();
+        }
+
+        return _curByte == pos ? _curChar : _curChar + width(_curCode);
+    }
+
+    /*
+     * Where the first char that ch is at or after index is, or -1. An ASCII
+     * char is only ever its own byte, and is found among the bytes.
+     */
+    int indexOf(char ch, int index) {
+        index = Math.max(index, 0);
+
+        if (ch < 0x80) {
+            for (int pos = byteOffset(index); pos < _limit; pos++) {
+                if (byteAt(pos) == ch)
+                    return charIndex(pos);
+            }
+            return -1;
+        }
+
+        for (int i = index; i < _length; i++) {
+            if (charAt(i) == ch)
+                return i;
+        }
+        return -1;
+    }
+
+    /*
+     * Where the first occurrence of str at or after index is, or -1
+     */
+    int indexOf(String str, int index) {
+        index = Math.max(index, 0);
+
+        if (str.isEmpty())
+            return index <= _length ? index : -1;
+
+        if (!isAscii(str)) {
+            for (int i = index, last = _length - str.length(); i <= last; i++) {
+                if (RegexRunner.startsWith(this, str, i))
+                    return i;
+            }
+            return -1;
+        }
+
+        char first = str.charAt(0);
+        for (int pos = byteOffset(index), last = _limit - str.length(); pos <= last; pos++) {
+            if (byteAt(pos) == first && bytesStartWith(str, pos))
+                return charIndex(pos);
+        }
+        return -1;
+    }
+
+    private boolean bytesStartWith(String str, int pos) {
+        for (int i = 1; i < str.length(); i++) {
+            if (byteAt(pos + i) != str.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /*
+     * Where the first char of the set is, from index and before end, or -1.
+     * The chars are folded first if ci is set. Bytes that are all ASCII are
+     * tested as they are, and so are the ASCII bytes of the others when the
+     * set has nothing else (a char that isn't ASCII may fold to one, so not
+     * when the chars are folded).
+     */
+    int indexOf(RegexCharClass.Matcher set, boolean ci, int index, int end) {
+        if (_ascii) {
+            for (int i = index; i < end; i++) {
+                char ch = (char) byteAt(i);
+                if (set.matches(ci ? RegexCaseFolding.fold(ch) : ch))
+                    return i;
+            }
+            return -1;
+        }
+
+        if (!ci && set.isAscii()) {
+            for (int pos = byteOffset(index), last = byteOffset(end); pos < last; pos++) {
+                int b = byteAt(pos);
+                if (b >= 0 && set.matches((char) b))
+                    return charIndex(pos);
+            }
+            return -1;
+        }
+
+        for (int i = index; i < end; i++) {
+            char ch = charAt(i);
+            if (set.matches(ci ? RegexCaseFolding.fold(ch) : ch))
+                return i;
+        }
+        return -1;
+    }
+
+    static boolean isAscii(String str) {
+        for (int i = 0; i < str.length(); i++) {
+            if (str.charAt(i) >= 0x80)
+                return false;
+        }
+        return true;
+    }
+
+    /*
+     * Moves the cursor to the code point of the char at index, which is
+     * in the input
+     */
+    private void seek(int index) {
+        if (index < _curChar) {
+            if (_curChar - index > FarBehind) {
+                jump(index);
+            } else {
+                do {
+                    previous();
+                } while (index < _curChar);
+                return;
+            }
+        } else if (index - _curChar > FarAhead) {
+            jump(index);
+        }
+
+        while (index >= _curChar + width(_curCode)) {
+            next();
+        }
+    }
+
+    /*
+     * Moves the cursor to the mark of the char at index
+     */
+    private void jump(int index) {
+        int mark = index >> MarkShift;
+        _curByte = _marks[2 * mark];
+        _curChar = _marks[2 * mark + 1];
+        decode();
+    }
+
+    private void next() {
+        _curChar += width(_curCode);
+        _curByte += _curBytes;
+        decode();
+    }
+
+    /*
+     * Moves the cursor to the code point before it: the one of the first
+     * byte before it that isn't a continuation byte, if it ends at the
+     * cursor, else the byte just before it, which decodes alone
+     */
+    private void previous() {
+        int end = _curByte;
+
+        for (int count = 1; count <= 4 && count <= end; count++) {
+            if ((byteAt(end - count) & 0xC0) != 0x80) {
+                _curByte = end - count;
+                decode();
+                if (_curBytes == count) {
+                    _curChar -= width(_curCode);
+                    return;
+                }
+                break;
+            }
+        }
+
+        _curByte = end - 1;
+        decode();
+        _curChar -= width(_curCode);
+    }
+
+    /*
+     * Decodes the code point at the cursor
+     */
+    private void decode() {
+        int pos = _curByte;
+        int b = byteAt(pos);
+
+        if (b >= 0) {
+            _curCode = b;
+            _curBytes = 1;
+            return;
+        }
+
+        _curCode = 0xFFFD;
+        _curBytes = 1;
+
+        b &= 0xFF;
+        if (b < 0xC2 || b > 0xF4)
+            return;
+
+        int count = b < 0xE0 ? 1 : b < 0xF0 ? 2 : 3;
+        if (pos + count >= _limit)
+            return;
+
+        int code = b & (0x3F >> count);
+        for (int i = 1; i <= count; i++) {
+            int c = byteAt(pos + i);
+            if ((c & 0xC0) != 0x80)
+                return;
+            code = (code << 6) | (c & 0x3F);
+        }
+
+        // only the shortest form, and no surrogates
+        if (count == 2 && (code < 0x800 || (code >= Character.MIN_SURROGATE && code <= Character.MAX_SURROGATE)))
+            return;
+        if (count == 3 && (code < Character.MIN_SUPPLEMENTARY_CODE_POINT || code > Character.MAX_CODE_POINT))
+            return;
+
+        _curCode = code;
+        _curBytes = count + 1;
+    }
+
+    private static int width(int code) {
+        return code < Character.MIN_SUPPLEMENTARY_CODE_POINT ? 1 : 2;
+    }
+}
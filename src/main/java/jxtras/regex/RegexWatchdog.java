@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package jxtras.regex;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// The RegexWatchdog class stops the matches that are out of time
+// without them having to read the clock. While the watchdog is
+// enabled (see Regex.setTimeoutWatchdog), the runners register here
+// for as long as they scan, and a single daemon thread looks at them
+// every Resolution milliseconds: it sets the cancel flag of those that
+// are past their deadline or whose thread was interrupted, and the
+// runners only poll that flag. The thread is started the first time a
+// runner registers, and parks while no runner is registered.
+
+// @author  Tony Guo <tony.guo.peng@gmail.com>
+final class RegexWatchdog implements Runnable {
+    // how often the runners are looked at, in milliseconds: a match may
+    // go on that much longer than its timeout before it is stopped
+    static final int Resolution = 10;
+
+    private static final Set<RegexRunner> _runners =
+            Collections.newSetFromMap(new ConcurrentHashMap<RegexRunner, Boolean>());
+    private static volatile boolean _idle;
+    private static final Thread _thread = start();
+
+    private RegexWatchdog() {
+    }
+
+    private static Thread start() {
+        Thread thread = new Thread(new RegexWatchdog(), "RegexWatchdog");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /*
+     * Watches the runner until unwatch is called
+     */
+    static void watch(RegexRunner runner) {
+        _runners.add(runner);
+
+        if (_idle) {
+            LockSupport.unpark(_thread);
+        }
+    }
+
+    static void unwatch(RegexRunner runner) {
+        _runners.remove(runner);
+    }
+
+    @Override
+    public void run() {
+        for (; ; ) {
+            // a runner that registers once _idle is set unparks the thread,
+            // so none is missed between the test and the park
+            _idle = true;
+            if (_runners.isEmpty()) {
+                LockSupport.park(this);
+            }
+            _idle = false;
+
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(Resolution));
+
+            long now = System.currentTimeMillis();
+            for (RegexRunner runner : _runners) {
+                runner.watchdogCheck(now);
+            }
+        }
+    }
+}
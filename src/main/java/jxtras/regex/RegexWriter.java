@@ -55,6 +55,7 @@ final class RegexWriter {
     private int _count;
     private int _trackcount;
     private Map<Integer, Integer> _caps;
+    private final Map<RegexNode, String> _switchKeys;
 
     private static final int BeforeChild = 64;
     private static final int AfterChild = 128;
@@ -85,6 +86,7 @@ final class RegexWriter {
         _emitted = new int[32];
         _Stringhash = new HashMap<String, Integer>();
         _Stringtable = new ArrayList<String>();
+        _switchKeys = new HashMap<RegexNode, String>();
     }
 
     /*
@@ -234,7 +236,14 @@ final class RegexWriter {
         RegexPrefix fcPrefix;
         RegexPrefix prefix;
         int anchors;
+        int trailingAnchor;
+        RegexPrefix trailingLiteral;
+        RegexBoyerMoore bmTrailingLiteral;
         RegexBoyerMoore bmPrefix;
+        RegexPrefix[] prefixes;
+        RegexAhoCorasick acPrefix;
+        RegexPrefix reqLiteral;
+        RegexBoyerMoore bmReqLiteral;
         boolean rtl;
 
         // construct sparse capnum mapping if some numbers are unused
@@ -293,6 +302,14 @@ final class RegexWriter {
             _counting = false;
         }
 
+        _emitted = RegexPeephole.optimize(_emitted, _Stringtable);
+
+        _trackcount = 0;
+        for (int i = 0; i < _emitted.length; i += RegexCode.opcodeSize(_emitted[i])) {
+            if (RegexCode.opcodeBacktracks(_emitted[i]))
+                _trackcount++;
+        }
+
         fcPrefix = RegexFCD.firstChars(tree);
 
         prefix = RegexFCD.prefix(tree);
@@ -305,9 +322,79 @@ final class RegexWriter {
         else
             bmPrefix = null;
 
+        // without a prefix, there may be one of several
+        prefixes = bmPrefix == null ? RegexFCD.alternatePrefixes(tree) : null;
+        if (prefixes != null) {
+            String[] strings = new String[prefixes.length];
+            for (int i = 0; i < prefixes.length; i++)
+                strings[i] = prefixes[i].prefix();
+            acPrefix = new RegexAhoCorasick(strings, prefixes[0].isCaseInsensitive(), culture);
+        } else
+            acPrefix = null;
+
+        // a required literal no longer than the prefix tells nothing more than it
+        reqLiteral = RegexFCD.requiredLiteral(tree);
+        if (reqLiteral != null && (bmPrefix == null || reqLiteral.prefix().length() > prefix.prefix().length()))
+            bmReqLiteral = new RegexBoyerMoore(reqLiteral.prefix(), reqLiteral.isCaseInsensitive(), false, culture);
+        else
+            bmReqLiteral = null;
+
         anchors = RegexFCD.anchors(tree);
+        trailingAnchor = RegexFCD.trailingAnchor(tree);
+        trailingLiteral = RegexFCD.trailingLiteral(tree);
+        if (trailingLiteral != null)
+            bmTrailingLiteral = new RegexBoyerMoore(trailingLiteral.prefix(), trailingLiteral.isCaseInsensitive(), true, culture);
+        else
+            bmTrailingLiteral = null;
 
-        return new RegexCode(_emitted, _Stringtable, _trackcount, _caps, capsize, bmPrefix, fcPrefix, anchors, rtl);
+        return new RegexCode(_emitted, _Stringtable, _trackcount, _caps, capsize, bmPrefix, acPrefix, bmReqLiteral, fcPrefix, anchors,
+                trailingAnchor, bmTrailingLiteral, tree._root.computeMinLength(), tree._root.computeMaxLength(), rtl);
+    }
+
+    /*
+     * The literal an unbounded .* or .*? loop can scan for, or null: the
+     * positions where it isn't found are where what follows the loop fails.
+     */
+    private static RegexNode scannedLiteral(RegexNode node, int bits) {
+        if ((node._type != RegexNode.Notoneloop && node._type != RegexNode.Notonelazy)
+                || node._n != Integer.MAX_VALUE || bits != 0) {
+            return null;
+        }
+
+        return node.followingLiteral();
+    }
+
+    /*
+     * The first chars of the branches of an alternation, in order, when the
+     * next char tells which one branch may match: each of them starts with
+     * a literal, compared left to right and case-sensitively, and no two
+     * with the same char. Otherwise null, and the branches are tried one
+     * after the other.
+     */
+    private String switchKeys(RegexNode node) {
+        if (_switchKeys.containsKey(node))
+            return _switchKeys.get(node);
+
+        StringBuilder keys = new StringBuilder();
+
+        for (int i = 0; i < node.childCount() && keys != null; i++) {
+            RegexNode first = node.childAt(i).firstNode();
+
+            if ((first._type != RegexNode.One && first._type != RegexNode.Multi) || first.useOptionR()
+                    || (first._options & RegexOptions.IgnoreCase) != 0) {
+                keys = null;
+            } else {
+                char ch = first._type == RegexNode.One ? first._ch : first._str.charAt(0);
+                if (keys.indexOf(String.valueOf(ch)) >= 0)
+                    keys = null;
+                else
+                    keys.append(ch);
+            }
+        }
+
+        String result = node.useOptionR() || keys == null ? null : keys.toString();
+        _switchKeys.put(node, result);
+        return result;
     }
 
     /*
@@ -318,7 +405,8 @@ final class RegexWriter {
     private void emitFragment(int nodetype, RegexNode node, int CurIndex) {
         int bits = 0;
 
-        if (nodetype <= RegexNode.Ref) {
+        // the primitive operations: the leaves up to Ref, and the atomic loops
+        if (nodetype <= RegexNode.Ref || (nodetype >= RegexNode.Oneloopatomic && nodetype <= RegexNode.Setloopatomic)) {
             if (node.useOptionR())
                 bits |= RegexCode.Rtl;
             if ((node._options & RegexOptions.IgnoreCase) != 0)
@@ -331,16 +419,45 @@ final class RegexWriter {
             case RegexNode.Empty:
                 break;
 
-            case RegexNode.Alternate | BeforeChild:
-                if (CurIndex < node._children.size() - 1) {
+            case RegexNode.Alternate | BeforeChild: {
+                String keys = switchKeys(node);
+
+                if (keys != null) {
+                    // a Goto for each branch follows the Switch
+                    if (CurIndex == 0) {
+                        pushInt(curPos());
+                        emit(RegexCode.Switch, stringCode(keys));
+                        for (int i = 0; i < keys.length(); i++) {
+                            emit(RegexCode.Goto, 0);
+                        }
+                    }
+
+                    int SwitchPos = popInt();
+                    if (!_counting)
+                        patchJump(SwitchPos + 2 + 2 * CurIndex, curPos());
+                    pushInt(SwitchPos);
+                } else if (CurIndex < node._children.size() - 1) {
                     pushInt(curPos());
                     emit(RegexCode.Lazybranch, 0);
                 }
                 break;
+            }
 
             case RegexNode.Alternate | AfterChild: {
 
-                if (CurIndex < node._children.size() - 1) {
+                if (switchKeys(node) != null) {
+                    int SwitchPos = popInt();
+
+                    if (CurIndex < node._children.size() - 1) {
+                        pushInt(curPos());
+                        emit(RegexCode.Goto, 0);
+                        pushInt(SwitchPos);
+                    } else {
+                        for (int i = 0; i < CurIndex; i++) {
+                            patchJump(popInt(), curPos());
+                        }
+                    }
+                } else if (CurIndex < node._children.size() - 1) {
                     int LBPos = popInt();
                     pushInt(curPos());
                     emit(RegexCode.Goto, 0);
@@ -509,18 +626,29 @@ final class RegexWriter {
 
             case RegexNode.Notoneloop:
             case RegexNode.Notonelazy:
+            case RegexNode.Notoneloopatomic:
             case RegexNode.Oneloop:
             case RegexNode.Onelazy:
+            case RegexNode.Oneloopatomic:
                 if (node._m > 0)
-                    emit(((node._type == RegexNode.Oneloop || node._type == RegexNode.Onelazy) ?
+                    emit(((node._type == RegexNode.Oneloop || node._type == RegexNode.Onelazy
+                            || node._type == RegexNode.Oneloopatomic) ?
                             RegexCode.Onerep : RegexCode.Notonerep) | bits, (int) node._ch, node._m);
-                if (node._n > node._m)
-                    emit(node._type | bits, (int) node._ch, node._n == Integer.MAX_VALUE ?
-                            Integer.MAX_VALUE : node._n - node._m);
+                if (node._n > node._m) {
+                    RegexNode literal = scannedLiteral(node, bits);
+                    if (literal != null)
+                        emit(node._type == RegexNode.Notoneloop ? RegexCode.Notoneloopscan : RegexCode.Notonelazyscan,
+                                (int) node._ch, stringCode(literal._type == RegexNode.Multi ?
+                                        literal._str : String.valueOf(literal._ch)));
+                    else
+                        emit(node._type | bits, (int) node._ch, node._n == Integer.MAX_VALUE ?
+                                Integer.MAX_VALUE : node._n - node._m);
+                }
                 break;
 
             case RegexNode.Setloop:
             case RegexNode.Setlazy:
+            case RegexNode.Setloopatomic:
                 if (node._m > 0)
                     emit(RegexCode.Setrep | bits, stringCode(node._str), node._m);
                 if (node._n > node._m)
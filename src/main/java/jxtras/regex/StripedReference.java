@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package jxtras.regex;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// The StripedReference class is internal to the Regex package.
+// It caches several exclusive runner references.
+//
+// The objects are kept in a few slots, and a thread claims one by swapping
+// it out of its slot, so concurrent matches each find their own runner
+// instead of all but one making a new one. A thread starts looking at the
+// slot picked by its id, so threads mostly take and return objects in
+// different slots. Nothing blocks: no lock is taken, so a virtual thread
+// is never pinned to its carrier, and the pool keeps nothing per thread,
+// so it doesn't grow with the number of threads.
+//
+// An object left unused for one to two idle timeouts is dropped by a
+// later get or release, so a burst of concurrent matches doesn't keep
+// its runners (and their stacks) alive for good. The time is divided in
+// periods of one timeout, and a slot remembers in which period its
+// object came back rather than when; only about one call in TrimInterval
+// reads the clock, to find whether the period is over.
+
+// @author  Tony Guo <tony.guo.peng@gmail.com>
+final class StripedReference<T> {
+    static final int MaxSize = 256;
+    private static final int TrimInterval = 64;
+
+    private final AtomicReferenceArray<T> _refs;
+    private final AtomicLongArray _released;    // the period in which the object of each slot was released
+    private final AtomicLong _trimmed;          // when the slots were last trimmed
+    private volatile long _period;              // how many times the slots were trimmed
+    private final int _mask;
+    private final int _idleTimeout;
+
+    StripedReference(int size, int idleTimeout) {
+        int length = 1;
+        while (length < size) {
+            length <<= 1;
+        }
+
+        _refs = new AtomicReferenceArray<T>(length);
+        _released = new AtomicLongArray(length);
+        _trimmed = new AtomicLong(System.currentTimeMillis());
+        _mask = length - 1;
+        _idleTimeout = idleTimeout;
+    }
+
+    /*
+     * One slot per processor, up to 64
+     */
+    static int defaultSize() {
+        return Math.min(Runtime.getRuntime().availableProcessors(), 64);
+    }
+
+    /**
+     * Return an object and take it out of the cache, or null if none is cached.
+     * <p/>
+     * The objects left idle may be dropped first, so that a pool that grew in a burst
+     * shrinks back once it is used again, whether or not an object is then released.
+     */
+    T get() {
+        tick();
+
+        int home = stripe();
+
+        for (int i = 0; i <= _mask; i++) {
+            int slot = (home + i) & _mask;
+
+            // read before swapping, so that empty slots aren't written
+            if (_refs.get(slot) != null) {
+                T obj = _refs.getAndSet(slot, null);
+                if (obj != null) {
+                    return obj;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Release an object back to the cache
+     * <p/>
+     * The object is put in the first empty slot, starting at the one of
+     * the thread; if all the slots are taken, it is dropped.
+     */
+    void release(T obj) {
+        if (obj == null)
+            throw new IllegalArgumentException("obj cannot be null.");
+
+        tick();
+
+        int home = stripe();
+        for (int i = 0; i <= _mask; i++) {
+            int slot = (home + i) & _mask;
+
+            if (_refs.get(slot) == null && _refs.compareAndSet(slot, null, obj)) {
+                _released.set(slot, _period);
+                return;
+            }
+        }
+    }
+
+    /*
+     * Trims the slots on about one call in TrimInterval. The calls are
+     * sampled, so that the threads don't share a counter.
+     */
+    private void tick() {
+        if (_idleTimeout != Regex.INFINITE_IDLE_TIMEOUT && ThreadLocalRandom.current().nextInt(TrimInterval) == 0) {
+            trim(System.currentTimeMillis());
+        }
+    }
+
+    /*
+     * Ends the period if it is a timeout long, and drops the objects that
+     * weren't released during it. One thread walks the slots, at most once
+     * per timeout.
+     */
+    private void trim(long now) {
+        long trimmed = _trimmed.get();
+        if (now - trimmed < _idleTimeout || !_trimmed.compareAndSet(trimmed, now)) {
+            return;
+        }
+
+        // an object released meanwhile may be dropped too; it will simply be made again
+        long period = _period;
+        for (int slot = 0; slot <= _mask; slot++) {
+            if (_refs.get(slot) != null && _released.get(slot) < period) {
+                _refs.set(slot, null);
+            }
+        }
+        _period = period + 1;
+    }
+
+    /*
+     * The slot a thread starts from
+     */
+    private int stripe() {
+        return probe() & _mask;
+    }
+
+    /*
+     * The id of the current thread, scrambled so that consecutive ids have
+     * distant low bits
+     */
+    static int probe() {
+        long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return (int) (id >>> 32);
+    }
+}
@@ -64,6 +64,14 @@ public class R {
 
     // string used in RegexMatchTimeoutException
     public static final String RegexMatchTimeoutException_Occurred = "The RegEx engine has timed out while trying to match a pattern to an input string. This can occur for many reasons, including very large inputs or excessive backtracking caused by nested quantifiers, back-references and other factors.";
+    public static final String RegexMatchInterrupted = "The thread was interrupted while the RegEx engine was trying to match a pattern to an input string.";
+    public static final String RegexStepLimitException_Occurred = "The RegEx engine has taken %d steps while trying to match a pattern to an input string, more than the budget of %d steps.";
+
+    // strings used in RegexComplexity
+    public static final String ComplexityNestedQuantifier = "'%s' is repeated by '%s', which can split the chars it matches between its iterations in more than one way.";
+    public static final String ComplexityAmbiguousAlternation = "Alternatives of '%s' can match the same chars, so a run of them can be split between its iterations in more than one way.";
+    public static final String ComplexityAdjacentQuantifiers = "'%s' and '%s' can match the same chars one after the other, so a run of them can be shared between them in more than one way.";
+    public static final String ComplexityRejected = "The pattern may backtrack catastrophically, and no engine that doesn't backtrack can match it: %s";
 
     // illegal default timeout:
     public static final String IllegalDefaultRegexMatchTimeoutInAppDomain = "System Property '%s' contains an invalid value or object for specifying a default matching timeout for Regex.";
@@ -68,6 +68,29 @@ public class TestCasesRunner {
             RegexUnicodeCharTests.class,
             RegexLangElementsCoverageTests.class,
             CharacterClassSubtractionSimple.class,
+            RegexCompiledTests.class,
+            RegexNonBacktrackingTests.class,
+            RegexSetTests.class,
+            RegexRequiredLiteralTests.class,
+            RegexAlternatePrefixTests.class,
+            RegexCharClassMatcherTests.class,
+            RegexRunnerPoolTests.class,
+            RegexCacheTests.class,
+            RegexMatcherTests.class,
+            RegexAtomicLoopTests.class,
+            RegexLoopScanTests.class,
+            RegexMatchLengthTests.class,
+            RegexTrailingAnchorTests.class,
+            RegexLeadingDotStarTests.class,
+            RegexAlternationTests.class,
+            RegexPeepholeTests.class,
+            RegexCaseFoldingTests.class,
+            RegexWatchdogTests.class,
+            RegexStepLimitTests.class,
+            RegexMemoizationTests.class,
+            RegexComplexityTests.class,
+            RegexCharSequenceTests.class,
+            RegexUtf8Tests.class,
             // static inner classes in this file are moved into support folder
             // Support.class
     };
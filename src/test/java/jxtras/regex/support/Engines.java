@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package jxtras.regex.support;
+
+import jxtras.regex.RegexOptions;
+
+// The options that pick each engine, for the tests that run the same
+// cases through all of them.
+public class Engines {
+    // the interpreter and the compiled runner
+    public static final int[] BACKTRACKING = {
+            RegexOptions.None, RegexOptions.Compiled,
+    };
+
+    // the backtracking engines and the NonBacktracking one
+    public static final int[] ALL = {
+            RegexOptions.None, RegexOptions.Compiled, RegexOptions.NonBacktracking,
+    };
+
+    // every engine, and the options that change how the input is read
+    public static final int[] VARIANTS = {
+            RegexOptions.None, RegexOptions.RightToLeft, RegexOptions.Compiled, RegexOptions.NonBacktracking,
+            RegexOptions.Memoize, RegexOptions.Multiline | RegexOptions.IgnoreCase,
+    };
+
+    private Engines() {
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package jxtras.regex.tests;
+
+import jxtras.regex.Match;
+import jxtras.regex.Regex;
+import jxtras.regex.RegexOptions;
+import jxtras.regex.support.Assert;
+import jxtras.regex.support.Engines;
+import jxtras.regex.support.Fact;
+
+public class RegexAlternatePrefixTests {
+    @Fact
+    public static void AlternatePrefixMatches() {
+        String input = "HEAD /index.html\nGET /api/users\nget /api/x\nPOSTER /api/\nDELETE /api/users/7\n";
+
+        for (int options : Engines.ALL) {
+            Match match = new Regex("(GET|POST|PUT|DELETE) /api/", options).match(input);
+            Assert.True(match.success());
+            Assert.Equal(17, match.index());
+            Assert.Equal("GET", match.groups().get(1).value());
+
+            match = match.nextMatch();
+            Assert.True(match.success());
+            Assert.Equal("DELETE", match.groups().get(1).value());
+            Assert.False(match.nextMatch().success());
+
+            Assert.Equal(3, new Regex("(GET|POST|PUT|DELETE) /api/", options | RegexOptions.IgnoreCase).matches(input).count());
+            Assert.Equal(3, new Regex("(?i:GET|POST|PUT|DELETE) /api/", options).matches(input).count());
+
+            // the leftmost occurrence wins over the one that ends first
+            Assert.Equal(0, new Regex("(?:abcd|bc|cd)", options).match("abcd").index());
+            Assert.Equal("abcd", new Regex("(?:bc|abcd|cd)", options).match("xabcd").value());
+            Assert.Equal("bc", new Regex("(?:abcd|bc)", options).match("abce").value());
+
+            // a prefix of another literal
+            Assert.Equal("ab", new Regex("(?:ab|abc)", options).match("xxabc").value());
+            Assert.Equal("abc", new Regex("(?:abc|ab)", options).match("xxabc").value());
+
+            // anchored
+            Assert.True(new Regex("\\G(?:foo|bar)", options).isMatch("xbar", 1));
+            Assert.False(new Regex("\\G(?:foo|bar)", options).isMatch("xbar", 0));
+            Assert.True(new Regex("^(?:foo|bar)+$", options | RegexOptions.Multiline).isMatch("x\nfoobar\n"));
+        }
+    }
+
+    @Fact
+    public static void AlternatePrefixKeywords() {
+        String[] keywords = new String[]{"abstract", "assert", "boolean", "break", "byte", "case", "catch",
+                "char", "class", "const", "continue", "default", "double", "else", "enum", "extends", "final",
+                "finally", "float", "for", "goto", "implements", "import", "instanceof", "int", "interface",
+                "long", "native", "new", "package", "private", "protected", "public", "return", "short",
+                "static", "super", "switch", "synchronized", "this", "throw", "throws", "try", "void", "while"};
+
+        StringBuilder sb = new StringBuilder("\\b(?:");
+        for (int i = 0; i < keywords.length; i++) {
+            if (i > 0) {
+                sb.append('|');
+            }
+            sb.append(keywords[i]);
+        }
+        sb.append(")\\b");
+
+        String input = "package a; public final class Foo extends Bar implements Baz { int x; }";
+        for (int options : Engines.ALL) {
+            Assert.Equal(7, new Regex(sb.toString(), options).matches(input).count());
+            Assert.Equal("final", new Regex(sb.toString(), options).match(input, 17).value());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package jxtras.regex.tests;
+
+import jxtras.regex.Match;
+import jxtras.regex.MatchCollection;
+import jxtras.regex.Regex;
+import jxtras.regex.RegexOptions;
+import jxtras.regex.support.Assert;
+import jxtras.regex.support.Engines;
+import jxtras.regex.support.Fact;
+
+public class RegexAlternationTests {
+    private static final String MONTHS =
+            "January|February|March|April|May|June|July|August|September|October|November|December";
+
+    @Fact
+    public static void FactoredBranchesKeepTheirOrder() {
+        for (int options : Engines.ALL) {
+            // the leftmost branch that matches wins, even if a later one is longer
+            Assert.Equal("a", new Regex("a|ab", options).match("ab").value());
+            Assert.Equal("ab", new Regex("ab|a", options).match("ab").value());
+            Assert.Equal("int", new Regex("int|interface|if", options).match("interface").value());
+            Assert.Equal("interface", new Regex("(?:interface|int|if)\\b", options).match("interface").value());
+            Assert.Equal("ab", new Regex("abc|abd|x|ab", options).match("abe").value());
+            Assert.Equal("ac", new Regex("ab|x|ac", options).match("ac").value());
+            Assert.False(new Regex("abc|abd", options).isMatch("abe ab"));
+
+            // the branches still give back to what follows
+            Assert.Equal("intx", new Regex("(?:in|int)x", options).match("intx").value());
+
+            Match match = new Regex("(" + MONTHS + ") (\\d+)", options).match("on June 5, July 14");
+            Assert.Equal("June 5", match.value());
+            Assert.Equal("June", match.groups().get(1).value());
+            Assert.Equal("July", match.nextMatch().groups().get(1).value());
+            Assert.Equal("May", new Regex(MONTHS, options).match("Ma May").value());
+            Assert.Equal("JUNE", new Regex(MONTHS, options | RegexOptions.IgnoreCase).match("JUNE").value());
+        }
+
+        // captures within the branches are numbered as written
+        Match match = new Regex("a(b)c|a(b)d").match("abd");
+        Assert.False(match.groups().get(1).success());
+        Assert.Equal("b", match.groups().get(2).value());
+        Assert.Equal(1, match.groups().get(2).index());
+
+        Assert.Equal("ab", new Regex("ab|a", RegexOptions.RightToLeft).match("xab").value());
+        Assert.Equal("aab", new Regex("(?:aa|a)b", RegexOptions.RightToLeft).match("aab").value());
+        Assert.Equal("b", new Regex("(?<=ab|ac)b").match("acb").value());
+    }
+
+    @Fact
+    public static void SwitchOnFirstChar() {
+        String[] keywords = {
+                "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const",
+                "continue", "default", "do", "double", "else", "enum", "extends", "final", "finally", "float",
+                "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long", "native",
+                "new", "package", "private", "protected", "public", "return", "short", "static", "strictfp",
+                "super", "switch", "synchronized", "this", "throw", "throws", "transient", "try", "void",
+                "volatile", "while"
+        };
+
+        StringBuilder pattern = new StringBuilder("\\b(?:");
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < keywords.length; i++) {
+            pattern.append(i == 0 ? "" : "|").append(keywords[i]);
+            text.append(keywords[i]).append("_ x").append(keywords[i]).append(' ').append(keywords[i]).append('\n');
+        }
+        pattern.append(")\\b");
+
+        for (int options : Engines.ALL) {
+            MatchCollection matches = new Regex(pattern.toString(), options).matches(text.toString());
+            Assert.Equal(keywords.length, matches.count());
+            for (int i = 0; i < keywords.length; i++) {
+                Assert.Equal(keywords[i], matches.get(i).value());
+            }
+
+            // branches that start with a capture or a group
+            Match match = new Regex("(x)1|(y)2|z3", options).match("y1 y2");
+            Assert.Equal("y2", match.value());
+            Assert.Equal("y", match.groups().get(2).value());
+
+            // no branch can start at the end of the input
+            Assert.False(new Regex("ab|cd|ef", options).isMatch("a"));
+            Assert.Equal(1, new Regex("(?:ab|cd|ef)+", options).match("xabcdab").index());
+            Assert.Equal("abcdab", new Regex("(?:ab|cd|ef)+", options).match("xabcdab").value());
+            Assert.Equal("一b", new Regex("一b|龥c|ad", options).match("a一b").value());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package jxtras.regex.tests;
+
+import jxtras.regex.Match;
+import jxtras.regex.Regex;
+import jxtras.regex.RegexOptions;
+import jxtras.regex.support.Assert;
+import jxtras.regex.support.Engines;
+import jxtras.regex.support.Fact;
+
+public class RegexAtomicLoopTests {
+    @Fact
+    public static void AtomicLoopsMatch() {
+        for (int options : Engines.ALL) {
+            // nothing that follows the loop can match what it matched
+            Match match = new Regex("(\\d+)\\s", options).match("id 12345 42\t");
+            Assert.Equal("12345 ", match.value());
+            Assert.Equal("42\t", match.nextMatch().value());
+
+            Assert.Equal("\"b c\"", new Regex("\"[^\"]*\"", options).match("a \"b c\" d").value());
+            Assert.False(new Regex("\"[^\"]*\"", options).isMatch("a \"b c d"));
+
+            Assert.Equal("key:", new Regex("[a-z]+:", options).match("KEY key: value").value());
+            Assert.Equal("KEY:", new Regex("[a-z]+:", options | RegexOptions.IgnoreCase).match("KEY: key: value").value());
+            Assert.Equal("BC", new Regex("[a-z-[aeiou]]+", options | RegexOptions.IgnoreCase).match("aBCe").value());
+
+            // a loop at the end of the pattern, or before the end of the input
+            Assert.Equal("abc", new Regex("\\w+", options).match("  abc  ").value());
+            Assert.Equal("abc", new Regex("[a-z]+$", options).match("xyz abc").value());
+            Assert.Equal("abc", new Regex("[a-z]+\\Z", options).match("xyz abc\n").value());
+            Assert.Equal("abc\n", new Regex("[^x]+\\Z", options).match("xabc\n").value());
+            Assert.Equal("abc", new Regex("[a-z]+$", options | RegexOptions.Multiline).match("abc\nxyz1").value());
+        }
+    }
+
+    @Fact
+    public static void OverlappingLoopsBacktrack() {
+        for (int options : Engines.ALL) {
+            // what follows may match what the loop matched: the loop must give it back
+            Assert.Equal("abc12", new Regex("\\w+\\d", options).match("abc12").value());
+            Assert.Equal("aaab", new Regex("a+ab", options).match("xaaab").value());
+            Assert.Equal("AaB", new Regex("a+ab", options | RegexOptions.IgnoreCase).match("xAaB").value());
+            Assert.Equal("ab\n", new Regex("[^x]+\\n", options).match("ab\n").value());
+            Assert.Equal("ab", new Regex("(a+)(?:b|ab)", options).match("ab").value());
+            Assert.Equal("aab", new Regex("(?:a+)*b", options).match("aab").value());
+            Assert.Equal("aa", new Regex("(a+)\\1", options & ~RegexOptions.NonBacktracking).match("aa").value());
+
+            // the loop may give back to what follows the group it ends
+            Match match = new Regex("(\\d+)(\\d)", options).match("123");
+            Assert.Equal("12", match.groups().get(1).value());
+            Assert.Equal("3", match.groups().get(2).value());
+            Assert.Equal("aa", new Regex("(?:x|a+)a", options).match("aa").value());
+            Assert.Equal("aa", new Regex("(?:a+|x)?a", options).match("aa").value());
+        }
+
+        // right to left the loop is matched after what follows it
+        Assert.Equal("12 ", new Regex("\\d+\\s", RegexOptions.RightToLeft).match("12 ").value());
+        Assert.Equal("aab", new Regex("a+ab", RegexOptions.RightToLeft).match("aab").value());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package jxtras.regex.tests;
+
+import jxtras.regex.Regex;
+import jxtras.regex.support.Assert;
+import jxtras.regex.support.Fact;
+
+public class RegexCacheTests {
+    @Fact
+    public static void CacheCountsHitsMissesAndEvictions() {
+        int size = Regex.cacheSize();
+
+        try {
+            // start from an empty cache
+            Regex.setCacheSize(0);
+            Regex.setCacheSize(3);
+            Assert.Equal(3, Regex.cacheSize());
+
+            long hits = Regex.cacheHitCount();
+            long misses = Regex.cacheMissCount();
+            long evictions = Regex.cacheEvictionCount();
+
+            Assert.True(Regex.isMatch("cache-a1", "cache-a\\d"));
+            Assert.Equal(misses + 1, Regex.cacheMissCount());
+            Assert.Equal(hits, Regex.cacheHitCount());
+
+            for (int i = 0; i < 3; i++) {
+                Assert.True(Regex.isMatch("cache-a" + i, "cache-a\\d"));
+            }
+            Assert.Equal(hits + 3, Regex.cacheHitCount());
+
+            // patterns used once don't push out the one used often
+            for (int i = 0; i < 5; i++) {
+                Assert.True(Regex.isMatch("cache-b" + i, "cache-b" + i));
+            }
+            Assert.Equal(evictions + 3, Regex.cacheEvictionCount());
+
+            Assert.True(Regex.isMatch("cache-a9", "cache-a\\d"));
+            Assert.Equal(hits + 4, Regex.cacheHitCount());
+            Assert.Equal(misses + 6, Regex.cacheMissCount());
+
+            // nothing is cached once the size is zero
+            Regex.setCacheSize(0);
+            Assert.True(Regex.isMatch("cache-a1", "cache-a\\d"));
+            Assert.True(Regex.isMatch("cache-a1", "cache-a\\d"));
+            Assert.Equal(hits + 4, Regex.cacheHitCount());
+
+            try {
+                Regex.setCacheSize(-1);
+                Assert.Throws(IllegalArgumentException.class);
+            } catch (IllegalArgumentException e) {
+            }
+        } finally {
+            Regex.setCacheSize(size);
+        }
+    }
+
+    @Fact
+    public static void CacheSoftValues() {
+        boolean softValues = Regex.cacheSoftValues();
+
+        try {
+            Regex.setCacheSoftValues(true);
+            Assert.True(Regex.cacheSoftValues());
+
+            for (int i = 0; i < 3; i++) {
+                Assert.Equal("c-D", Regex.replace("c-d", "(?i)D", "D"));
+            }
+            Assert.Equal(2, Regex.split("a1b22c", "\\d+").length - 1);
+        } finally {
+            Regex.setCacheSoftValues(softValues);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package jxtras.regex.tests;
+
+import jxtras.regex.Match;
+import jxtras.regex.Regex;
+import jxtras.regex.RegexOptions;
+import jxtras.regex.support.Assert;
+import jxtras.regex.support.Engines;
+import jxtras.regex.support.Fact;
+
+public class RegexCaseFoldingTests {
+    @Fact
+    public static void IgnoreCaseMatches() {
+        for (int options : Engines.ALL) {
+            int ci = options | RegexOptions.IgnoreCase;
+
+            Assert.Equal("HeLLo", new Regex("hello", ci).match("say HeLLo").value());
+            Assert.Equal("ÉtÉ", new Regex("été", ci).match("l'ÉtÉ").value());
+            Assert.Equal("ΣΟΦΙΑ", new Regex("σοφια", ci).match("ΣΟΦΙΑ").value());
+            Assert.Equal("Мир", new Regex("мИР", ci).match("Мир").value());
+            Assert.Equal("AbC", new Regex("[a-c]+", ci).match("xyAbC").value());
+            Assert.False(new Regex("hello", ci).isMatch("help"));
+
+            // the Kelvin sign lowers to k
+            Assert.True(new Regex("k", ci).isMatch("\u212A"));
+        }
+    }
+
+    @Fact
+    public static void IgnoreCaseScans() {
+        // the Boyer-Moore scan shifts on the input as it is
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            sb.append("lorem ipsum dolor sit amet ");
+        }
+        String text = sb.toString();
+
+        for (int options : Engines.BACKTRACKING) {
+            int ci = options | RegexOptions.IgnoreCase;
+
+            Assert.Equal(text.length(), new Regex("NEEDLE", ci).match(text + "NeEdLe").index());
+            Assert.Equal(text.length(), new Regex("needle", ci | RegexOptions.RightToLeft).match(text + "NEEDLE" + text).index());
+            Assert.Equal(text.length(), new Regex("kelvin", ci).match(text + "\u212AELVIN").index());
+            Assert.False(new Regex("needle", ci).isMatch(text + "NEEDL"));
+
+            // an anchored literal, a back reference and an alternation of keywords
+            Assert.True(new Regex("^Lorem", ci).isMatch(text));
+            Match match = new Regex("(\\w+) \\1", ci).match("a Dolor doLOR b");
+            Assert.Equal("Dolor doLOR", match.value());
+            Assert.Equal("SIT", new Regex("(?:sit|amet|dolor)\\b", ci).match("xx SIT").value());
+        }
+    }
+}
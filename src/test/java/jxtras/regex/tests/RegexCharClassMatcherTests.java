@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package jxtras.regex.tests;
+
+import jxtras.regex.Regex;
+import jxtras.regex.RegexOptions;
+import jxtras.regex.support.Assert;
+import jxtras.regex.support.Engines;
+import jxtras.regex.support.Fact;
+
+public class RegexCharClassMatcherTests {
+    @Fact
+    public static void CharClassMatchesLatin1() {
+        for (int options : Engines.ALL) {
+            Assert.Equal("abc_123", new Regex("\\w+", options).match("  abc_123 ").value());
+            Assert.Equal("\u00e9t\u00e9", new Regex("\\w+", options).match("\u00a0\u00e9t\u00e9!").value());
+            Assert.Equal("42", new Regex("\\d+", options).match("x42y").value());
+            Assert.Equal(" \t\u00a0", new Regex("\\s+", options).match("a \t\u00a0b").value());
+            Assert.Equal("\"quoted\"", new Regex("\"[^\"]*\"", options).match("say \"quoted\" twice").value());
+            Assert.Equal("bcd", new Regex("[a-z-[aeiou]]+", options).match("abcde").value());
+            Assert.Equal("Ab", new Regex("[a-c]+", options | RegexOptions.IgnoreCase).match("xAbz").value());
+            Assert.Equal(5, new Regex("[^\\d\\s]", options).matches("a1 b2\nc3\u00ffd").count());
+        }
+    }
+
+    @Fact
+    public static void CharClassMatchesOtherChars() {
+        for (int options : Engines.ALL) {
+            Assert.Equal("\u0436\u0443\u043a", new Regex("\\w+", options).match("- \u0436\u0443\u043a -").value());
+            Assert.Equal("\u0663\u0664", new Regex("\\d+", options).match("x\u0663\u0664y").value());
+            Assert.Equal("\u2003\u2028", new Regex("\\s+", options).match("a\u2003\u2028b").value());
+            Assert.Equal("\u4e2d\u6587", new Regex("\\p{L}+", options).match("12\u4e2d\u6587!").value());
+            Assert.Equal("\u4e2d", new Regex("[^\"]", options).match("\u4e2d").value());
+            Assert.Equal("\u03b1\u03b3", new Regex("[\u03b1-\u03c9-[\u03b2]]+", options).match("\u03b1\u03b3\u03b2").value());
+            Assert.Equal("\u0436", new Regex("[\\p{L}-[\\p{IsBasicLatin}]]", options).match("ab\u0436").value());
+            Assert.False(new Regex("[\\w-[\\p{L}]]", options).isMatch("\u0436\u4e2d"));
+            Assert.True(new Regex("\\b\u0436\\b", options).isMatch("a \u0436 b"));
+            Assert.False(new Regex("\\b\u0436\\b", options).isMatch("a\u0436b"));
+        }
+    }
+}
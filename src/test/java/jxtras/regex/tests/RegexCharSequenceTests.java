@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package jxtras.regex.tests;
+
+import jxtras.regex.Match;
+import jxtras.regex.MatchCollection;
+import jxtras.regex.Regex;
+import jxtras.regex.RegexMatcher;
+import jxtras.regex.RegexSet;
+import jxtras.regex.support.Assert;
+import jxtras.regex.support.Engines;
+import jxtras.regex.support.Fact;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+public class RegexCharSequenceTests {
+    private static final String[] PATTERNS = {
+            "(?<key>\\w+)=(?<value>\\d+)?", "b+", "\\bkey\\d\\b", "(?i)KEY", "^\\w+|\\w+$", "(a|b)\\1", "x*", "[^=]+=",
+    };
+
+    @Fact
+    public static void CharSequenceInputs() {
+        String input = "k1=10, key2=200; abba bb x=3 and y= zz=4444 Key3=";
+
+        char[] chars = ("##" + input + "##").toCharArray();
+        CharSequence[] sequences = {
+                new StringBuilder(input), CharBuffer.wrap(input), CharBuffer.wrap(chars, 2, input.length()).slice(),
+                new Rope(input, 7),
+        };
+
+        for (String pattern : PATTERNS) {
+            for (int options : Engines.VARIANTS) {
+                Regex regex = new Regex(pattern, options);
+
+                for (CharSequence sequence : sequences) {
+                    Assert.Equal(regex.isMatch(input), regex.isMatch(sequence));
+                    Assert.Equal(matches(regex.matches(input)), matches(regex.matches(sequence)));
+                    Assert.Equal(regex.replace(input, "<$1>"), regex.replace(sequence, "<$1>"));
+                    Assert.Equal(regex.replace(input, "[$`|$']", 2), regex.replace(sequence, "[$`|$']", 2));
+                    Assert.True(Arrays.equals(regex.split(input), regex.split(sequence)));
+
+                    RegexMatcher matcher = regex.matcher(sequence);
+                    for (Match match = regex.match(input); match.success(); match = match.nextMatch()) {
+                        Assert.True(matcher.find());
+                        Assert.Equal(match.value(), matcher.group());
+                    }
+                    Assert.False(matcher.find());
+                }
+            }
+        }
+
+        Assert.Equal("x", Regex.match(new StringBuilder("axb"), "x").value());
+        Assert.Equal(2, new RegexSet("a", "b", "c").matches(new Rope("xbxa", 1)).cardinality());
+    }
+
+    @Fact
+    public static void MatchKeepsTheInput() {
+        StringBuilder sb = new StringBuilder("name=value");
+        Match match = new Regex("(\\w+)=(\\w+)").match(sb);
+
+        // the values are read out of the input only when they are asked for
+        Assert.True(match.input() == sb);
+        sb.setCharAt(5, 'V');
+        Assert.Equal("Value", match.groups().get(2).value());
+
+        Assert.Equal("axcaxcaxc", Regex.replace("abcabcabc", "b", "x"));
+        Assert.Equal("aaa X ccc", Regex.replace(new StringBuilder("aaa bbb ccc"), "b+", "X"));
+    }
+
+    private static String matches(MatchCollection matches) {
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < matches.count(); i++) {
+            Match match = matches.get(i);
+            for (int j = 0; j < match.groups().count(); j++) {
+                sb.append(match.groups().get(j).index()).append(':').append(match.groups().get(j).value()).append(' ');
+            }
+            sb.append('|');
+        }
+        return sb.toString();
+    }
+
+    // A sequence of chars kept in chunks, as a rope is.
+    private static final class Rope implements CharSequence {
+        private final char[][] chunks;
+        private final int chunkLength;
+        private final int length;
+
+        Rope(String text, int chunkLength) {
+            this.chunks = new char[(text.length() + chunkLength - 1) / chunkLength][];
+            this.chunkLength = chunkLength;
+            this.length = text.length();
+
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = text.substring(i * chunkLength, Math.min(text.length(), (i + 1) * chunkLength)).toCharArray();
+            }
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public char charAt(int index) {
+            if (index < 0 || index >= length)
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+
+            return chunks[index / chunkLength][index % chunkLength];
+        }
+
+        public CharSequence subSequence(int start, int end) {
+            StringBuilder sb = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                sb.append(charAt(i));
+            }
+            return sb;
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length).toString();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package jxtras.regex.tests;
+
+import jxtras.regex.Match;
+import jxtras.regex.Regex;
+import jxtras.regex.RegexOptions;
+import jxtras.regex.support.Assert;
+import jxtras.regex.support.Engines;
+import jxtras.regex.support.Fact;
+import jxtras.regex.support.RegexTestCase;
+
+public class RegexCompiledTests {
+    @Fact
+    public static void CompiledTestCase() {
+        int iCountErrors = 0;
+
+        for (int i = 0; i < s_regexTests.length; i++) {
+            if (!s_regexTests[i].Run()) {
+                System.out.printf("Err_7140qkc! Test %d FAILED Pattern=%s, Input=%s\n",
+                        i,
+                        s_regexTests[i].Pattern(),
+                        s_regexTests[i].Input()
+                );
+                iCountErrors++;
+            }
+        }
+
+        Assert.Equal(0, iCountErrors);
+    }
+
+    @Fact
+    public static void CompiledMatchesInterpreted() {
+        String input = "The quick brown fox jumps over the lazy dog 1234-5678 aaa (abc) Quick";
+
+        for (String pattern : s_patterns) {
+            for (int options : new int[]{RegexOptions.None, RegexOptions.IgnoreCase,
+                    RegexOptions.RightToLeft, RegexOptions.IgnoreCase | RegexOptions.RightToLeft}) {
+                Match interpreted = new Regex(pattern, options).match(input);
+                Match compiled = new Regex(pattern, options | RegexOptions.Compiled).match(input);
+
+                while (interpreted.success()) {
+                    Assert.True(compiled.success());
+                    Assert.Equal(interpreted.groups().count(), compiled.groups().count());
+
+                    for (int i = 0; i < interpreted.groups().count(); i++) {
+                        Assert.Equal(interpreted.groups().get(i).index(), compiled.groups().get(i).index());
+                        Assert.Equal(interpreted.groups().get(i).value(), compiled.groups().get(i).value());
+                        Assert.Equal(interpreted.groups().get(i).captures().count(),
+                                compiled.groups().get(i).captures().count());
+                    }
+
+                    interpreted = interpreted.nextMatch();
+                    compiled = compiled.nextMatch();
+                }
+
+                Assert.False(compiled.success());
+            }
+        }
+    }
+
+    @Fact
+    public static void LazyLoopEmptyIteration() {
+        // An empty iteration of a lazy loop must not leave its mark behind for an enclosing loop
+        for (int options : Engines.BACKTRACKING) {
+            Regex regex = new Regex("(?:(?:\\s){0,2}?|(?:(?:(\\A))*?)?|\\W)\\d+", options, 2000);
+            Assert.False(regex.match("ca").success());
+            Assert.Equal("1", regex.match("b1a").value());
+
+            Match match = new Regex("b(?:()+?)*", options, 2000).match("b1a");
+            Assert.Equal(0, match.index());
+            Assert.Equal("b", match.value());
+        }
+    }
+
+    private static String[] s_patterns = new String[] {
+            "\\w+", "(\\w)+\\s", "qu(i)ck|l(a)zy", "(?i)QUICK", "\\b\\w{3}\\b", "o.*?o", "o.*o",
+            "(\\d+)-(\\d+)", "(\\d){2,3}?", "(?<w>\\w)\\k<w>", "(?=\\w*o)\\w+", "(?!the)\\b\\w+",
+            "(?<=o)\\w", "(?<!o)x", "(?>a+)a", "(a|b|c)+", "(?:ab|a)(?:bc|c)", "\\(([^()]*)\\)",
+            "(?<o>\\()?[^()\\s]+(?<-o>\\))?", "(?(o)x|y)", "(\\w)(?(1)\\w|\\d)", "^The|Quick$",
+            "(?m)^\\w+$", "\\Gthe", "[a-z-[aeiou]]+", "\\p{Lu}\\p{Ll}+", "((a)|b)*c", "(ab){0,2}?c",
+    };
+
+    private static RegexTestCase[] s_regexTests = new RegexTestCase[] {
+            new RegexTestCase("(\\d{3})-(\\d{4})", RegexOptions.Compiled, "call 555-1234 now", "555-1234", "555", "1234"),
+            new RegexTestCase("(a|ab)(c|bcd)(d*)", RegexOptions.Compiled, "abcd", "abcd", "a", "bcd", ""),
+            new RegexTestCase("(?<x>\\w+)\\s\\k<x>", RegexOptions.Compiled, "hello hello", "hello hello", "hello"),
+            new RegexTestCase("c{2}", RegexOptions.Compiled, "accc", "cc"),
+            new RegexTestCase("(?i)HeLLo", RegexOptions.Compiled, "say hello", "hello"),
+            new RegexTestCase("(?>a+)b", RegexOptions.Compiled, "aaab", "aaab"),
+            new RegexTestCase("(?>a+)a", RegexOptions.Compiled, "aaaa"),
+            new RegexTestCase("x*?y", RegexOptions.Compiled | RegexOptions.RightToLeft, "xxy", "y"),
+            new RegexTestCase("[\\d-[357]]+", RegexOptions.Compiled | RegexOptions.ECMAScript, "33312468955", "124689"),
+            new RegexTestCase("(a){2,4}?", RegexOptions.Compiled, "aaaaa", "aa", "a"),
+            new RegexTestCase("^\\d+$", RegexOptions.Compiled, "12a"),
+    };
+}
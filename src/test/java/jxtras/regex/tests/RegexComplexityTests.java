@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package jxtras.regex.tests;
+
+import jxtras.regex.Regex;
+import jxtras.regex.RegexComplexity;
+import jxtras.regex.RegexOptions;
+import jxtras.regex.RegexStepLimitException;
+import jxtras.regex.support.Assert;
+import jxtras.regex.support.Fact;
+
+public class RegexComplexityTests {
+    private static final String[] EXPONENTIAL = {
+            "^(a+)+$", "(\\w+\\s?)+$", "(a|aa)+$", "(.*a)+$", "((ab)+)+$", "(a*b*)*c", "(\\w+)*@",
+            "^(([a-z])+.)+[A-Z]([a-z])+$", "(?i)(A+)+b", "(a+?)+?b", "(?>(a+)+b)", "(?=(a+)+b)",
+    };
+
+    private static final String[] POLYNOMIAL = {
+            "(\\d+\\.\\d+)+$", "(a+){2,5}$", ".*.*=.*", "a\\s*,?\\s*b", "x+x+y", "[a-c]*c+d", "(.*a){12}",
+    };
+
+    private static final String[] LINEAR = {
+            "", "abc", "(a+)+", "\\d+\\s", "(a|ab)+$", "(ab|ac)+$", "(x(a|aa))+$", "(?>(a+)+)b", "(?:if|in|int)+x",
+            "^[a-z]+@[a-z]+\\.com$", "\\b\\w+\\b", "(a+)\\1+$", "(\\w|\\d)+$", "a.*b", ".*.*",
+    };
+
+    @Fact
+    public static void AnalyzeFindsBlowUps() {
+        for (String pattern : EXPONENTIAL) {
+            Assert.Equal(RegexComplexity.Exponential, RegexComplexity.analyze(pattern).severity());
+        }
+        for (String pattern : POLYNOMIAL) {
+            Assert.Equal(RegexComplexity.Polynomial, RegexComplexity.analyze(pattern).severity());
+        }
+        for (String pattern : LINEAR) {
+            RegexComplexity complexity = RegexComplexity.analyze(pattern);
+            Assert.Equal(RegexComplexity.Linear, complexity.severity());
+            Assert.Equal(0, complexity.findings().size());
+        }
+
+        // the findings span the quantifiers in the pattern
+        RegexComplexity complexity = new Regex("^x(\\w+\\s?)+$").analyze();
+        Assert.Equal("^x(\\w+\\s?)+$", complexity.pattern());
+        Assert.Equal(1, complexity.findings().size());
+        RegexComplexity.Finding finding = complexity.findings().get(0);
+        Assert.Equal(RegexComplexity.Exponential, finding.severity());
+        Assert.Equal(2, finding.index());
+        Assert.Equal(9, finding.length());
+        Assert.True(finding.description().contains("'\\w+'"));
+
+        complexity = RegexComplexity.analyze("key\\s*=?\\s*(a{1,3})+$");
+        Assert.Equal(2, complexity.findings().size());
+        Assert.Equal(RegexComplexity.Polynomial, complexity.findings().get(0).severity());
+        Assert.Equal(3, complexity.findings().get(0).index());
+        Assert.Equal(8, complexity.findings().get(0).length());
+        Assert.Equal(RegexComplexity.Exponential, complexity.findings().get(1).severity());
+        Assert.Equal(11, complexity.findings().get(1).index());
+        Assert.Equal(9, complexity.findings().get(1).length());
+
+        complexity = RegexComplexity.analyze("(?x) ( a + ) +? b");
+        Assert.Equal(5, complexity.findings().get(0).index());
+        Assert.Equal(10, complexity.findings().get(0).length());
+
+        // a leftward pattern may fail at its start, which it matches last
+        Assert.Equal(RegexComplexity.Exponential, RegexComplexity.analyze("(a+)+", RegexOptions.RightToLeft).severity());
+        Assert.Equal(RegexComplexity.Exponential, RegexComplexity.analyze("^(a|aa)+", RegexOptions.RightToLeft).severity());
+        Assert.Equal(RegexComplexity.Linear, RegexComplexity.analyze("(?:b)+", RegexOptions.RightToLeft).severity());
+    }
+
+    @Fact
+    public static void SafeOptionAvoidsBacktracking() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append('a');
+        }
+        String input = sb.append('!').toString();
+
+        // matched by the automaton, or by memoization with a lookahead
+        for (String pattern : new String[]{"(\\w+\\s?)+$", "(a|aa)+$", "(?=.)(a+)+b"}) {
+            try {
+                new Regex(pattern, RegexOptions.None, Regex.INFINITE_MATCH_TIMEOUT, 100000).isMatch(input.substring(10000 - 40));
+                Assert.Throws(RegexStepLimitException.class);
+            } catch (RegexStepLimitException e) {
+            }
+
+            Regex regex = new Regex(pattern, RegexOptions.Safe, Regex.INFINITE_MATCH_TIMEOUT, 20 * input.length());
+            Assert.False(regex.isMatch(input));
+            Assert.Equal(pattern.endsWith("b") ? "aab" : "aa", regex.match("aab!aa").value());
+        }
+
+        // the patterns with no finding are matched as usual
+        Assert.Equal("ab", new Regex("(a|b)\\1?b", RegexOptions.Safe).match("xabb").value());
+
+        // and so are the leftward ones
+        Assert.Equal("bb", new Regex("(?:b)+", RegexOptions.Safe | RegexOptions.RightToLeft).match("abba").value());
+        Regex leftward = new Regex("^(a+)+", RegexOptions.Safe | RegexOptions.RightToLeft,
+                Regex.INFINITE_MATCH_TIMEOUT, 20 * input.length());
+        Assert.False(leftward.isMatch("!" + input.substring(0, 10000)));
+        Assert.Equal("aa", leftward.match("aa!").value());
+
+        // with a backreference, nothing else can match it
+        try {
+            new Regex("(a+)+\\1b", RegexOptions.Safe);
+            Assert.Throws(IllegalArgumentException.class);
+        } catch (IllegalArgumentException e) {
+            Assert.True(e.getMessage().contains("'(a+)+'"));
+        }
+    }
+}
@@ -74,7 +74,7 @@ public class RegexConstructorTests {
             strLoc = "Loc_23198awd";
             iCountTestcases++;
             try {
-                r = new Regex("foo", 0x400);
+                r = new Regex("foo", 0x2000);
                 iCountErrors++;
                 System.out.println("Err_1238sadw Expected Regex to throw ArgumentException and nothing was thrown");
             } catch (IllegalArgumentException e) {
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package jxtras.regex.tests;
+
+import jxtras.regex.Match;
+import jxtras.regex.MatchCollection;
+import jxtras.regex.Regex;
+import jxtras.regex.RegexOptions;
+import jxtras.regex.support.Assert;
+import jxtras.regex.support.Engines;
+import jxtras.regex.support.Fact;
+
+public class RegexLeadingDotStarTests {
+    @Fact
+    public static void LeadingDotStarMatches() {
+        for (int options : Engines.ALL) {
+            Regex regex = new Regex(".*error", options | RegexOptions.Singleline);
+            Assert.Equal("ok\nan error", regex.match("ok\nan error\nok").value());
+            Assert.False(regex.isMatch("ok\nok\nok"));
+            Assert.Equal("an error", regex.match("ok\nan error\nok", 3).value());
+
+            // without Singleline, each line is tried once
+            regex = new Regex(".*error", options);
+            Assert.Equal("an error", regex.match("ok\nan error\nok").value());
+            Assert.Equal("error", regex.match("ok\nan error\nok", 6).value());
+            MatchCollection matches = regex.matches("error error\nok\nerror\n\nerror");
+            Assert.Equal(3, matches.count());
+            Assert.Equal("error error", matches.get(0).value());
+            Assert.Equal(15, matches.get(1).index());
+            Assert.Equal(22, matches.get(2).index());
+
+            // the empty matches of .* advance to the next line
+            matches = new Regex(".*", options).matches("ab\n\ncd");
+            Assert.Equal(5, matches.count());
+            Assert.Equal("cd", matches.get(3).value());
+            Assert.Equal(6, matches.get(4).index());
+
+            Match match = new Regex("(.+)=(\\d+)", options).match("a = b\nkey=42\n");
+            Assert.Equal("key", match.groups().get(1).value());
+            Assert.Equal("42", match.groups().get(2).value());
+            Assert.False(new Regex("(?s).*x", options).match("abxc", 3).success());
+        }
+
+        // a lookahead first, or a backreference, and later starts can still match
+        Assert.Equal("bx", new Regex("(?=b).*x", RegexOptions.Singleline).match("abx").value());
+        Assert.Equal("bcb", new Regex("(.*)c\\1", RegexOptions.Singleline).match("abcb").value());
+        Assert.Equal("bcb", new Regex("(.*)c\\1").match("abcb").value());
+
+        // a lazy .*? can start anywhere
+        Assert.Equal(3, new Regex(".*?b", RegexOptions.Singleline).matches("abbb").count());
+    }
+
+    @Fact
+    public static void LeadingDotStarLongInput() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append("line ").append(i).append(" is fine\n");
+        }
+        String text = sb.toString();
+
+        Assert.False(new Regex(".*failed", RegexOptions.Singleline).isMatch(text));
+        Assert.False(new Regex(".*failed").isMatch(text));
+        Assert.False(new Regex(".*failed", RegexOptions.Compiled).isMatch(text));
+        Assert.Equal("line 19999 is", new Regex(".*\\d is").match(text, text.length() - 20).value());
+    }
+}
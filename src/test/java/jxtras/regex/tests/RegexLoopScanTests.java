@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package jxtras.regex.tests;
+
+import jxtras.regex.Match;
+import jxtras.regex.Regex;
+import jxtras.regex.RegexOptions;
+import jxtras.regex.support.Assert;
+import jxtras.regex.support.Engines;
+import jxtras.regex.support.Fact;
+
+public class RegexLoopScanTests {
+    @Fact
+    public static void LoopScanMatches() {
+        String input = "GET /a?user=bob&id=1\nGET /b?id=2\nPOST /c?id=3&user=eve&user=amy\n";
+
+        for (int options : Engines.ALL) {
+            // the lazy loop stops at the first user=, the greedy one at the last
+            Match match = new Regex("^.*?user=(\\w+)", options | RegexOptions.Multiline).match(input);
+            Assert.Equal("bob", match.groups().get(1).value());
+            match = match.nextMatch();
+            Assert.Equal("eve", match.groups().get(1).value());
+            Assert.False(match.nextMatch().success());
+
+            match = new Regex("^.*user=(\\w+)", options | RegexOptions.Multiline).match(input);
+            Assert.Equal("bob", match.groups().get(1).value());
+            Assert.Equal("amy", match.nextMatch().groups().get(1).value());
+
+            // . doesn't cross a line unless Singleline
+            Assert.Equal("GET /b?id=2", new Regex("GET.*id=2", options).match(input).value());
+            Assert.Equal(input.length() - 1, new Regex("GET.*amy", options | RegexOptions.Singleline).match(input).length());
+            Assert.False(new Regex("^GET /b.*?user=", options | RegexOptions.Multiline).isMatch(input));
+
+            // the literal may follow a capture, and the loop may have a minimum
+            Assert.Equal("id", new Regex("&(.*?)=", options).match(input).groups().get(1).value());
+            Assert.Equal("abaab", new Regex("a.+b", options).match("abaabx").value());
+            Assert.Equal("abab", new Regex("a.+?b", options).match("ababab").value());
+            Assert.False(new Regex("a.+b", options).isMatch("ab"));
+
+            // the literal has to end before the end of the part being matched
+            Assert.False(new Regex(".*?user=", options).match(input, 0, 10).success());
+            Assert.True(new Regex(".*?user=", options).match(input, 0, 12).success());
+            Assert.Equal("/a?", new Regex(".*\\?", options).match(input, 4, 4).value());
+        }
+    }
+
+    @Fact
+    public static void LoopScanLongInput() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append("GET /index.html?page=").append(i).append(" HTTP/1.1\n");
+        }
+        sb.append("GET /index.html?user=last HTTP/1.1\n");
+        String input = sb.toString();
+
+        Assert.Equal("last", new Regex("^.*?user=(\\w+)", RegexOptions.Multiline).match(input).groups().get(1).value());
+        Assert.Equal("last", new Regex("^.*?user=(\\w+)", RegexOptions.Multiline | RegexOptions.Compiled)
+                .match(input).groups().get(1).value());
+        Assert.Equal(20001, new Regex("^.*HTTP", RegexOptions.Multiline).matches(input).count());
+    }
+}
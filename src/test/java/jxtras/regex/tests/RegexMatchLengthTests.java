@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package jxtras.regex.tests;
+
+import jxtras.regex.Match;
+import jxtras.regex.Regex;
+import jxtras.regex.RegexOptions;
+import jxtras.regex.support.Assert;
+import jxtras.regex.support.Engines;
+import jxtras.regex.support.Fact;
+
+public class RegexMatchLengthTests {
+    @Fact
+    public static void MinLengthBoundsTheScan() {
+        for (int options : Engines.ALL) {
+            Regex regex = new Regex("[a-z]{3}\\d{2,}", options);
+            Assert.False(regex.isMatch(""));
+            Assert.False(regex.isMatch("ab1"));
+            Assert.False(regex.isMatch("abcd1"));
+            Assert.True(regex.isMatch("abc12"));
+            Assert.Equal("xyz123", regex.match("abc1 xyz123").value());
+            Assert.False(regex.isMatch("abc12", 1));
+            Assert.False(regex.match("abc12 ", 0, 4).success());
+
+            // the loops, alternations and conditionals that may match less
+            Assert.Equal(3, new Regex("(?:abc|d)(e?)", options).matches("abc d de").count());
+            Assert.Equal("b", new Regex("a*b", options).match("b").value());
+            Assert.Equal(2, new Regex("(a)?(?(1)bc|d)", options & ~RegexOptions.NonBacktracking).matches("abc d").count());
+            Assert.Equal("aa", new Regex("(a)\\1", options & ~RegexOptions.NonBacktracking).match("baa").value());
+            Assert.Equal(4, new Regex("(?=a)|b", options).matches("abab").count());
+        }
+
+        // right to left, the scan stops the same distance from the beginning
+        Regex regex = new Regex("[a-z]{3}\\d", RegexOptions.RightToLeft);
+        Assert.Equal("abc1", regex.match("abc1x").value());
+        Assert.False(regex.isMatch("ab1"));
+        Match match = regex.match("abc1def2");
+        Assert.Equal("def2", match.value());
+        Assert.Equal("abc1", match.nextMatch().value());
+        Assert.False(match.nextMatch().nextMatch().success());
+    }
+
+    @Fact
+    public static void MaxLengthBoundsTrailingAnchors() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        String text = sb.toString();
+
+        for (int options : Engines.ALL) {
+            Regex regex = new Regex("\\d{4}$", options);
+            Assert.Equal("2024", regex.match(text + "2024").value());
+            Assert.Equal("2024", regex.match(text + "2024\n").value());
+            Assert.False(regex.isMatch(text + "2024\n\n"));
+            Assert.False(regex.isMatch(text + "2024x"));
+            Assert.False(regex.isMatch("12345", 2));
+            Assert.Equal("2345", regex.match("12345").value());
+
+            regex = new Regex("(?:\\.jpg|\\.png|\\.jpeg)\\z", options);
+            Assert.Equal(".jpeg", regex.match("a/b.jpg/c.jpeg").value());
+            Assert.False(regex.isMatch("a/b.jpg/c.jpeg\n"));
+            Assert.Equal(".png", regex.match("a.png", 0, 5).value());
+            Assert.False(regex.match("a.png", 0, 4).success());
+
+            // only the most a match may have limits where it starts
+            Assert.Equal("x" + text, new Regex("x[a-z]*$", options).match("x" + text).value());
+            Assert.Equal(2, new Regex("(?:ab|\\d)$", options | RegexOptions.Multiline).matches("ab\n1").count());
+        }
+    }
+}
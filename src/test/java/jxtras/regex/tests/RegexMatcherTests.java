@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package jxtras.regex.tests;
+
+import jxtras.regex.Match;
+import jxtras.regex.MatchCollection;
+import jxtras.regex.Regex;
+import jxtras.regex.RegexMatcher;
+import jxtras.regex.RegexOptions;
+import jxtras.regex.support.Assert;
+import jxtras.regex.support.Engines;
+import jxtras.regex.support.Fact;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+
+public class RegexMatcherTests {
+    @Fact
+    public static void MatcherFindsEachMatch() {
+        String input = "k1=10, key2=200; x=3 and y= zz=4444";
+
+        for (int options : Engines.ALL) {
+            Regex regex = new Regex("(?<key>\\w+)=(?<value>\\d+)?", options);
+            MatchCollection matches = regex.matches(input);
+            RegexMatcher matcher = regex.matcher(input);
+
+            for (int i = 0; i < matches.count(); i++) {
+                Match match = matches.get(i);
+                Assert.True(matcher.find());
+                Assert.Equal(match.index(), matcher.start());
+                Assert.Equal(match.index() + match.length(), matcher.end());
+                Assert.Equal(match.value(), matcher.group());
+                Assert.Equal(match.groups().get("key").index(), matcher.start("key"));
+                Assert.Equal(match.groups().get(1).value(), matcher.group(1));
+
+                if (match.groups().get("value").success()) {
+                    Assert.Equal(match.groups().get("value").index(), matcher.start(2));
+                    Assert.Equal(match.groups().get("value").value(), matcher.group("value"));
+                } else {
+                    Assert.Equal(-1, matcher.start("value"));
+                    Assert.Equal(-1, matcher.end(2));
+                    Assert.Equal(null, matcher.group(2));
+                }
+            }
+
+            Assert.False(matcher.find());
+            Assert.False(matcher.find());
+            Assert.Equal(3, matcher.groupCount());
+
+            // again, from the beginning and from a position
+            Assert.True(matcher.reset().find());
+            Assert.Equal("k1", matcher.group("key"));
+            Assert.True(matcher.find(input.indexOf('x')));
+            Assert.Equal("x=3", matcher.group());
+
+            // a new input
+            Assert.True(matcher.reset(new StringBuilder("a=1")).find());
+            Assert.Equal("1", matcher.group(2));
+            Assert.False(matcher.find());
+        }
+    }
+
+    @Fact
+    public static void MatcherEdgeCases() {
+        // empty matches move on by one char
+        RegexMatcher matcher = new Regex("x*").matcher("axxb");
+        StringBuilder sb = new StringBuilder();
+        while (matcher.find()) {
+            sb.append(matcher.start()).append(':').append(matcher.end()).append(' ');
+        }
+        Assert.Equal("0:0 1:3 3:3 4:4 ", sb.toString());
+
+        // leftward
+        matcher = new Regex("\\d+", RegexOptions.RightToLeft).matcher("1 22 333");
+        Assert.True(matcher.find());
+        Assert.Equal("333", matcher.group());
+        Assert.True(matcher.find());
+        Assert.Equal("22", matcher.group());
+
+        // sparse group numbers
+        matcher = new Regex("(?<7>a)(?<300>b)?").matcher("xab");
+        Assert.True(matcher.find());
+        Assert.Equal(1, matcher.start(7));
+        Assert.Equal(3, matcher.end(300));
+
+        // a Match taken out of the matcher isn't changed by the next search
+        matcher = new Regex("\\d").matcher("1 2");
+        Assert.True(matcher.find());
+        Match match = matcher.toMatch();
+        Assert.True(matcher.find());
+        Assert.Equal("1", match.value());
+        Assert.Equal("2", matcher.group());
+        Assert.Equal("2", match.nextMatch().value());
+
+        matcher = new Regex("(a)").matcher("b");
+        try {
+            matcher.start();
+            Assert.Throws(IllegalStateException.class);
+        } catch (IllegalStateException e) {
+        }
+
+        Assert.False(matcher.find());
+        Assert.False(matcher.toMatch().success());
+
+        matcher.reset("a");
+        Assert.True(matcher.find());
+        try {
+            matcher.start(2);
+            Assert.Throws(IllegalArgumentException.class);
+        } catch (IllegalArgumentException e) {
+        }
+
+        try {
+            matcher.group("b");
+            Assert.Throws(IllegalArgumentException.class);
+        } catch (IllegalArgumentException e) {
+        }
+
+        // the bytes are checked before the input is changed
+        try {
+            matcher.reset((byte[]) null);
+            Assert.Throws(IllegalArgumentException.class);
+        } catch (IllegalArgumentException e) {
+        }
+
+        try {
+            matcher.reset(new byte[3], 2, 5);
+            Assert.Throws(IndexOutOfBoundsException.class);
+        } catch (IndexOutOfBoundsException e) {
+        }
+
+        try {
+            matcher.reset((ByteBuffer) null);
+            Assert.Throws(IllegalArgumentException.class);
+        } catch (IllegalArgumentException e) {
+        }
+        Assert.Equal("a", matcher.group());
+    }
+
+    @Fact
+    public static void MatcherDoesNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long id = Thread.currentThread().getId();
+        String input = "k1=10, key2=200; x=3 and zz=4444";
+
+        // the group numbers of the second pattern are sparse, and too large for the Integer cache
+        String[] patterns = {"(?<key>\\w+)=(?<value>\\d+)", "(?<key>\\w+)=(?<1000>\\d+)"};
+        int[] groups = {2, 1000};
+
+        for (int options : Engines.BACKTRACKING) {
+            for (int p = 0; p < patterns.length; p++) {
+                RegexMatcher matcher = new Regex(patterns[p], options).matcher(input);
+                long expected = findAll(matcher, groups[p]);
+                long sum = 0;
+
+                // let the storage grow first
+                for (int i = 0; i < 20000; i++) {
+                    sum += findAll(matcher, groups[p]);
+                }
+
+                long before = threads.getThreadAllocatedBytes(id);
+                for (int i = 0; i < 20000; i++) {
+                    sum += findAll(matcher, groups[p]);
+                }
+                long after = threads.getThreadAllocatedBytes(id);
+
+                Assert.Equal(40000L * expected, sum);
+                // a few bytes may come from the allocation counter itself
+                Assert.True(after - before < 1024, "allocated " + (after - before) + " bytes");
+            }
+        }
+    }
+
+    private static long findAll(RegexMatcher matcher, int group) {
+        long sum = 0;
+        matcher.reset();
+        while (matcher.find()) {
+            sum += matcher.start("key") + matcher.end(group);
+        }
+        return sum;
+    }
+}
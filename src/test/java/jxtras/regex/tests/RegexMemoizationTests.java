@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package jxtras.regex.tests;
+
+import jxtras.regex.Match;
+import jxtras.regex.Regex;
+import jxtras.regex.RegexMatcher;
+import jxtras.regex.RegexOptions;
+import jxtras.regex.RegexStepLimitException;
+import jxtras.regex.support.Assert;
+import jxtras.regex.support.Fact;
+
+public class RegexMemoizationTests {
+    private static final String[] PATTERNS = {
+            "(\\w+\\s?)+$", "(a|aa)+$", "(a+)+b", "^(([a-z])+.)+[A-Z]([a-z])+$", "(a*)*b", "(a+?)+?b",
+            "(?:a|b|ab)*c", "(\\s*\\w+)*!", "x(a+|b+)*y", "(?=(a+)+)(\\w)", "(?>a+)+b", "(a+b?)+$",
+            "(\\w+)\\s(\\w+)", "a.*b.*c", "(ab|a)(bc|c)", "(a{2,3})+$", "\\G(a|b)+", "(a(b)?)+",
+    };
+
+    private static final String[] INPUTS = {
+            "", "a", "ab", "aab", "aaaa!", "abc", "ab abc", "xaabbay", "aaab aab", "Abc.Def", "aaaaaaa", "abab ab!",
+    };
+
+    @Fact
+    public static void MemoizedMatchesBacktracking() {
+        for (String pattern : PATTERNS) {
+            for (int options : new int[]{RegexOptions.None, RegexOptions.IgnoreCase, RegexOptions.RightToLeft}) {
+                Regex regex = new Regex(pattern, options);
+                Regex memoized = new Regex(pattern, options | RegexOptions.Memoize);
+
+                for (String input : INPUTS) {
+                    Assert.Equal(matches(regex.match(input)), matches(memoized.match(input)));
+                }
+            }
+        }
+    }
+
+    @Fact
+    public static void MemoizationIsLinear() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append('a');
+        }
+        String input = sb.append('!').toString();
+
+        for (String pattern : new String[]{"(\\w+\\s?)+$", "(a|aa)+$", "(a+)+b", "^(([a-z])+.)+[A-Z]([a-z])+$"}) {
+            // without it, the budget is run out by the first few chars
+            try {
+                new Regex(pattern, RegexOptions.None, Regex.INFINITE_MATCH_TIMEOUT, 100000).isMatch(input.substring(20000 - 40));
+                Assert.Throws(RegexStepLimitException.class);
+            } catch (RegexStepLimitException e) {
+            }
+
+            RegexMatcher matcher = new Regex(pattern, RegexOptions.Memoize).matcher(input).setMaxSteps(20 * input.length());
+            Assert.False(matcher.find());
+            Assert.True(matcher.memoTableSize() > 0);
+            Assert.True(matcher.memoTableSize() < 4 * input.length());
+        }
+
+        // with a backreference, there is nothing to memoize
+        RegexMatcher matcher = new Regex("(a+)\\1b", RegexOptions.Memoize).matcher("aaaab aab");
+        Assert.True(matcher.find());
+        Assert.Equal("aaaab", matcher.group());
+        Assert.Equal(0L, matcher.memoTableSize());
+    }
+
+    private static String matches(Match match) {
+        StringBuilder sb = new StringBuilder();
+
+        for (; match.success(); match = match.nextMatch()) {
+            for (int i = 0; i < match.groups().count(); i++) {
+                sb.append(match.groups().get(i).index()).append(':').append(match.groups().get(i).value()).append(' ');
+            }
+            sb.append('|');
+        }
+        return sb.toString();
+    }
+}
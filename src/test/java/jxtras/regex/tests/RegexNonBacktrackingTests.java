@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package jxtras.regex.tests;
+
+import jxtras.regex.Match;
+import jxtras.regex.Regex;
+import jxtras.regex.RegexOptions;
+import jxtras.regex.support.Assert;
+import jxtras.regex.support.Fact;
+import jxtras.regex.support.RegexTestCase;
+
+public class RegexNonBacktrackingTests {
+    @Fact
+    public static void NonBacktrackingTestCase() {
+        int iCountErrors = 0;
+
+        for (int i = 0; i < s_regexTests.length; i++) {
+            if (!s_regexTests[i].Run()) {
+                System.out.printf("Err_5208nbt! Test %d FAILED Pattern=%s, Input=%s\n",
+                        i,
+                        s_regexTests[i].Pattern(),
+                        s_regexTests[i].Input()
+                );
+                iCountErrors++;
+            }
+        }
+
+        Assert.Equal(0, iCountErrors);
+    }
+
+    @Fact
+    public static void NonBacktrackingMatchesBacktracking() {
+        String input = "The quick brown fox jumps over the lazy dog\n1234-5678 aaa (abc) Quick\n";
+
+        for (String pattern : s_patterns) {
+            for (int options : new int[]{RegexOptions.None, RegexOptions.IgnoreCase,
+                    RegexOptions.Multiline, RegexOptions.Singleline | RegexOptions.IgnoreCase}) {
+                Match backtracking = new Regex(pattern, options).match(input);
+                Match nonBacktracking = new Regex(pattern, options | RegexOptions.NonBacktracking).match(input);
+
+                while (backtracking.success()) {
+                    Assert.True(nonBacktracking.success());
+                    Assert.Equal(backtracking.index(), nonBacktracking.index());
+                    Assert.Equal(backtracking.length(), nonBacktracking.length());
+                    Assert.Equal(backtracking.groups().count(), nonBacktracking.groups().count());
+
+                    for (int i = 1; i < backtracking.groups().count(); i++) {
+                        Assert.Equal(backtracking.groups().get(i).value(), nonBacktracking.groups().get(i).value());
+                    }
+
+                    backtracking = backtracking.nextMatch();
+                    nonBacktracking = nonBacktracking.nextMatch();
+                }
+
+                Assert.False(nonBacktracking.success());
+            }
+        }
+    }
+
+    @Fact
+    public static void NonBacktrackingIsLinear() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append('a');
+        }
+        String input = sb.toString();
+
+        // each of these takes exponential time to fail by backtracking
+        for (String pattern : new String[]{"(?:a+)+b", "(?:a|aa)*c", "(?:a*)*b", "^(?:a|a?)+$x"}) {
+            Regex regex = new Regex(pattern, RegexOptions.NonBacktracking, 2000);
+            Assert.False(regex.isMatch(input));
+            Assert.False(regex.match(input).success());
+        }
+
+        Assert.Equal(5000, new Regex("(a|aa)*$", RegexOptions.NonBacktracking, 2000).match(input).length());
+    }
+
+    @Fact
+    public static void NonBacktrackingCaptures() {
+        Match match = new Regex("(\\w)+-(?<d>\\d)*", RegexOptions.NonBacktracking).match("xy abc-123 z");
+        Assert.Equal("abc-123", match.value());
+        Assert.Equal(3, match.groups().get(1).captures().count());
+        Assert.Equal("a", match.groups().get(1).captures().get(0).value());
+        Assert.Equal("c", match.groups().get(1).value());
+        Assert.Equal(3, match.groups().get("d").captures().count());
+        Assert.Equal("3", match.groups().get("d").value());
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append('a');
+        }
+
+        // the groups of a long match are found without backtracking
+        match = new Regex("^(a|aa)*(a*)$", RegexOptions.NonBacktracking, 2000).match(sb.toString());
+        Assert.Equal(5000, match.length());
+        Assert.Equal(5000, match.groups().get(1).captures().count());
+        Assert.Equal("", match.groups().get(2).value());
+    }
+
+    private static String[] s_patterns = new String[] {
+            "\\w+", "(\\w)+\\s", "qu(i)ck|l(a)zy", "(?i)QUICK", "\\b\\w{3}\\b", "o.*?o", "o.*o",
+            "(\\d+)-(\\d+)", "(\\d){2,3}?", "(a|b|c)+", "(?:ab|a)(?:bc|c)", "\\(([^()]*)\\)",
+            "^The|Quick$", "^\\w+$", "\\Gthe", "[a-z-[aeiou]]+", "\\p{Lu}\\p{Ll}+", "((a)|b)*c",
+            "(ab){0,2}?c", "\\B\\w", "\\w*\\Z", "\\z", "\\A\\w*", "(|a)*", "(a?)+o", "x*",
+    };
+
+    private static RegexTestCase[] s_regexTests = new RegexTestCase[] {
+            new RegexTestCase("(\\d{3})-(\\d{4})", RegexOptions.NonBacktracking, "call 555-1234 now", "555-1234", "555", "1234"),
+            new RegexTestCase("(a|ab)(c|bcd)(d*)", RegexOptions.NonBacktracking, "abcd", "abcd", "a", "bcd", ""),
+            new RegexTestCase("a|ab", RegexOptions.NonBacktracking, "xab", "a"),
+            new RegexTestCase("a*?b|a+", RegexOptions.NonBacktracking, "aaa", "aaa"),
+            new RegexTestCase("(?i)HeLLo", RegexOptions.NonBacktracking, "say hello", "hello"),
+            new RegexTestCase("c{2}", RegexOptions.NonBacktracking, "accc", "cc"),
+            new RegexTestCase("\\bfoo\\b", RegexOptions.NonBacktracking, "foobar foo", "foo"),
+            new RegexTestCase("bar$", RegexOptions.NonBacktracking | RegexOptions.Multiline, "bar\nfoo", "bar"),
+            new RegexTestCase("o\\Z", RegexOptions.NonBacktracking, "foo\n", "o"),
+            new RegexTestCase("^\\d+$", RegexOptions.NonBacktracking, "12a"),
+            // backreferences, lookarounds and atomic groups fall back to backtracking
+            new RegexTestCase("(?<x>\\w+)\\s\\k<x>", RegexOptions.NonBacktracking, "hello hello", "hello hello", "hello"),
+            new RegexTestCase("\\w+(?=!)", RegexOptions.NonBacktracking, "hi there!", "there"),
+            new RegexTestCase("(?>a+)a", RegexOptions.NonBacktracking, "aaaa"),
+            new RegexTestCase("x*?y", RegexOptions.NonBacktracking | RegexOptions.RightToLeft, "xxy", "y"),
+    };
+}
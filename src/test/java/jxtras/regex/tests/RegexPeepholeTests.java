@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package jxtras.regex.tests;
+
+import jxtras.regex.Group;
+import jxtras.regex.Match;
+import jxtras.regex.Regex;
+import jxtras.regex.RegexOptions;
+import jxtras.regex.support.Assert;
+import jxtras.regex.support.Engines;
+import jxtras.regex.support.Fact;
+
+public class RegexPeepholeTests {
+    @Fact
+    public static void FusedInstructionsMatch() {
+        for (int options : Engines.BACKTRACKING) {
+            // adjacent sets and chars of the same kind are repeated
+            Assert.Equal("abc", new Regex("[a-z][a-z]+", options).match("1abc2").value());
+            Assert.False(new Regex("[a-z][a-z]+", options).isMatch("1a2"));
+            Assert.Equal("555-1234", new Regex("\\d\\d\\d-\\d\\d\\d\\d", options).match("call 555-1234").value());
+            Assert.Equal("xAbCy", new Regex("x(?i:a)(?i:b)(?i:c)y", options).match("xAbCy").value());
+            Assert.Equal("ba", new Regex("ba", options | RegexOptions.RightToLeft).match("abab").value());
+            Assert.Equal(2, new Regex("\\d\\d", options | RegexOptions.RightToLeft).match("a123").index());
+
+            // a branch that can never match
+            Assert.Equal("azqb", new Regex("a(?:[a-[a]]x|y|zq)b", options).match("axb azqb").value());
+            Assert.False(new Regex("a[a-[a]]", options).isMatch("aa"));
+        }
+    }
+
+    @Fact
+    public static void CapturedSpans() {
+        for (int options : Engines.BACKTRACKING) {
+            Match match = new Regex("(\\d\\d\\d)-(\\d+)", options).match("tel 555-1234");
+            Assert.Equal("555", match.groups().get(1).value());
+            Assert.Equal("1234", match.groups().get(2).value());
+            Assert.Equal(8, match.groups().get(2).index());
+
+            // a capture undone by backtracking
+            match = new Regex("(a)x|ay", options).match("ay");
+            Assert.True(match.success());
+            Assert.False(match.groups().get(1).success());
+
+            match = new Regex("(?:(\\w)-)+(\\w)", options).match("a-b-c");
+            Group group = match.groups().get(1);
+            Assert.Equal("b", group.value());
+            Assert.Equal(2, group.captures().count());
+            Assert.Equal("a", group.captures().get(0).value());
+            Assert.Equal("c", match.groups().get(2).value());
+
+            // the loop backtracks into the capture, which isn't a span
+            match = new Regex("(\\d+)(\\d)", options).match("1234");
+            Assert.Equal("123", match.groups().get(1).value());
+
+            match = new Regex("(\\d\\d)", options | RegexOptions.RightToLeft).match("a1234");
+            Assert.Equal("34", match.groups().get(1).value());
+            Assert.Equal(3, match.groups().get(1).index());
+
+            Assert.Equal("b", new Regex("()b", options).match("ab").value());
+            Assert.Equal(1, new Regex("()b", options).match("ab").groups().get(1).index());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package jxtras.regex.tests;
+
+import jxtras.regex.Match;
+import jxtras.regex.Regex;
+import jxtras.regex.RegexOptions;
+import jxtras.regex.support.Assert;
+import jxtras.regex.support.Fact;
+
+public class RegexRequiredLiteralTests {
+    @Fact
+    public static void RequiredLiteralMatches() {
+        String input = "12 WARN: disk\n345 ERROR: disk full\n6 error: retry\n78 ERROR: done";
+
+        Match match = new Regex("\\d+ ERROR: (.*)").match(input);
+        Assert.True(match.success());
+        Assert.Equal("345 ERROR: disk full", match.value());
+        Assert.Equal("disk full", match.groups().get(1).value());
+
+        match = match.nextMatch();
+        Assert.True(match.success());
+        Assert.Equal("78 ERROR: done", match.value());
+        Assert.False(match.nextMatch().success());
+
+        Assert.Equal(3, new Regex("\\d+ ERROR: (.*)", RegexOptions.IgnoreCase).matches(input).count());
+        Assert.Equal(3, new Regex("\\d+ ERROR: (.*)", RegexOptions.Compiled | RegexOptions.IgnoreCase).matches(input).count());
+        Assert.Equal(3, new Regex("\\d+ ERROR: (.*)", RegexOptions.NonBacktracking | RegexOptions.IgnoreCase).matches(input).count());
+
+        // the literal is only searched for in the part of the input being matched
+        Assert.False(new Regex("\\d+ ERROR").isMatch(input, 53));
+        Assert.False(new Regex("\\d+ ERROR").match(input, 0, 20).success());
+        Assert.Equal("345 ERROR", new Regex("\\d+ ERROR").match(input, 0, 24).value());
+
+        // a loop of a single char both ends and starts a literal
+        Assert.Equal("xaaabc", new Regex("xa{2,5}bc").match("xaabxaaabc").value());
+        Assert.Equal("aaabc", new Regex("[xy]a{2,5}b?c").match("yaabxaaabc").value().substring(1));
+
+        // zero-width assertions don't break a literal, lookarounds aren't part of one
+        Assert.Equal("foo bar", new Regex("foo\\b bar").match("foo barfoo bar").value());
+        Assert.Equal("bar", new Regex("(?<=foo )bar").match("bar foo bar").value());
+        Assert.Equal(8, new Regex("(?<=foo )bar").match("bar foo bar").index());
+        Assert.False(new Regex("\\w+(?=ERROR)").isMatch("no error here"));
+    }
+
+    @Fact
+    public static void RequiredLiteralRejectsInputs() {
+        Regex regex = new Regex("^\\d+ [A-Z]+ ERROR: (.*)$", RegexOptions.Multiline);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append(i).append(" MAIN INFO: nothing to see here\n");
+        }
+
+        String input = sb.toString();
+        Assert.False(regex.isMatch(input));
+
+        Match match = regex.match(input + "20000 MAIN ERROR: at last\n");
+        Assert.True(match.success());
+        Assert.Equal("at last", match.groups().get(1).value());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package jxtras.regex.tests;
+
+import jxtras.regex.Match;
+import jxtras.regex.Regex;
+import jxtras.regex.support.Assert;
+import jxtras.regex.support.Engines;
+import jxtras.regex.support.Fact;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RegexRunnerPoolTests {
+    @Fact
+    public static void RunnerPoolConcurrentMatches() throws InterruptedException {
+        for (int options : Engines.ALL) {
+            final Regex regex = new Regex("(?<key>\\w+)=(?<value>\\d+)", options);
+            final AtomicInteger failures = new AtomicInteger();
+
+            Thread[] threads = new Thread[16];
+            for (int t = 0; t < threads.length; t++) {
+                final int id = t;
+                threads[t] = new Thread(new Runnable() {
+                    public void run() {
+                        String input = "x k" + id + "=" + (id * 7) + " y";
+                        for (int i = 0; i < 500; i++) {
+                            Match match = regex.match(input);
+                            if (!match.success()
+                                    || !match.groups().get("key").value().equals("k" + id)
+                                    || !match.groups().get("value").value().equals(String.valueOf(id * 7))) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    }
+                });
+            }
+
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            Assert.Equal(0, failures.get());
+        }
+    }
+
+    @Fact
+    public static void RunnerPoolSettings() throws InterruptedException {
+        int size = Regex.runnerPoolSize();
+        int timeout = Regex.runnerIdleTimeout();
+        Assert.True(size >= 1);
+
+        try {
+            Regex.setRunnerPoolSize(1);
+            Regex.setRunnerIdleTimeout(1);
+            Regex regex = new Regex("a(b+)c");
+            for (int i = 0; i < 10; i++) {
+                Assert.Equal("bb", regex.match("xabbc").groups().get(1).value());
+            }
+
+            // the idle runners are dropped by one of the next matches
+            Thread.sleep(5);
+            for (int i = 0; i < 1000; i++) {
+                Assert.Equal("bb", regex.match("xabbc").groups().get(1).value());
+            }
+
+            Regex.setRunnerIdleTimeout(Regex.INFINITE_IDLE_TIMEOUT);
+            Assert.Equal(Regex.INFINITE_IDLE_TIMEOUT, Regex.runnerIdleTimeout());
+            Assert.True(new Regex("a(b+)c").isMatch("abc"));
+
+            try {
+                Regex.setRunnerPoolSize(0);
+                Assert.Throws(IllegalArgumentException.class);
+            } catch (IllegalArgumentException e) {
+            }
+
+            try {
+                Regex.setRunnerIdleTimeout(0);
+                Assert.Throws(IllegalArgumentException.class);
+            } catch (IllegalArgumentException e) {
+            }
+        } finally {
+            Regex.setRunnerPoolSize(size);
+            Regex.setRunnerIdleTimeout(timeout);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package jxtras.regex.tests;
+
+import jxtras.regex.Regex;
+import jxtras.regex.RegexOptions;
+import jxtras.regex.RegexSet;
+import jxtras.regex.support.Assert;
+import jxtras.regex.support.Fact;
+
+import java.util.BitSet;
+
+public class RegexSetTests {
+    @Fact
+    public static void RegexSetMatchesEachRegex() {
+        String[] inputs = new String[]{
+                "",
+                "abc",
+                "The quick brown fox jumps over the lazy dog\n",
+                "ERROR 2015-03-14 disk full on /dev/sda1",
+                "warn: user=root uid=0 gid=0",
+                "aaaa bbbb abab\nxyz\n",
+        };
+
+        for (int options : new int[]{RegexOptions.None, RegexOptions.IgnoreCase,
+                RegexOptions.Multiline, RegexOptions.Singleline | RegexOptions.IgnoreCase}) {
+            RegexSet set = new RegexSet(s_patterns, options);
+            Assert.Equal(s_patterns.length, set.count());
+
+            for (String input : inputs) {
+                BitSet expected = new BitSet();
+                int first = -1;
+                for (int i = 0; i < s_patterns.length; i++) {
+                    if (new Regex(s_patterns[i], options).isMatch(input)) {
+                        expected.set(i);
+                        if (first == -1) {
+                            first = i;
+                        }
+                    }
+                }
+
+                Assert.Equal(expected, set.matches(input));
+                Assert.Equal(!expected.isEmpty(), set.isMatch(input));
+                Assert.True(expected.isEmpty() ? set.firstMatch(input) == -1 : expected.get(set.firstMatch(input)));
+            }
+        }
+    }
+
+    @Fact
+    public static void RegexSetFirstMatch() {
+        RegexSet set = new RegexSet("fox", "quick", "(\\w)\\1", "brown", "^The");
+
+        // "The" ends before "quick" and "brown"
+        Assert.Equal(4, set.firstMatch("The quick brown fox"));
+        // both end at the same position
+        Assert.Equal(1, new RegexSet("xb", "a+b", "b").firstMatch("xxaab"));
+        // the backreference is tried only when nothing else matches
+        Assert.Equal(2, set.firstMatch("jumps over the lazzy dog"));
+        Assert.Equal(-1, set.firstMatch("jumps over the lazy dog"));
+        Assert.Equal(-1, new RegexSet().firstMatch("abc"));
+    }
+
+    @Fact
+    public static void RegexSetManyPatterns() {
+        // enough patterns to be split over several automata
+        String[] patterns = new String[800];
+        for (int i = 0; i < patterns.length; i++) {
+            patterns[i] = "(?:id|key)=" + i + "\\b(?:[a-z]{2,4}|\\d+)?";
+        }
+
+        RegexSet set = new RegexSet(patterns, RegexOptions.IgnoreCase);
+        String input = "req KEY=17 id=404xyz key=799 id=8000 id=12\n";
+
+        BitSet expected = new BitSet();
+        for (int i = 0; i < patterns.length; i++) {
+            if (new Regex(patterns[i], RegexOptions.IgnoreCase).isMatch(input)) {
+                expected.set(i);
+            }
+        }
+
+        Assert.Equal(expected, set.matches(input));
+        Assert.Equal(3, expected.cardinality());
+        Assert.Equal(17, set.firstMatch(input));
+        Assert.Equal(-1, set.firstMatch("id=800"));
+    }
+
+    @Fact
+    public static void RegexSetInvalidArguments() {
+        try {
+            new RegexSet("a", null);
+            Assert.Throws(IllegalArgumentException.class);
+        } catch (IllegalArgumentException e) {
+        }
+
+        try {
+            new RegexSet(new String[]{"a", "(b"}, RegexOptions.None);
+            Assert.Throws(IllegalArgumentException.class);
+        } catch (IllegalArgumentException e) {
+        }
+
+        try {
+            new RegexSet(new String[]{"a"}, RegexOptions.ECMAScript | RegexOptions.Singleline);
+            Assert.Throws(IllegalArgumentException.class);
+        } catch (IllegalArgumentException e) {
+        }
+
+        try {
+            new RegexSet("a").matches(null);
+            Assert.Throws(IllegalArgumentException.class);
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    private static final String[] s_patterns = new String[]{
+            "abc",
+            "^The",
+            "dog$",
+            "(?m)^xyz$",
+            "\\bquick\\b",
+            "\\d{4}-\\d{2}-\\d{2}",
+            "(?i)error|warn",
+            "uid=(\\d+) gid=\\1",
+            "(?<=over )the",
+            "(?>a+)b",
+            "(a|b)*abab",
+            "[^\\s]+@[^\\s]+",
+            "o.e",
+            "x*",
+            "fox(?! jumps)",
+            "(?<word>b+)\\s\\k<word>",
+            "a{2,3}",
+            "\\Aaaaa",
+            "lazy\\s+dog\\Z",
+            "[a-f]+\\d$",
+    };
+}
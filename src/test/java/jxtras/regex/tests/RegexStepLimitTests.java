@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package jxtras.regex.tests;
+
+import jxtras.regex.Regex;
+import jxtras.regex.RegexMatcher;
+import jxtras.regex.RegexOptions;
+import jxtras.regex.RegexStepLimitException;
+import jxtras.regex.support.Assert;
+import jxtras.regex.support.Engines;
+import jxtras.regex.support.Fact;
+
+public class RegexStepLimitTests {
+    // backtracks for ever over the a's, which the ! keeps from matching
+    private static final String PATTERN = "^(\\w+\\s?)*$";
+    private static final String INPUT = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa!";
+
+    @Fact
+    public static void StepBudgetStopsTheMatch() {
+        for (int options : Engines.BACKTRACKING) {
+            for (long maxSteps : new long[]{1, 999, 1000, 1001, 50000}) {
+                Regex regex = new Regex(PATTERN, options, Regex.INFINITE_MATCH_TIMEOUT, maxSteps);
+                Assert.Equal(maxSteps, regex.maxSteps());
+
+                // the match is stopped at the same step every time
+                for (int i = 0; i < 2; i++) {
+                    try {
+                        regex.isMatch(INPUT);
+                        Assert.Throws(RegexStepLimitException.class);
+                    } catch (RegexStepLimitException e) {
+                        Assert.Equal(maxSteps, e.maxSteps());
+                        Assert.Equal(maxSteps + 1, e.steps());
+                        Assert.Equal(PATTERN, e.pattern());
+                    }
+                }
+            }
+
+            // a match that stays within the budget
+            Regex regex = new Regex("a(b+)c", options, Regex.INFINITE_MATCH_TIMEOUT, 100);
+            for (int i = 0; i < 10; i++) {
+                Assert.Equal("bbb", regex.match("xxxxabbbc").groups().get(1).value());
+            }
+            Assert.Equal(Regex.INFINITE_STEPS, new Regex("a", options).maxSteps());
+        }
+
+        // the automata take a step for each char
+        Regex regex = new Regex("[ab]+c", RegexOptions.NonBacktracking, Regex.INFINITE_MATCH_TIMEOUT, 10);
+        Assert.True(regex.isMatch("abc"));
+        try {
+            regex.isMatch("ababababababababababc");
+            Assert.Throws(RegexStepLimitException.class);
+        } catch (RegexStepLimitException e) {
+            Assert.Equal(11L, e.steps());
+        }
+
+        try {
+            new Regex("a", RegexOptions.None, Regex.INFINITE_MATCH_TIMEOUT, 0);
+            Assert.Throws(IllegalArgumentException.class);
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Fact
+    public static void MatcherStepBudget() {
+        for (int options : Engines.BACKTRACKING) {
+            RegexMatcher matcher = new Regex(PATTERN, options).matcher(INPUT);
+            Assert.Equal(Regex.INFINITE_STEPS, matcher.maxSteps());
+
+            try {
+                matcher.setMaxSteps(1000).find();
+                Assert.Throws(RegexStepLimitException.class);
+            } catch (RegexStepLimitException e) {
+                Assert.Equal(1001L, e.steps());
+            }
+
+            // the budget of the matcher replaces the one of the regex
+            matcher = new Regex("b+", options, Regex.INFINITE_MATCH_TIMEOUT, 1).matcher("abb abbb");
+            Assert.Equal(1L, matcher.maxSteps());
+            matcher.setMaxSteps(Regex.INFINITE_STEPS);
+            Assert.True(matcher.find());
+            Assert.True(matcher.find());
+            Assert.Equal("bbb", matcher.group());
+        }
+    }
+}
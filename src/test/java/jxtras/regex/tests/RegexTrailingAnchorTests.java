@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package jxtras.regex.tests;
+
+import jxtras.regex.Match;
+import jxtras.regex.Regex;
+import jxtras.regex.RegexOptions;
+import jxtras.regex.support.Assert;
+import jxtras.regex.support.Engines;
+import jxtras.regex.support.Fact;
+
+public class RegexTrailingAnchorTests {
+    @Fact
+    public static void TrailingLiteralMatches() {
+        for (int options : Engines.ALL) {
+            Regex regex = new Regex("^[\\w/-]+\\.jpg$", options);
+            Assert.True(regex.isMatch("photos/2024/cat.jpg"));
+            Assert.True(regex.isMatch("photos/2024/cat.jpg\n"));
+            Assert.False(regex.isMatch("photos/2024/cat.jpg\n\n"));
+            Assert.False(regex.isMatch("photos/2024/cat.jpeg"));
+            Assert.False(regex.isMatch("photos/2024/cat.JPG"));
+            Assert.False(regex.isMatch("jpg"));
+
+            regex = new Regex("\\w+\\.jpg\\z", options | RegexOptions.IgnoreCase);
+            Assert.Equal("cat.JPG", regex.match("a.jpg b/cat.JPG").value());
+            Assert.False(regex.isMatch("cat.jpg\n"));
+
+            Match match = new Regex("(\\w+)\\.tar\\.gz$", options).match("dist/app-1.tar.gz");
+            Assert.Equal("1.tar.gz", match.value());
+            Assert.Equal("1", match.groups().get(1).value());
+            Assert.Equal("ab", new Regex("a+b{1}$", options).match("xaab", 2, 2).value());
+            Assert.False(new Regex("a+b$", options).match("xaabc", 0, 5).success());
+            Assert.True(new Regex("a+b$", options).match("xaabc", 0, 4).success());
+
+            // a literal that doesn't end the match, or a $ that isn't the end
+            Assert.True(new Regex("\\w+\\.jpg(?:\\?\\w+)?$", options).isMatch("a.jpg?size2"));
+            Assert.Equal(2, new Regex("\\.jpg$", options | RegexOptions.Multiline).matches("a.jpg\nb.jpg").count());
+            Assert.True(new Regex("(?:\\.jpg|\\.png)$", options).isMatch("a.png"));
+        }
+
+        // right to left, the end anchor is a leading one
+        Assert.Equal("b.jpg", new Regex("\\w+\\.jpg$", RegexOptions.RightToLeft).match("a.jpg b.jpg").value());
+        Assert.False(new Regex("\\w+\\.jpg$", RegexOptions.RightToLeft).isMatch("a.jpg b.png"));
+    }
+
+    @Fact
+    public static void TrailingLiteralRejectsKeys() {
+        Regex regex = new Regex("^[\\w/-]+\\.jpg$");
+        int count = 0;
+
+        for (int i = 0; i < 20000; i++) {
+            if (regex.isMatch("bucket/2024/10/prefix/object-" + i + (i % 100 == 0 ? ".jpg" : ".json"))) {
+                count++;
+            }
+        }
+
+        Assert.Equal(200, count);
+    }
+}
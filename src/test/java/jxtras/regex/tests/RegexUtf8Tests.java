@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package jxtras.regex.tests;
+
+import jxtras.regex.Match;
+import jxtras.regex.Regex;
+import jxtras.regex.RegexMatcher;
+import jxtras.regex.RegexOptions;
+import jxtras.regex.support.Assert;
+import jxtras.regex.support.Engines;
+import jxtras.regex.support.Fact;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class RegexUtf8Tests {
+    private static final String[] PATTERNS = {
+            "(?<key>\\w+)=(?<value>\\d+)?", "caf\u00e9", "\\bkey\\d\\b", "(?i)K\u00c9Y", "^\\w+|\\w+$", "[\u4e00-\u9fff]+",
+            "\\ud83d\\ude00\\s*\\w", "[A-Z]{3}:", "x*", "[^=]+=",
+    };
+
+    private static final String[] INPUTS = {
+            "k1=10, key2=200; abba bb x=3 and y= zz=4444 Key3=",
+            "k\u00e9y1=10 caf\u00e9=2 \u4e2d\u6587=3 \ud83d\ude00 ok K\u00c9Y=\nERR: key4=\u00e9\u00e9",
+            "",
+    };
+
+    @Fact
+    public static void Utf8Inputs() {
+        for (String input : INPUTS) {
+            byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+            byte[] padded = new byte[bytes.length + 5];
+            System.arraycopy(bytes, 0, padded, 3, bytes.length);
+
+            ByteBuffer heap = ByteBuffer.wrap(padded, 3, bytes.length);
+            ByteBuffer direct = ByteBuffer.allocateDirect(padded.length);
+            direct.put(padded).position(3).limit(3 + bytes.length);
+
+            for (String pattern : PATTERNS) {
+                for (int options : Engines.VARIANTS) {
+                    Regex regex = new Regex(pattern, options);
+
+                    Assert.Equal(regex.isMatch(input), regex.isMatch(bytes));
+                    Assert.Equal(regex.isMatch(input), regex.isMatch(padded, 3, bytes.length));
+                    Assert.Equal(regex.isMatch(input), regex.isMatch(heap));
+                    Assert.Equal(regex.isMatch(input), regex.isMatch(direct));
+                    Assert.Equal(regex.isMatch(input), regex.isMatch(direct.asReadOnlyBuffer()));
+
+                    RegexMatcher[] matchers = {
+                            regex.matcher(bytes), regex.matcher(padded, 3, bytes.length), regex.matcher(heap),
+                            regex.matcher(direct),
+                    };
+
+                    for (RegexMatcher matcher : matchers) {
+                        for (Match match = regex.match(input); match.success(); match = match.nextMatch()) {
+                            // no byte offset is between the halves of a surrogate pair
+                            if (splitsPair(input, match.index()))
+                                continue;
+
+                            Assert.True(matcher.find());
+                            Assert.Equal(match.value(), matcher.group());
+                            Assert.Equal(byteOffset(input, match.index()), matcher.start());
+                            Assert.Equal(byteOffset(input, match.index() + match.length()), matcher.end());
+                        }
+                        Assert.False(matcher.find());
+                    }
+
+                    Assert.Equal(3, heap.position());
+                    Assert.Equal(3, direct.position());
+                }
+            }
+        }
+    }
+
+    @Fact
+    public static void Utf8Offsets() {
+        byte[] bytes = "na\u00efve \u4e2d\u6587 \ud83d\ude00 end".getBytes(StandardCharsets.UTF_8);
+        RegexMatcher matcher = new Regex("\\S+").matcher(bytes);
+
+        // the positions are byte offsets
+        Assert.True(matcher.find());
+        Assert.Equal("na\u00efve", matcher.group());
+        Assert.Equal(0, matcher.start());
+        Assert.Equal(6, matcher.end());
+        Assert.True(matcher.find());
+        Assert.Equal(7, matcher.start());
+        Assert.Equal(13, matcher.end());
+        Assert.True(matcher.find());
+        Assert.Equal("\ud83d\ude00", matcher.group());
+        Assert.Equal(14, matcher.start());
+        Assert.Equal(18, matcher.end());
+
+        // and so is the position a search starts at
+        Assert.True(matcher.find(8));
+        Assert.Equal(10, matcher.start());
+        Assert.True(matcher.find(19));
+        Assert.Equal("end", matcher.group());
+        Assert.Equal(12, matcher.toMatch().index());
+
+        try {
+            matcher.find(bytes.length + 1);
+            Assert.Throws(IllegalArgumentException.class);
+        } catch (IllegalArgumentException e) {
+        }
+
+        // the matcher reads other bytes, and the Match it gave keeps its own
+        Match match = matcher.toMatch();
+        matcher.reset("x y".getBytes(StandardCharsets.UTF_8));
+        Assert.True(matcher.find());
+        Assert.Equal("x", matcher.group());
+        Assert.Equal("end", match.value());
+        matcher.reset(ByteBuffer.wrap("abc def".getBytes(StandardCharsets.UTF_8), 4, 3));
+        Assert.True(matcher.find());
+        Assert.Equal("def", matcher.group());
+        Assert.Equal(0, matcher.start());
+
+        // no match starts between the halves of a surrogate pair, and one that ends there spans all of its bytes
+        byte[] pair = "a\ud83d\ude00b".getBytes(StandardCharsets.UTF_8);
+        Assert.Equal("0:1 1:5 5:6 ", spans(new Regex(".").matcher(pair)));
+        Assert.Equal("5:6 1:5 0:1 ", spans(new Regex(".", RegexOptions.RightToLeft).matcher(pair)));
+        Assert.Equal("0:0 1:1 5:5 6:6 ", spans(new Regex("x*?").matcher(pair)));
+        Assert.Equal("6:6 5:5 1:1 0:0 ", spans(new Regex("x*?", RegexOptions.RightToLeft).matcher(pair)));
+        Assert.Equal("1:5 ", spans(new Regex("\\p{Cs}+").matcher(pair)));
+        Assert.Equal("", spans(new Regex("\\ude00").matcher(pair)));
+        Assert.False(new Regex("\\ude00b").matcher(pair).find(2));
+
+        matcher = new Regex("(.)(.)").matcher("\ud83d\ude00".getBytes(StandardCharsets.UTF_8));
+        Assert.True(matcher.find());
+        Assert.Equal(0, matcher.start(1));
+        Assert.Equal(4, matcher.end(1));
+        Assert.Equal(4, matcher.start(2));
+        Assert.Equal(4, matcher.end(2));
+
+        matcher = new Regex("a.", RegexOptions.RightToLeft).matcher("xa\ud83d\ude00".getBytes(StandardCharsets.UTF_8));
+        Assert.True(matcher.find());
+        Assert.Equal(1, matcher.start());
+        Assert.Equal(6, matcher.end());
+
+        // a byte that doesn't start a well-formed sequence is U+FFFD
+        byte[] malformed = {'a', (byte) 0xC3, 'b', (byte) 0x80, (byte) 0xE4, (byte) 0xB8, 'c', (byte) 0xC0, (byte) 0xAF};
+        matcher = new Regex("\\ufffd+").matcher(malformed);
+        Assert.True(matcher.find());
+        Assert.Equal(1, matcher.start());
+        Assert.Equal(2, matcher.end());
+        Assert.True(matcher.find());
+        Assert.Equal("\ufffd\ufffd\ufffd", matcher.group());
+        Assert.Equal(3, matcher.start());
+        Assert.True(matcher.find());
+        Assert.Equal(7, matcher.start());
+        Assert.Equal(9, matcher.end());
+        Assert.True(new Regex("^a\\ufffdb\\ufffd{3}c\\ufffd{2}$").isMatch(malformed));
+
+        // invalid inputs
+        try {
+            new Regex("a").isMatch((byte[]) null);
+            Assert.Throws(IllegalArgumentException.class);
+        } catch (IllegalArgumentException e) {
+        }
+
+        try {
+            new Regex("a").matcher(bytes, 5, bytes.length);
+            Assert.Throws(IndexOutOfBoundsException.class);
+        } catch (IndexOutOfBoundsException e) {
+        }
+    }
+
+    private static boolean splitsPair(String input, int index) {
+        return index > 0 && index < input.length() &&
+                Character.isHighSurrogate(input.charAt(index - 1)) && Character.isLowSurrogate(input.charAt(index));
+    }
+
+    private static int byteOffset(String input, int index) {
+        // an index between the halves of a surrogate pair is where the pair ends
+        if (splitsPair(input, index))
+            index++;
+
+        return input.substring(0, index).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static String spans(RegexMatcher matcher) {
+        StringBuilder sb = new StringBuilder();
+        while (matcher.find()) {
+            sb.append(matcher.start()).append(':').append(matcher.end()).append(' ');
+        }
+        return sb.toString();
+    }
+}
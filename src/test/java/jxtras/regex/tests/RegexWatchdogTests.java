@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015 The JXTRAS Project Authors. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the organization nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package jxtras.regex.tests;
+
+import jxtras.regex.Regex;
+import jxtras.regex.RegexMatchTimeoutException;
+import jxtras.regex.RegexMatcher;
+import jxtras.regex.support.Assert;
+import jxtras.regex.support.Engines;
+import jxtras.regex.support.Fact;
+
+import java.util.concurrent.CancellationException;
+
+public class RegexWatchdogTests {
+    // backtracks for ever over the a's, which the ! keeps from matching
+    private static final String PATTERN = "^(\\w+\\s?)*$";
+    private static final String INPUT = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa!";
+
+    @Fact
+    public static void WatchdogStopsTheMatch() {
+        boolean enabled = Regex.timeoutWatchdog();
+
+        try {
+            Regex.setTimeoutWatchdog(true);
+
+            for (int options : Engines.BACKTRACKING) {
+                Assert.True(new Regex("a(b+)c", options, 1000).isMatch("xabbc"));
+
+                try {
+                    new Regex(PATTERN, options, 50).isMatch(INPUT);
+                    Assert.Throws(RegexMatchTimeoutException.class);
+                } catch (RegexMatchTimeoutException e) {
+                    Assert.Equal(50, e.matchTimeout());
+                }
+
+                // the next match of the runner isn't stopped by what is left of the last one
+                Assert.Equal("bb", new Regex("a(b+)c", options, 50).match("xabbc").groups().get(1).value());
+            }
+        } finally {
+            Regex.setTimeoutWatchdog(enabled);
+        }
+    }
+
+    @Fact
+    public static void MatcherDeadline() {
+        boolean enabled = Regex.timeoutWatchdog();
+
+        try {
+            for (boolean watchdog : new boolean[]{false, true}) {
+                Regex.setTimeoutWatchdog(watchdog);
+
+                for (int options : Engines.BACKTRACKING) {
+                    RegexMatcher matcher = new Regex(PATTERN, options).matcher(INPUT);
+                    Assert.Equal(Long.MAX_VALUE, matcher.deadline());
+
+                    try {
+                        matcher.setDeadline(System.currentTimeMillis() + 50).find();
+                        Assert.Throws(RegexMatchTimeoutException.class);
+                    } catch (RegexMatchTimeoutException e) {
+                    }
+
+                    Assert.True(new Regex("b+", options).matcher("abbc").setDeadline(System.currentTimeMillis() + 1000).find());
+                }
+            }
+        } finally {
+            Regex.setTimeoutWatchdog(enabled);
+        }
+    }
+
+    @Fact
+    public static void InterruptCancelsTheMatch() {
+        boolean enabled = Regex.timeoutWatchdog();
+
+        try {
+            Regex.setTimeoutWatchdog(true);
+
+            for (int options : Engines.BACKTRACKING) {
+                Thread.currentThread().interrupt();
+
+                try {
+                    new Regex(PATTERN, options).isMatch(INPUT);
+                    Assert.Throws(CancellationException.class);
+                } catch (CancellationException e) {
+                }
+
+                // the thread stays interrupted
+                Assert.True(Thread.interrupted());
+            }
+        } finally {
+            Regex.setTimeoutWatchdog(enabled);
+        }
+    }
+}